@@ -0,0 +1,317 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic;
+
+
+import harvard.robobees.simbeeotic.model.Event;
+import harvard.robobees.simbeeotic.model.Model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+
+/**
+ * Functionality shared by the multithreaded engines: the registry of models,
+ * the pending event queues and the execution of tasks on a pool of worker threads.
+ *
+ * @author unnamed
+ */
+abstract class AbstractSimEngine implements NanoSimEngine {
+
+    private Map<Integer, Model> modelMap = new HashMap<Integer, Model>();
+    private Map<String, List<Model>> modelNameMap = new HashMap<String, List<Model>>();
+    private ModelIndex modelTypeIndex = new ModelIndex();
+
+
+    /**
+     * Schedules an event.
+     *
+     * @param modelId The ID of the model that will process the event.
+     * @param time The time at which the event will be processed (in nanoseconds).
+     * @param simTime The same time as an object, or {@code null} if the caller did not have one.
+     * @param event The event to process.
+     *
+     * @return The ID of the scheduled event.
+     */
+    protected abstract long schedule(int modelId, long time, SimTime simTime, Event event);
+
+
+    /** {@inheritDoc} */
+    @Override
+    public final long scheduleEvent(int modelId, SimTime time, Event event) {
+        return schedule(modelId, time.getTime(), time, event);
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public final long scheduleEvent(int modelId, long time, Event event) {
+        return schedule(modelId, time, null, event);
+    }
+
+
+    /**
+     * Adds a model to the engine.
+     *
+     * @param model The model to add.
+     */
+    protected void registerModel(Model model) {
+
+        modelMap.put(model.getModelId(), model);
+
+        if (!modelNameMap.containsKey(model.getName())) {
+            modelNameMap.put(model.getName(), new ArrayList<Model>());
+        }
+
+        modelNameMap.get(model.getName()).add(model);
+        modelTypeIndex.add(model);
+    }
+
+
+    /**
+     * Gets all models known to the engine.
+     *
+     * @return The registered models.
+     */
+    protected final Iterable<Model> getModels() {
+        return modelMap.values();
+    }
+
+
+    /**
+     * Finds a model that is the target of an event.
+     *
+     * @param modelId The ID of the model.
+     *
+     * @return The model.
+     *
+     * @throws ModelNotFoundException If there is no such model.
+     */
+    protected final Model getTargetModel(int modelId) {
+
+        Model model = modelMap.get(modelId);
+
+        if (model == null) {
+            throw new ModelNotFoundException("Could not find a model with ID: " + modelId);
+        }
+
+        return model;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public Model findModelById(int ID) {
+        return modelMap.get(ID);
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public Model findModelByName(String name) {
+
+        List<Model> models = findModelsByName(name);
+
+        if (models.size() > 1) {
+            throw new RuntimeException("More than one model with the name '" + name + "'.");
+        }
+
+        return models.isEmpty() ? null : models.get(0);
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public <T> T findModelByType(Class<T> type) {
+
+        List<T> models = findModelsByType(type);
+
+        if (models.size() > 1) {
+            throw new RuntimeException("More than one model of type '" + type + "'.");
+        }
+
+        return models.isEmpty() ? null : models.get(0);
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public List<Model> findModelsByName(String name) {
+
+        List<Model> models = modelNameMap.get(name);
+
+        if (models == null) {
+            return Collections.emptyList();
+        }
+
+        return Collections.unmodifiableList(models);
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public <T> List<T> findModelsByType(Class<T> type) {
+        return modelTypeIndex.findModelsByType(type);
+    }
+
+
+    /**
+     * Resolves a handle on the models of a given type.
+     *
+     * @param type The class or interface of the models.
+     *
+     * @return A view that follows the models of the given type as they are added.
+     */
+    public <T> ModelView<T> getModelView(Class<T> type) {
+        return modelTypeIndex.getView(type);
+    }
+
+
+    /**
+     * Creates a queue for pending events. Canceled events are left in the
+     * queue and skipped when they reach the head.
+     *
+     * @param calendar True to use a calendar queue, false to use a binary heap.
+     *
+     * @return The new queue.
+     */
+    protected static TombstoneQueue<ScheduledEvent> createEventQueue(boolean calendar) {
+
+        if (calendar) {
+            return new TombstoneQueue<ScheduledEvent>(new CalendarQueue<ScheduledEvent>(ScheduledEvent.TIME), ScheduledEvent.ID);
+        }
+
+        return new TombstoneQueue<ScheduledEvent>(new PriorityQueue<ScheduledEvent>(), ScheduledEvent.ID);
+    }
+
+
+    /**
+     * Creates a pool of daemon worker threads.
+     *
+     * @param threads The number of threads.
+     * @param name The prefix of the thread names.
+     *
+     * @return The new pool.
+     */
+    protected static ExecutorService createWorkers(int threads, final String name) {
+
+        return Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+
+            private int count = 0;
+
+            public synchronized Thread newThread(Runnable r) {
+
+                Thread thread = new Thread(r, name + "-" + (count++));
+
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        });
+    }
+
+
+    /**
+     * Executes a set of tasks and waits for all of them to complete. A single
+     * task is executed on the calling thread. If any task fails, the remaining
+     * tasks are canceled and the failure is rethrown.
+     *
+     * @param workers The pool in which the tasks are executed.
+     * @param tasks The tasks to execute.
+     */
+    protected static void invokeAll(ExecutorService workers, List<? extends Callable<Void>> tasks) {
+
+        try {
+
+            if (tasks.size() == 1) {
+
+                tasks.get(0).call();
+                return;
+            }
+
+            List<Future<Void>> results = new ArrayList<Future<Void>>(tasks.size());
+
+            for (Callable<Void> task : tasks) {
+                results.add(workers.submit(task));
+            }
+
+            try {
+
+                for (Future<Void> result : results) {
+                    result.get();
+                }
+            }
+            catch(ExecutionException ee) {
+
+                for (Future<Void> result : results) {
+                    result.cancel(true);
+                }
+
+                throw ee;
+            }
+        }
+        catch(ExecutionException ee) {
+
+            if (ee.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)ee.getCause();
+            }
+
+            if (ee.getCause() instanceof Error) {
+                throw (Error)ee.getCause();
+            }
+
+            throw new RuntimeException("Exception while executing events.", ee.getCause());
+        }
+        catch(InterruptedException ie) {
+
+            Thread.currentThread().interrupt();
+
+            throw new RuntimeException("Interrupted while executing events.", ie);
+        }
+        catch(RuntimeException re) {
+            throw re;
+        }
+        catch(Exception e) {
+            throw new RuntimeException("Exception while executing events.", e);
+        }
+    }
+}
@@ -0,0 +1,1013 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic;
+
+
+import harvard.robobees.simbeeotic.model.AbstractModel;
+import harvard.robobees.simbeeotic.model.AbstractPhysicalEntity;
+import harvard.robobees.simbeeotic.model.Checkpointable;
+import harvard.robobees.simbeeotic.model.Event;
+import harvard.robobees.simbeeotic.model.Model;
+import harvard.robobees.simbeeotic.model.Timer;
+import harvard.robobees.simbeeotic.model.TimerEvent;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * A discrete event engine that executes all events sharing the earliest
+ * timestamp as a batch. The events of a batch are grouped by target model,
+ * and the groups are executed concurrently by a pool of worker threads. The
+ * events within a group are executed sequentially, in the usual order.
+ *
+ * <br/>
+ * While a batch executes, events that are scheduled or canceled by models
+ * are buffered per group and applied in model order once every group has
+ * finished. The exception is a model canceling one of its own events in the
+ * batch (e.g. by resetting a timer that is due at the same time), which is
+ * skipped just as it would be by a sequential engine. An event scheduled at the current time is executed in a later
+ * batch at the same time. Event IDs are taken from a block reserved for
+ * each group, so neither they nor the results depend on thread scheduling.
+ * As with any concurrent execution, models that call each other directly
+ * (rather than through events) while handling events must be thread safe.
+ *
+ * <br/>
+ * Scenarios run by {@link SimController} do not use this engine. It is built
+ * and driven directly, by adding the models, initializing them and calling
+ * {@link #run}.
+ *
+ * <br/>
+ * Optionally, the firings of periodic timers can be held in a {@link TimerWheel}
+ * and only moved into the event queue when their slot is reached.
+ *
+ * <br/>
+ * Between batches, the state of the engine and its models can be saved in a
+ * checkpoint. A checkpoint is restored into an engine whose models have been
+ * built from the same scenario and initialized, but not yet run. The pending
+ * events are replaced by those in the checkpoint, and each {@link Checkpointable}
+ * model reads back its state. Timer firings are matched with the timers that the
+ * models created during initialization, including those that were idle at the
+ * time. Any other pending event must be {@link Serializable}.
+ *
+ * <br/>
+ * A checkpoint is only taken if it can be restored. Every model must be
+ * {@link Checkpointable}, and its class must provide its own state methods
+ * rather than relying on those of {@link AbstractModel} or
+ * {@link AbstractPhysicalEntity}, which only cover the state of the base
+ * class. A model without state of its own overrides them with calls to the
+ * superclass. Timers created after initialization (e.g. a timer that is made
+ * each time a packet is sent) cannot be matched on restore, so a checkpoint
+ * cannot be taken while one of them is pending. If either condition is not
+ * met, the checkpoint fails before anything is written.
+ *
+ * @author unnamed
+ */
+public class BatchSimEngine extends AbstractSimEngine {
+
+    // the size of the block of event IDs reserved for each group
+    private static final long ID_BLOCK = 1 << 16;
+
+    // the number of processed event wrappers kept for reuse
+    private static final int MAX_SPARE = 1 << 16;
+
+    private static final int CHECKPOINT_MAGIC = 0x53424350;  // "SBCP"
+    private static final int CHECKPOINT_VERSION = 1;
+
+    private static final byte TIMER_EVENT = 0;
+    private static final byte SERIALIZED_EVENT = 1;
+
+    private TombstoneQueue<ScheduledEvent> eventQ = createEventQueue(false);
+    private TimerWheel<ScheduledEvent> timerWheel = null;
+    private final ExecutorService workers;
+    private final int threads;
+    private final int minParallel;
+
+    private final ThreadLocal<Chunk> current = new ThreadLocal<Chunk>();
+
+    // reused between batches to keep the hot path free of allocation
+    private final List<ScheduledEvent> batch = new ArrayList<ScheduledEvent>();
+    private int[] groupStarts = new int[64];
+    private int groupCount = 0;
+    private long batchIdBase = 0;
+    private final List<Chunk> chunks = new ArrayList<Chunk>();
+    private final ArrayDeque<ScheduledEvent> spare = new ArrayDeque<ScheduledEvent>();
+
+    private ScheduledEvent processing = null;
+    private SimTime lastProcessed = new SimTime(0);
+    private long nextEventId = 1;
+    private volatile boolean terminated = false;
+
+    private long batchCount = 0;
+    private long eventCount = 0;
+
+    // the timers that the models created before the first batch was executed, keyed by model and timer number
+    private final Map<Long, Timer> initialTimers = new HashMap<Long, Timer>();
+    private boolean started = false;
+
+
+    /**
+     * Creates a batching engine.
+     *
+     * @param threads The number of worker threads.
+     * @param minParallel The smallest number of models in a batch for which the batch is
+     *                    executed concurrently. Smaller batches are executed on the calling thread.
+     */
+    public BatchSimEngine(int threads, int minParallel) {
+
+        this.threads = Math.max(1, threads);
+        this.minParallel = Math.max(2, minParallel);
+
+        workers = createWorkers(this.threads, "sim-batch");
+
+        for (int i = 0; i < this.threads; i++) {
+            chunks.add(new Chunk());
+        }
+    }
+
+
+    /**
+     * Creates a batching engine with one worker thread per available processor.
+     */
+    public BatchSimEngine() {
+        this(Runtime.getRuntime().availableProcessors(), 16);
+    }
+
+
+    /**
+     * Holds the firings of periodic timers in a timer wheel. This must be
+     * enabled before any events are scheduled. It is off by default, and
+     * nothing else enables it.
+     *
+     * @param resolution The width of the finest slots of the wheel.
+     * @param unit The unit of the {@code resolution} parameter.
+     */
+    public void setTimerWheel(long resolution, TimeUnit unit) {
+
+        if (!eventQ.isEmpty()) {
+            throw new IllegalStateException("The timer wheel must be enabled before events are scheduled.");
+        }
+
+        timerWheel = new TimerWheel<ScheduledEvent>(unit.toNanos(resolution), ScheduledEvent.TIME, ScheduledEvent.ID);
+    }
+
+
+    /**
+     * Chooses the queue that holds the pending events. A calendar queue is
+     * faster than the default binary heap when there are many pending events
+     * spread evenly over time. This must be set before any events are scheduled.
+     *
+     * @param calendar True to use a {@link CalendarQueue}, false to use a binary heap.
+     */
+    public void setCalendarQueue(boolean calendar) {
+
+        if (!eventQ.isEmpty()) {
+            throw new IllegalStateException("The event queue must be chosen before events are scheduled.");
+        }
+
+        eventQ = createEventQueue(calendar);
+    }
+
+
+    /**
+     * Adds a model to the engine.
+     *
+     * @param model The model to add.
+     */
+    public void addModel(Model model) {
+        registerModel(model);
+    }
+
+
+    /**
+     * Gets the time of the earliest pending event.
+     *
+     * @return The earliest event time, or {@code null} if there are no events.
+     */
+    public SimTime getNextEventTime() {
+
+        feedTimerWheel();
+
+        ScheduledEvent next = eventQ.peek();
+
+        return (next == null) ? null : next.getSimTime();
+    }
+
+
+    /**
+     * Gets the current time, which is the time of the batch being executed.
+     *
+     * @return The current time.
+     */
+    public SimTime getCurrentTime() {
+        return (processing != null) ? processing.getSimTime() : lastProcessed;
+    }
+
+
+    /**
+     * Executes all events that share the earliest timestamp.
+     *
+     * @return The time of the executed batch, or {@code null} if there are no events.
+     */
+    public SimTime processNextBatch() {
+
+        started = true;
+
+        feedTimerWheel();
+
+        ScheduledEvent first = eventQ.peek();
+
+        if (terminated || (first == null)) {
+            return null;
+        }
+
+        processing = first;
+
+        // the whole batch shares one time object
+        SimTime batchTime = first.getSimTime();
+
+        // the queue is ordered by model within a timestamp, so each group of
+        // events for a single model is a contiguous run
+        batch.clear();
+        groupCount = 0;
+
+        while ((eventQ.peek() != null) && (eventQ.peek().time == first.time)) {
+
+            ScheduledEvent e = eventQ.poll();
+
+            e.setSimTime(batchTime);
+
+            if (batch.isEmpty() || (batch.get(batch.size() - 1).model != e.model)) {
+
+                if (groupCount == groupStarts.length) {
+                    groupStarts = Arrays.copyOf(groupStarts, groupCount * 2);
+                }
+
+                groupStarts[groupCount++] = batch.size();
+            }
+
+            batch.add(e);
+        }
+
+        batchIdBase = nextEventId;
+        nextEventId += groupCount * ID_BLOCK;
+
+        // contiguous chunks of groups keep the tasks coarse and keep the buffered changes in model order
+        int numChunks = (groupCount < minParallel) ? 1 : Math.min(threads, groupCount);
+
+        for (int i = 0; i < numChunks; i++) {
+            chunks.get(i).reset((int)((long)groupCount * i / numChunks), (int)((long)groupCount * (i + 1) / numChunks));
+        }
+
+        // most events schedule one more, so give each chunk as many wrappers as it has events
+        for (int i = 0; i < numChunks; i++) {
+
+            Chunk chunk = chunks.get(i);
+            int from = groupStarts[chunk.fromGroup];
+            int to = (chunk.toGroup < groupCount) ? groupStarts[chunk.toGroup] : batch.size();
+
+            for (int j = from; (j < to) && !spare.isEmpty(); j++) {
+                chunk.spare.push(spare.pop());
+            }
+        }
+
+        try {
+
+            invokeAll(workers, chunks.subList(0, numChunks));
+        }
+        finally {
+
+            // apply the buffered changes
+            for (int i = 0; i < numChunks; i++) {
+                for (ScheduledEvent e : chunks.get(i).scheduled) {
+                    enqueue(e);
+                }
+            }
+
+            Set<Long> batchIds = null;
+
+            for (int i = 0; i < numChunks; i++) {
+
+                Chunk chunk = chunks.get(i);
+
+                for (int j = 0; j < chunk.canceledCount; j++) {
+
+                    // events of the batch are no longer in the queue, and would leave a stale tombstone
+                    if (batchIds == null) {
+
+                        batchIds = new HashSet<Long>();
+
+                        for (ScheduledEvent e : batch) {
+                            batchIds.add(e.id);
+                        }
+                    }
+
+                    if (!batchIds.contains(chunk.canceled[j])) {
+                        dequeue(chunk.canceled[j]);
+                    }
+                }
+            }
+
+            // the processed wrappers are no longer referenced by the queue
+            for (ScheduledEvent e : batch) {
+
+                e.clear();
+
+                if (spare.size() < MAX_SPARE) {
+                    spare.push(e);
+                }
+            }
+
+            for (int i = 0; i < numChunks; i++) {
+
+                Chunk chunk = chunks.get(i);
+
+                while (!chunk.spare.isEmpty() && (spare.size() < MAX_SPARE)) {
+                    spare.push(chunk.spare.pop());
+                }
+
+                chunk.spare.clear();
+            }
+
+            batch.clear();
+
+            lastProcessed = batchTime;
+            processing = null;
+        }
+
+        batchCount++;
+
+        return lastProcessed;
+    }
+
+
+    /**
+     * Executes batches until there are no events at or before the given time.
+     *
+     * @param end The last time at which events are processed.
+     */
+    public void run(SimTime end) {
+
+        SimTime next;
+
+        while (((next = getNextEventTime()) != null) && (next.compareTo(end) <= 0)) {
+
+            if (processNextBatch() == null) {
+                break;
+            }
+        }
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    protected long schedule(int modelId, long time, SimTime simTime, Event event) {
+
+        Model model = getTargetModel(modelId);
+
+        if (time < ((processing != null) ? processing.time : lastProcessed.getTime())) {
+            throw new CausalityViolationException("The event is scheduled in the past: " + time + " ns");
+        }
+
+        Chunk chunk = current.get();
+
+        if (chunk == null) {
+
+            // every timer schedules a firing when it is created, even if it is canceled right away
+            if (!started && (event instanceof TimerEvent)) {
+
+                Timer timer = ((TimerEvent)event).getTimer();
+
+                if (timer.getOrdinal() >= 0) {
+                    initialTimers.put(getTimerKey(modelId, timer.getOrdinal()), timer);
+                }
+            }
+
+            ScheduledEvent e = newEvent(spare, nextEventId++, time, simTime, event, model);
+
+            enqueue(e);
+
+            return e.id;
+        }
+
+        if (chunk.nextId == chunk.lastId) {
+            throw new RuntimeException("Too many events scheduled by one model in a single batch.");
+        }
+
+        ScheduledEvent e = newEvent(chunk.spare, chunk.nextId++, time, simTime, event, model);
+
+        chunk.scheduled.add(e);
+
+        return e.id;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void cancelEvent(long eventId) {
+
+        Chunk chunk = current.get();
+
+        if (chunk == null) {
+            dequeue(eventId);
+        }
+        else {
+            chunk.cancel(eventId);
+        }
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void requestScenarioTermination() {
+        terminated = true;
+    }
+
+
+    /**
+     * Stops the worker threads and discards all pending events.
+     */
+    public void shutdown() {
+
+        workers.shutdownNow();
+        eventQ.clear();
+
+        if (timerWheel != null) {
+            timerWheel.clear();
+        }
+    }
+
+
+    /**
+     * Gets the number of batches that have been executed.
+     *
+     * @return The batch count.
+     */
+    public long getBatchCount() {
+        return batchCount;
+    }
+
+
+    /**
+     * Gets the number of events that have been executed.
+     *
+     * @return The event count.
+     */
+    public synchronized long getEventCount() {
+        return eventCount;
+    }
+
+
+    /**
+     * Saves the state of the engine and its models to a file.
+     *
+     * @param file The file to write.
+     *
+     * @throws IOException If the checkpoint could not be written.
+     */
+    public void saveCheckpoint(File file) throws IOException {
+
+        // an existing file is left intact if the checkpoint cannot be taken
+        checkCheckpointable(getPendingEvents());
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+
+        try {
+            writeCheckpoint(out);
+        }
+        finally {
+            out.close();
+        }
+    }
+
+
+    /**
+     * Restores the state of the engine and its models from a file.
+     *
+     * @param file The file written by {@link #saveCheckpoint}.
+     *
+     * @throws IOException If the checkpoint could not be read.
+     */
+    public void restoreCheckpoint(File file) throws IOException {
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+        try {
+            readCheckpoint(in);
+        }
+        finally {
+            in.close();
+        }
+    }
+
+
+    /**
+     * Writes the state of the engine, the state of every {@link Checkpointable} model
+     * and the pending events. This may only be called between batches.
+     *
+     * @param out The output to write to.
+     *
+     * @throws IOException If the checkpoint could not be written.
+     */
+    public void writeCheckpoint(DataOutput out) throws IOException {
+
+        if (processing != null) {
+            throw new IllegalStateException("A checkpoint cannot be taken while a batch is executing.");
+        }
+
+        List<ScheduledEvent> pending = getPendingEvents();
+
+        checkCheckpointable(pending);
+
+        out.writeInt(CHECKPOINT_MAGIC);
+        out.writeInt(CHECKPOINT_VERSION);
+
+        out.writeLong(lastProcessed.getTime());
+        out.writeLong(nextEventId);
+        out.writeLong(batchCount);
+        out.writeLong(getEventCount());
+
+        // the state of each model is length prefixed, so that a mismatch is detected
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        List<Model> models = new ArrayList<Model>();
+
+        for (Model model : getModels()) {
+            models.add(model);
+        }
+
+        out.writeInt(models.size());
+
+        for (Model model : models) {
+
+            buffer.reset();
+
+            DataOutputStream state = new DataOutputStream(buffer);
+
+            ((Checkpointable)model).writeState(state);
+            state.flush();
+
+            out.writeInt(model.getModelId());
+            out.writeUTF(model.getClass().getName());
+            out.writeInt(buffer.size());
+            out.write(buffer.toByteArray());
+        }
+
+        out.writeInt(pending.size());
+
+        for (ScheduledEvent e : pending) {
+
+            out.writeLong(e.id);
+            out.writeLong(e.time);
+            out.writeInt(e.model.getModelId());
+
+            if (e.event instanceof TimerEvent) {
+
+                Timer timer = ((TimerEvent)e.event).getTimer();
+
+                out.writeByte(TIMER_EVENT);
+                out.writeInt(timer.getOrdinal());
+                out.writeLong(timer.getPeriod());
+                out.writeLong((timer.getLastFiredTime() != null) ? timer.getLastFiredTime().getTime() : -1);
+            }
+            else {
+
+                buffer.reset();
+
+                ObjectOutputStream obj = new ObjectOutputStream(buffer);
+
+                obj.writeObject(e.event);
+                obj.close();
+
+                out.writeByte(SERIALIZED_EVENT);
+                out.writeInt(buffer.size());
+                out.write(buffer.toByteArray());
+            }
+        }
+    }
+
+
+    /**
+     * Ensures that the state of every model and every pending event can be
+     * restored, before any part of a checkpoint is written.
+     *
+     * @param pending The pending events.
+     */
+    private void checkCheckpointable(List<ScheduledEvent> pending) {
+
+        for (Model model : getModels()) {
+
+            if (!(model instanceof Checkpointable)) {
+                throw new RuntimeException("Model " + model.getModelId() + " of type " + model.getClass().getName() +
+                                           " is not checkpointable, so the checkpoint cannot be saved.");
+            }
+
+            try {
+
+                Class<?> writer = model.getClass().getMethod("writeState", DataOutput.class).getDeclaringClass();
+                Class<?> reader = model.getClass().getMethod("readState", DataInput.class).getDeclaringClass();
+
+                if ((writer == AbstractModel.class) || (writer == AbstractPhysicalEntity.class) ||
+                    (reader == AbstractModel.class) || (reader == AbstractPhysicalEntity.class)) {
+
+                    throw new RuntimeException("Model " + model.getModelId() + " of type " + model.getClass().getName() +
+                                               " does not save its own state, so the checkpoint cannot be saved.");
+                }
+            }
+            catch(NoSuchMethodException nsme) {
+                throw new RuntimeException("Could not find the state methods of model " + model.getModelId() + ".", nsme);
+            }
+        }
+
+        for (ScheduledEvent e : pending) {
+
+            if (e.event instanceof TimerEvent) {
+
+                Timer timer = ((TimerEvent)e.event).getTimer();
+
+                if (timer.getOrdinal() < 0) {
+                    throw new RuntimeException("A pending timer on model " + e.model.getModelId() +
+                                               " was not created by its model and cannot be saved.");
+                }
+
+                if (started && (initialTimers.get(getTimerKey(e.model.getModelId(), timer.getOrdinal())) != timer)) {
+                    throw new RuntimeException("Timer " + timer.getOrdinal() + " of model " + e.model.getModelId() +
+                                               " was created after the scenario was initialized, so it cannot be saved.");
+                }
+            }
+            else if (!(e.event instanceof Serializable)) {
+                throw new RuntimeException("A pending event of type " + e.event.getClass() +
+                                           " is not serializable, so the checkpoint cannot be saved.");
+            }
+        }
+    }
+
+
+    /**
+     * Restores a checkpoint written by {@link #writeCheckpoint}. The models of this
+     * engine must have been built from the same scenario and initialized, and no
+     * batches may have been executed since. Any events that are pending are discarded.
+     *
+     * @param in The input to read from.
+     *
+     * @throws IOException If the checkpoint could not be read.
+     */
+    public void readCheckpoint(DataInput in) throws IOException {
+
+        if (processing != null) {
+            throw new IllegalStateException("A checkpoint cannot be restored while a batch is executing.");
+        }
+
+        if (in.readInt() != CHECKPOINT_MAGIC) {
+            throw new IOException("The input is not a checkpoint.");
+        }
+
+        int version = in.readInt();
+
+        if (version != CHECKPOINT_VERSION) {
+            throw new IOException("Unsupported checkpoint version: " + version);
+        }
+
+        long last = in.readLong();
+        long nextId = in.readLong();
+        long batches = in.readLong();
+        long events = in.readLong();
+
+        int numModels = in.readInt();
+
+        for (int i = 0; i < numModels; i++) {
+
+            int modelId = in.readInt();
+            String type = in.readUTF();
+            byte[] state = new byte[in.readInt()];
+
+            in.readFully(state);
+
+            Model model = findModelById(modelId);
+
+            if ((model == null) || !model.getClass().getName().equals(type)) {
+                throw new RuntimeException("The checkpoint does not match the scenario: there is no model " +
+                                           modelId + " of type " + type + ".");
+            }
+
+            if (state.length > 0) {
+
+                DataInputStream stateIn = new DataInputStream(new ByteArrayInputStream(state));
+
+                ((Checkpointable)model).readState(stateIn);
+
+                if (stateIn.available() > 0) {
+                    throw new RuntimeException("The state of model " + modelId + " was not completely restored.");
+                }
+            }
+        }
+
+        // every timer that the models created during initialization is idle unless the checkpoint has a firing for it
+        for (Timer timer : initialTimers.values()) {
+            timer.restore((timer.getLastFiredTime() != null) ? timer.getLastFiredTime().getTime() : -1, timer.getPeriod(), 0, 0);
+        }
+
+        eventQ.clear();
+
+        if (timerWheel != null) {
+            timerWheel.clear();
+        }
+
+        started = true;
+
+        int numEvents = in.readInt();
+
+        for (int i = 0; i < numEvents; i++) {
+
+            long id = in.readLong();
+            long time = in.readLong();
+            Model model = getTargetModel(in.readInt());
+            Event event;
+
+            if (in.readByte() == TIMER_EVENT) {
+
+                int ordinal = in.readInt();
+                long period = in.readLong();
+                long lastFired = in.readLong();
+
+                Timer timer = initialTimers.get(getTimerKey(model.getModelId(), ordinal));
+
+                if (timer == null) {
+                    throw new RuntimeException("Timer " + ordinal + " of model " + model.getModelId() +
+                                               " was not created when the scenario was initialized, so it cannot be restored.");
+                }
+
+                timer.restore(lastFired, period, time, id);
+                event = TimerEvent.obtain(timer);
+            }
+            else {
+
+                byte[] bytes = new byte[in.readInt()];
+
+                in.readFully(bytes);
+
+                ObjectInputStream obj = new ObjectInputStream(new ByteArrayInputStream(bytes));
+
+                try {
+                    event = (Event)obj.readObject();
+                }
+                catch(ClassNotFoundException cnfe) {
+                    throw new IOException("Could not restore a pending event: " + cnfe.getMessage());
+                }
+                finally {
+                    obj.close();
+                }
+            }
+
+            enqueue(newEvent(spare, id, time, null, event, model));
+        }
+
+        lastProcessed = new SimTime(last, TimeUnit.NANOSECONDS);
+        nextEventId = nextId;
+        batchCount = batches;
+        terminated = false;
+
+        synchronized(this) {
+            eventCount = events;
+        }
+    }
+
+
+    /**
+     * Gets the events in the queue and the timer wheel that have not been canceled.
+     */
+    private List<ScheduledEvent> getPendingEvents() {
+
+        List<ScheduledEvent> pending = new ArrayList<ScheduledEvent>(eventQ);
+
+        if (timerWheel != null) {
+            timerWheel.collect(pending);
+        }
+
+        return pending;
+    }
+
+
+    private static long getTimerKey(int modelId, int ordinal) {
+        return ((long)modelId << 32) | (ordinal & 0xFFFFFFFFL);
+    }
+
+
+    private static ScheduledEvent newEvent(ArrayDeque<ScheduledEvent> spare, long id, long time, SimTime simTime, Event event, Model model) {
+
+        ScheduledEvent e = spare.poll();
+
+        if (e == null) {
+            return new ScheduledEvent(id, time, simTime, event, model);
+        }
+
+        return e.set(id, time, simTime, event, model);
+    }
+
+
+    private void enqueue(ScheduledEvent e) {
+
+        if ((timerWheel != null) && (e.event instanceof TimerEvent) &&
+            (((TimerEvent)e.event).getTimer().getPeriod() > 0)) {
+
+            timerWheel.add(e, eventQ);
+        }
+        else {
+            eventQ.add(e);
+        }
+    }
+
+
+    private void dequeue(long eventId) {
+
+        if ((timerWheel == null) || !timerWheel.cancel(eventId)) {
+            eventQ.cancel(eventId);
+        }
+    }
+
+
+    private void feedTimerWheel() {
+
+        if (timerWheel != null) {
+            timerWheel.feed(eventQ);
+        }
+    }
+
+
+    private synchronized void countEvents(int count) {
+        eventCount += count;
+    }
+
+
+    /**
+     * A contiguous range of the groups in a batch (each group being the events
+     * for one model), executed by one thread. The changes to the event queue
+     * made while executing the range are buffered in the chunk.
+     */
+    private final class Chunk implements Callable<Void> {
+
+        private int fromGroup;
+        private int toGroup;
+
+        private final List<ScheduledEvent> scheduled = new ArrayList<ScheduledEvent>();
+        private final ArrayDeque<ScheduledEvent> spare = new ArrayDeque<ScheduledEvent>();
+        private long[] canceled = new long[16];
+        private int canceledCount = 0;
+
+        // the block of event IDs of the group being executed
+        private long nextId;
+        private long lastId;
+
+        // the events of the group being executed, and those of them that the model canceled
+        private int groupStart;
+        private int groupEnd;
+        private long[] skipped = new long[4];
+        private int skippedCount = 0;
+
+
+        public void reset(int fromGroup, int toGroup) {
+
+            this.fromGroup = fromGroup;
+            this.toGroup = toGroup;
+
+            scheduled.clear();
+            canceledCount = 0;
+        }
+
+
+        /**
+         * Cancels an event. An event of the group being executed is skipped right
+         * away, as the model is executed sequentially. Other cancellations are
+         * applied after the batch.
+         */
+        public void cancel(long eventId) {
+
+            for (int i = groupStart; i < groupEnd; i++) {
+
+                if (batch.get(i).id == eventId) {
+
+                    if (skippedCount == skipped.length) {
+                        skipped = Arrays.copyOf(skipped, skippedCount * 2);
+                    }
+
+                    skipped[skippedCount++] = eventId;
+
+                    return;
+                }
+            }
+
+            if (canceledCount == canceled.length) {
+                canceled = Arrays.copyOf(canceled, canceledCount * 2);
+            }
+
+            canceled[canceledCount++] = eventId;
+        }
+
+
+        public Void call() {
+
+            int count = 0;
+
+            current.set(this);
+
+            try {
+
+                for (int group = fromGroup; group < toGroup; group++) {
+
+                    nextId = batchIdBase + (group * ID_BLOCK);
+                    lastId = nextId + ID_BLOCK;
+
+                    groupStart = groupStarts[group];
+                    groupEnd = (group + 1 < groupCount) ? groupStarts[group + 1] : batch.size();
+                    skippedCount = 0;
+
+                    for (int i = groupStart; i < groupEnd; i++) {
+
+                        ScheduledEvent e = batch.get(i);
+
+                        if (isSkipped(e.id)) {
+                            continue;
+                        }
+
+                        e.model.processEvent(e.getSimTime(), e.event);
+                        count++;
+                    }
+                }
+            }
+            finally {
+
+                groupStart = 0;
+                groupEnd = 0;
+                current.remove();
+                countEvents(count);
+            }
+
+            return null;
+        }
+
+
+        private boolean isSkipped(long eventId) {
+
+            for (int i = 0; i < skippedCount; i++) {
+
+                if (skipped[i] == eventId) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+}
@@ -0,0 +1,494 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic;
+
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+
+
+/**
+ * A calendar queue (R. Brown, "Calendar Queues: A Fast O(1) Priority Queue
+ * Implementation for the Simulation Event Set Problem", CACM 1988) that can
+ * be used as a drop-in replacement for the {@link java.util.PriorityQueue}
+ * holding the pending events of a simulation.
+ *
+ * <br/>
+ * Elements are hashed into a ring of buckets ("days") by their timestamp,
+ * and each bucket is kept sorted by the natural ordering of the elements.
+ * Dequeueing walks the ring from the current day, so the amortized cost of
+ * both insertion and removal is constant as long as the bucket width tracks
+ * the typical spacing of events. The number of buckets is doubled or halved
+ * as the queue grows and shrinks, and the width is resampled each time.
+ *
+ * <br/>
+ * The natural ordering of the elements must order by timestamp first. Any
+ * tiebreaking fields (model ID, event ID) are honored exactly, because all
+ * elements with equal timestamps are stored in the same bucket. As with
+ * {@link java.util.PriorityQueue}, the iterator does not traverse elements
+ * in any particular order.
+ *
+ * @author unnamed
+ */
+public class CalendarQueue<E extends Comparable<? super E>> extends AbstractQueue<E> {
+
+    /**
+     * Extracts the timestamp of a queued element.
+     */
+    public static interface Timestamp<E> {
+
+        /**
+         * @param element The element being queued.
+         *
+         * @return The time of the element (in nanoseconds).
+         */
+        public long getTime(E element);
+    }
+
+
+    private static final int MIN_BUCKETS = 2;
+    private static final int SAMPLE_SIZE = 25;
+
+    private final Timestamp<? super E> timestamp;
+
+    private List<LinkedList<E>> buckets;
+    private long width;
+    private int size = 0;
+
+    // the current position in the ring
+    private int lastBucket = 0;
+    private long bucketStart = 0;
+
+    private boolean resizeEnabled = true;
+
+
+    /**
+     * Creates an empty calendar queue.
+     *
+     * @param timestamp The means of obtaining the timestamp of queued elements.
+     */
+    public CalendarQueue(Timestamp<? super E> timestamp) {
+        this(timestamp, 1000000);
+    }
+
+
+    /**
+     * Creates an empty calendar queue.
+     *
+     * @param timestamp The means of obtaining the timestamp of queued elements.
+     * @param width The initial width of each bucket (in nanoseconds). This is only
+     *              a hint, the width is recalculated whenever the queue is resized.
+     */
+    public CalendarQueue(Timestamp<? super E> timestamp, long width) {
+
+        if (width <= 0) {
+            throw new IllegalArgumentException("The bucket width must be positive.");
+        }
+
+        this.timestamp = timestamp;
+
+        init(MIN_BUCKETS, width, 0);
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean offer(E element) {
+
+        if (element == null) {
+            throw new NullPointerException();
+        }
+
+        long time = timestamp.getTime(element);
+
+        // an element earlier than the current day moves the ring back
+        if (time < bucketStart) {
+            position(time);
+        }
+
+        insert(element, time);
+
+        size++;
+
+        if (resizeEnabled && (size > 2 * buckets.size())) {
+            resize(2 * buckets.size());
+        }
+
+        return true;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public E poll() {
+
+        if (size == 0) {
+            return null;
+        }
+
+        E element = buckets.get(advance()).removeFirst();
+
+        size--;
+
+        if (resizeEnabled && (buckets.size() > MIN_BUCKETS) && (size < buckets.size() / 2)) {
+            resize(buckets.size() / 2);
+        }
+
+        return element;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public E peek() {
+
+        if (size == 0) {
+            return null;
+        }
+
+        return buckets.get(advance()).getFirst();
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean remove(Object o) {
+
+        if (o == null) {
+            return false;
+        }
+
+        try {
+
+            @SuppressWarnings("unchecked")
+            E element = (E)o;
+
+            if (buckets.get(indexOf(timestamp.getTime(element))).remove(element)) {
+
+                size--;
+                return true;
+            }
+
+            return false;
+        }
+        catch(ClassCastException cce) {
+            return false;
+        }
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void clear() {
+
+        for (LinkedList<E> bucket : buckets) {
+            bucket.clear();
+        }
+
+        size = 0;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public int size() {
+        return size;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public Iterator<E> iterator() {
+
+        return new Iterator<E>() {
+
+            private int bucket = 0;
+            private Iterator<E> current = buckets.get(0).iterator();
+            private Iterator<E> last = null;
+
+
+            public boolean hasNext() {
+
+                while (!current.hasNext() && (bucket < buckets.size() - 1)) {
+                    current = buckets.get(++bucket).iterator();
+                }
+
+                return current.hasNext();
+            }
+
+
+            public E next() {
+
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                last = current;
+
+                return current.next();
+            }
+
+
+            public void remove() {
+
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+
+                last.remove();
+                last = null;
+                size--;
+            }
+        };
+    }
+
+
+    /**
+     * Gets the number of buckets currently in the ring.
+     *
+     * @return The number of buckets.
+     */
+    public int getBucketCount() {
+        return buckets.size();
+    }
+
+
+    /**
+     * Gets the current width of a bucket.
+     *
+     * @return The bucket width (in nanoseconds).
+     */
+    public long getBucketWidth() {
+        return width;
+    }
+
+
+    /**
+     * Moves the current day to the bucket holding the earliest element. The
+     * queue must not be empty.
+     *
+     * @return The index of the bucket holding the earliest element.
+     */
+    private int advance() {
+
+        int n = buckets.size();
+
+        // walk one year of the ring looking for an element in the current day
+        for (int i = 0; i < n; i++) {
+
+            LinkedList<E> bucket = buckets.get(lastBucket);
+
+            if (!bucket.isEmpty() && (timestamp.getTime(bucket.getFirst()) < bucketStart + width)) {
+                return lastBucket;
+            }
+
+            lastBucket = (lastBucket + 1) % n;
+            bucketStart += width;
+        }
+
+        // nothing within a year, so jump directly to the earliest element
+        E min = null;
+
+        for (LinkedList<E> bucket : buckets) {
+
+            if (!bucket.isEmpty() && ((min == null) || (bucket.getFirst().compareTo(min) < 0))) {
+                min = bucket.getFirst();
+            }
+        }
+
+        position(timestamp.getTime(min));
+
+        return lastBucket;
+    }
+
+
+    /**
+     * Sets the current day to the one containing the given time.
+     *
+     * @param time The time (in nanoseconds).
+     */
+    private void position(long time) {
+
+        long day = floorDiv(time, width);
+
+        lastBucket = indexOf(time);
+        bucketStart = day * width;
+    }
+
+
+    private int indexOf(long time) {
+
+        int n = buckets.size();
+        int index = (int)(floorDiv(time, width) % n);
+
+        return (index < 0) ? index + n : index;
+    }
+
+
+    private void insert(E element, long time) {
+
+        LinkedList<E> bucket = buckets.get(indexOf(time));
+
+        // most new elements are later than everything already in the bucket,
+        // so search from the back
+        ListIterator<E> it = bucket.listIterator(bucket.size());
+
+        while (it.hasPrevious()) {
+
+            if (it.previous().compareTo(element) <= 0) {
+
+                it.next();
+                break;
+            }
+        }
+
+        it.add(element);
+    }
+
+
+    private void init(int count, long width, long start) {
+
+        buckets = new ArrayList<LinkedList<E>>(count);
+
+        for (int i = 0; i < count; i++) {
+            buckets.add(new LinkedList<E>());
+        }
+
+        this.width = width;
+
+        position(start);
+    }
+
+
+    /**
+     * Rebuilds the ring with a new number of buckets and a bucket width
+     * estimated from the spacing of the earliest elements.
+     *
+     * @param count The new number of buckets.
+     */
+    private void resize(int count) {
+
+        long newWidth = sampleWidth();
+        List<LinkedList<E>> old = buckets;
+        long start = bucketStart;
+
+        init(count, newWidth, start);
+
+        for (LinkedList<E> bucket : old) {
+            for (E element : bucket) {
+                insert(element, timestamp.getTime(element));
+            }
+        }
+
+        if (size > 0) {
+            advance();
+        }
+    }
+
+
+    /**
+     * Estimates a bucket width of roughly three times the average separation
+     * of the next few events, ignoring large outliers.
+     *
+     * @return The new bucket width, or the current width if there is not
+     *         enough information to make an estimate.
+     */
+    private long sampleWidth() {
+
+        int samples = Math.min(size, SAMPLE_SIZE);
+
+        if (samples < 2) {
+            return width;
+        }
+
+        // pull the earliest elements out and put them back afterward
+        resizeEnabled = false;
+
+        List<E> earliest = new ArrayList<E>(samples);
+
+        for (int i = 0; i < samples; i++) {
+            earliest.add(poll());
+        }
+
+        for (E element : earliest) {
+            offer(element);
+        }
+
+        resizeEnabled = true;
+
+        long first = timestamp.getTime(earliest.get(0));
+        long last = timestamp.getTime(earliest.get(samples - 1));
+        double avg = (double)(last - first) / (samples - 1);
+
+        if (avg <= 0) {
+            return width;
+        }
+
+        // recompute the average without separations more than twice the first estimate
+        double total = 0;
+        int count = 0;
+
+        for (int i = 1; i < samples; i++) {
+
+            long sep = timestamp.getTime(earliest.get(i)) - timestamp.getTime(earliest.get(i - 1));
+
+            if (sep <= 2 * avg) {
+
+                total += sep;
+                count++;
+            }
+        }
+
+        if ((count == 0) || (total == 0)) {
+            return Math.max(1, (long)(3 * avg));
+        }
+
+        return Math.max(1, (long)(3 * total / count));
+    }
+
+
+    private static long floorDiv(long x, long y) {
+
+        long q = x / y;
+
+        if ((x % y != 0) && ((x < 0) != (y < 0))) {
+            q--;
+        }
+
+        return q;
+    }
+}
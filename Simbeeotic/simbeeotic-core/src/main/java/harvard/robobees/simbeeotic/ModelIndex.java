@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic;
+
+
+import harvard.robobees.simbeeotic.model.Model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * An index of models by type. The first lookup after a model is added builds
+ * an immutable view for every class and interface that any of the models
+ * implement, in a single pass over the models. Subsequent lookups are a map
+ * access that returns a shared, array-backed list, until the next model is
+ * added.
+ *
+ * <br/>
+ * Callers that look up the same type repeatedly can resolve a
+ * {@link ModelView} once and read it thereafter.
+ *
+ * @author unnamed
+ */
+public final class ModelIndex {
+
+    private List<Model> models = new ArrayList<Model>();
+
+    // the types implemented by each concrete model class (including the class itself)
+    private Map<Class<?>, Class<?>[]> hierarchies = new HashMap<Class<?>, Class<?>[]>();
+
+    private volatile Snapshot snapshot;
+
+    private static final Object[] EMPTY = new Object[0];
+
+
+    /**
+     * Adds a model to the index. All views are rebuilt on the next lookup.
+     *
+     * @param model The model to add.
+     */
+    public synchronized void add(Model model) {
+
+        models.add(model);
+        snapshot = null;
+    }
+
+
+    /**
+     * Finds all models that are instances of a given type.
+     *
+     * @param type The class or interface of the models.
+     *
+     * @return An immutable list of the models, in the order they were added.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> findModelsByType(Class<T> type) {
+        return (List<T>)(List<?>)getSnapshot().list(type);
+    }
+
+
+    /**
+     * Resolves a handle on the models of a given type.
+     *
+     * @param type The class or interface of the models.
+     *
+     * @return A view that follows the models of the given type as they are added.
+     */
+    public <T> ModelView<T> getView(Class<T> type) {
+        return new ModelView<T>(this, type);
+    }
+
+
+    /**
+     * Gets the current snapshot of the index, building it if a model has been
+     * added since the last lookup.
+     *
+     * @return The current snapshot.
+     */
+    Snapshot getSnapshot() {
+
+        Snapshot current = snapshot;
+
+        if (current == null) {
+
+            synchronized(this) {
+
+                if (snapshot == null) {
+                    snapshot = build();
+                }
+
+                current = snapshot;
+            }
+        }
+
+        return current;
+    }
+
+
+    /**
+     * Groups the models by every type that they implement.
+     *
+     * @return The new snapshot.
+     */
+    private Snapshot build() {
+
+        Map<Class<?>, List<Model>> grouped = new HashMap<Class<?>, List<Model>>();
+
+        for (Model model : models) {
+
+            for (Class<?> type : getHierarchy(model.getClass())) {
+
+                List<Model> group = grouped.get(type);
+
+                if (group == null) {
+
+                    group = new ArrayList<Model>();
+                    grouped.put(type, group);
+                }
+
+                group.add(model);
+            }
+        }
+
+        Map<Class<?>, Object[]> arrays = new IdentityHashMap<Class<?>, Object[]>(grouped.size() * 2);
+        Map<Class<?>, List<Object>> lists = new IdentityHashMap<Class<?>, List<Object>>(grouped.size() * 2);
+
+        for (Map.Entry<Class<?>, List<Model>> entry : grouped.entrySet()) {
+
+            Object[] array = entry.getValue().toArray();
+
+            arrays.put(entry.getKey(), array);
+            lists.put(entry.getKey(), Collections.unmodifiableList(Arrays.asList(array)));
+        }
+
+        return new Snapshot(arrays, lists);
+    }
+
+
+    /**
+     * Gets all of the superclasses and interfaces of a model class.
+     *
+     * @param clazz The concrete class of a model.
+     *
+     * @return The types, including the class itself.
+     */
+    private Class<?>[] getHierarchy(Class<?> clazz) {
+
+        Class<?>[] types = hierarchies.get(clazz);
+
+        if (types == null) {
+
+            Set<Class<?>> found = new LinkedHashSet<Class<?>>();
+
+            for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+
+                found.add(c);
+                addInterfaces(c, found);
+            }
+
+            types = found.toArray(new Class<?>[found.size()]);
+            hierarchies.put(clazz, types);
+        }
+
+        return types;
+    }
+
+
+    private static void addInterfaces(Class<?> clazz, Set<Class<?>> found) {
+
+        for (Class<?> iface : clazz.getInterfaces()) {
+
+            if (found.add(iface)) {
+                addInterfaces(iface, found);
+            }
+        }
+    }
+
+
+    /**
+     * An immutable grouping of the models by type.
+     */
+    static final class Snapshot {
+
+        private final Map<Class<?>, Object[]> arrays;
+        private final Map<Class<?>, List<Object>> lists;
+
+
+        private Snapshot(Map<Class<?>, Object[]> arrays, Map<Class<?>, List<Object>> lists) {
+
+            this.arrays = arrays;
+            this.lists = lists;
+        }
+
+
+        Object[] array(Class<?> type) {
+
+            Object[] array = arrays.get(type);
+
+            return (array != null) ? array : EMPTY;
+        }
+
+
+        List<Object> list(Class<?> type) {
+
+            List<Object> list = lists.get(type);
+
+            return (list != null) ? list : Collections.<Object>emptyList();
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic;
+
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+
+/**
+ * A handle on the models of a given type. The view is resolved once and then
+ * read directly from an array, without a lookup or a new list per access.
+ *
+ * <br/>
+ * Only views on the engines that keep a {@link ModelIndex} ({@link BatchSimEngine}
+ * and {@link ParallelSimEngine}) pick up models that are added after the view
+ * was resolved. The engine that {@link SimController} uses to run scenarios has
+ * no index, so a view on it is a fixed copy of the models that existed when
+ * {@link #of} was called. Scenarios add all of their models before any model is
+ * initialized, so a view resolved in {@link harvard.robobees.simbeeotic.model.Model#initialize}
+ * is complete, but one resolved earlier is not.
+ *
+ * @author unnamed
+ */
+public final class ModelView<T> implements Iterable<T> {
+
+    private final ModelIndex index;
+    private final Class<T> type;
+
+    private Resolved resolved;
+
+
+    ModelView(ModelIndex index, Class<T> type) {
+
+        this.index = index;
+        this.type = type;
+    }
+
+
+    private ModelView(Class<T> type, List<T> models) {
+
+        this.index = null;
+        this.type = type;
+        this.resolved = new Resolved(null, models.toArray());
+    }
+
+
+    /**
+     * Resolves a view on the models of a given type. If the engine does not keep
+     * an index of its models, the view is a fixed copy of the models that exist
+     * when it is resolved.
+     *
+     * @param engine The engine in which to find the models.
+     * @param type The class or interface of the models.
+     *
+     * @return The view.
+     */
+    public static <T> ModelView<T> of(SimEngine engine, Class<T> type) {
+
+        if (engine instanceof AbstractSimEngine) {
+            return ((AbstractSimEngine)engine).getModelView(type);
+        }
+
+        return new ModelView<T>(type, engine.findModelsByType(type));
+    }
+
+
+    /**
+     * Gets the type of the models in this view.
+     *
+     * @return The class or interface of the models.
+     */
+    public Class<T> getType() {
+        return type;
+    }
+
+
+    /**
+     * Gets the number of models in the view.
+     *
+     * @return The number of models.
+     */
+    public int size() {
+        return current().length;
+    }
+
+
+    /**
+     * Gets a model from the view.
+     *
+     * @param i The position of the model, in the order the models were added.
+     *
+     * @return The model.
+     */
+    public T get(int i) {
+        return type.cast(current()[i]);
+    }
+
+
+    /**
+     * Gets an immutable snapshot of the models. The snapshot does not change
+     * if more models are added.
+     *
+     * @return The models in the view.
+     */
+    public List<T> snapshot() {
+
+        final Object[] array = current();
+
+        return new AbstractList<T>() {
+
+            @Override
+            public T get(int i) {
+                return type.cast(array[i]);
+            }
+
+            @Override
+            public int size() {
+                return array.length;
+            }
+        };
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public Iterator<T> iterator() {
+
+        final Object[] array = current();
+
+        return new Iterator<T>() {
+
+            private int next = 0;
+
+            public boolean hasNext() {
+                return next < array.length;
+            }
+
+            public T next() {
+
+                if (next >= array.length) {
+                    throw new NoSuchElementException();
+                }
+
+                return type.cast(array[next++]);
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+
+    /**
+     * Gets the array of models, resolving it again if the index has changed.
+     *
+     * @return The models.
+     */
+    private Object[] current() {
+
+        Resolved current = resolved;
+
+        if (index == null) {
+            return current.models;
+        }
+
+        ModelIndex.Snapshot latest = index.getSnapshot();
+
+        if ((current == null) || (current.snapshot != latest)) {
+
+            current = new Resolved(latest, latest.array(type));
+            resolved = current;
+        }
+
+        return current.models;
+    }
+
+
+    /**
+     * The models of this view in a given snapshot of the index. The fields are
+     * final so that the pair can be shared between threads without locking.
+     */
+    private static final class Resolved {
+
+        private final ModelIndex.Snapshot snapshot;
+        private final Object[] models;
+
+
+        private Resolved(ModelIndex.Snapshot snapshot, Object[] models) {
+
+            this.snapshot = snapshot;
+            this.models = models;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic;
+
+
+import harvard.robobees.simbeeotic.model.Event;
+
+
+/**
+ * A simulation engine that can schedule events with a primitive time value.
+ * Frequent schedulers (such as timers) use this form to avoid creating a
+ * {@link SimTime} for every event. The engine only creates the time object
+ * when the event is delivered to its model.
+ *
+ * @author unnamed
+ */
+public interface NanoSimEngine extends SimEngine {
+
+    /**
+     * Schedules an event on a model.
+     *
+     * @param modelId The ID of the model that will process the event.
+     * @param time The time at which the event will be processed (in nanoseconds).
+     * @param event The event to process.
+     *
+     * @return The ID of the scheduled event, which can be used to cancel it.
+     */
+    public long scheduleEvent(int modelId, long time, Event event);
+
+
+    /**
+     * Gets the time of the event that is being processed by the calling thread.
+     * Engines that execute models concurrently may be at different times on
+     * different threads.
+     *
+     * @return The current time.
+     */
+    public SimTime getCurrentTime();
+}
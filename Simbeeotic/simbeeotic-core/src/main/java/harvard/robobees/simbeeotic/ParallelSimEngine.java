@@ -0,0 +1,859 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic;
+
+
+import harvard.robobees.simbeeotic.model.Event;
+import harvard.robobees.simbeeotic.model.Model;
+import harvard.robobees.simbeeotic.model.comms.PropagationModel;
+import harvard.robobees.simbeeotic.model.comms.Radio;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * A discrete event engine that executes groups of models in parallel. Models
+ * are divided into partitions by a {@link Partitioner} (child models follow
+ * their parents) and each partition has its own event queue.
+ *
+ * <br/>
+ * Execution proceeds in synchronous windows. Each window begins at the
+ * earliest pending event time (T) and ends at T plus the lookahead. Every
+ * partition processes its events within the window on a worker thread,
+ * in the usual order (time, then model ID, then event ID). An event that one
+ * partition schedules on a model in another partition is placed in a
+ * per-sender inbox of the target partition, and the inboxes are drained in
+ * sender order after all partitions have finished the window. Such events
+ * must therefore be scheduled at or after the end of the window, otherwise
+ * a {@link CausalityViolationException} is raised. The lookahead must be no
+ * larger than the smallest delay with which models in different partitions
+ * affect one another (see {@link #getLookahead}). It can be given explicitly
+ * or derived from the physics step and the minimum delay of the propagation
+ * models when the models are partitioned. Likewise, an event in another
+ * partition is only canceled once the window is over, so canceling one that
+ * was processed during the window (at or after the time of the cancellation)
+ * raises a {@link CausalityViolationException}. Models cannot be added while
+ * a window is executing.
+ *
+ * <br/>
+ * Event IDs are built from a per-partition counter, and the sender and
+ * target partitions, so neither they nor the order of execution depends on
+ * thread scheduling. Given the same random seed and partitioning, the results
+ * are repeatable. Models that call each other directly (rather than through
+ * events) must be placed in the same partition. The exception is a
+ * {@link PropagationModel} with a minimum delay, which radios in any partition
+ * may call, since it delivers the transmissions to other radios as events that
+ * are scheduled at least that far in the future. If the radios are spread over
+ * several partitions and the lookahead is larger than the delay of a propagation
+ * model (e.g. because it has no delay), partitioning fails.
+ *
+ * <br/>
+ * Scenarios run by {@link SimController} do not use this engine. It is built
+ * and driven directly, by adding the models, initializing them and calling
+ * {@link #run}.
+ *
+ * @author unnamed
+ */
+public class ParallelSimEngine extends AbstractSimEngine {
+
+    /**
+     * Partitions root models by their model ID.
+     */
+    public static final Partitioner BY_MODEL_ID = new Partitioner() {
+
+        public int getPartition(Model model, int partitions) {
+            return model.getModelId() % partitions;
+        }
+    };
+
+    private static final int PARTITION_BITS = 10;
+    private static final int MAX_PARTITIONS = (1 << PARTITION_BITS) - 1;
+    private static final long PARTITION_MASK = MAX_PARTITIONS;
+
+    // marks the target of events scheduled before the models were partitioned
+    private static final int UNASSIGNED = MAX_PARTITIONS;
+
+    private final Partition[] partitions;
+    private long lookahead;  // ns, or zero until it is derived
+    private final double physicsStep;  // s
+    private final Partitioner partitioner;
+    private final ExecutorService workers;
+
+    private Map<Integer, Model> parentMap = new HashMap<Integer, Model>();
+    private Map<Integer, Partition> modelPartitions = null;
+
+    // events scheduled before partitioning, and where they ended up
+    private List<ScheduledEvent> unassigned = new LinkedList<ScheduledEvent>();
+    private Map<Long, Partition> unassignedOwners = new HashMap<Long, Partition>();
+    private long nextUnassignedSeq = 1;
+
+    private final ThreadLocal<Partition> current = new ThreadLocal<Partition>();
+
+    private SimTime windowStart = new SimTime(0);
+    private long windowEnd = 0;
+    private volatile boolean executing = false;
+    private volatile boolean terminated = false;
+    private long windowCount = 0;
+
+    private static Logger logger = Logger.getLogger(ParallelSimEngine.class);
+
+
+    /**
+     * Creates a parallel engine.
+     *
+     * @param numPartitions The number of partitions.
+     * @param lookahead The length of each synchronous window. Must be greater than zero.
+     * @param unit The unit of the {@code lookahead} parameter.
+     * @param partitioner The strategy used to assign root models to partitions.
+     * @param threads The number of worker threads.
+     */
+    public ParallelSimEngine(int numPartitions, long lookahead, TimeUnit unit, Partitioner partitioner, int threads) {
+
+        if ((numPartitions < 1) || (numPartitions >= MAX_PARTITIONS)) {
+            throw new IllegalArgumentException("The number of partitions must be in [1, " + MAX_PARTITIONS + ").");
+        }
+
+        if (lookahead <= 0) {
+            throw new IllegalArgumentException("The lookahead must be greater than zero.");
+        }
+
+        this.lookahead = unit.toNanos(lookahead);
+        this.physicsStep = 0;
+        this.partitioner = partitioner;
+
+        partitions = new Partition[numPartitions];
+
+        for (int i = 0; i < numPartitions; i++) {
+            partitions[i] = new Partition(i, numPartitions);
+        }
+
+        workers = createWorkers(Math.min(threads, numPartitions), "sim-partition");
+    }
+
+
+    /**
+     * Creates a parallel engine with one worker thread per partition, up to the
+     * number of available processors.
+     *
+     * @param numPartitions The number of partitions.
+     * @param lookahead The length of each synchronous window. Must be greater than zero.
+     * @param unit The unit of the {@code lookahead} parameter.
+     * @param partitioner The strategy used to assign root models to partitions.
+     */
+    public ParallelSimEngine(int numPartitions, long lookahead, TimeUnit unit, Partitioner partitioner) {
+        this(numPartitions, lookahead, unit, partitioner, Runtime.getRuntime().availableProcessors());
+    }
+
+
+    /**
+     * Creates a parallel engine whose lookahead is derived from the physics step
+     * and the propagation models when the models are partitioned (see
+     * {@link #getLookahead(double, long)}).
+     *
+     * @param numPartitions The number of partitions.
+     * @param physicsStep The physics step (in seconds). Must be greater than zero.
+     * @param partitioner The strategy used to assign root models to partitions.
+     * @param threads The number of worker threads.
+     */
+    public ParallelSimEngine(int numPartitions, double physicsStep, Partitioner partitioner, int threads) {
+
+        if ((numPartitions < 1) || (numPartitions >= MAX_PARTITIONS)) {
+            throw new IllegalArgumentException("The number of partitions must be in [1, " + MAX_PARTITIONS + ").");
+        }
+
+        if (!(physicsStep > 0)) {
+            throw new IllegalArgumentException("The physics step must be greater than zero.");
+        }
+
+        this.lookahead = 0;
+        this.physicsStep = physicsStep;
+        this.partitioner = partitioner;
+
+        partitions = new Partition[numPartitions];
+
+        for (int i = 0; i < numPartitions; i++) {
+            partitions[i] = new Partition(i, numPartitions);
+        }
+
+        workers = createWorkers(Math.min(threads, numPartitions), "sim-partition");
+    }
+
+
+    /**
+     * Derives a safe lookahead. Partitions only interact through events, so
+     * the window can be no longer than the physics step (models in different
+     * partitions collide through the shared world, which is stepped between
+     * windows) or the smallest delay with which one model can schedule an
+     * event on a model in another partition (e.g. the radio propagation delay
+     * across the gap between regions).
+     *
+     * @param physicsStep The physics step (in seconds).
+     * @param minLinkDelay The smallest cross-partition event delay (in nanoseconds),
+     *                     or a value less than or equal to zero if there is none.
+     *
+     * @return The lookahead (in nanoseconds).
+     */
+    public static long getLookahead(double physicsStep, long minLinkDelay) {
+
+        long step = (long)(physicsStep * TimeUnit.SECONDS.toNanos(1));
+
+        if (minLinkDelay > 0) {
+            return Math.min(step, minLinkDelay);
+        }
+
+        return step;
+    }
+
+
+    /**
+     * Gets the smallest minimum delay of the propagation models in the engine.
+     *
+     * @return The delay (in nanoseconds), or -1 if there are no propagation models.
+     */
+    public long getMinimumLinkDelay() {
+
+        long delay = -1;
+
+        for (PropagationModel model : findModelsByType(PropagationModel.class)) {
+
+            if ((delay < 0) || (model.getMinimumDelay() < delay)) {
+                delay = model.getMinimumDelay();
+            }
+        }
+
+        return delay;
+    }
+
+
+    /**
+     * Gets the length of the synchronous windows.
+     *
+     * @return The lookahead (in nanoseconds), or zero if it has not been derived yet.
+     */
+    public long getLookahead() {
+        return lookahead;
+    }
+
+
+    /**
+     * Chooses the queues that hold the pending events of the partitions (see
+     * {@link BatchSimEngine#setCalendarQueue}). This must be set before any
+     * events are scheduled.
+     *
+     * @param calendar True to use a {@link CalendarQueue}, false to use a binary heap.
+     */
+    public void setCalendarQueue(boolean calendar) {
+
+        if (getNextEventTime() != null) {
+            throw new IllegalStateException("The event queue must be chosen before events are scheduled.");
+        }
+
+        for (Partition p : partitions) {
+            p.queue = createEventQueue(calendar);
+        }
+    }
+
+
+    /**
+     * Adds a root model to the engine.
+     *
+     * @param model The model to add.
+     */
+    public void addModel(Model model) {
+        addModel(model, null);
+    }
+
+
+    /**
+     * Adds a model to the engine.
+     *
+     * @param model The model to add.
+     * @param parent The parent of the model, or {@code null} if it is a root model.
+     */
+    public void addModel(Model model, Model parent) {
+
+        if (executing) {
+            throw new IllegalStateException("Models cannot be added while a window is executing.");
+        }
+
+        registerModel(model);
+
+        if (parent != null) {
+            parentMap.put(model.getModelId(), parent);
+        }
+
+        // late additions go straight into a partition
+        if (modelPartitions != null) {
+            modelPartitions.put(model.getModelId(), findPartition(model));
+        }
+    }
+
+
+    /**
+     * Assigns every model to a partition. This is done automatically before
+     * the first window, once the models have been initialized (and know their
+     * positions), but it can be invoked earlier.
+     */
+    public void partition() {
+
+        if (modelPartitions != null) {
+            return;
+        }
+
+        modelPartitions = new HashMap<Integer, Partition>();
+
+        for (Model model : getModels()) {
+            modelPartitions.put(model.getModelId(), findPartition(model));
+        }
+
+        checkLookahead();
+
+        // move the events that were scheduled during initialization
+        for (ScheduledEvent e : unassigned) {
+
+            Partition target = modelPartitions.get(e.model.getModelId());
+
+            target.queue.add(e);
+            unassignedOwners.put(e.id, target);
+        }
+
+        unassigned.clear();
+
+        if (logger.isDebugEnabled()) {
+
+            for (Partition p : partitions) {
+                logger.debug("Partition " + p.index + " holds " + p.queue.size() + " initial events.");
+            }
+        }
+    }
+
+
+    /**
+     * Derives the lookahead if it was not given, and ensures that radios in
+     * different partitions cannot reach one another within a window.
+     */
+    private void checkLookahead() {
+
+        long linkDelay = getMinimumLinkDelay();
+
+        if (lookahead == 0) {
+            lookahead = getLookahead(physicsStep, linkDelay);
+        }
+
+        if ((linkDelay < 0) || (lookahead <= linkDelay)) {
+            return;
+        }
+
+        Partition radioPartition = null;
+
+        for (Radio radio : findModelsByType(Radio.class)) {
+
+            Partition p = modelPartitions.get(((Model)radio).getModelId());
+
+            if ((radioPartition != null) && (p != radioPartition)) {
+
+                throw new CausalityViolationException("The lookahead of " + lookahead + " ns is larger than the " +
+                                                      "minimum propagation delay of " + linkDelay + " ns, but the " +
+                                                      "radios are in several partitions.");
+            }
+
+            radioPartition = p;
+        }
+    }
+
+
+    private Partition findPartition(Model model) {
+
+        Model root = model;
+
+        while (parentMap.containsKey(root.getModelId())) {
+            root = parentMap.get(root.getModelId());
+        }
+
+        int index = partitioner.getPartition(root, partitions.length) % partitions.length;
+
+        return partitions[(index < 0) ? index + partitions.length : index];
+    }
+
+
+    /**
+     * Executes one synchronous window. All partitions process their events that
+     * are earlier than the end of the window (or the given limit), then the
+     * events that were sent between partitions are delivered.
+     *
+     * @param limit The time at which execution should stop. Events at or after this time are not processed.
+     *
+     * @return The end of the executed window, or {@code null} if there were no events before the limit.
+     */
+    public SimTime processWindow(SimTime limit) {
+
+        partition();
+
+        SimTime start = getNextEventTime();
+
+        if (terminated || (start == null) || (start.compareTo(limit) >= 0)) {
+            return null;
+        }
+
+        windowStart = start;
+        windowEnd = limit.getTime();
+
+        if (start.getTime() < windowEnd - lookahead) {
+            windowEnd = start.getTime() + lookahead;
+        }
+
+        List<Partition> active = new ArrayList<Partition>();
+
+        for (Partition p : partitions) {
+
+            ScheduledEvent next = p.queue.peek();
+
+            if ((next != null) && (next.time < windowEnd)) {
+                active.add(p);
+            }
+        }
+
+        executing = true;
+
+        try {
+            invokeAll(workers, active);
+        }
+        finally {
+            executing = false;
+        }
+
+        // deliver messages between partitions in a fixed order
+        for (Partition p : partitions) {
+            p.deliver();
+        }
+
+        windowCount++;
+
+        return new SimTime(windowEnd, TimeUnit.NANOSECONDS);
+    }
+
+
+    /**
+     * Executes windows until there are no events at or before the given time.
+     *
+     * @param end The last time at which events are processed.
+     */
+    public void run(SimTime end) {
+
+        SimTime limit = new SimTime(end, 1, TimeUnit.NANOSECONDS);
+
+        while (processWindow(limit) != null) {
+        }
+    }
+
+
+    /**
+     * Gets the time of the earliest pending event. Must not be called while a window is executing.
+     *
+     * @return The earliest event time, or {@code null} if there are no events.
+     */
+    public SimTime getNextEventTime() {
+
+        ScheduledEvent next = null;
+
+        for (ScheduledEvent e : unassigned) {
+
+            if ((next == null) || (e.time < next.time)) {
+                next = e;
+            }
+        }
+
+        for (Partition p : partitions) {
+
+            ScheduledEvent e = p.queue.peek();
+
+            if ((e != null) && ((next == null) || (e.time < next.time))) {
+                next = e;
+            }
+        }
+
+        return (next == null) ? null : next.getSimTime();
+    }
+
+
+    /**
+     * Gets the current time. Within a partition this is the time of the event
+     * being processed, otherwise it is the start of the last window.
+     *
+     * @return The current time.
+     */
+    public SimTime getCurrentTime() {
+
+        Partition p = current.get();
+
+        if ((p != null) && (p.processing != null)) {
+            return p.processing.getSimTime();
+        }
+
+        return windowStart;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    protected long schedule(int modelId, long time, SimTime simTime, Event event) {
+
+        Model model = getTargetModel(modelId);
+
+        Partition sender = current.get();
+
+        // scheduled from outside of a window (e.g. during initialization)
+        if (sender == null) {
+
+            if (time < windowStart.getTime()) {
+                throw new CausalityViolationException("The event is scheduled in the past: " + time + " ns");
+            }
+
+            if (modelPartitions == null) {
+
+                ScheduledEvent e = new ScheduledEvent(makeId(nextUnassignedSeq++, 0, UNASSIGNED), time, simTime, event, model);
+
+                unassigned.add(e);
+
+                return e.id;
+            }
+
+            Partition target = modelPartitions.get(modelId);
+            ScheduledEvent e = new ScheduledEvent(makeId(target.nextSeq++, target.index, target.index), time, simTime, event, model);
+
+            target.queue.add(e);
+
+            return e.id;
+        }
+
+        if ((sender.processing != null) && (time < sender.processing.time)) {
+            throw new CausalityViolationException("The event is scheduled in the past: " + time + " ns");
+        }
+
+        Partition target = modelPartitions.get(modelId);
+        ScheduledEvent e = new ScheduledEvent(makeId(sender.nextSeq++, sender.index, target.index), time, simTime, event, model);
+
+        if (target == sender) {
+            sender.queue.add(e);
+        }
+        else {
+
+            if (time < windowEnd) {
+
+                throw new CausalityViolationException("An event for model " + modelId + " at " + time +
+                                                      " ns is inside the lookahead window ending at " + windowEnd +
+                                                      " ns of another partition.");
+            }
+
+            target.inboxes.get(sender.index).add(e);
+        }
+
+        return e.id;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void cancelEvent(long eventId) {
+
+        int targetIndex = (int)(eventId & PARTITION_MASK);
+        Partition target;
+
+        if (targetIndex == UNASSIGNED) {
+
+            if (modelPartitions == null) {
+
+                Iterator<ScheduledEvent> it = unassigned.iterator();
+
+                while (it.hasNext()) {
+
+                    if (it.next().id == eventId) {
+
+                        it.remove();
+                        break;
+                    }
+                }
+
+                return;
+            }
+
+            target = unassignedOwners.get(eventId);
+
+            if (target == null) {
+                return;
+            }
+        }
+        else {
+            target = partitions[targetIndex];
+        }
+
+        Partition sender = current.get();
+
+        if ((sender == null) || (sender == target)) {
+            target.queue.cancel(eventId);
+        }
+        else {
+
+            long time = (sender.processing != null) ? sender.processing.time : windowStart.getTime();
+
+            target.cancels.get(sender.index).add(new Cancel(eventId, time));
+        }
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void requestScenarioTermination() {
+        terminated = true;
+    }
+
+
+    /**
+     * Determines if termination of the scenario has been requested.
+     *
+     * @return True if the engine is terminated.
+     */
+    public boolean isTerminated() {
+        return terminated;
+    }
+
+
+    /**
+     * Stops the worker threads and discards all pending events.
+     */
+    public void shutdown() {
+
+        workers.shutdownNow();
+
+        for (Partition p : partitions) {
+            p.queue.clear();
+        }
+
+        unassigned.clear();
+    }
+
+
+    /**
+     * Gets the number of partitions.
+     *
+     * @return The partition count.
+     */
+    public int getPartitionCount() {
+        return partitions.length;
+    }
+
+
+    /**
+     * Gets the partition to which a model has been assigned.
+     *
+     * @param modelId The ID of the model.
+     *
+     * @return The partition index, or -1 if the models have not been partitioned.
+     */
+    public int getPartition(int modelId) {
+
+        if ((modelPartitions == null) || !modelPartitions.containsKey(modelId)) {
+            return -1;
+        }
+
+        return modelPartitions.get(modelId).index;
+    }
+
+
+    /**
+     * Gets the number of events processed by a partition.
+     *
+     * @param partition The partition index.
+     *
+     * @return The number of events processed.
+     */
+    public long getEventCount(int partition) {
+        return partitions[partition].eventCount;
+    }
+
+
+    /**
+     * Gets the number of synchronous windows that have been executed.
+     *
+     * @return The window count.
+     */
+    public long getWindowCount() {
+        return windowCount;
+    }
+
+
+    private static long makeId(long seq, int sender, int target) {
+        return (seq << (2 * PARTITION_BITS)) | ((long)sender << PARTITION_BITS) | target;
+    }
+
+
+    /**
+     * A group of models that share an event queue and are executed by one thread at a time.
+     */
+    private final class Partition implements Callable<Void> {
+
+        private final int index;
+        private TombstoneQueue<ScheduledEvent> queue = createEventQueue(false);
+
+        // indexed by the sending partition, which is the only writer during a window
+        private final List<List<ScheduledEvent>> inboxes = new ArrayList<List<ScheduledEvent>>();
+        private final List<List<Cancel>> cancels = new ArrayList<List<Cancel>>();
+
+        // the events processed in the current window, to check the cancellations from other partitions
+        private long[] processedIds = new long[64];
+        private long[] processedTimes = new long[64];
+        private int processedCount = 0;
+
+        private long nextSeq = 1;
+        private ScheduledEvent processing = null;
+        private long eventCount = 0;
+
+
+        public Partition(int index, int count) {
+
+            this.index = index;
+
+            for (int i = 0; i < count; i++) {
+
+                inboxes.add(new ArrayList<ScheduledEvent>());
+                cancels.add(new ArrayList<Cancel>());
+            }
+        }
+
+
+        /**
+         * Processes the events of this partition within the current window.
+         */
+        public Void call() {
+
+            current.set(this);
+
+            try {
+
+                while (!terminated) {
+
+                    ScheduledEvent next = queue.peek();
+
+                    if ((next == null) || (next.time >= windowEnd)) {
+                        break;
+                    }
+
+                    queue.poll();
+
+                    processing = next;
+
+                    if (processedCount == processedIds.length) {
+
+                        processedIds = Arrays.copyOf(processedIds, processedCount * 2);
+                        processedTimes = Arrays.copyOf(processedTimes, processedCount * 2);
+                    }
+
+                    processedIds[processedCount] = next.id;
+                    processedTimes[processedCount++] = next.time;
+
+                    next.model.processEvent(next.getSimTime(), next.event);
+
+                    eventCount++;
+                }
+            }
+            finally {
+
+                processing = null;
+                current.remove();
+            }
+
+            return null;
+        }
+
+
+        /**
+         * Moves the events sent by other partitions into the queue, and applies cancellations.
+         */
+        private void deliver() {
+
+            for (List<ScheduledEvent> inbox : inboxes) {
+
+                queue.addAll(inbox);
+                inbox.clear();
+            }
+
+            for (List<Cancel> requests : cancels) {
+
+                for (Cancel c : requests) {
+
+                    for (int i = 0; i < processedCount; i++) {
+
+                        if ((processedIds[i] == c.id) && (processedTimes[i] >= c.time)) {
+
+                            throw new CausalityViolationException("The event at " + processedTimes[i] + " ns was " +
+                                                                  "canceled at " + c.time + " ns by another partition, " +
+                                                                  "inside the lookahead window ending at " + windowEnd + " ns.");
+                        }
+                    }
+
+                    queue.cancel(c.id);
+                }
+
+                requests.clear();
+            }
+
+            processedCount = 0;
+        }
+    }
+
+
+    /**
+     * A request from one partition to cancel an event in another.
+     */
+    private static final class Cancel {
+
+        private final long id;
+        private final long time;  // ns, when the cancellation was made
+
+
+        public Cancel(long id, long time) {
+
+            this.id = id;
+            this.time = time;
+        }
+    }
+}
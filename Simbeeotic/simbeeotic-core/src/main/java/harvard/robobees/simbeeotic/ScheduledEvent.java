@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic;
+
+
+import harvard.robobees.simbeeotic.model.Event;
+import harvard.robobees.simbeeotic.model.Model;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * An event that is pending execution. Events are ordered by time, then by
+ * the ID of the target model, and finally by event ID. The time is kept as
+ * a primitive, and a {@link SimTime} is only created when one was not
+ * supplied by the scheduler.
+ *
+ * @author unnamed
+ */
+final class ScheduledEvent implements Comparable<ScheduledEvent> {
+
+    static final TombstoneQueue.Id<ScheduledEvent> ID = new TombstoneQueue.Id<ScheduledEvent>() {
+
+        public long getId(ScheduledEvent element) {
+            return element.id;
+        }
+    };
+
+    static final CalendarQueue.Timestamp<ScheduledEvent> TIME = new CalendarQueue.Timestamp<ScheduledEvent>() {
+
+        public long getTime(ScheduledEvent element) {
+            return element.time;
+        }
+    };
+
+    long id;
+    long time;  // nanoseconds
+    Event event;
+    Model model;
+
+    private SimTime simTime;
+
+
+    public ScheduledEvent(long id, long time, SimTime simTime, Event event, Model model) {
+        set(id, time, simTime, event, model);
+    }
+
+
+    /**
+     * Reinitializes an event that has been processed, so that it can be reused.
+     *
+     * @return This event.
+     */
+    public ScheduledEvent set(long id, long time, SimTime simTime, Event event, Model model) {
+
+        this.id = id;
+        this.time = time;
+        this.simTime = simTime;
+        this.event = event;
+        this.model = model;
+
+        return this;
+    }
+
+
+    /**
+     * Drops the references held by an event that has been processed.
+     */
+    public void clear() {
+
+        simTime = null;
+        event = null;
+        model = null;
+    }
+
+
+    /**
+     * Gets the time of the event as an object, creating it if necessary.
+     *
+     * @return The event time.
+     */
+    public SimTime getSimTime() {
+
+        if (simTime == null) {
+            simTime = new SimTime(time, TimeUnit.NANOSECONDS);
+        }
+
+        return simTime;
+    }
+
+
+    /**
+     * Sets the time object that is given to the model, which must represent the same time.
+     *
+     * @param simTime The event time.
+     */
+    public void setSimTime(SimTime simTime) {
+        this.simTime = simTime;
+    }
+
+
+    @Override
+    public int compareTo(ScheduledEvent o) {
+
+        if (time != o.time) {
+            return (time < o.time) ? -1 : 1;
+        }
+
+        if (model.getModelId() != o.model.getModelId()) {
+            return (model.getModelId() < o.model.getModelId()) ? -1 : 1;
+        }
+
+        return (id < o.id) ? -1 : ((id == o.id) ? 0 : 1);
+    }
+}
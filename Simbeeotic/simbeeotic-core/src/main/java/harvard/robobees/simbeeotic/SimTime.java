@@ -32,6 +32,7 @@
 package harvard.robobees.simbeeotic;
 
 
+import java.io.Serializable;
 import java.util.concurrent.TimeUnit;
 
 
@@ -46,7 +47,9 @@ import java.util.concurrent.TimeUnit;
  *
  * @author bkate
  */
-public final class SimTime implements Comparable<SimTime> {
+public final class SimTime implements Comparable<SimTime>, Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private long time;  // nanoseconds
 
@@ -136,7 +139,7 @@ public final class SimTime implements Comparable<SimTime> {
 
     @Override
     public int compareTo(SimTime o) {
-        return Long.valueOf(time).compareTo(o.time);
+        return (time < o.time) ? -1 : ((time == o.time) ? 0 : 1);
     }
 
 
@@ -153,6 +156,6 @@ public final class SimTime implements Comparable<SimTime> {
 
     @Override
     public int hashCode() {
-        return Long.valueOf(time).hashCode();
+        return (int)(time ^ (time >>> 32));
     }
 }
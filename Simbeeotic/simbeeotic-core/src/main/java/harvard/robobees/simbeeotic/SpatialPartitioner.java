@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic;
+
+
+import harvard.robobees.simbeeotic.model.Model;
+import harvard.robobees.simbeeotic.model.PhysicalEntity;
+
+import javax.vecmath.Vector3f;
+
+
+/**
+ * A partitioner that divides the ground plane into square regions and assigns
+ * each physical entity to a partition based on the region containing its
+ * position when the simulation starts. The regions are tiled across the
+ * partitions in a grid so that neighboring regions are executed by different
+ * partitions. Models that are not physical entities are placed in the first
+ * partition.
+ *
+ * @author unnamed
+ */
+public class SpatialPartitioner implements Partitioner {
+
+    private final float regionSize;  // m
+
+
+    /**
+     * @param regionSize The length of a side of each region (in m).
+     */
+    public SpatialPartitioner(float regionSize) {
+
+        if (regionSize <= 0) {
+            throw new IllegalArgumentException("The region size must be positive.");
+        }
+
+        this.regionSize = regionSize;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public int getPartition(Model model, int partitions) {
+
+        if (!(model instanceof PhysicalEntity)) {
+            return 0;
+        }
+
+        Vector3f pos = ((PhysicalEntity)model).getTruthPosition();
+
+        int cols = (int)Math.ceil(Math.sqrt(partitions));
+        int rows = (partitions + cols - 1) / cols;
+
+        int cx = floorMod((int)Math.floor(pos.x / regionSize), cols);
+        int cy = floorMod((int)Math.floor(pos.y / regionSize), rows);
+
+        return (cx + (cy * cols)) % partitions;
+    }
+
+
+    private static int floorMod(int x, int y) {
+
+        int mod = x % y;
+
+        return (mod < 0) ? mod + y : mod;
+    }
+}
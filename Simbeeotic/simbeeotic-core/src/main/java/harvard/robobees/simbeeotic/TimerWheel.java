@@ -0,0 +1,371 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic;
+
+
+import harvard.robobees.simbeeotic.util.LongHashSet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+
+
+/**
+ * A hashed hierarchical timer wheel (Varghese and Lauck, 1987) that holds
+ * future events in front of the main event queue. Events are hashed into
+ * slots by their time, in one of several levels of increasing granularity,
+ * and are only moved into the main queue once the wheel reaches their slot.
+ * Insertion and cancellation take constant time, and each event is moved
+ * between levels at most once per level.
+ *
+ * <br/>
+ * Each level has 64 slots. A slot at level zero spans one tick of the wheel's
+ * resolution, and a slot at level {@code k} spans 64<sup>k</sup> ticks. An
+ * event is placed at the lowest level whose current rotation contains it.
+ * Events that are earlier than the wheel's cursor, or too far in the future
+ * for the top level, go directly into the main queue. The main queue still
+ * determines the order of execution, so ties are broken exactly as before.
+ *
+ * <br/>
+ * Only {@link BatchSimEngine} uses a wheel, once it is enabled with
+ * {@link BatchSimEngine#setTimerWheel}. Scenarios run by {@link SimController}
+ * keep all of their timer firings in the engine's event queue.
+ *
+ * @author unnamed
+ */
+public class TimerWheel<E> {
+
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int LEVELS = 4;
+
+    private final long resolution;  // ns per tick
+    private final CalendarQueue.Timestamp<? super E> timestamp;
+    private final TombstoneQueue.Id<? super E> id;
+
+    private final List<List<List<E>>> wheel = new ArrayList<List<List<E>>>(LEVELS);
+    private final long[] occupied = new long[LEVELS];
+
+    // the IDs of events in the wheel that have not been canceled
+    private final LongHashSet resident = new LongHashSet();
+
+    private long cursor = 0;  // ticks
+    private int nextLevel = 0;  // the level of the slot found by the last call to nextTick()
+    private int size = 0;     // includes canceled events that have not been discarded
+
+
+    /**
+     * Creates an empty timer wheel.
+     *
+     * @param resolution The width of the finest slots (in nanoseconds).
+     * @param timestamp The means of obtaining the time of an element.
+     * @param id The means of obtaining the unique ID of an element.
+     */
+    public TimerWheel(long resolution, CalendarQueue.Timestamp<? super E> timestamp, TombstoneQueue.Id<? super E> id) {
+
+        if (resolution <= 0) {
+            throw new IllegalArgumentException("The resolution must be positive.");
+        }
+
+        this.resolution = resolution;
+        this.timestamp = timestamp;
+        this.id = id;
+
+        for (int i = 0; i < LEVELS; i++) {
+
+            List<List<E>> level = new ArrayList<List<E>>(SLOTS);
+
+            for (int j = 0; j < SLOTS; j++) {
+                level.add(new ArrayList<E>());
+            }
+
+            wheel.add(level);
+        }
+    }
+
+
+    /**
+     * Adds an element to the wheel, or to the main queue if it cannot be held by the wheel.
+     *
+     * @param element The element to add.
+     * @param queue The main queue.
+     */
+    public void add(E element, Queue<? super E> queue) {
+
+        long tick = timestamp.getTime(element) / resolution;
+
+        if (!place(element, tick)) {
+            queue.add(element);
+        }
+        else {
+
+            resident.add(id.getId(element));
+            size++;
+        }
+    }
+
+
+    /**
+     * Cancels an element that is held by the wheel.
+     *
+     * @param elementId The ID of the element.
+     *
+     * @return True if the element was in the wheel, false if it is unknown to the wheel.
+     */
+    public boolean cancel(long elementId) {
+        return resident.remove(elementId);
+    }
+
+
+    /**
+     * Moves elements into the main queue until the head of the queue is
+     * earlier than any element left in the wheel.
+     *
+     * @param queue The main queue, whose elements must have the same type of timestamp.
+     */
+    public void feed(Queue<E> queue) {
+
+        while (size > 0) {
+
+            E head = queue.peek();
+            long next = nextTick();
+
+            if ((head != null) && (timestamp.getTime(head) < next * resolution)) {
+                break;
+            }
+
+            release(queue);
+        }
+    }
+
+
+    /**
+     * Gets the number of live elements held by the wheel.
+     *
+     * @return The number of elements that have not been canceled.
+     */
+    public int size() {
+        return resident.size();
+    }
+
+
+    public boolean isEmpty() {
+        return resident.isEmpty();
+    }
+
+
+    /**
+     * Adds the live elements held by the wheel to a collection. The wheel is not changed.
+     *
+     * @param into The collection to which the elements are added.
+     */
+    public void collect(Collection<? super E> into) {
+
+        for (List<List<E>> level : wheel) {
+            for (List<E> slot : level) {
+                for (E element : slot) {
+
+                    if (resident.contains(id.getId(element))) {
+                        into.add(element);
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Removes all elements from the wheel.
+     */
+    public void clear() {
+
+        for (List<List<E>> level : wheel) {
+            for (List<E> slot : level) {
+                slot.clear();
+            }
+        }
+
+        for (int i = 0; i < LEVELS; i++) {
+            occupied[i] = 0;
+        }
+
+        resident.clear();
+        size = 0;
+    }
+
+
+    /**
+     * Places an element in the lowest level whose current rotation contains its tick.
+     *
+     * @return False if the element is earlier than the cursor or beyond the top level.
+     */
+    private boolean place(E element, long tick) {
+
+        if (tick < cursor) {
+            return false;
+        }
+
+        for (int level = 0; level < LEVELS; level++) {
+
+            int shift = BITS * (level + 1);
+
+            if ((tick >>> shift) == (cursor >>> shift)) {
+
+                int slot = (int)((tick >>> (BITS * level)) & (SLOTS - 1));
+
+                wheel.get(level).get(slot).add(element);
+                occupied[level] |= (1L << slot);
+
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Finds the first tick of the earliest occupied slot, and records its level.
+     * The wheel must not be empty.
+     */
+    private long nextTick() {
+
+        for (int level = 0; level < LEVELS; level++) {
+
+            int digit = (int)((cursor >>> (BITS * level)) & (SLOTS - 1));
+
+            // slots at higher levels that match the cursor have already been cascaded
+            int first = (level == 0) ? digit : digit + 1;
+            long mask = (first < SLOTS) ? (occupied[level] & (-1L << first)) : 0;
+
+            if (mask != 0) {
+
+                int slot = Long.numberOfTrailingZeros(mask);
+                int shift = BITS * (level + 1);
+
+                nextLevel = level;
+
+                return ((cursor >>> shift) << shift) | ((long)slot << (BITS * level));
+            }
+        }
+
+        throw new IllegalStateException("The timer wheel is empty.");
+    }
+
+
+    /**
+     * Processes the earliest occupied slot, either moving its elements into the main
+     * queue (at the finest level) or cascading them to finer levels.
+     */
+    private void release(Queue<E> queue) {
+
+        long tick = nextTick();
+
+        if (nextLevel == 0) {
+
+            List<E> slot = takeSlot(0, (int)(tick & (SLOTS - 1)));
+
+            for (E element : slot) {
+
+                if (resident.remove(id.getId(element))) {
+                    queue.add(element);
+                }
+            }
+
+            slot.clear();
+
+            advance(tick + 1);
+        }
+        else {
+
+            // entering the slot cascades it
+            advance(tick);
+        }
+    }
+
+
+    /**
+     * Moves the cursor forward, cascading the slots of each level that the cursor enters.
+     */
+    private void advance(long tick) {
+
+        long old = cursor;
+
+        cursor = tick;
+
+        for (int level = LEVELS - 1; level > 0; level--) {
+
+            int shift = BITS * level;
+
+            if ((tick >>> shift) != (old >>> shift)) {
+
+                int digit = (int)((tick >>> shift) & (SLOTS - 1));
+
+                if (((occupied[level] >>> digit) & 1) != 0) {
+
+                    List<E> slot = takeSlot(level, digit);
+
+                    for (E element : slot) {
+
+                        // discard canceled elements instead of moving them
+                        if (!resident.contains(id.getId(element))) {
+                            continue;
+                        }
+
+                        size++;
+
+                        if (!place(element, timestamp.getTime(element) / resolution)) {
+                            throw new IllegalStateException("A timer wheel element could not be cascaded.");
+                        }
+                    }
+
+                    slot.clear();
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Marks a slot as empty and returns its contents, which the caller must clear.
+     */
+    private List<E> takeSlot(int level, int digit) {
+
+        List<E> slot = wheel.get(level).get(digit);
+
+        occupied[level] &= ~(1L << digit);
+        size -= slot.size();
+
+        return slot;
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic;
+
+
+import harvard.robobees.simbeeotic.util.LongHashSet;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+
+
+/**
+ * A queue of scheduled events that supports constant time cancellation by
+ * event ID. Instead of searching the underlying queue for the canceled event,
+ * its ID is recorded as a tombstone and the event is discarded when it reaches
+ * the head of the queue. When the dead entries outnumber the live ones the
+ * underlying queue is compacted in a single pass.
+ *
+ * <br/>
+ * Event IDs must be unique, and {@link #cancel} should only be called for
+ * events that are still pending. Canceling an ID that has already been
+ * dequeued leaves a stale tombstone that is counted as dead until the next
+ * compaction.
+ *
+ * @author unnamed
+ */
+public class TombstoneQueue<E> extends AbstractQueue<E> {
+
+    /**
+     * Extracts the unique ID of a queued element.
+     */
+    public static interface Id<E> {
+
+        /**
+         * @param element The element being queued.
+         *
+         * @return The unique ID of the element.
+         */
+        public long getId(E element);
+    }
+
+
+    private static final int MIN_COMPACT = 64;
+
+    private final Queue<E> queue;
+    private final Id<? super E> id;
+    private final LongHashSet tombstones = new LongHashSet();
+
+    private long compactions = 0;
+
+
+    /**
+     * Wraps an empty queue with lazy cancellation.
+     *
+     * @param queue The queue holding the elements, which determines the ordering.
+     * @param id The means of obtaining the ID of queued elements.
+     */
+    public TombstoneQueue(Queue<E> queue, Id<? super E> id) {
+
+        if (!queue.isEmpty()) {
+            throw new IllegalArgumentException("The underlying queue must be empty.");
+        }
+
+        this.queue = queue;
+        this.id = id;
+    }
+
+
+    /**
+     * Cancels a pending element. The element remains in the underlying queue
+     * but will never be returned.
+     *
+     * @param elementId The ID of the element to cancel.
+     *
+     * @return True if the element was not already canceled.
+     */
+    public boolean cancel(long elementId) {
+
+        if (!tombstones.add(elementId)) {
+            return false;
+        }
+
+        int dead = tombstones.size();
+
+        if ((dead >= MIN_COMPACT) && (dead > queue.size() - dead)) {
+            compact();
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Determines if an element has been canceled but not yet discarded.
+     *
+     * @param elementId The ID of the element.
+     *
+     * @return True if the ID has a tombstone.
+     */
+    public boolean isCanceled(long elementId) {
+        return tombstones.contains(elementId);
+    }
+
+
+    /**
+     * Removes all canceled elements from the underlying queue and drops any
+     * stale tombstones.
+     */
+    public void compact() {
+
+        if (!tombstones.isEmpty()) {
+
+            Iterator<E> it = queue.iterator();
+
+            while (it.hasNext()) {
+
+                if (tombstones.contains(id.getId(it.next()))) {
+                    it.remove();
+                }
+            }
+
+            tombstones.clear();
+        }
+
+        compactions++;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean offer(E element) {
+        return queue.offer(element);
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public E poll() {
+
+        purge();
+
+        return queue.poll();
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public E peek() {
+
+        purge();
+
+        return queue.peek();
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void clear() {
+
+        queue.clear();
+        tombstones.clear();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * This is the number of live elements.
+     */
+    @Override
+    public int size() {
+        return getLiveCount();
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public Iterator<E> iterator() {
+
+        final Iterator<E> it = queue.iterator();
+
+        return new Iterator<E>() {
+
+            private E next = null;
+
+
+            public boolean hasNext() {
+
+                while ((next == null) && it.hasNext()) {
+
+                    E candidate = it.next();
+
+                    if (!tombstones.contains(id.getId(candidate))) {
+                        next = candidate;
+                    }
+                }
+
+                return next != null;
+            }
+
+
+            public E next() {
+
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                E result = next;
+
+                next = null;
+
+                return result;
+            }
+
+
+            public void remove() {
+
+                // the underlying iterator has already moved past the last returned element
+                if (next != null) {
+                    throw new IllegalStateException("Cannot remove after hasNext().");
+                }
+
+                it.remove();
+            }
+        };
+    }
+
+
+    /**
+     * Gets the number of elements that will be returned by the queue.
+     *
+     * @return The number of live elements.
+     */
+    public int getLiveCount() {
+        return Math.max(0, queue.size() - tombstones.size());
+    }
+
+
+    /**
+     * Gets the number of canceled elements that have not yet been discarded.
+     *
+     * @return The number of dead elements.
+     */
+    public int getDeadCount() {
+        return tombstones.size();
+    }
+
+
+    /**
+     * Gets the number of times the underlying queue has been compacted.
+     *
+     * @return The compaction count.
+     */
+    public long getCompactionCount() {
+        return compactions;
+    }
+
+
+    /**
+     * Discards canceled elements at the head of the underlying queue.
+     */
+    private void purge() {
+
+        E head;
+
+        while (!tombstones.isEmpty() && ((head = queue.peek()) != null) && tombstones.remove(id.getId(head))) {
+            queue.poll();
+        }
+    }
+}
@@ -35,15 +35,13 @@ package harvard.robobees.simbeeotic.model;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 
-import java.lang.reflect.Method;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
-import java.util.List;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.Collections;
-import java.util.ArrayList;
-import java.util.Map;
-import java.util.HashMap;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
@@ -51,6 +49,7 @@ import org.apache.log4j.Logger;
 import harvard.robobees.simbeeotic.SimEngine;
 import harvard.robobees.simbeeotic.SimTime;
 import harvard.robobees.simbeeotic.configuration.ConfigurationAnnotations.GlobalScope;
+import harvard.robobees.simbeeotic.util.RestorableRandom;
 import org.w3c.dom.Document;
 
 
@@ -61,23 +60,24 @@ import org.w3c.dom.Document;
  *
  * @author bkate
  */
-public abstract class AbstractModel implements Model, TimerFactory {
+public abstract class AbstractModel implements Model, TimerFactory, Checkpointable {
 
     private int modelId;
     private String name = "";
 
-    private Random rand;
+    private RestorableRandom rand;
     private SimTime currTime = new SimTime(0);
     private Document optionalConfig;
     private SimEngine simEngine;
     private Aggregator aggregator = new Aggregator();
 
     /**
-     * A mapping of reflected methods to use for any given event type.  The list shall contain
-     * handlers for the specific type mapped in order from subclass to the superclass implementations.
+     * The event handlers of this model's class, shared with all other instances of the class.
      */
-    private Map<Class, List<Method>> eventHandlers = new HashMap<Class, List<Method>>();
+    private final EventDispatcher dispatcher;
     private boolean initialized = false;
+    private boolean recycleEvents = true;
+    private int timerCount = 0;
 
     private Model parent = null;
     private Set<Model> children = new HashSet<Model>();
@@ -87,8 +87,8 @@ public abstract class AbstractModel implements Model, TimerFactory {
 
     protected AbstractModel() {
 
-        // inspect the class and find any event handlers
-        reflectOnEventHandlers();
+        // inspect the class (once) and find any event handlers
+        dispatcher = EventDispatcher.forClass(getClass());
     }
 
 
@@ -136,7 +136,7 @@ public abstract class AbstractModel implements Model, TimerFactory {
             throw new RuntimeModelingException("The timer offset cannot be less than 0 - that is in the past!");
         }
 
-        return new Timer(modelId, simEngine, callback, new SimTime(currTime, offset, offsetUnit), period, periodUnit);
+        return new Timer(modelId, timerCount++, simEngine, callback, currTime.getTime() + offsetUnit.toNanos(offset), period, periodUnit);
     }
 
 
@@ -149,16 +149,17 @@ public abstract class AbstractModel implements Model, TimerFactory {
     /**
      * {@inheritDoc}
      *
-     * This implementation uses reflection and annotations to locate the
-     * appropriate event handler for a given {@link Event} type.
+     * This implementation uses annotations to locate the appropriate event
+     * handler for a given {@link Event} type. Handlers are resolved once
+     * per model class and event type.
      */
     @Override
     public final void processEvent(final SimTime time, final Event event) {
 
         checkpoint();
 
-        // find the most appropriate handler for this event type (and cache it)
-        Method handler = findHandler(event.getClass());
+        // find the most appropriate handler for this event type (cached per model class)
+        EventDispatcher.Invoker handler = dispatcher.find(event.getClass());
 
         if (handler == null) {
             throw new EventNotSupportedException("No handler was found for an event of type: " + event.getClass());
@@ -170,6 +171,11 @@ public abstract class AbstractModel implements Model, TimerFactory {
 
             // invoke the custom handler for this event type
             handler.invoke(this, time, event);
+
+            // pooled events are reused once they have been handled, and always if the framework consumed them
+            if ((recycleEvents || handler.consumesEvent()) && (event instanceof RecyclableEvent)) {
+                ((RecyclableEvent)event).recycle();
+            }
         }
         catch(IllegalAccessException iae) {
 
@@ -198,111 +204,47 @@ public abstract class AbstractModel implements Model, TimerFactory {
 
 
     /**
-     * This helper method takes a {@code Class} representing an {@link Event} and returns
-     * the reflected {@code Method} that represents the most appropriate handler implementation.
-     * The type search operates recursively and returns the most specific handler available.
-     *
-     * @param eventType The type of event for which a handler is desired.
+     * {@inheritDoc}
      *
-     * @return The actual {@code Method} to use to handle the event, or {@code null} if none is found.
+     * This implementation writes the current time, the state of the random number
+     * generator, the aggregated values and the number of timers created. Subclasses
+     * that keep state which changes while the scenario runs must extend this method
+     * (and {@link #readState}), calling the superclass implementation first. The
+     * {@link harvard.robobees.simbeeotic.BatchSimEngine} refuses to save a model
+     * that does not override both methods, since its state may not be covered.
      */
-    private Method findHandler(final Class eventType) {
-
-        Method handler = null;
-
-        // first try to get a handler with the same type
-        List<Method> handlers = eventHandlers.get(eventType);
-
-        if (handlers == null) {
-
-            Set<Class> supers = new HashSet<Class>();
-
-            if (eventType.getSuperclass() != null) {
-                supers.add(eventType.getSuperclass());
-            }
-
-            Collections.addAll(supers, eventType.getInterfaces());
-
-            // if that doesn't work, look for handlers of the super types
-            for (Class superType : supers) {
-
-                handler = findHandler(superType);
-
-                if (handler != null) {
+    @Override
+    public void writeState(DataOutput out) throws IOException {
 
-                    // cache the result since it was not previously known
-                    handlers = new ArrayList<Method>();
-                    handlers.add(handler);
+        out.writeLong(currTime.getTime());
+        out.writeInt(timerCount);
+        out.writeBoolean(rand != null);
 
-                    eventHandlers.put(eventType, handlers);
-                    break;
-                }
-            }
-        }
-        else {
-            handler = handlers.get(0);
+        if (rand != null) {
+            rand.writeState(out);
         }
 
-        return handler;
+        aggregator.writeState(out);
     }
 
 
-    /**
-     * This internal method does all the introspection for annotated methods to be used
-     * as event handlers. The result is stored in a field.  Handlers in subclasses that
-     * handle the same exact same event type as a super class will take precedent.
-     */
-    private void reflectOnEventHandlers() {
-
-        // first class processed is this class
-        Class currClass = this.getClass();
-
-        do {
-
-            // now add methods that are event handlers from base to leaf so that methods
-            // lower down the tree will replace those already added in the previous iteration
-            for (Method method : currClass.getDeclaredMethods()) {
-
-                EventHandler anot = method.getAnnotation(EventHandler.class);
-
-                if (anot != null) {
-
-                    Class[] params = method.getParameterTypes();
-                    Class eventType = null;
-                    boolean badHandler = true;
-
-                    if (params.length == 2) {
-
-                        // check param types to be sure it is a valid handler
-                        if (SimTime.class.isAssignableFrom(params[0]) &&
-                            Event.class.isAssignableFrom(params[1])) {
-
-                            // infer the event type based on method param
-                            eventType = params[1];
-                            badHandler = false;
-                        }
-                    }
-
-                    if ((eventType == null) || badHandler) {
+    /** {@inheritDoc} */
+    @Override
+    public void readState(DataInput in) throws IOException {
 
-                        throw new RuntimeException("Event handlers must take 2 arguments, a SimTime and an Event " +
-                                                   "to process. The type of Event being handled will " +
-                                                   "be infered from the Event parameter type.");
-                    }
+        currTime = new SimTime(in.readLong(), TimeUnit.NANOSECONDS);
+        timerCount = in.readInt();
 
-                    // cache the handler
-                    if (!eventHandlers.containsKey(eventType)) {
-                        eventHandlers.put(eventType, new ArrayList<Method>());
-                    }
+        if (in.readBoolean()) {
 
-                    eventHandlers.get(eventType).add(method);
-                }
+            if (rand == null) {
+                throw new RuntimeModelingException("The model has no random number generator to restore.");
             }
 
-            // advance to the next super class
-            currClass = currClass.getSuperclass();
+            rand.readState(in);
         }
-        while(currClass != null && !currClass.isInterface());
+
+        aggregator.readState(in);
     }
 
 
@@ -447,7 +389,7 @@ public abstract class AbstractModel implements Model, TimerFactory {
     public final void setRandomSeed(@Named("random-seed") final long seed) {
 
         if (!initialized) {
-            this.rand = new Random(seed);
+            this.rand = new RestorableRandom(seed);
         }
     }
 
@@ -470,4 +412,16 @@ public abstract class AbstractModel implements Model, TimerFactory {
             this.name = name;
         }
     }
+
+
+    /**
+     * Models that keep references to the events they handle (beyond the
+     * handler) must disable event recycling (see {@link RecyclableEvent}).
+     * Events consumed by the final handlers of the framework are recycled
+     * regardless.
+     */
+    @Inject(optional = true)
+    public final void setRecycleEvents(@Named("recycle-events") final boolean recycle) {
+        this.recycleEvents = recycle;
+    }
 }
@@ -42,6 +42,9 @@ import harvard.robobees.simbeeotic.util.BoundingSphere;
 
 import javax.vecmath.Quat4f;
 import javax.vecmath.Vector3f;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -58,6 +61,7 @@ public abstract class AbstractPhysicalEntity extends AbstractModel implements Ph
 
     private DiscreteDynamicsWorld dynWorld;
     private RigidBody body;
+    private VersionedMotionState motionState;
     private MotionRecorder recorder;
     private Set<Integer> collisionListeners = new HashSet<Integer>();
 
@@ -86,6 +90,13 @@ public abstract class AbstractPhysicalEntity extends AbstractModel implements Ph
 
         body = initializeBody(dynWorld);
 
+        // count the pose updates, so that values derived from the pose can be cached
+        if (body.getMotionState() != null) {
+
+            motionState = new VersionedMotionState(body.getMotionState());
+            body.setMotionState(motionState);
+        }
+
         ((EntityInfo)body.getUserPointer()).getCollisionListeners().addAll(collisionListeners);
 
         linearAccel = new Vector3f(0, 0, 0);
@@ -115,6 +126,76 @@ public abstract class AbstractPhysicalEntity extends AbstractModel implements Ph
     }
 
 
+    /**
+     * {@inheritDoc}
+     *
+     * This implementation also writes the transform and velocities of the rigid body.
+     */
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+
+        super.writeState(out);
+
+        Transform trans = body.getCenterOfMassTransform(new Transform());
+        Quat4f rot = trans.getRotation(new Quat4f());
+
+        writeVector(out, trans.origin);
+
+        out.writeFloat(rot.x);
+        out.writeFloat(rot.y);
+        out.writeFloat(rot.z);
+        out.writeFloat(rot.w);
+
+        writeVector(out, body.getLinearVelocity(new Vector3f()));
+        writeVector(out, body.getAngularVelocity(new Vector3f()));
+        writeVector(out, linearAccel);
+        writeVector(out, angularAccel);
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void readState(DataInput in) throws IOException {
+
+        super.readState(in);
+
+        Transform trans = new Transform();
+
+        trans.setIdentity();
+        trans.origin.set(readVector(in));
+        trans.setRotation(new Quat4f(in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat()));
+
+        body.setCenterOfMassTransform(trans);
+        body.getMotionState().setWorldTransform(trans);
+
+        body.setLinearVelocity(readVector(in));
+        body.setAngularVelocity(readVector(in));
+        body.activate();
+
+        linearAccel.set(readVector(in));
+        angularAccel.set(readVector(in));
+    }
+
+
+    /**
+     * Writes a vector to a checkpoint.
+     */
+    protected static void writeVector(DataOutput out, Vector3f vec) throws IOException {
+
+        out.writeFloat(vec.x);
+        out.writeFloat(vec.y);
+        out.writeFloat(vec.z);
+    }
+
+
+    /**
+     * Reads a vector written by {@link #writeVector}.
+     */
+    protected static Vector3f readVector(DataInput in) throws IOException {
+        return new Vector3f(in.readFloat(), in.readFloat(), in.readFloat());
+    }
+
+
     /** {@inheritDoc} */
     @Override
     public final void applyForce(final Vector3f F) {
@@ -192,6 +273,32 @@ public abstract class AbstractPhysicalEntity extends AbstractModel implements Ph
     }
 
 
+    /**
+     * Gets a count of the updates made to the pose of the body. The count changes
+     * whenever the physics engine (or anything else) moves the body, so values that
+     * are derived from the position and orientation can be cached until it changes.
+     *
+     * @return The pose update count, or a value less than zero if the body has no
+     *         motion state (in which case nothing should be cached).
+     */
+    public final long getPoseVersion() {
+        return (motionState != null) ? motionState.getVersion() : -1;
+    }
+
+
+    /**
+     * Marks the pose of the body as changed. Subclasses that set the transform of
+     * the rigid body directly (rather than through forces or the motion state) must
+     * call this afterward, so that values cached from the old pose are discarded.
+     */
+    protected final void invalidatePose() {
+
+        if (motionState != null) {
+            motionState.touch();
+        }
+    }
+
+
     /** {@inheritDoc} */
     @Override
     public final Quat4f getTruthOrientation() {
@@ -32,6 +32,9 @@
 package harvard.robobees.simbeeotic.model;
 
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Collections;
@@ -225,4 +228,64 @@ public class Aggregator {
             aggregate.put(key, aggregate.get(key) - val);
         }
     }
+
+
+    /**
+     * Writes the values held by this aggregator (including those received from
+     * children) for a checkpoint.
+     *
+     * @param out The output to write to.
+     *
+     * @throws IOException If the values could not be written.
+     */
+    public void writeState(DataOutput out) throws IOException {
+
+        out.writeInt(itemized.size());
+
+        for (Map.Entry<String, Map<String, Double>> entry : itemized.entrySet()) {
+
+            out.writeUTF(entry.getKey());
+            out.writeDouble(aggregate.get(entry.getKey()));
+            out.writeInt(entry.getValue().size());
+
+            for (Map.Entry<String, Double> item : entry.getValue().entrySet()) {
+
+                out.writeUTF(item.getKey());
+                out.writeDouble(item.getValue());
+            }
+        }
+    }
+
+
+    /**
+     * Replaces the values held by this aggregator with those written by {@link #writeState}.
+     * The restored values are not passed on to the parent aggregator, which restores
+     * its own totals.
+     *
+     * @param in The input to read from.
+     *
+     * @throws IOException If the values could not be read.
+     */
+    public void readState(DataInput in) throws IOException {
+
+        aggregate.clear();
+        itemized.clear();
+
+        int keys = in.readInt();
+
+        for (int i = 0; i < keys; i++) {
+
+            String key = in.readUTF();
+            Map<String, Double> items = new HashMap<String, Double>();
+
+            aggregate.put(key, in.readDouble());
+            itemized.put(key, items);
+
+            int count = in.readInt();
+
+            for (int j = 0; j < count; j++) {
+                items.put(in.readUTF(), in.readDouble());
+            }
+        }
+    }
 }
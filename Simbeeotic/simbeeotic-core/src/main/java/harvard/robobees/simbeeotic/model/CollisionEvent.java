@@ -32,6 +32,9 @@
 package harvard.robobees.simbeeotic.model;
 
 
+import java.io.Serializable;
+
+
 /**
  * An event that is triggered when an two object collide. This is
  * just a notification - the details of the contact(s) are held in the
@@ -39,6 +42,7 @@ package harvard.robobees.simbeeotic.model;
  *
  * @author bkate
  */
-public final class CollisionEvent implements Event {
+public final class CollisionEvent implements Event, Serializable {
 
+    private static final long serialVersionUID = 1L;
 }
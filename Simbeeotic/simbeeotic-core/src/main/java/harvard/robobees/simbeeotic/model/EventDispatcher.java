@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model;
+
+
+import harvard.robobees.simbeeotic.SimTime;
+import harvard.robobees.simbeeotic.model.comms.AbstractRadio;
+import harvard.robobees.simbeeotic.model.comms.ReceptionEvent;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * A table of event handlers for a single model class. The table is built
+ * once per class and shared by every instance of that class, so models do
+ * not pay for reflection when they are constructed. The handler chosen for
+ * each concrete event type (including the search through its super types)
+ * is resolved on first use and cached in the table.
+ *
+ * @author unnamed
+ */
+final class EventDispatcher {
+
+    /**
+     * Invokes the handler selected for an event type.
+     */
+    static interface Invoker {
+
+        public void invoke(AbstractModel target, SimTime time, Event event) throws IllegalAccessException,
+                                                                                   InvocationTargetException;
+
+
+        /**
+         * Indicates if the handler is one of the final handlers of the framework, which never
+         * keep the event once they return, so that a pooled event can always be recycled.
+         *
+         * @return True if the event is consumed by the handler, false otherwise.
+         */
+        public boolean consumesEvent();
+    }
+
+
+    /**
+     * Calls a reflected handler method.
+     */
+    private static final class MethodInvoker implements Invoker {
+
+        private final Method method;
+        private final boolean consumes;
+
+
+        public MethodInvoker(Method method) {
+
+            this.method = method;
+
+            consumes = method.equals(RECEPTION_HANDLER);
+
+            // skips the access check on every call and allows handlers on non-public classes
+            method.setAccessible(true);
+        }
+
+
+        public void invoke(AbstractModel target, SimTime time, Event event) throws IllegalAccessException,
+                                                                                   InvocationTargetException {
+            method.invoke(target, time, event);
+        }
+
+
+        public boolean consumesEvent() {
+            return consumes;
+        }
+    }
+
+
+    /**
+     * Fires a timer directly. Used when {@link AbstractModel#handleTimerEvent} has not been
+     * shadowed by a more specific handler, which is the case for almost every model.
+     */
+    private static final Invoker TIMER_INVOKER = new Invoker() {
+
+        public void invoke(AbstractModel target, SimTime time, Event event) {
+            ((TimerEvent)event).getTimer().fire(time);
+        }
+
+
+        public boolean consumesEvent() {
+            return true;
+        }
+    };
+
+
+    // marks event types for which no handler exists
+    private static final Invoker NO_HANDLER = new Invoker() {
+
+        public void invoke(AbstractModel target, SimTime time, Event event) {
+            throw new IllegalStateException();
+        }
+
+
+        public boolean consumesEvent() {
+            return false;
+        }
+    };
+
+    private static final Method TIMER_HANDLER;
+    private static final Method RECEPTION_HANDLER;
+
+    private static final ConcurrentMap<Class<?>, EventDispatcher> dispatchers = new ConcurrentHashMap<Class<?>, EventDispatcher>();
+
+    private final ConcurrentMap<Class<?>, Invoker> resolved = new ConcurrentHashMap<Class<?>, Invoker>();
+
+
+    static {
+
+        try {
+            TIMER_HANDLER = AbstractModel.class.getMethod("handleTimerEvent", SimTime.class, TimerEvent.class);
+            RECEPTION_HANDLER = AbstractRadio.class.getMethod("handleReceptionEvent", SimTime.class, ReceptionEvent.class);
+        }
+        catch(NoSuchMethodException nsme) {
+            throw new ExceptionInInitializerError(nsme);
+        }
+    }
+
+
+    /**
+     * Gets the shared dispatch table for a model class, building it if necessary.
+     *
+     * @param modelClass The class of model.
+     *
+     * @return The dispatch table for the class.
+     */
+    static EventDispatcher forClass(Class<? extends AbstractModel> modelClass) {
+
+        EventDispatcher dispatcher = dispatchers.get(modelClass);
+
+        if (dispatcher == null) {
+
+            dispatcher = new EventDispatcher(modelClass);
+
+            EventDispatcher existing = dispatchers.putIfAbsent(modelClass, dispatcher);
+
+            if (existing != null) {
+                dispatcher = existing;
+            }
+        }
+
+        return dispatcher;
+    }
+
+
+    /**
+     * Inspects the model class for annotated methods to be used as event handlers. Handlers
+     * in subclasses that handle the exact same event type as a super class take precedence.
+     */
+    private EventDispatcher(Class<?> modelClass) {
+
+        Map<Class<?>, List<Method>> handlers = new HashMap<Class<?>, List<Method>>();
+
+        // first class processed is the model class, so the most specific
+        // handler for each event type is first in its list
+        Class<?> currClass = modelClass;
+
+        do {
+
+            for (Method method : currClass.getDeclaredMethods()) {
+
+                EventHandler anot = method.getAnnotation(EventHandler.class);
+
+                if (anot != null) {
+
+                    Class<?>[] params = method.getParameterTypes();
+                    Class<?> eventType = null;
+
+                    // check param types to be sure it is a valid handler
+                    if ((params.length == 2) &&
+                        SimTime.class.isAssignableFrom(params[0]) &&
+                        Event.class.isAssignableFrom(params[1])) {
+
+                        // infer the event type based on method param
+                        eventType = params[1];
+                    }
+
+                    if (eventType == null) {
+
+                        throw new RuntimeException("Event handlers must take 2 arguments, a SimTime and an Event " +
+                                                   "to process. The type of Event being handled will " +
+                                                   "be infered from the Event parameter type.");
+                    }
+
+                    if (!handlers.containsKey(eventType)) {
+                        handlers.put(eventType, new ArrayList<Method>());
+                    }
+
+                    handlers.get(eventType).add(method);
+                }
+            }
+
+            // advance to the next super class
+            currClass = currClass.getSuperclass();
+        }
+        while(currClass != null && !currClass.isInterface());
+
+        for (Map.Entry<Class<?>, List<Method>> entry : handlers.entrySet()) {
+
+            Method method = entry.getValue().get(0);
+
+            resolved.put(entry.getKey(), method.equals(TIMER_HANDLER) ? TIMER_INVOKER : new MethodInvoker(method));
+        }
+    }
+
+
+    /**
+     * Finds the most appropriate handler for an event type. If there is no handler for the
+     * type itself, the super class and then the interfaces of the type are searched recursively.
+     *
+     * @param eventType The type of event for which a handler is desired.
+     *
+     * @return The handler to use for the event, or {@code null} if none is found.
+     */
+    Invoker find(Class<?> eventType) {
+
+        Invoker handler = resolved.get(eventType);
+
+        if (handler == null) {
+
+            handler = NO_HANDLER;
+
+            List<Class<?>> supers = new ArrayList<Class<?>>();
+
+            if (eventType.getSuperclass() != null) {
+                supers.add(eventType.getSuperclass());
+            }
+
+            for (Class<?> iface : eventType.getInterfaces()) {
+                supers.add(iface);
+            }
+
+            for (Class<?> superType : supers) {
+
+                Invoker superHandler = find(superType);
+
+                if (superHandler != null) {
+
+                    handler = superHandler;
+                    break;
+                }
+            }
+
+            // cache the result, including a miss, since it was not previously known
+            resolved.putIfAbsent(eventType, handler);
+        }
+
+        return (handler == NO_HANDLER) ? null : handler;
+    }
+}
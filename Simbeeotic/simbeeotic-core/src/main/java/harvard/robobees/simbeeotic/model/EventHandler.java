@@ -44,6 +44,8 @@ import java.lang.annotation.ElementType;
  * indicate that the method should be invoked on receipt of a particular
  * type of event. The annotated method must take exactly two arguments,
  * the {@link harvard.robobees.simbeeotic.SimTime} and a subclass of {@link Event}.
+ * The event must not be kept after the method returns, unless the model has disabled
+ * the recycling of pooled events (see {@link RecyclableEvent}).
  *
  * @author bkate
  */
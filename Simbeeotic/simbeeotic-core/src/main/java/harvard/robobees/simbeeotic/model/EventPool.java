@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model;
+
+
+import java.util.ArrayDeque;
+
+
+/**
+ * A pool of reusable events of a single type. Each thread has its own pool,
+ * so events can be obtained and recycled without synchronization when models
+ * are executed concurrently. The number of idle events held by each thread is
+ * bounded, and events beyond that are left to the garbage collector.
+ *
+ * @author unnamed
+ */
+public final class EventPool<E extends RecyclableEvent> {
+
+    private static final int DEFAULT_CAPACITY = 4096;
+
+    private final int capacity;
+
+    private final ThreadLocal<ArrayDeque<E>> idle = new ThreadLocal<ArrayDeque<E>>() {
+
+        @Override
+        protected ArrayDeque<E> initialValue() {
+            return new ArrayDeque<E>();
+        }
+    };
+
+
+    public EventPool() {
+        this(DEFAULT_CAPACITY);
+    }
+
+
+    /**
+     * @param capacity The maximum number of idle events held per thread.
+     */
+    public EventPool(int capacity) {
+        this.capacity = capacity;
+    }
+
+
+    /**
+     * Takes an idle event from the pool.
+     *
+     * @return A cleared event, or {@code null} if there are none. In the latter
+     *         case the caller creates a new event and passes it to {@link #adopt}.
+     */
+    public E acquire() {
+
+        E event = idle.get().poll();
+
+        if (event != null) {
+            event.setPool(this);
+        }
+
+        return event;
+    }
+
+
+    /**
+     * Associates a newly created event with this pool so that it is recycled after processing.
+     *
+     * @param event The new event.
+     *
+     * @return The event.
+     */
+    public E adopt(E event) {
+
+        event.setPool(this);
+
+        return event;
+    }
+
+
+    /**
+     * Returns an event to the pool.
+     *
+     * @param event The event, which has been cleared.
+     */
+    void release(E event) {
+
+        ArrayDeque<E> events = idle.get();
+
+        if (events.size() < capacity) {
+            events.push(event);
+        }
+    }
+}
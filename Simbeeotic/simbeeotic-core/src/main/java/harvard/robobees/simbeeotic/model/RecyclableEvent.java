@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model;
+
+
+/**
+ * The base class of events that can be reused once they have been processed.
+ * Frequent events are obtained from an {@link EventPool} rather than being
+ * created, and go through the following lifecycle:
+ *
+ * <ol>
+ *   <li>The event is obtained from its pool and scheduled.</li>
+ *   <li>The target model processes the event.</li>
+ *   <li>When the event handler returns, {@link AbstractModel} recycles the
+ *       event, clearing its state and returning it to the pool.</li>
+ * </ol>
+ *
+ * An event must not be referenced after its handler returns, unless the
+ * handler calls {@link #retain()} or the model has disabled recycling (the
+ * {@code recycle-events} property). Events consumed by the final handlers of
+ * the framework are recycled even then: timer events while they are handled by
+ * {@link AbstractModel#handleTimerEvent} (i.e. the model does not declare a more
+ * specific handler for them), and reception events while they are handled by
+ * {@link harvard.robobees.simbeeotic.model.comms.AbstractRadio#handleReceptionEvent}.
+ * Events created with a constructor instead of a pool are never recycled.
+ *
+ * @author unnamed
+ */
+public abstract class RecyclableEvent implements Event {
+
+    private EventPool<?> pool = null;
+    private boolean retained = false;
+
+
+    /**
+     * Prevents this event from being recycled after it is processed. Handlers that
+     * keep a reference to the event must call this method.
+     */
+    public final void retain() {
+        retained = true;
+    }
+
+
+    /**
+     * Clears any references held by the event, in preparation for reuse.
+     */
+    protected abstract void clear();
+
+
+    /**
+     * Marks the event as belonging to a pool.
+     */
+    final void setPool(EventPool<?> pool) {
+
+        this.pool = pool;
+        retained = false;
+    }
+
+
+    /**
+     * Returns the event to its pool, unless it was not obtained from a pool or it has been retained.
+     */
+    final void recycle() {
+
+        if ((pool == null) || retained) {
+            return;
+        }
+
+        EventPool<?> owner = pool;
+
+        pool = null;
+
+        clear();
+        releaseTo(owner);
+    }
+
+
+    /**
+     * Returns the event to a pool, which only holds events of this type.
+     */
+    @SuppressWarnings("unchecked")
+    private <E extends RecyclableEvent> void releaseTo(EventPool<E> owner) {
+        owner.release((E)this);
+    }
+}
@@ -50,6 +50,9 @@ import harvard.robobees.simbeeotic.model.weather.WeatherModel;
 
 import javax.vecmath.Quat4f;
 import javax.vecmath.Vector3f;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.concurrent.TimeUnit;
 import java.awt.*;
 
@@ -294,6 +297,33 @@ public abstract class SimpleBee extends GenericModel {
     }
 
 
+    /**
+     * {@inheritDoc}
+     *
+     * This implementation also writes the flight controls (the desired velocity and
+     * the hover mode).
+     */
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+
+        super.writeState(out);
+
+        writeVector(out, desiredLinVel);
+        out.writeBoolean(hovering);
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void readState(DataInput in) throws IOException {
+
+        super.readState(in);
+
+        desiredLinVel = readVector(in);
+        hovering = in.readBoolean();
+    }
+
+
     /**
      * A method that is called by the kinematic timer. Derived classes are expected to implement
      * movemement functionality with this callback.
@@ -341,6 +371,7 @@ public abstract class SimpleBee extends GenericModel {
         orient.setRotation(quat);
 
         body.setWorldTransform(orient);
+        invalidatePose();
     }
 
 
@@ -389,6 +420,7 @@ public abstract class SimpleBee extends GenericModel {
         trans.setRotation(rot);
 
         body.setWorldTransform(trans);
+        invalidatePose();
     }
 
 
@@ -32,6 +32,7 @@
 package harvard.robobees.simbeeotic.model;
 
 
+import harvard.robobees.simbeeotic.NanoSimEngine;
 import harvard.robobees.simbeeotic.SimEngine;
 import harvard.robobees.simbeeotic.SimTime;
 
@@ -49,12 +50,16 @@ public final class Timer {
     private TimerCallback callback;
 
     private SimTime lastFired = null;
+    private long nextFiring = 0;  // nanoseconds
+    private boolean hasNextFiring = false;
     private SimTime nextFiringTime = null;
     private long period = 0;  // nanoseconds
     private boolean canceled = false;
 
     private int modelId;
+    private int ordinal = -1;  // the order in which the timer was created by its model
     private SimEngine simEngine;
+    private NanoSimEngine nanoEngine = null;
     private long nextEvent;
 
 
@@ -69,11 +74,27 @@ public final class Timer {
      * @param periodUnit The time unit in which the period is measured.
      */
     public Timer(int modelId, SimEngine engine, TimerCallback callback, SimTime start, long period, TimeUnit periodUnit) {
+        this(modelId, -1, engine, callback, start.getTime(), period, periodUnit);
+    }
+
+
+    /**
+     * Establishes a new Timer with the first firing time given in nanoseconds. Timers
+     * created by a model are numbered so that they can be found again when a checkpoint
+     * is restored.
+     */
+    Timer(int modelId, int ordinal, SimEngine engine, TimerCallback callback, long start, long period, TimeUnit periodUnit) {
 
         this.modelId = modelId;
+        this.ordinal = ordinal;
         this.simEngine = engine;
         this.callback = callback;
 
+        // engines that accept primitive times avoid a SimTime per firing
+        if (engine instanceof NanoSimEngine) {
+            nanoEngine = (NanoSimEngine)engine;
+        }
+
         if (period > 0) {
             this.period = periodUnit.toNanos(period);
         }
@@ -96,7 +117,7 @@ public final class Timer {
         lastFired = time;
 
         if ((period > 0) && !canceled) {
-            scheduleNextFiring(new SimTime(time, period, TimeUnit.NANOSECONDS));
+            scheduleNextFiring(time.getTime() + period);
         }
     }
 
@@ -125,7 +146,7 @@ public final class Timer {
             throw new RuntimeModelingException("The timer offset cannot be less than 0 - you would go back in time!");
         }
 
-        scheduleNextFiring(new SimTime(now, offset, offsetUnit));
+        scheduleNextFiring(now.getTime() + offsetUnit.toNanos(offset));
     }
 
 
@@ -140,18 +161,28 @@ public final class Timer {
             nextEvent = 0;
         }
 
+        hasNextFiring = false;
         nextFiringTime = null;
         canceled = true;
     }
 
 
-    private void scheduleNextFiring(SimTime next) {
+    private void scheduleNextFiring(long next) {
 
         cancel();
 
         canceled = false;
-        nextFiringTime = next;
-        nextEvent = simEngine.scheduleEvent(modelId, next, new TimerEvent(this));
+        nextFiring = next;
+        hasNextFiring = true;
+
+        if (nanoEngine != null) {
+            nextEvent = nanoEngine.scheduleEvent(modelId, next, TimerEvent.obtain(this));
+        }
+        else {
+
+            nextFiringTime = new SimTime(next, TimeUnit.NANOSECONDS);
+            nextEvent = simEngine.scheduleEvent(modelId, nextFiringTime, TimerEvent.obtain(this));
+        }
     }
 
 
@@ -171,6 +202,11 @@ public final class Timer {
      * @return The next firing time, or a value less than zero if the timers is not scheduled to fire.
      */
     public SimTime getNextFiringTime() {
+
+        if (hasNextFiring && (nextFiringTime == null)) {
+            nextFiringTime = new SimTime(nextFiring, TimeUnit.NANOSECONDS);
+        }
+
         return nextFiringTime;
     }
 
@@ -183,4 +219,38 @@ public final class Timer {
     public long getPeriod() {
         return period;
     }
+
+
+    /**
+     * Gets the number of this timer among the timers created by its model.
+     *
+     * @return The timer number, or a value less than zero if the timer was not created
+     *         by a model (and so cannot be restored from a checkpoint).
+     */
+    public int getOrdinal() {
+        return ordinal;
+    }
+
+
+    /**
+     * Restores the schedule of the timer from a checkpoint. This is used by
+     * engines, which are responsible for scheduling the firing event (if there
+     * is one) with its original ID.
+     *
+     * @param lastFired The last firing time (in nanoseconds), or a value less than zero if the timer had never fired.
+     * @param period The timer period (in nanoseconds).
+     * @param next The next firing time (in nanoseconds).
+     * @param eventId The ID of the event that fires the timer, or zero if it is not scheduled to fire.
+     */
+    public void restore(long lastFired, long period, long next, long eventId) {
+
+        this.lastFired = (lastFired < 0) ? null : new SimTime(lastFired, TimeUnit.NANOSECONDS);
+        this.period = period;
+        this.nextEvent = eventId;
+
+        nextFiring = next;
+        hasNextFiring = (eventId > 0);
+        nextFiringTime = null;
+        canceled = !hasNextFiring;
+    }
 }
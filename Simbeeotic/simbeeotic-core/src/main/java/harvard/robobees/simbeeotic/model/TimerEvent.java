@@ -37,7 +37,9 @@ package harvard.robobees.simbeeotic.model;
  *
  * @author bkate
  */
-public final class TimerEvent implements Event {
+public final class TimerEvent extends RecyclableEvent {
+
+    private static final EventPool<TimerEvent> pool = new EventPool<TimerEvent>();
 
     private Timer timer;
 
@@ -47,6 +49,33 @@ public final class TimerEvent implements Event {
     }
 
 
+    /**
+     * Gets a (possibly reused) event for a timer firing.
+     *
+     * @param timer The timer that is firing.
+     *
+     * @return The event, which is recycled after it is processed.
+     */
+    public static TimerEvent obtain(Timer timer) {
+
+        TimerEvent event = pool.acquire();
+
+        if (event == null) {
+            return pool.adopt(new TimerEvent(timer));
+        }
+
+        event.timer = timer;
+
+        return event;
+    }
+
+
+    @Override
+    protected void clear() {
+        timer = null;
+    }
+
+
     public Timer getTimer() {
         return timer;
     }
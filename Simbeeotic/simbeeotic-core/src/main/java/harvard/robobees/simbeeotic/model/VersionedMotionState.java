@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model;
+
+
+import com.bulletphysics.linearmath.MotionState;
+import com.bulletphysics.linearmath.Transform;
+
+
+/**
+ * A motion state that counts the updates made to another motion state. The
+ * physics engine updates the motion state of every active body once per step,
+ * so the count tells whether values derived from the pose of a body are
+ * still current.
+ *
+ * @author unnamed
+ */
+final class VersionedMotionState extends MotionState {
+
+    private final MotionState delegate;
+    private volatile long version = 0;
+
+
+    public VersionedMotionState(MotionState delegate) {
+        this.delegate = delegate;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public Transform getWorldTransform(Transform out) {
+        return delegate.getWorldTransform(out);
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void setWorldTransform(Transform worldTrans) {
+
+        delegate.setWorldTransform(worldTrans);
+        version++;
+    }
+
+
+    /**
+     * Marks the pose as changed without an update to the transform, for bodies
+     * that are moved directly.
+     */
+    public void touch() {
+        version++;
+    }
+
+
+    /**
+     * Gets the number of times the transform has been updated.
+     *
+     * @return The update count.
+     */
+    public long getVersion() {
+        return version;
+    }
+}
@@ -36,21 +36,64 @@ import com.bulletphysics.linearmath.Transform;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 import harvard.robobees.simbeeotic.ClockControl;
+import harvard.robobees.simbeeotic.NanoSimEngine;
+import harvard.robobees.simbeeotic.SimTime;
 import harvard.robobees.simbeeotic.configuration.ConfigurationAnnotations.GlobalScope;
 import harvard.robobees.simbeeotic.model.AbstractModel;
+import harvard.robobees.simbeeotic.model.EventHandler;
 import harvard.robobees.simbeeotic.model.Model;
 import harvard.robobees.simbeeotic.util.MathUtil;
+import harvard.robobees.simbeeotic.util.UniformGrid;
 
 import javax.vecmath.Quat4f;
 import javax.vecmath.Vector3f;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 
 /**
  * A base class that implements some boilerplate functionality of a propagation model.
  *
+ * <br/>
+ * Broadcasts only visit the radios that may be within the range threshold. The
+ * positions of the radios are placed in a uniform grid whose cells are as wide
+ * as the threshold. The grid is rebuilt at most once per simulation time, since
+ * the bodies only move when the physics engine steps between events. Each
+ * thread keeps its own grid.
+ *
+ * <br/>
+ * The angle calculations for an antenna gain are skipped for isotropic antennas.
+ * Optionally, other antenna patterns can be replaced by a {@link GainTable} with
+ * a given angular resolution.
+ *
+ * <br/>
+ * The receivers found in the grid are passed to the path loss calculation as
+ * a batch of parallel arrays, so that models can evaluate the loss for all of
+ * them in one loop.
+ *
+ * <br/>
+ * By default every transmission is received instantly and independently of
+ * all others. A reception delay can be configured, which engines that execute
+ * models in parallel use as their lookahead (see {@link #getMinimumDelay}).
+ * Since a transmission only reads the poses of the radios and schedules
+ * receptions, radios in different partitions of such an engine may transmit
+ * concurrently, as long as the delay is greater than zero. The noise floor
+ * is drawn from the random stream of this model, so it should have no
+ * variance if a parallel run is to be repeatable. With the shared medium enabled, each transmission occupies its
+ * band for the airtime of the packet, and the receptions are delivered when
+ * the airtime ends along with the interference from the other transmissions
+ * in the band that overlapped it (see {@link SharedMedium}). Radios that are
+ * transmitting during the airtime do not receive the packet. The reception
+ * delay is added to the end of the airtime. Since radios sense the medium
+ * directly, the minimum delay is zero when it is enabled. Events for the
+ * end of a transmission cannot be checkpointed, so checkpoints should be
+ * taken when the medium is idle.
+ *
  * @author bkate
  */
 public abstract class AbstractPropagationModel extends AbstractModel implements PropagationModel {
@@ -59,12 +102,32 @@ public abstract class AbstractPropagationModel extends AbstractModel implements
     @GlobalScope
     private ClockControl clockControl;
 
+    private static final double BYTES_PER_KILOBIT = 125;
+
     private Map<Integer, Radio> radios = new HashMap<Integer, Radio>();
 
+    // the radios in a fixed order
+    private Radio[] radioArray = new Radio[0];
+    private int[] radioIds = new int[0];
+
+    // concurrent engines may deliver transmissions from several threads
+    private ThreadLocal<LinkBatch> batches = new ThreadLocal<LinkBatch>();
+
     // parameters
     private double rangeThresh = 10;      // m
     private float noiseFloorMean = -100;  // dBm
     private float noiseFloorSigma = 10;   // dBm
+    private boolean useSpatialIndex = true;
+    private double gainTableResolution = 0;  // degrees
+    private boolean useSharedMedium = false;
+    private double defaultBitrate = 250;     // kbps
+    private long receptionDelay = 0;         // ns
+
+    private SharedMedium medium;
+    private Map<Radio, Integer> radioIndex = new IdentityHashMap<Radio, Integer>();
+
+    // the gain tables that stand in for the antenna patterns, shared by patterns with the same gains
+    private Map<AntennaPattern, AntennaPattern> gainTables = new IdentityHashMap<AntennaPattern, AntennaPattern>();
 
 
     /**
@@ -81,6 +144,34 @@ public abstract class AbstractPropagationModel extends AbstractModel implements
     protected abstract double calculatePathLoss(Radio tx, Radio rx, double txPower, Band band, double distance);
 
 
+    /**
+     * Calculates the path loss between a transmitter and a batch of receivers.
+     * The receivers are described by parallel arrays, of which the first
+     * {@code count} entries are used.
+     *
+     * <br/>
+     * The default implementation calls {@link #calculatePathLoss(Radio, Radio, double, Band, double)}
+     * for each receiver. Models should override it with a single loop over the
+     * arrays that keeps the per-band constants out of the loop.
+     *
+     * @param tx The transmitting radio.
+     * @param rx The receiving radios.
+     * @param rxHeight The height of each receiving radio (in m).
+     * @param distance The distance between the transmitter and each receiver (in m).
+     * @param txPower The singal strength at the transmitter (in dBm).
+     * @param band The band in which the radio is transmitting.
+     * @param rxPower Filled with the signal strength at each receiving radio (in dBm).
+     * @param count The number of receivers in the batch.
+     */
+    protected void calculatePathLoss(Radio tx, Radio[] rx, float[] rxHeight, double[] distance,
+                                     double txPower, Band band, double[] rxPower, int count) {
+
+        for (int i = 0; i < count; i++) {
+            rxPower[i] = calculatePathLoss(tx, rx[i], txPower, band, distance[i]);
+        }
+    }
+
+
     /** {@inheritDoc} */
     public void initialize() {
 
@@ -91,6 +182,64 @@ public abstract class AbstractPropagationModel extends AbstractModel implements
         for (Radio radio : radioModels) {
             radios.put(((Model)radio).getModelId(), radio);
         }
+
+        int n = radios.size();
+        int i = 0;
+
+        radioArray = new Radio[n];
+        radioIds = new int[n];
+
+        for (Map.Entry<Integer, Radio> entry : radios.entrySet()) {
+
+            radioIds[i] = entry.getKey();
+            radioArray[i] = entry.getValue();
+            radioIndex.put(radioArray[i], i);
+            i++;
+        }
+
+        if (useSharedMedium) {
+            medium = new SharedMedium();
+        }
+
+        if (gainTableResolution > 0) {
+            buildGainTables();
+        }
+    }
+
+
+    /**
+     * Samples the antenna pattern of every radio that is not isotropic. Patterns
+     * that yield the same samples share a single table.
+     */
+    private void buildGainTables() {
+
+        List<GainTable> tables = new ArrayList<GainTable>();
+
+        for (Radio radio : radioArray) {
+
+            AntennaPattern pattern = radio.getAntennaPattern();
+
+            if ((pattern == null) || isIsotropic(pattern) || gainTables.containsKey(pattern)) {
+                continue;
+            }
+
+            GainTable table = new GainTable(pattern, Math.toRadians(gainTableResolution));
+
+            for (GainTable existing : tables) {
+
+                if ((existing.getPattern().getClass() == pattern.getClass()) && existing.hasSameGains(table)) {
+
+                    table = existing;
+                    break;
+                }
+            }
+
+            if (table.getPattern() == pattern) {
+                tables.add(table);
+            }
+
+            gainTables.put(pattern, table);
+        }
     }
 
 
@@ -103,12 +252,74 @@ public abstract class AbstractPropagationModel extends AbstractModel implements
     @Override
     public void transmit(Radio tx, byte[] data, double txPower, Band band) {
 
-        Vector3f diff = new Vector3f();
+        SimTime now = getCurrentTime();
+        SimTime rxTime = (receptionDelay > 0) ? new SimTime(now, receptionDelay, TimeUnit.NANOSECONDS) : now;
 
-        // determine the received signal strength at each radio
-        for (Map.Entry<Integer, Radio> entry : radios.entrySet()) {
+        LinkBatch batch = batches.get();
+
+        if ((batch == null) || (batch.found.length < radioArray.length)) {
+
+            batch = new LinkBatch(radioArray.length);
+            batches.set(batch);
+        }
+
+        if (!useSpatialIndex || !(rangeThresh > 0) || Double.isInfinite(rangeThresh)) {
+
+            int count = 0;
+
+            // determine the received signal strength at each radio
+            for (int i = 0; i < radioArray.length; i++) {
+
+                Radio rx = radioArray[i];
+
+                // do not overhear your own transmission
+                if (rx.equals(tx)) {
+                    continue;
+                }
+
+                double rxPower = getLinkPower(tx, rx, txPower, band);
+
+                if (Double.isInfinite(rxPower)) {
+                    continue;
+                }
+
+                if (medium != null) {
+
+                    batch.index[count] = i;
+                    batch.power[count] = rxPower;
+                    count++;
+
+                    continue;
+                }
+
+                getSimEngine().scheduleEvent(radioIds[i], rxTime, ReceptionEvent.obtain(data, rxPower, band));
+            }
+
+            if (medium != null) {
+                beginTransmission(tx, data, band, now, batch.index, batch.power, count);
+            }
+
+            return;
+        }
+
+        updateRadioGrid(batch, now);
+
+        Vector3f txPos = new Vector3f();
 
-            Radio rx = entry.getValue();
+        getPosition(tx, txPos);
+
+        int[] found = batch.found;
+
+        // the query is padded slightly so that rounding cannot exclude a radio at the threshold
+        float radius = (float)(rangeThresh * (1 + 1e-5));
+        int numFound = batch.grid.query(txPos.x, txPos.y, txPos.z, radius, found);
+        int count = 0;
+
+        // the candidates are in the same order as the radios, so events are scheduled in the usual order
+        for (int c = 0; c < numFound; c++) {
+
+            int i = found[c];
+            Radio rx = radioArray[i];
 
             // do not overhear your own transmission
             if (rx.equals(tx)) {
@@ -120,20 +331,279 @@ public abstract class AbstractPropagationModel extends AbstractModel implements
                 continue;
             }
 
-            diff.sub(rx.getPosition(), tx.getPosition());
+            // the same arithmetic as getLinkPower(), using the positions in the grid
+            float dx = batch.x[i] - txPos.x;
+            float dy = batch.y[i] - txPos.y;
+            float dz = batch.z[i] - txPos.z;
 
-            double dist = diff.length();
+            double dist = (float)Math.sqrt(dx * dx + dy * dy + dz * dz);
 
-            // a course filtering of recipients based on range
             if (dist > rangeThresh) {
                 continue;
             }
 
-            double rxPower = calculatePathLoss(tx, rx, txPower, band, dist);
+            batch.index[count] = i;
+            batch.rx[count] = rx;
+            batch.height[count] = batch.z[i];
+            batch.distance[count] = dist;
+            count++;
+        }
+
+        calculatePathLoss(tx, batch.rx, batch.height, batch.distance, txPower, band, batch.power, count);
+
+        if (medium != null) {
+
+            Arrays.fill(batch.rx, 0, count, null);
+            beginTransmission(tx, data, band, now, batch.index, batch.power, count);
+
+            return;
+        }
+
+        for (int c = 0; c < count; c++) {
+
+            double rxPower = batch.power[c];
+
+            // do not hold on to the receivers between transmissions
+            batch.rx[c] = null;
+
+            if (Double.isInfinite(rxPower)) {
+                continue;
+            }
+
+            getSimEngine().scheduleEvent(radioIds[batch.index[c]], rxTime, ReceptionEvent.obtain(data, rxPower, band));
+        }
+    }
+
+
+    /**
+     * Places a transmission on the shared medium and schedules the end of its airtime.
+     *
+     * @param tx The transmitting radio.
+     * @param data The data being transmitted.
+     * @param band The band of the transmission.
+     * @param now The current time.
+     * @param index The indices of the receiving radios, in ascending order.
+     * @param power The signal strength at each receiving radio (in dBm).
+     * @param count The number of receiving radios.
+     */
+    private void beginTransmission(Radio tx, byte[] data, Band band, SimTime now, int[] index, double[] power, int count) {
+
+        int n = 0;
+
+        for (int c = 0; c < count; c++) {
+
+            if (!Double.isInfinite(power[c])) {
+                n++;
+            }
+        }
+
+        int[] receivers = new int[n];
+        double[] powers = new double[n];
+
+        n = 0;
+
+        for (int c = 0; c < count; c++) {
+
+            if (!Double.isInfinite(power[c])) {
+
+                receivers[n] = index[c];
+                powers[n] = power[c];
+                n++;
+            }
+        }
+
+        Integer txIndex = radioIndex.get(tx);
+        long start = now.getTime();
+        long end = start + getAirtime(tx, data.length);
+
+        SharedMedium.Transmission transmission = medium.begin((txIndex != null) ? txIndex : -1, data, band,
+                                                              start, end, receivers, powers);
+
+        getSimEngine().scheduleEvent(getModelId(), new SimTime(end, TimeUnit.NANOSECONDS),
+                                     new TransmissionEndEvent(transmission));
+    }
+
+
+    /**
+     * Delivers the receptions of a transmission on the shared medium when its
+     * airtime ends, after the reception delay.
+     *
+     * @param time The time at which the transmission ends.
+     * @param event The details of the transmission.
+     */
+    @EventHandler
+    public final void handleTransmissionEndEvent(SimTime time, TransmissionEndEvent event) {
+
+        SharedMedium.Transmission transmission = event.getTransmission();
+        double[] interference = new double[transmission.getReceiverCount()];
+        SimTime rxTime = (receptionDelay > 0) ? new SimTime(time, receptionDelay, TimeUnit.NANOSECONDS) : time;
+
+        int overlaps = medium.end(transmission, interference);
+
+        getAggregator().addValue("medium", "transmissions", 1);
+        getAggregator().addValue("medium", "airtime",
+                                 (double)(transmission.getEnd() - transmission.getStart()) / TimeUnit.SECONDS.toNanos(1));
+
+        if (overlaps > 0) {
+            getAggregator().addValue("medium", "overlapped", 1);
+        }
+
+        for (int i = 0; i < interference.length; i++) {
+
+            // the receiver was transmitting itself
+            if (interference[i] == Double.POSITIVE_INFINITY) {
+
+                getAggregator().addValue("medium", "half-duplex-losses", 1);
+                continue;
+            }
+
+            getSimEngine().scheduleEvent(radioIds[transmission.getReceiver(i)], rxTime,
+                                         ReceptionEvent.obtain(transmission.getData(), transmission.getPower(i),
+                                                               transmission.getBand(), MathUtil.mwToDbm(interference[i])));
+        }
+    }
+
+
+    /**
+     * Determines if a radio finds a band clear, as in a clear channel assessment.
+     * The band is always clear if the shared medium is not enabled.
+     *
+     * @param radio The radio sensing the band.
+     * @param band The band to sense.
+     * @param threshold The energy detection threshold (in dBm).
+     *
+     * @return True if the energy sensed in the band is below the threshold.
+     */
+    public boolean isChannelClear(Radio radio, Band band, double threshold) {
+
+        Integer index = radioIndex.get(radio);
+
+        if ((medium == null) || (index == null)) {
+            return true;
+        }
+
+        return !medium.isBusy(index, band, getCurrentTime().getTime(), threshold);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * This is the reception delay, or zero if the shared medium is enabled.
+     */
+    public long getMinimumDelay() {
+        return useSharedMedium ? 0 : receptionDelay;
+    }
+
+
+    /**
+     * Gets the time of the transmission being made. Engines that execute models
+     * concurrently know the time on each thread, otherwise it is the time of the clock.
+     *
+     * @return The current time.
+     */
+    private SimTime getCurrentTime() {
+
+        if (getSimEngine() instanceof NanoSimEngine) {
+            return ((NanoSimEngine)getSimEngine()).getCurrentTime();
+        }
+
+        return clockControl.getCurrentTime();
+    }
+
+
+    /**
+     * Indicates if transmissions occupy the medium for their airtime.
+     *
+     * @return True if the shared medium is enabled.
+     */
+    public boolean isSharedMedium() {
+        return useSharedMedium;
+    }
+
+
+    /**
+     * Gets the time that a radio needs to transmit a packet.
+     *
+     * @param tx The transmitting radio.
+     * @param bytes The size of the packet.
+     *
+     * @return The airtime (in ns).
+     */
+    protected long getAirtime(Radio tx, int bytes) {
+
+        if (tx instanceof AbstractRadio) {
+            return ((AbstractRadio)tx).getAirtime(bytes);
+        }
+
+        return Math.max(1, (long)(bytes / BYTES_PER_KILOBIT / defaultBitrate * TimeUnit.SECONDS.toNanos(1)));
+    }
+
+
+    /**
+     * Places the current positions of the radios in the grid of a thread,
+     * unless it was already built at the current time.
+     *
+     * @param batch The scratch space of the calling thread.
+     * @param now The current time.
+     */
+    private void updateRadioGrid(LinkBatch batch, SimTime now) {
+
+        if (batch.gridTime == now.getTime()) {
+            return;
+        }
+
+        Vector3f pos = new Vector3f();
+
+        for (int i = 0; i < radioArray.length; i++) {
+
+            getPosition(radioArray[i], pos);
 
-            getSimEngine().scheduleEvent(entry.getKey(), clockControl.getCurrentTime(),
-                                         new ReceptionEvent(data, rxPower, band));
+            batch.x[i] = pos.x;
+            batch.y[i] = pos.y;
+            batch.z[i] = pos.z;
         }
+
+        batch.grid.build(batch.x, batch.y, batch.z, radioArray.length, (float)(rangeThresh * (1 + 1e-5)));
+        batch.gridTime = now.getTime();
+    }
+
+
+    /**
+     * Calculates the signal strength of a transmission at a receiving radio. The same
+     * filtering by band and range that is used for broadcasts is applied.
+     *
+     * @param tx The transmitting radio.
+     * @param rx The receiving radio.
+     * @param txPower The signal strength at the transmitter (in dBm).
+     * @param band The band in which the radio is transmitting.
+     *
+     * @return The signal strength at the receiving radio (in dBm), or negative infinity
+     *         if the receiver cannot hear the transmission at all.
+     */
+    public double getLinkPower(Radio tx, Radio rx, double txPower, Band band) {
+
+        // check if it is within the operating band of the receiver
+        if (!rx.getOperatingBand().isInBand(band.getCenterFrequency())) {
+            return Double.NEGATIVE_INFINITY;
+        }
+
+        Vector3f diff = new Vector3f();
+        Vector3f txPos = new Vector3f();
+
+        getPosition(rx, diff);
+        getPosition(tx, txPos);
+
+        diff.sub(txPos);
+
+        double dist = diff.length();
+
+        // a course filtering of recipients based on range
+        if (dist > rangeThresh) {
+            return Double.NEGATIVE_INFINITY;
+        }
+
+        return calculatePathLoss(tx, rx, txPower, band, dist);
     }
 
 
@@ -163,11 +633,25 @@ public abstract class AbstractPropagationModel extends AbstractModel implements
      */
     protected double getReceivedPower(Radio tx, Radio rx, double txPower) {
 
+        AntennaPattern txPattern = getGainPattern(tx);
+        AntennaPattern rxPattern = getGainPattern(rx);
+
+        // isotropic antennas have no gain in any direction
+        if (isIsotropic(txPattern) && isIsotropic(rxPattern)) {
+            return txPower;
+        }
+
         Vector3f diff = new Vector3f();
+        Vector3f txPos = new Vector3f();
+        Vector3f normal = new Vector3f();
+        Vector3f pointing = new Vector3f();
         double rxPower = txPower;
 
         // vector between two radios
-        diff.sub(rx.getPosition(), tx.getPosition());
+        getPosition(rx, diff);
+        getPosition(tx, txPos);
+
+        diff.sub(txPos);
 
         float distSq = diff.lengthSquared();
 
@@ -179,32 +663,137 @@ public abstract class AbstractPropagationModel extends AbstractModel implements
             // in the world frame to the antenna frame. the calculated
             // azimuth and elevation must be in the antenna frame before
             // querying the antenna pattern
-            Vector3f diffAz = transformAndNormalize(tx.getAntennaNormal(), new Vector3f(1, 0, 0), diff);
-            Vector3f diffEl = transformAndNormalize(tx.getAntennaPointing(), new Vector3f(0, 0, 1), diff);
+            if (!isIsotropic(txPattern)) {
 
-            double az = Math.atan2(diffAz.y, diffAz.x);
-            double el = Math.atan2(diffEl.x, diffEl.z);
+                getAntennaFrame(tx, normal, pointing);
 
-            // adjust the power according to the tx antenna pattern
-            rxPower += tx.getAntennaPattern().getGain(az, el);
+                Vector3f diffAz = transformAndNormalize(normal, new Vector3f(1, 0, 0), diff);
+                Vector3f diffEl = transformAndNormalize(pointing, new Vector3f(0, 0, 1), diff);
+
+                double az = Math.atan2(diffAz.y, diffAz.x);
+                double el = Math.atan2(diffEl.x, diffEl.z);
+
+                // adjust the power according to the tx antenna pattern
+                rxPower += txPattern.getGain(az, el);
+            }
 
             // invert the difference vector and get the receiver's gain
-            diff.negate();
+            if (!isIsotropic(rxPattern)) {
+
+                diff.negate();
+
+                getAntennaFrame(rx, normal, pointing);
 
-            diffAz = transformAndNormalize(rx.getAntennaNormal(), new Vector3f(1, 0, 0), diff);
-            diffEl = transformAndNormalize(rx.getAntennaPointing(), new Vector3f(0, 0, 1), diff);
+                Vector3f diffAz = transformAndNormalize(normal, new Vector3f(1, 0, 0), diff);
+                Vector3f diffEl = transformAndNormalize(pointing, new Vector3f(0, 0, 1), diff);
 
-            az = Math.atan2(diffAz.y, diffAz.x);
-            el = Math.atan2(diffEl.x, diffEl.z);
+                double az = Math.atan2(diffAz.y, diffAz.x);
+                double el = Math.atan2(diffEl.x, diffEl.z);
 
-            // adjust the power according to the tx antenna pattern
-            rxPower += rx.getAntennaPattern().getGain(az, el);
+                // adjust the power according to the rx antenna pattern
+                rxPower += rxPattern.getGain(az, el);
+            }
         }
 
         return rxPower;
     }
 
 
+    /**
+     * Gets the position of a radio, using the cached pose of radios that keep one.
+     *
+     * @param radio The radio.
+     * @param out The vector in which the position is placed (in the world frame).
+     */
+    private static void getPosition(Radio radio, Vector3f out) {
+
+        if (radio instanceof AbstractRadio) {
+            ((AbstractRadio)radio).getPosition(out);
+        }
+        else {
+            out.set(radio.getPosition());
+        }
+    }
+
+
+    /**
+     * Gets the power at a batch of receiving radios, as in {@link #getReceivedPower(Radio, Radio, double)}.
+     * When both ends of every link are isotropic this only fills in the transmitted power.
+     *
+     * @param tx The transmitting radio.
+     * @param rx The receiving radios.
+     * @param txPower The transmited power (in dBm).
+     * @param rxPower Filled with the power level of the signal at each receiver (in dBm).
+     * @param count The number of receivers in the batch.
+     */
+    protected void getReceivedPower(Radio tx, Radio[] rx, double txPower, double[] rxPower, int count) {
+
+        boolean isotropic = isIsotropic(getGainPattern(tx));
+
+        for (int i = 0; i < count; i++) {
+
+            if (isotropic && isIsotropic(getGainPattern(rx[i]))) {
+                rxPower[i] = txPower;
+            }
+            else {
+                rxPower[i] = getReceivedPower(tx, rx[i], txPower);
+            }
+        }
+    }
+
+
+    /**
+     * Gets the antenna pattern used to calculate the gain of a radio, which is a gain
+     * table if one was built for the radio's pattern.
+     *
+     * @param radio The radio.
+     *
+     * @return The pattern to query.
+     */
+    private AntennaPattern getGainPattern(Radio radio) {
+
+        AntennaPattern pattern = radio.getAntennaPattern();
+        AntennaPattern table = gainTables.get(pattern);
+
+        return (table != null) ? table : pattern;
+    }
+
+
+    /**
+     * Determines if a pattern is known to have no gain in any direction. Subclasses
+     * of {@link IsotropicAntenna} may override the gain, so only the class itself counts.
+     *
+     * @param pattern The antenna pattern.
+     *
+     * @return True if the gain is zero in every direction.
+     */
+    private static boolean isIsotropic(AntennaPattern pattern) {
+        return (pattern != null) && (pattern.getClass() == IsotropicAntenna.class);
+    }
+
+
+    /**
+     * Gets the antenna vectors of a radio, using the cached pose of radios that keep one.
+     *
+     * @param radio The radio.
+     * @param normal The vector in which the antenna normal is placed (in the world frame).
+     * @param pointing The vector in which the antenna pointing vector is placed (in the world frame).
+     */
+    private static void getAntennaFrame(Radio radio, Vector3f normal, Vector3f pointing) {
+
+        if (radio instanceof AbstractRadio) {
+
+            ((AbstractRadio)radio).getAntennaNormal(normal);
+            ((AbstractRadio)radio).getAntennaPointing(pointing);
+        }
+        else {
+
+            normal.set(radio.getAntennaNormal());
+            pointing.set(radio.getAntennaPointing());
+        }
+    }
+
+
     /**
      * Figures out the rotation needed to get from one vector to another, then applies
      * that rotation to a third vector and normalizes the result.
@@ -253,4 +842,69 @@ public abstract class AbstractPropagationModel extends AbstractModel implements
     public final void setReceiveRadiusThreshold(@Named("range-thresh") final double thresh) {
         this.rangeThresh = thresh;
     }
+
+
+    @Inject(optional = true)
+    public final void setUseSpatialIndex(@Named("spatial-index") final boolean use) {
+        this.useSpatialIndex = use;
+    }
+
+
+    @Inject(optional = true)
+    public final void setUseSharedMedium(@Named("shared-medium") final boolean use) {
+        this.useSharedMedium = use;
+    }
+
+
+    @Inject(optional = true)
+    public final void setDefaultBitrate(@Named("default-bitrate") final double bitrate) {
+        this.defaultBitrate = bitrate;
+    }
+
+
+    @Inject(optional = true)
+    public final void setReceptionDelay(@Named("reception-delay") final long delay) {
+        this.receptionDelay = delay;
+    }
+
+
+    @Inject(optional = true)
+    public final void setGainTableResolution(@Named("gain-table-resolution") final double resolution) {
+        this.gainTableResolution = resolution;
+    }
+
+
+    /**
+     * The per-thread scratch arrays for the receivers of a transmission, and
+     * the grid of radio positions.
+     */
+    private static final class LinkBatch {
+
+        final float[] x;  // m
+        final float[] y;  // m
+        final float[] z;  // m
+        final UniformGrid grid = new UniformGrid();
+        long gridTime = -1;  // ns
+
+        final int[] found;
+        final int[] index;
+        final Radio[] rx;
+        final float[] height;    // m
+        final double[] distance; // m
+        final double[] power;    // dBm
+
+
+        LinkBatch(int size) {
+
+            x = new float[size];
+            y = new float[size];
+            z = new float[size];
+            found = new int[size];
+            index = new int[size];
+            rx = new Radio[size];
+            height = new float[size];
+            distance = new double[size];
+            power = new double[size];
+        }
+    }
 }
@@ -37,7 +37,9 @@ import com.bulletphysics.linearmath.Transform;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 import harvard.robobees.simbeeotic.ClockControl;
+import harvard.robobees.simbeeotic.NanoSimEngine;
 import harvard.robobees.simbeeotic.configuration.ConfigurationAnnotations.GlobalScope;
+import harvard.robobees.simbeeotic.model.AbstractPhysicalEntity;
 import harvard.robobees.simbeeotic.model.PhysicalEntity;
 import harvard.robobees.simbeeotic.model.AbstractModel;
 import harvard.robobees.simbeeotic.model.Model;
@@ -49,6 +51,9 @@ import harvard.robobees.simbeeotic.util.MathUtil;
 
 import javax.vecmath.Quat4f;
 import javax.vecmath.Vector3f;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Queue;
@@ -68,6 +73,7 @@ public abstract class AbstractRadio extends AbstractModel implements Radio {
     private PropagationModel propModel;
     private ClockControl clock;
     private double txRxTime = 0;
+    private double interference = Double.NEGATIVE_INFINITY;  // dBm, during the reception being handled
 
     // async send data
     private Queue<byte[]> sendQueue = new LinkedList<byte[]>();
@@ -83,6 +89,14 @@ public abstract class AbstractRadio extends AbstractModel implements Radio {
     private AntennaPattern pattern;
     private int sendQueueSize = 100;
 
+    // the pose of the antenna in the world frame, cached until the host moves
+    private final Vector3f worldPosition = new Vector3f();
+    private final Vector3f worldPointing = new Vector3f();
+    private final Vector3f worldNormal = new Vector3f();
+    private final Vector3f worldOffset = new Vector3f();
+    private final Transform hostRotation = new Transform();
+    private long poseVersion = -1;
+
     private static final double BYTES_PER_KILOBIT = 125;
 
 
@@ -93,6 +107,8 @@ public abstract class AbstractRadio extends AbstractModel implements Radio {
 
         calculatePointingNormal();
 
+        poseVersion = -1;
+
         // there may be no propagation model, in which case comms won't work but we shouldn't throw an exception
         // until someone tries to use them. it is possible that someone attached a radio for no reason...
         propModel = getSimEngine().findModelByType(PropagationModel.class);
@@ -148,6 +164,69 @@ public abstract class AbstractRadio extends AbstractModel implements Radio {
     }
 
 
+    /**
+     * {@inheritDoc}
+     *
+     * This implementation also writes the time spent sending and receiving in the
+     * current idle period and the packets waiting to be sent.
+     */
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+
+        super.writeState(out);
+
+        out.writeDouble(txRxTime);
+        writePackets(out, sendQueue);
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void readState(DataInput in) throws IOException {
+
+        super.readState(in);
+
+        txRxTime = in.readDouble();
+        readPackets(in, sendQueue);
+
+        poseVersion = -1;
+    }
+
+
+    /**
+     * Writes a queue of packets to a checkpoint.
+     */
+    static void writePackets(DataOutput out, Queue<byte[]> packets) throws IOException {
+
+        out.writeInt(packets.size());
+
+        for (byte[] data : packets) {
+
+            out.writeInt(data.length);
+            out.write(data);
+        }
+    }
+
+
+    /**
+     * Reads a queue of packets written by {@link #writePackets}, replacing the contents of the queue.
+     */
+    static void readPackets(DataInput in, Queue<byte[]> packets) throws IOException {
+
+        packets.clear();
+
+        int size = in.readInt();
+
+        for (int i = 0; i < size; i++) {
+
+            byte[] data = new byte[in.readInt()];
+
+            in.readFully(data);
+            packets.add(data);
+        }
+    }
+
+
     /**
      * Handles the reception of an RF transmission.
      *
@@ -156,7 +235,49 @@ public abstract class AbstractRadio extends AbstractModel implements Radio {
      */
     @EventHandler
     public final void handleReceptionEvent(SimTime time, ReceptionEvent event) {
-        receive(time, event.getData(), event.getRxPower(), event.getBand().getCenterFrequency());
+
+        interference = event.getInterference();
+
+        try {
+            receive(time, event.getData(), event.getRxPower(), event.getBand().getCenterFrequency());
+        }
+        finally {
+            interference = Double.NEGATIVE_INFINITY;
+        }
+    }
+
+
+    /**
+     * Gets the noise floor in a band combined with the interference during the
+     * reception that is being handled, if any. Subtracting this from the received
+     * power gives the SINR of the reception. When there is no interference this
+     * is the noise floor reported by the propagation model.
+     *
+     * @param band The band in which the noise is measured.
+     *
+     * @return The noise and interference power (in dBm).
+     */
+    protected final double getNoiseAndInterference(Band band) {
+
+        double noise = getPropagationModel().getNoiseFloor(band);
+
+        if (Double.isInfinite(interference)) {
+            return noise;
+        }
+
+        return MathUtil.mwToDbm(MathUtil.dbmToMw(noise) + MathUtil.dbmToMw(interference));
+    }
+
+
+    /**
+     * Gets the time needed to transmit a packet at the bitrate of this radio.
+     *
+     * @param bytes The size of the packet.
+     *
+     * @return The airtime (in ns).
+     */
+    public final long getAirtime(int bytes) {
+        return Math.max(1, (long)(bytes / BYTES_PER_KILOBIT / getBandwidth() * TimeUnit.SECONDS.toNanos(1)));
     }
 
 
@@ -196,7 +317,7 @@ public abstract class AbstractRadio extends AbstractModel implements Radio {
         // check to see if the timer is scheduled to fire. if it idle, then schedule it
         // to fire immediately so this packet can be sent. otherwise it will be scheduled anyway
         if (sendTimer.getNextFiringTime() == null) {
-            sendTimer.reset(clock.getCurrentTime(), 0, TimeUnit.MILLISECONDS, 0, TimeUnit.MILLISECONDS);
+            sendTimer.reset(getClockTime(), 0, TimeUnit.MILLISECONDS, 0, TimeUnit.MILLISECONDS);
         }
 
         return true;
@@ -245,23 +366,9 @@ public abstract class AbstractRadio extends AbstractModel implements Radio {
     @Override
     public final Vector3f getPosition() {
 
-        Vector3f pos = host.getTruthPosition();
+        Vector3f pos = new Vector3f();
 
-        if (offset.lengthSquared() > 0) {
-
-            // transform the offset (which is in the body frame)
-            // to account for the body's current orientation
-            Vector3f off = new Vector3f(offset);
-            Transform trans = new Transform();
-
-            trans.setIdentity();
-            trans.setRotation(host.getTruthOrientation());
-
-            trans.transform(off);
-
-            // add the offset to the absolute position (in the world frame)
-            pos.add(off);
-        }
+        getPosition(pos);
 
         return pos;
     }
@@ -270,14 +377,60 @@ public abstract class AbstractRadio extends AbstractModel implements Radio {
     /** {@inheritDoc} */
     @Override
     public final Vector3f getAntennaPointing() {
-        return transformToWorldFrame(pointing);
+
+        Vector3f vec = new Vector3f();
+
+        getAntennaPointing(vec);
+
+        return vec;
     }
 
 
     /** {@inheritDoc} */
     @Override
     public Vector3f getAntennaNormal() {
-        return transformToWorldFrame(pointingNormal);
+
+        Vector3f vec = new Vector3f();
+
+        getAntennaNormal(vec);
+
+        return vec;
+    }
+
+
+    /**
+     * Gets the position of the radio without creating a new vector.
+     *
+     * @param out The vector in which the position is placed (in the world frame).
+     */
+    public final synchronized void getPosition(Vector3f out) {
+
+        updatePose();
+        out.set(worldPosition);
+    }
+
+
+    /**
+     * Gets the antenna pointing vector without creating a new vector.
+     *
+     * @param out The vector in which the pointing vector is placed (in the world frame).
+     */
+    public final synchronized void getAntennaPointing(Vector3f out) {
+
+        updatePose();
+        out.set(worldPointing);
+    }
+
+
+    /**
+     * Gets the antenna normal vector without creating a new vector.
+     *
+     * @param out The vector in which the normal vector is placed (in the world frame).
+     */
+    public final synchronized void getAntennaNormal(Vector3f out) {
+
+        updatePose();
+        out.set(worldNormal);
     }
 
 
@@ -325,24 +478,45 @@ public abstract class AbstractRadio extends AbstractModel implements Radio {
 
 
     /**
-     * Transforms a vector in the body frame of the host to the
-     * world reference frame accodring to the body's current orientation.
-     *
-     * @param vec The vector to be transformed (in the body frame).
-     *
-     * @return The transformed vector (in the world frame).
+     * Recalculates the position and antenna vectors in the world frame if the host has
+     * moved since they were last calculated. Hosts that do not report pose updates
+     * are recalculated on every call.
      */
-    private Vector3f transformToWorldFrame(Vector3f vec) {
+    private void updatePose() {
+
+        if (host instanceof AbstractPhysicalEntity) {
+
+            long version = ((AbstractPhysicalEntity)host).getPoseVersion();
+
+            if ((version >= 0) && (version == poseVersion)) {
+                return;
+            }
+
+            poseVersion = version;
+        }
+
+        hostRotation.setIdentity();
+        hostRotation.setRotation(host.getTruthOrientation());
+
+        worldPosition.set(host.getTruthPosition());
 
-        Vector3f temp = new Vector3f(vec);
-        Transform trans = new Transform();
+        if (offset.lengthSquared() > 0) {
+
+            // transform the offset (which is in the body frame)
+            // to account for the body's current orientation
+            worldOffset.set(offset);
+            hostRotation.transform(worldOffset);
 
-        trans.setIdentity();
-        trans.setRotation(host.getTruthOrientation());
+            // add the offset to the absolute position (in the world frame)
+            worldPosition.add(worldOffset);
+        }
 
-        trans.transform(temp);
+        // the antenna vectors are transformed to the world frame according to the body's current orientation
+        worldPointing.set(pointing);
+        hostRotation.transform(worldPointing);
 
-        return temp;
+        worldNormal.set(pointingNormal);
+        hostRotation.transform(worldNormal);
     }
 
 
@@ -400,6 +574,23 @@ public abstract class AbstractRadio extends AbstractModel implements Radio {
     }
 
 
+    /**
+     * Gets the current time of the simulation, which may be later than the
+     * time of the last event processed by this radio. Engines that execute
+     * models concurrently provide the time of the calling thread.
+     *
+     * @return The current time.
+     */
+    protected final SimTime getClockTime() {
+
+        if (getSimEngine() instanceof NanoSimEngine) {
+            return ((NanoSimEngine)getSimEngine()).getCurrentTime();
+        }
+
+        return clock.getCurrentTime();
+    }
+
+
     /**
      * {@inheritDoc}
      *
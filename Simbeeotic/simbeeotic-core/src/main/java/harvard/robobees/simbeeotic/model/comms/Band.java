@@ -32,12 +32,17 @@
 package harvard.robobees.simbeeotic.model.comms;
 
 
+import java.io.Serializable;
+
+
 /**
  * A simple container class for frequency bands.
  *
  * @author bkate
  */
-public class Band {
+public class Band implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private double centerFreq;
     private double bandwidth;
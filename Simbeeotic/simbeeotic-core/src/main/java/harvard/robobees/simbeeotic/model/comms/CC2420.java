@@ -61,10 +61,15 @@ public class CC2420 extends ZigbeeRadio {
      * Transmits a packet at the currently set power level on the currently set channel.
      * The CC2420 spec defines 8 transmit power settings ranging from 0 dBm to -25 dBm.
      * The transmit power can be adjusted with the {@link #setTransmitPowerLevel(int)} method.
+     * With a shared medium, the packet first waits for channel access (see {@link ZigbeeRadio}).
      */
     @Override
     public void transmit(byte[] data) {
 
+        if (queueForChannelAccess(data)) {
+            return;
+        }
+
         super.transmit(data);
 
         getPropagationModel().transmit(this, data, txPower, getChannel());
@@ -93,7 +98,7 @@ public class CC2420 extends ZigbeeRadio {
 
 
         // consult the PRR/SNR curve
-        double snr = rxPower - getPropagationModel().getNoiseFloor(getOperatingBand());
+        double snr = rxPower - getNoiseAndInterference(getOperatingBand());
         double prr = 0;
 
         // this function approximates the PRR/SNR curve from the paper
@@ -72,7 +72,8 @@ public class DefaultRadio extends AbstractRadio {
     /**
      * {@inheritDoc}
      *
-     * This implementation performs an SNR thresholding and invokes all listeners
+     * This implementation performs an SNR thresholding (including any interference
+     * during the reception) and invokes all listeners
      * registered with this radio to receive notifications when a message is received.
      */
     @Override
@@ -80,7 +81,7 @@ public class DefaultRadio extends AbstractRadio {
 
         super.receive(time, data, rxPower, frequency);
 
-        double snr = rxPower - getPropagationModel().getNoiseFloor(getOperatingBand());
+        double snr = rxPower - getNoiseAndInterference(getOperatingBand());
 
         // enough power to capture signal?
         if (snr >= snrMargin) {
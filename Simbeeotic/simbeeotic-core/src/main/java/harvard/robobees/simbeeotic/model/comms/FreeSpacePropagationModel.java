@@ -76,4 +76,29 @@ public class FreeSpacePropagationModel extends AbstractPropagationModel {
 
         return rxPower + 10 * Math.log10(loss);
     }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * Uses a free space model for all receivers in one loop over the distances.
+     */
+    @Override
+    protected void calculatePathLoss(Radio tx, Radio[] rx, float[] rxHeight, double[] distance,
+                                     double txPower, Band band, double[] rxPower, int count) {
+
+        double lambda = SPEED_OF_LIGHT / (band.getCenterFrequency() * 10e6);  // m
+        double k = lambda / (4 * Math.PI);
+
+        getReceivedPower(tx, rx, txPower, rxPower, count);
+
+        for (int i = 0; i < count; i++) {
+
+            double d = distance[i];
+            double r = k / d;
+            double near = d + 1;
+
+            rxPower[i] += 10 * Math.log10((d > MIN_DISTANCE) ? r * r : near * near);
+        }
+    }
 }
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model.comms;
+
+
+import java.util.Arrays;
+
+
+/**
+ * An antenna pattern that samples another pattern on a regular grid of azimuth
+ * and elevation angles, and answers queries by bilinear interpolation between
+ * the samples. This replaces an expensive pattern calculation with a few table
+ * reads, at the cost of a small interpolation error.
+ *
+ * <br/>
+ * Both angles are treated as periodic over a full turn. Where a sample is not
+ * finite (such as a null in the pattern), the nearest sample is used instead
+ * of interpolating.
+ *
+ * @author unnamed
+ */
+public class GainTable implements AntennaPattern {
+
+    private static final double TWO_PI = 2 * Math.PI;
+
+    private final AntennaPattern pattern;
+    private final int size;       // samples per turn, for both angles
+    private final double step;    // rad
+    private final double[] gains; // indexed by elevation, then azimuth
+
+
+    /**
+     * Samples an antenna pattern.
+     *
+     * @param pattern The pattern to sample.
+     * @param resolution The approximate spacing of the samples (rad). The spacing
+     *                   is adjusted so that a whole number of samples fits in a turn.
+     */
+    public GainTable(AntennaPattern pattern, double resolution) {
+
+        if (!(resolution > 0)) {
+            throw new IllegalArgumentException("The gain table resolution must be positive.");
+        }
+
+        this.pattern = pattern;
+        this.size = Math.max(4, (int)Math.ceil(TWO_PI / resolution));
+        this.step = TWO_PI / size;
+        this.gains = new double[size * size];
+
+        for (int e = 0; e < size; e++) {
+            for (int a = 0; a < size; a++) {
+                gains[(e * size) + a] = pattern.getGain(-Math.PI + (a * step), -Math.PI + (e * step));
+            }
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * The gain is interpolated from the four nearest samples.
+     */
+    @Override
+    public double getGain(double azimuth, double elevation) {
+
+        double u = (azimuth + Math.PI) / step;
+        double v = (elevation + Math.PI) / step;
+
+        if (Double.isNaN(u) || Double.isNaN(v) || Double.isInfinite(u) || Double.isInfinite(v)) {
+            return pattern.getGain(azimuth, elevation);
+        }
+
+        double a0 = Math.floor(u);
+        double e0 = Math.floor(v);
+        double fa = u - a0;
+        double fe = v - e0;
+
+        int a = wrap(a0);
+        int e = wrap(e0);
+        int a1 = (a + 1 == size) ? 0 : a + 1;
+        int e1 = (e + 1 == size) ? 0 : e + 1;
+
+        double g00 = gains[(e * size) + a];
+        double g01 = gains[(e * size) + a1];
+        double g10 = gains[(e1 * size) + a];
+        double g11 = gains[(e1 * size) + a1];
+
+        if (Double.isInfinite(g00) || Double.isInfinite(g01) || Double.isInfinite(g10) || Double.isInfinite(g11)) {
+
+            int na = (fa < 0.5) ? a : a1;
+            int ne = (fe < 0.5) ? e : e1;
+
+            return gains[(ne * size) + na];
+        }
+
+        double low = g00 + (g01 - g00) * fa;
+        double high = g10 + (g11 - g10) * fa;
+
+        return low + (high - low) * fe;
+    }
+
+
+    /**
+     * Gets the pattern that was sampled.
+     *
+     * @return The original pattern.
+     */
+    public AntennaPattern getPattern() {
+        return pattern;
+    }
+
+
+    /**
+     * Determines if another table holds the same samples as this one, in which
+     * case one of them can be shared by several radios.
+     *
+     * @param other The other table.
+     *
+     * @return True if the tables have the same samples.
+     */
+    public boolean hasSameGains(GainTable other) {
+        return (size == other.size) && Arrays.equals(gains, other.gains);
+    }
+
+
+    private int wrap(double index) {
+
+        long i = (long)index % size;
+
+        return (int)((i < 0) ? i + size : i);
+    }
+}
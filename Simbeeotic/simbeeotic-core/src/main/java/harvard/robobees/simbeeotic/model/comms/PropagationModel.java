@@ -61,4 +61,15 @@ public interface PropagationModel {
      * @return The current noise floor (in dBm).
      */
     public double getNoiseFloor(Band band);
+
+
+    /**
+     * Gets the smallest delay between a transmission and its reception by
+     * another radio. Engines that execute radios concurrently use this as a
+     * bound on how far they can run ahead of one another.
+     *
+     * @return The minimum delay (in nanoseconds), or zero if a transmission can
+     *         affect other radios immediately.
+     */
+    public long getMinimumDelay();
 }
@@ -59,10 +59,15 @@ public class RF230 extends ZigbeeRadio {
      * Transmits a packet at the currently set power level on the currently set channel.
      * The RF230 spec defines 16 transmit power settings ranging from 3 dBm to -17.2 dBm.
      * The transmit power can be adjusted with the {@link #setTransmitPowerLevel(int)} method.
+     * With a shared medium, the packet first waits for channel access (see {@link ZigbeeRadio}).
      */
     @Override
     public void transmit(byte[] data) {
 
+        if (queueForChannelAccess(data)) {
+            return;
+        }
+
         super.transmit(data);
 
         getPropagationModel().transmit(this, data, txPower, getChannel());
@@ -91,7 +96,7 @@ public class RF230 extends ZigbeeRadio {
 
 
         // consult the PRR/SNR curve
-        double snr = rxPower - getPropagationModel().getNoiseFloor(getOperatingBand());
+        double snr = rxPower - getNoiseAndInterference(getOperatingBand());
 
         double prr = 1;
 
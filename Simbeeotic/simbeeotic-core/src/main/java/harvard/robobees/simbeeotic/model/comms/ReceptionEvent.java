@@ -32,7 +32,10 @@
 package harvard.robobees.simbeeotic.model.comms;
 
 
-import harvard.robobees.simbeeotic.model.Event;
+import harvard.robobees.simbeeotic.model.EventPool;
+import harvard.robobees.simbeeotic.model.RecyclableEvent;
+
+import java.io.Serializable;
 
 
 /**
@@ -40,11 +43,16 @@ import harvard.robobees.simbeeotic.model.Event;
  *
  * @author bkate
  */
-public final class ReceptionEvent implements Event {
+public final class ReceptionEvent extends RecyclableEvent implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final EventPool<ReceptionEvent> pool = new EventPool<ReceptionEvent>();
 
     private byte[] data;
     private double rxPower;
     private Band band;
+    private double interference = Double.NEGATIVE_INFINITY;  // dBm
 
 
     public ReceptionEvent(byte[] data, double rxPower, Band band) {
@@ -55,6 +63,59 @@ public final class ReceptionEvent implements Event {
     }
 
 
+    /**
+     * Gets a (possibly reused) reception event.
+     *
+     * @param data The data that was transmitted.
+     * @param rxPower The signal strength at the receiver (in dBm).
+     * @param band The band of the transmission.
+     *
+     * @return The event, which is recycled after it is processed by an {@link AbstractRadio}, or by
+     *         another model that allows it.
+     */
+    public static ReceptionEvent obtain(byte[] data, double rxPower, Band band) {
+        return obtain(data, rxPower, band, Double.NEGATIVE_INFINITY);
+    }
+
+
+    /**
+     * Gets a (possibly reused) reception event.
+     *
+     * @param data The data that was transmitted.
+     * @param rxPower The signal strength at the receiver (in dBm).
+     * @param band The band of the transmission.
+     * @param interference The total strength of the other signals in the band at the
+     *                     receiver during the reception (in dBm).
+     *
+     * @return The event, which is recycled after it is processed by an {@link AbstractRadio}, or by
+     *         another model that allows it.
+     */
+    public static ReceptionEvent obtain(byte[] data, double rxPower, Band band, double interference) {
+
+        ReceptionEvent event = pool.acquire();
+
+        if (event == null) {
+            event = pool.adopt(new ReceptionEvent(data, rxPower, band));
+        }
+
+        event.data = data;
+        event.rxPower = rxPower;
+        event.band = band;
+        event.interference = interference;
+
+        return event;
+    }
+
+
+    @Override
+    protected void clear() {
+
+        data = null;
+        band = null;
+        interference = Double.NEGATIVE_INFINITY;
+    }
+
+
     public Band getBand() {
         return band;
     }
@@ -65,6 +126,16 @@ public final class ReceptionEvent implements Event {
     }
 
 
+    /**
+     * Gets the strength of the interfering signals during the reception.
+     *
+     * @return The total interference (in dBm), or negative infinity if there was none.
+     */
+    public double getInterference() {
+        return interference;
+    }
+
+
     public byte[] getData() {
         return data;
     }
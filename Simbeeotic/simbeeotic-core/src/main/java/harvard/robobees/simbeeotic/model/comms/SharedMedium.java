@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model.comms;
+
+
+import harvard.robobees.simbeeotic.util.IntervalTree;
+import harvard.robobees.simbeeotic.util.MathUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Tracks the transmissions that occupy each band over time, so that the
+ * interference at a receiver can be found for the whole airtime of a packet.
+ * The transmissions in a band are kept in an {@link IntervalTree}, so finding
+ * the overlapping transmissions does not require visiting all of them.
+ *
+ * <br/>
+ * Radios are identified by an index assigned by the propagation model. Each
+ * transmission records the receivers that were in range and the power of the
+ * signal at each of them, with the receivers in ascending order. Only
+ * transmissions in the same band interfere with each other.
+ *
+ * <br/>
+ * A transmission is kept until it and every transmission that overlaps it
+ * have ended, because those still need its contribution to their interference.
+ *
+ * @author unnamed
+ */
+public final class SharedMedium {
+
+    private final Map<Band, IntervalTree<Transmission>> channels = new HashMap<Band, IntervalTree<Transmission>>();
+    private final List<IntervalTree.Entry<Transmission>> overlaps = new ArrayList<IntervalTree.Entry<Transmission>>();
+
+
+    /**
+     * A transmission that occupies a band for a period of time.
+     */
+    public static final class Transmission {
+
+        private final int transmitter;
+        private final byte[] data;
+        private final Band band;
+        private final long start;      // ns
+        private final long end;        // ns
+        private final int[] receivers;
+        private final double[] power;  // dBm
+
+        private int pending = 0;       // overlapping transmissions that have not ended
+        private boolean ended = false;
+        private IntervalTree.Entry<Transmission> entry;
+
+
+        private Transmission(int transmitter, byte[] data, Band band, long start, long end,
+                             int[] receivers, double[] power) {
+
+            this.transmitter = transmitter;
+            this.data = data;
+            this.band = band;
+            this.start = start;
+            this.end = end;
+            this.receivers = receivers;
+            this.power = power;
+        }
+
+
+        public int getTransmitter() {
+            return transmitter;
+        }
+
+
+        public byte[] getData() {
+            return data;
+        }
+
+
+        public Band getBand() {
+            return band;
+        }
+
+
+        public long getStart() {
+            return start;
+        }
+
+
+        public long getEnd() {
+            return end;
+        }
+
+
+        public int getReceiverCount() {
+            return receivers.length;
+        }
+
+
+        public int getReceiver(int i) {
+            return receivers[i];
+        }
+
+
+        public double getPower(int i) {
+            return power[i];
+        }
+
+
+        /**
+         * Gets the power of this transmission at a radio.
+         *
+         * @param radio The index of the radio.
+         *
+         * @return The power at the radio (in dBm), or negative infinity if it is out of range.
+         */
+        public double getPowerAt(int radio) {
+
+            int i = Arrays.binarySearch(receivers, radio);
+
+            return (i >= 0) ? power[i] : Double.NEGATIVE_INFINITY;
+        }
+    }
+
+
+    /**
+     * Places a transmission on the medium.
+     *
+     * @param transmitter The index of the transmitting radio, or -1 if it is unknown.
+     * @param data The data being transmitted.
+     * @param band The band of the transmission.
+     * @param start The time at which the transmission starts (in ns).
+     * @param end The time at which the transmission ends (in ns).
+     * @param receivers The indices of the radios in range, in ascending order.
+     * @param power The power of the signal at each radio in range (in dBm).
+     *
+     * @return The transmission.
+     */
+    public synchronized Transmission begin(int transmitter, byte[] data, Band band, long start, long end,
+                                           int[] receivers, double[] power) {
+
+        IntervalTree<Transmission> tree = channels.get(band);
+
+        if (tree == null) {
+
+            tree = new IntervalTree<Transmission>();
+            channels.put(band, tree);
+        }
+
+        Transmission tx = new Transmission(transmitter, data, band, start, end, receivers, power);
+
+        overlaps.clear();
+        tree.query(start, end, overlaps);
+
+        // the overlapping transmissions end after this one starts, so none of them has ended
+        for (IntervalTree.Entry<Transmission> other : overlaps) {
+
+            other.getValue().pending++;
+            tx.pending++;
+        }
+
+        tx.entry = tree.insert(start, end, transmitter, tx);
+
+        return tx;
+    }
+
+
+    /**
+     * Completes a transmission, finding the interference at each of its receivers
+     * from the other transmissions in the band that overlapped it.
+     *
+     * @param tx The transmission that has ended.
+     * @param interference Filled with the total power of the interfering signals at each
+     *                     receiver (in mW), or positive infinity if the receiver was
+     *                     transmitting itself during the transmission.
+     *
+     * @return The number of other transmissions that overlapped this one.
+     */
+    public synchronized int end(Transmission tx, double[] interference) {
+
+        IntervalTree<Transmission> tree = channels.get(tx.band);
+
+        overlaps.clear();
+        tree.query(tx.start, tx.end, overlaps);
+
+        Arrays.fill(interference, 0, tx.receivers.length, 0);
+
+        int count = 0;
+
+        for (IntervalTree.Entry<Transmission> other : overlaps) {
+
+            Transmission t = other.getValue();
+
+            if (t == tx) {
+                continue;
+            }
+
+            count++;
+            t.pending--;
+
+            for (int i = 0; i < tx.receivers.length; i++) {
+
+                // a radio cannot receive while it is transmitting
+                if (t.transmitter == tx.receivers[i]) {
+
+                    interference[i] = Double.POSITIVE_INFINITY;
+                    continue;
+                }
+
+                double power = t.getPowerAt(tx.receivers[i]);
+
+                if (!Double.isInfinite(power)) {
+                    interference[i] += MathUtil.dbmToMw(power);
+                }
+            }
+        }
+
+        tx.ended = true;
+
+        // release the transmissions that have ended and no longer overlap anything pending
+        for (IntervalTree.Entry<Transmission> other : overlaps) {
+
+            Transmission t = other.getValue();
+
+            if (t.ended && (t.pending == 0)) {
+                tree.remove(other);
+            }
+        }
+
+        return count;
+    }
+
+
+    /**
+     * Determines if a radio senses energy in a band above a threshold, as in
+     * the clear channel assessment of IEEE 802.15.4.
+     *
+     * @param radio The index of the radio.
+     * @param band The band to sense.
+     * @param now The current time (in ns).
+     * @param threshold The energy detection threshold (in dBm).
+     *
+     * @return True if the band is busy at the radio.
+     */
+    public synchronized boolean isBusy(int radio, Band band, long now, double threshold) {
+
+        IntervalTree<Transmission> tree = channels.get(band);
+
+        if (tree == null) {
+            return false;
+        }
+
+        overlaps.clear();
+        tree.query(now, now + 1, overlaps);
+
+        double total = 0;  // mW
+
+        for (IntervalTree.Entry<Transmission> other : overlaps) {
+
+            Transmission t = other.getValue();
+
+            // a radio that is transmitting cannot sense the channel
+            if (t.transmitter == radio) {
+                return true;
+            }
+
+            double power = t.getPowerAt(radio);
+
+            if (!Double.isInfinite(power)) {
+                total += MathUtil.dbmToMw(power);
+            }
+        }
+
+        return (total > 0) && (MathUtil.mwToDbm(total) >= threshold);
+    }
+
+
+    /**
+     * Gets the number of transmissions that are being tracked.
+     *
+     * @return The number of transmissions in all bands.
+     */
+    public synchronized int size() {
+
+        int size = 0;
+
+        for (IntervalTree<Transmission> tree : channels.values()) {
+            size += tree.size();
+        }
+
+        return size;
+    }
+}
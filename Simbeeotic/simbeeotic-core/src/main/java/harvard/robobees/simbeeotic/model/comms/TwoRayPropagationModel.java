@@ -88,4 +88,56 @@ public class TwoRayPropagationModel extends AbstractPropagationModel {
 
         return rxPower + 10 * Math.log10(loss);
     }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * Uses a two ray model for all receivers in one loop over the distances and heights.
+     */
+    @Override
+    protected void calculatePathLoss(Radio tx, Radio[] rx, float[] rxHeight, double[] distance,
+                                     double txPower, Band band, double[] rxPower, int count) {
+
+        double ht = tx.getPosition().z;  // m
+        double lambda = SPEED_OF_LIGHT / (band.getCenterFrequency() * 10e6);  // m
+        double k = lambda / (4 * Math.PI);
+        double phase = (2 * Math.PI * ht) / lambda;  // per unit of hr / d
+
+        getReceivedPower(tx, rx, txPower, rxPower, count);
+
+        for (int i = 0; i < count; i++) {
+
+            double d = distance[i];
+            double hr = rxHeight[i];
+            double loss;
+
+            // crossover distance
+            double dc = 2 * phase * hr;
+
+            if (d < MIN_DISTANCE) {
+
+                double near = d + 1;
+
+                loss = near * near;
+            }
+            else if (d <= dc) {
+
+                double s = Math.sin((phase * hr) / d);
+                double r = k / d;
+
+                loss = 4 * s * s * r * r;
+            }
+            else {
+
+                // past the crossover distance the signal degrades with fourth inverse power law
+                double h = ht * hr;
+                double d2 = d * d;
+
+                loss = (h * h) / (d2 * d2);
+            }
+
+            rxPower[i] += 10 * Math.log10(loss);
+        }
+    }
 }
@@ -34,14 +34,31 @@ package harvard.robobees.simbeeotic.model.comms;
 
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
+import harvard.robobees.simbeeotic.SimTime;
+import harvard.robobees.simbeeotic.model.Timer;
+import harvard.robobees.simbeeotic.model.TimerCallback;
 import org.apache.log4j.Logger;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
 
 /**
  * A class that implements some boilerplate functionality of radios
  * that operate in the 2.4 GHz range according to the IEEE 802.15.4
  * specification.
  *
+ * <br/>
+ * When the propagation model has a shared medium, packets are sent with the
+ * unslotted CSMA/CA algorithm of IEEE 802.15.4: the radio waits a random number
+ * of backoff periods, senses the channel, and either transmits or backs off
+ * again with a larger window. A packet is dropped after too many busy channel
+ * assessments. The channel assessment is treated as instantaneous.
+ *
  * @author bkate
  */
 public abstract class ZigbeeRadio extends AbstractRadio {
@@ -50,9 +67,194 @@ public abstract class ZigbeeRadio extends AbstractRadio {
 
     private static Band operating = new Band(2442.5, 85);  // zigbee spectrum
 
+    // 20 symbols of 16 us each
+    private static final long UNIT_BACKOFF_PERIOD = 320;  // us
+
+    private boolean useCsma = true;
+    private double ccaThreshold = -77;  // dBm
+    private int minBackoffExponent = 3;
+    private int maxBackoffExponent = 5;
+    private int maxBackoffs = 4;
+
+    // packets waiting for channel access
+    private Queue<byte[]> csmaQueue = new LinkedList<byte[]>();
+    private Timer backoffTimer;
+    private boolean backoffPending = false;
+    private boolean accessGranted = false;
+    private int numBackoffs = 0;
+    private int backoffExponent = 0;
+
     private static Logger logger = Logger.getLogger(RF230.class);
 
 
+    /** {@inheritDoc} */
+    @Override
+    public void initialize() {
+
+        super.initialize();
+
+        backoffExponent = minBackoffExponent;
+
+        // a timer that performs the channel assessment at the end of each backoff
+        backoffTimer = createTimer(new TimerCallback() {
+
+            public void fire(SimTime time) {
+                assessChannel(time);
+            }
+        }, 0, TimeUnit.MICROSECONDS, 0, TimeUnit.MILLISECONDS);
+
+        backoffTimer.cancel();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * This implementation also writes the packets waiting for channel access and
+     * the state of the backoff. The backoff timer was created when the radio was
+     * initialized, so its pending firing is restored by the engine.
+     */
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+
+        super.writeState(out);
+
+        writePackets(out, csmaQueue);
+
+        out.writeBoolean(backoffPending);
+        out.writeInt(numBackoffs);
+        out.writeInt(backoffExponent);
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void readState(DataInput in) throws IOException {
+
+        super.readState(in);
+
+        readPackets(in, csmaQueue);
+
+        backoffPending = in.readBoolean();
+        numBackoffs = in.readInt();
+        backoffExponent = in.readInt();
+    }
+
+
+    /**
+     * Queues a packet for channel access, if this radio uses CSMA/CA. Implementations
+     * call this at the start of {@link #transmit(byte[])} and return if the packet was
+     * queued. The packet is passed to {@code transmit()} again once the radio has
+     * access to the channel, at which point this method returns false.
+     *
+     * @param data The packet to send.
+     *
+     * @return True if the packet was queued, false if it should be transmitted now.
+     */
+    protected final boolean queueForChannelAccess(byte[] data) {
+
+        if (accessGranted || !isCsmaActive()) {
+            return false;
+        }
+
+        csmaQueue.add(data);
+
+        if (!backoffPending) {
+            scheduleBackoff(getClockTime(), 0);
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Performs a clear channel assessment for the packet at the head of the queue,
+     * transmitting it if the channel is clear and backing off otherwise.
+     *
+     * @param time The current time.
+     */
+    private void assessChannel(SimTime time) {
+
+        backoffPending = false;
+
+        if (csmaQueue.isEmpty()) {
+            return;
+        }
+
+        AbstractPropagationModel medium = (AbstractPropagationModel)getPropagationModel();
+
+        if (medium.isChannelClear(this, getChannel(), ccaThreshold)) {
+
+            byte[] data = csmaQueue.poll();
+
+            accessGranted = true;
+
+            try {
+                transmit(data);
+            }
+            finally {
+                accessGranted = false;
+            }
+
+            numBackoffs = 0;
+            backoffExponent = minBackoffExponent;
+
+            // the next packet contends for the channel once this one is sent
+            if (!csmaQueue.isEmpty()) {
+                scheduleBackoff(time, getAirtime(data.length));
+            }
+
+            return;
+        }
+
+        getAggregator().addValue("csma", "busy-channel", 1);
+
+        numBackoffs++;
+        backoffExponent = Math.min(backoffExponent + 1, maxBackoffExponent);
+
+        if (numBackoffs > maxBackoffs) {
+
+            // channel access failure
+            csmaQueue.poll();
+            getAggregator().addValue("csma", "access-failure", 1);
+
+            numBackoffs = 0;
+            backoffExponent = minBackoffExponent;
+
+            if (csmaQueue.isEmpty()) {
+                return;
+            }
+        }
+
+        scheduleBackoff(time, 0);
+    }
+
+
+    /**
+     * Schedules the next channel assessment after a random number of backoff periods.
+     *
+     * @param now The current time.
+     * @param delay An additional delay before the backoff starts (in ns).
+     */
+    private void scheduleBackoff(SimTime now, long delay) {
+
+        long periods = getRandom().nextInt(1 << backoffExponent);
+
+        backoffTimer.reset(now, delay + TimeUnit.MICROSECONDS.toNanos(periods * UNIT_BACKOFF_PERIOD),
+                           TimeUnit.NANOSECONDS, 0, TimeUnit.NANOSECONDS);
+
+        backoffPending = true;
+    }
+
+
+    private boolean isCsmaActive() {
+
+        PropagationModel model = getPropagationModel();
+
+        return useCsma && (model instanceof AbstractPropagationModel) && ((AbstractPropagationModel)model).isSharedMedium();
+    }
+
+
     /** {@inheritDoc} */
     @Override
     public final Band getOperatingBand() {
@@ -88,4 +290,33 @@ public abstract class ZigbeeRadio extends AbstractRadio {
         band= new Band(2405 + (5 * (channel - 11)), 5);
     }
 
+
+    @Inject(optional = true)
+    public final void setUseCsma(@Named("csma") final boolean use) {
+        this.useCsma = use;
+    }
+
+
+    @Inject(optional = true)
+    public final void setCcaThreshold(@Named("cca-threshold") final double threshold) {
+        this.ccaThreshold = threshold;
+    }
+
+
+    @Inject(optional = true)
+    public final void setMinBackoffExponent(@Named("min-backoff-exponent") final int exponent) {
+        this.minBackoffExponent = exponent;
+    }
+
+
+    @Inject(optional = true)
+    public final void setMaxBackoffExponent(@Named("max-backoff-exponent") final int exponent) {
+        this.maxBackoffExponent = exponent;
+    }
+
+
+    @Inject(optional = true)
+    public final void setMaxBackoffs(@Named("max-csma-backoffs") final int backoffs) {
+        this.maxBackoffs = backoffs;
+    }
 }
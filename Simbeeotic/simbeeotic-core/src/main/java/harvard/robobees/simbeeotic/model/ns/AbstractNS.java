@@ -5,6 +5,7 @@
 package harvard.robobees.simbeeotic.model.ns;
 
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
 import harvard.robobees.simbeeotic.ClockControl;
 import harvard.robobees.simbeeotic.SimTime;
 import harvard.robobees.simbeeotic.configuration.ConfigurationAnnotations.GlobalScope;
@@ -34,16 +35,22 @@ public abstract class AbstractNS extends AbstractModel {
     private Timer sendTimer;
 
     private Set<MessageListener> listeners = new HashSet<MessageListener>();
+    private NSTrace recorder;
 
     // parameters
 //    private Vector3f offset = new Vector3f();
     private int sendQueueSize = 100;
+    private String traceFile = null;
 
 
     /** {@inheritDoc} */
     public void initialize() {
         super.initialize();
 
+        if (traceFile != null) {
+            recorder = NSTrace.acquire(getSimEngine(), traceFile);
+        }
+
         final long idlePollPeriod = 100;   // ms
 
         // a timer that periodically measures idle energy usage
@@ -75,7 +82,7 @@ public abstract class AbstractNS extends AbstractModel {
 
                 public void fire(SimTime t) {
                     // send packet
-                    transmit(nsPackets.poll());
+                    transmitAsync(nsPackets.poll());
 
                     if (!nsPackets.isEmpty()) {
                         long sendTime = nsPackets.peek().getTxTime().getTime();
@@ -93,6 +100,12 @@ public abstract class AbstractNS extends AbstractModel {
 
     /** {@inheritDoc} */
     public void finish() {
+
+        if (recorder != null) {
+
+            recorder.release();
+            recorder = null;
+        }
     }
 
     /**
@@ -103,6 +116,11 @@ public abstract class AbstractNS extends AbstractModel {
      */
     @EventHandler
     public final void handleNSEvent(SimTime time, NSEvent event) {
+
+        if (recorder != null) {
+            recorder.recordReceive(time, event.getNsPacket());
+        }
+
         receive(time, event.getNsPacket());
     }
 
@@ -114,6 +132,24 @@ public abstract class AbstractNS extends AbstractModel {
     /** {@inheritDoc} */
     public void transmit(NSPacket nsPacket) {
 //        getAggregator().addValue("energy", "radio-tx", timeToTx * getTxEnergy());
+
+        if (recorder != null) {
+            recorder.recordTransmit(clock.getCurrentTime(), nsPacket);
+        }
+    }
+
+    /**
+     * Transmits a packet without waiting for the network to determine its receptions.
+     * The receptions are delivered as {@link NSEvent}s once they are known, which is no
+     * later than the earliest time at which they can occur.
+     *
+     * <br/>
+     * The default implementation simply calls {@link #transmit(NSPacket)}.
+     *
+     * @param nsPacket The packet to transmit.
+     */
+    public void transmitAsync(NSPacket nsPacket) {
+        transmit(nsPacket);
     }
 
 
@@ -151,6 +187,26 @@ public abstract class AbstractNS extends AbstractModel {
 //        return pos;
 //    }
 
+    /**
+     * Schedules the reception of a packet on the NS model attached to the receiving bee.
+     *
+     * @param nsPacket The received packet. The receiver is identified by {@link NSPacket#getToId()}
+     *                 and the time of reception by {@link NSPacket#getRxTime()}.
+     */
+    protected final void deliver(NSPacket nsPacket) {
+
+        Model modelTo = getSimEngine().findModelById(nsPacket.getToId());
+
+        if (!(modelTo instanceof Platform) || (((Platform)modelTo).getNs() == null)) {
+            throw new RuntimeModelingException("No NS model is attached to model " + nsPacket.getToId() + ".");
+        }
+
+        AbstractNS toNs = ((Platform)modelTo).getNs();
+
+        getSimEngine().scheduleEvent(toNs.getModelId(), nsPacket.getRxTime(), new NSEvent(nsPacket));
+    }
+
+
     /**
      * Notifies all listeners that a message has been received.
      *
@@ -161,7 +217,7 @@ public abstract class AbstractNS extends AbstractModel {
     protected final void notifyListeners(SimTime time, NSPacket nsPacket, double rxPower) {
 
         for (MessageListener l : listeners) {
-            l.messageReceived(time, nsPacket.getData().getBytes(), rxPower);
+            l.messageReceived(time, nsPacket.getPayload(), rxPower);
         }
     }
 
@@ -219,6 +275,19 @@ public abstract class AbstractNS extends AbstractModel {
     }
 
 
+    /**
+     * Sets the file to which all transmitted and received packets are recorded. All of the
+     * NS models in a scenario variation share the trace, which can be replayed with
+     * {@link ReplayNS}.
+     *
+     * @param traceFile The path of the trace file.
+     */
+    @Inject(optional = true)
+    public final void setTraceFile(@Named("trace-file") final String traceFile) {
+        this.traceFile = traceFile;
+    }
+
+
 //    @Inject
 //    public final void setNsPacket(@Named("nsPacket") final NSPacket nsPacket) {
 //        this.nsPackets.add(nsPacket);
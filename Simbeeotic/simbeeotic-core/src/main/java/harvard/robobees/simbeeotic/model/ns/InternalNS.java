@@ -0,0 +1,426 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model.ns;
+
+
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import harvard.robobees.simbeeotic.SimTime;
+import harvard.robobees.simbeeotic.model.Model;
+import harvard.robobees.simbeeotic.model.PhysicalEntity;
+import harvard.robobees.simbeeotic.model.Platform;
+import harvard.robobees.simbeeotic.model.RuntimeModelingException;
+import harvard.robobees.simbeeotic.model.comms.AbstractPropagationModel;
+import harvard.robobees.simbeeotic.model.comms.PropagationModel;
+import harvard.robobees.simbeeotic.model.comms.Radio;
+
+import javax.vecmath.Vector3f;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * A pure Java stand-in for {@link NS} that does not require ns-3. It reads the same
+ * {@code protocol}, {@code data-rate} and {@code delay} properties and can be used in the
+ * scenario XML by replacing the {@code java-class} of the {@code ns} element with this class.
+ *
+ * <br/>
+ * Packets are routed over the shortest path (in hops) through the current link graph.
+ * Two bees are linked if the received power reported by the {@link AbstractPropagationModel}
+ * exceeds the receiver sensitivity, or if they are within range of each other when
+ * the bees have no radios or there is no propagation model in the scenario. Every hop
+ * takes the time to serialize the packet at the data rate plus the link delay. The
+ * reactive protocols (AODV and DSR) pay for a route request and reply when no route to
+ * the destination has been used recently, the proactive protocols (DSDV and OLSR) do not.
+ * Broadcasts are delivered to one hop neighbors only, as they are in ns-3.
+ *
+ * <br/>
+ * All of the bees in the scenario must use this model for their ns element.
+ *
+ * @author unnamed
+ */
+public class InternalNS extends AbstractNS {
+
+    private Node[] nodes;
+    private Map<Integer, Integer> modelToNode = new HashMap<Integer, Integer>();
+    private AbstractPropagationModel propModel;
+
+    private boolean reactive;
+    private double bitsPerNs;
+    private long delayNs;
+    private long busyUntil = 0;
+    private Map<Integer, Long> routeExpiry = new HashMap<Integer, Long>();
+
+    // parameters
+    private String protocol = "DSDV";
+    private String dataRate = "5Mbps";
+    private String delay = "2ms";
+    private double range = 10;           // m
+    private double txPower = 0;          // dBm
+    private double rxSensitivity = -90;  // dBm
+    private long routeTimeout = 3000;    // ms
+
+    private static final int HEADER_BYTES = 28;  // IPv4 and UDP
+    private static final int RREQ_BYTES = 24;
+    private static final int RREP_BYTES = 20;
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void initialize() {
+        super.initialize();
+
+        if (protocol.equals("AODV") || protocol.equals("DSR")) {
+            reactive = true;
+        }
+        else if (protocol.equals("DSDV") || protocol.equals("OLSR")) {
+            reactive = false;
+        }
+        else {
+            throw new RuntimeModelingException("No such protocol: " + protocol);
+        }
+
+        bitsPerNs = parseDataRate(dataRate) / TimeUnit.SECONDS.toNanos(1);
+        delayNs = NS.parseTime(delay);
+
+        PropagationModel prop = getSimEngine().findModelByType(PropagationModel.class);
+
+        if (prop instanceof AbstractPropagationModel) {
+            propModel = (AbstractPropagationModel)prop;
+        }
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void receive(SimTime time, NSPacket nsPacket) {
+        super.receive(time, nsPacket);
+        notifyListeners(time, nsPacket, 0);
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void transmit(NSPacket nsPacket) {
+        super.transmit(nsPacket);
+
+        if (nodes == null) {
+            findNodes();
+        }
+
+        Integer src = modelToNode.get(nsPacket.getFromId());
+
+        if (src == null) {
+            throw new RuntimeModelingException("Model " + nsPacket.getFromId() + " is not a node in the network.");
+        }
+
+        long now = clock.getCurrentTime().getTime();
+        int bytes = nsPacket.getPayload().length + HEADER_BYTES;
+
+        // the radio sends one packet at a time
+        long start = Math.max(now, busyUntil);
+        long hopTime = serialize(bytes) + delayNs;
+
+        busyUntil = start + serialize(bytes);
+
+        if (nsPacket.getToId() < 0) {
+
+            for (int i = 0; i < nodes.length; i++) {
+
+                if ((i != src) && isLinked(nodes[src], nodes[i])) {
+                    send(nsPacket, nodes[i].modelId, start + hopTime);
+                }
+            }
+
+            return;
+        }
+
+        Integer dest = modelToNode.get(nsPacket.getToId());
+
+        if (dest == null) {
+            throw new RuntimeModelingException("Model " + nsPacket.getToId() + " is not a node in the network.");
+        }
+
+        int hops = getHopCount(src, dest);
+
+        // no route, the packet is dropped
+        if (hops < 0) {
+            return;
+        }
+
+        long latency = hops * hopTime;
+
+        if (reactive) {
+
+            Long expiry = routeExpiry.get(dest);
+
+            // flood a route request to the destination and wait for the reply
+            if ((expiry == null) || (expiry < start)) {
+
+                latency += hops * (serialize(RREQ_BYTES + HEADER_BYTES) + delayNs);
+                latency += hops * (serialize(RREP_BYTES + HEADER_BYTES) + delayNs);
+            }
+
+            routeExpiry.put(dest, start + latency + TimeUnit.MILLISECONDS.toNanos(routeTimeout));
+        }
+
+        send(nsPacket, nsPacket.getToId(), start + latency);
+    }
+
+
+    private void send(NSPacket nsPacket, int toId, long rxTime) {
+
+        NSPacket received = new NSPacket(nsPacket.getPayload(), nsPacket.getFromId(), toId, nsPacket.getTxTime(),
+                                         new SimTime(rxTime, TimeUnit.NANOSECONDS));
+
+        received.setOrigin(nsPacket);
+
+        deliver(received);
+    }
+
+
+    /**
+     * Gets the time needed to put a packet on the channel.
+     *
+     * @param bytes The size of the packet (in bytes).
+     *
+     * @return The time (in ns).
+     */
+    private long serialize(int bytes) {
+        return (long)Math.ceil((bytes * 8) / bitsPerNs);
+    }
+
+
+    /**
+     * Finds the length of the shortest path between two nodes with a breadth first
+     * search over the current link graph.
+     *
+     * @return The number of hops, or -1 if the destination cannot be reached.
+     */
+    private int getHopCount(int src, int dest) {
+
+        if (src == dest) {
+            return 0;
+        }
+
+        int[] hops = new int[nodes.length];
+        int[] queue = new int[nodes.length];
+        int head = 0;
+        int tail = 0;
+
+        Arrays.fill(hops, -1);
+
+        hops[src] = 0;
+        queue[tail++] = src;
+
+        while (head < tail) {
+
+            int curr = queue[head++];
+
+            for (int i = 0; i < nodes.length; i++) {
+
+                if ((hops[i] < 0) && isLinked(nodes[curr], nodes[i])) {
+
+                    hops[i] = hops[curr] + 1;
+
+                    if (i == dest) {
+                        return hops[i];
+                    }
+
+                    queue[tail++] = i;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+
+    /**
+     * Determines if one node can hear the transmissions of another.
+     */
+    private boolean isLinked(Node tx, Node rx) {
+
+        if ((propModel != null) && (tx.radio != null) && (rx.radio != null)) {
+            return propModel.getLinkPower(tx.radio, rx.radio, txPower, tx.radio.getOperatingBand()) >= rxSensitivity;
+        }
+
+        Vector3f diff = new Vector3f();
+
+        diff.sub(rx.host.getTruthPosition(), tx.host.getTruthPosition());
+
+        return diff.lengthSquared() <= (range * range);
+    }
+
+
+    /**
+     * Finds all of the bees that are attached to this network. Node indices are assigned once
+     * and kept for the remainder of the scenario.
+     */
+    private void findNodes() {
+
+        List<InternalNS> others = getSimEngine().findModelsByType(InternalNS.class);
+
+        nodes = new Node[others.size()];
+
+        for (int i = 0; i < nodes.length; i++) {
+
+            Model parent = others.get(i).getParentModel();
+
+            if (!(parent instanceof PhysicalEntity)) {
+                throw new RuntimeModelingException("The InternalNS model must be attached to a physical entity.");
+            }
+
+            nodes[i] = new Node();
+            nodes[i].modelId = parent.getModelId();
+            nodes[i].host = (PhysicalEntity)parent;
+            nodes[i].radio = (parent instanceof Platform) ? ((Platform)parent).getRadio() : null;
+
+            modelToNode.put(nodes[i].modelId, i);
+        }
+    }
+
+
+    /**
+     * Parses a data rate in the format used by ns-3 attributes (e.g. "5Mbps").
+     *
+     * @param value The data rate string.
+     *
+     * @return The data rate (in bits per second).
+     */
+    static double parseDataRate(String value) {
+
+        String trimmed = value.trim();
+        double scale;
+
+        if (trimmed.endsWith("Gbps")) {
+            scale = 1e9;
+        }
+        else if (trimmed.endsWith("Mbps")) {
+            scale = 1e6;
+        }
+        else if (trimmed.endsWith("kbps") || trimmed.endsWith("Kbps")) {
+            scale = 1e3;
+        }
+        else if (trimmed.endsWith("bps")) {
+            scale = 1;
+        }
+        else {
+            throw new RuntimeModelingException("Unknown data rate unit in: " + value);
+        }
+
+        try {
+
+            double rate = Double.parseDouble(trimmed.substring(0, trimmed.length() - (scale == 1 ? 3 : 4))) * scale;
+
+            if (rate <= 0) {
+                throw new RuntimeModelingException("The data rate must be positive: " + value);
+            }
+
+            return rate;
+        }
+        catch(NumberFormatException nfe) {
+            throw new RuntimeModelingException("Could not parse the data rate: " + value, nfe);
+        }
+    }
+
+
+    /**
+     * A bee that is attached to the network.
+     */
+    private static class Node {
+
+        public int modelId;
+        public PhysicalEntity host;
+        public Radio radio;
+    }
+
+
+    @Inject(optional = true)
+    public final void setProtocol(@Named("protocol") final String protocol) {
+        this.protocol = protocol;
+    }
+
+    @Inject(optional = true)
+    public final void setDataRate(@Named("data-rate") final String dataRate) {
+        this.dataRate = dataRate;
+    }
+
+    @Inject(optional = true)
+    public final void setDelay(@Named("delay") final String delay) {
+        this.delay = delay;
+    }
+
+    /**
+     * Sets the range of a link, which is used if the bees do not have radios or there is no
+     * propagation model in the scenario.
+     *
+     * @param range The maximum distance between two linked bees (in m).
+     */
+    @Inject(optional = true)
+    public final void setRange(@Named("range") final double range) {
+        this.range = range;
+    }
+
+    /**
+     * Sets the transmit power used when querying the propagation model.
+     *
+     * @param txPower The transmit power (in dBm).
+     */
+    @Inject(optional = true)
+    public final void setTxPower(@Named("tx-power") final double txPower) {
+        this.txPower = txPower;
+    }
+
+    /**
+     * Sets the minimum received power for a link to exist.
+     *
+     * @param rxSensitivity The receiver sensitivity (in dBm).
+     */
+    @Inject(optional = true)
+    public final void setRxSensitivity(@Named("rx-sensitivity") final double rxSensitivity) {
+        this.rxSensitivity = rxSensitivity;
+    }
+
+    /**
+     * Sets the amount of time that an unused route is kept by the reactive protocols.
+     *
+     * @param routeTimeout The route timeout (in ms).
+     */
+    @Inject(optional = true)
+    public final void setRouteTimeout(@Named("route-timeout") final long routeTimeout) {
+        this.routeTimeout = routeTimeout;
+    }
+}
@@ -7,28 +7,23 @@ package harvard.robobees.simbeeotic.model.ns;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 import harvard.robobees.simbeeotic.SimTime;
-import harvard.robobees.simbeeotic.model.Model;
-import harvard.robobees.simbeeotic.model.SimpleBee;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
-
-import javax.vecmath.Vector3f;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import java.io.*;
-import java.util.ArrayList;
+import harvard.robobees.simbeeotic.model.RuntimeModelingException;
+import harvard.robobees.simbeeotic.model.TimerCallback;
+
+import java.io.File;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 /**
  * A model that is used to read ns parameters provided in Scenario xml file
  * It will be responsible for communicating between Simbeeotic and NS-3
  *
- * It will hopefully be replaced by more classes and will be made abstract
+ * All of the NS models in a scenario variation share a single {@link NSSession},
+ * so ns-3 is started once and the node topology is kept alive between transmissions.
+ * When a batch window is set, the packets sent by all bees within the window are
+ * handed to ns-3 together.
  *
  * @author unnamed
  */
@@ -42,7 +37,70 @@ public class NS extends AbstractNS {
 //    private String propagationDelay = "ConstantSpeedPropagationDelayModel";
 //    private String propagationLoss = "FriisPropagationLossModel";
 
-    private List<Integer> beeMaps = new ArrayList<Integer>();
+    private String ns3Dir = "/home/fasih58/Desktop/ns-allinone-3.25/ns-3.25";
+    private String ns3Program = "scratch/Working-model";
+    private long drainTime = 2000;  // ms
+    private long batchWindow = 0;   // ms
+    private float mobilityEpsilon = 0.01f;  // m
+    private int cacheSize = 0;
+    private String cacheDir = null;
+    private float cacheQuantum = 0.1f;  // m
+    private int maxWorkers = Runtime.getRuntime().availableProcessors();
+    private String workDir = new File(System.getProperty("java.io.tmpdir"), "simbeeotic-ns3").getPath();
+    private String sync = "lockstep";
+    private String lookahead = null;
+
+    private NSSession session;
+
+    @Override
+    public void initialize() {
+        super.initialize();
+
+        NSWorkerPool.configure(maxWorkers, new File(workDir));
+
+        session = NSSession.acquire(getSimEngine(), ns3Dir, ns3Program, drainTime, batchWindow, mobilityEpsilon,
+                                    protocol, dataRate, delay, baseIP, subnetMask);
+
+        if (cacheSize > 0) {
+            session.enableCache(cacheSize, (cacheDir != null) ? new File(cacheDir) : null, cacheQuantum, getAggregator());
+        }
+
+        if (sync.equals("conservative")) {
+
+            final long window = parseTime((lookahead != null) ? lookahead : delay);
+
+            if (window <= 0) {
+                throw new RuntimeModelingException("Conservative synchronization requires a positive lookahead.");
+            }
+
+            // one model drives the synchronization for the whole session, at half the
+            // lookahead so that every reception is known before it is due
+            if (session.claimSync(window)) {
+
+                long period = Math.max(window / 2, 1);
+
+                createTimer(new TimerCallback() {
+
+                    public void fire(SimTime time) {
+                        synchronize(time);
+                    }
+                }, period, TimeUnit.NANOSECONDS, period, TimeUnit.NANOSECONDS);
+            }
+        }
+        else if (!sync.equals("lockstep")) {
+            throw new RuntimeModelingException("Unknown synchronization mode: " + sync);
+        }
+    }
+
+    @Override
+    public void finish() {
+        super.finish();
+
+        if (session != null) {
+            session.release();
+            session = null;
+        }
+    }
 
     @Override
     public void receive(SimTime time, NSPacket nsPacket) {
@@ -53,138 +111,178 @@ public class NS extends AbstractNS {
     @Override
     public void transmit(NSPacket nsPacket) {
         super.transmit(nsPacket);
-        clock.pause();
-        printNSConfigurations(nsPacket);
-        callWaf();
-        try {
-            readNSXML(nsPacket);
+
+        if (sync.equals("conservative")) {
+
+            session.enqueue(nsPacket);
+            return;
         }
-        catch (Exception e) {}
 
-        clock.start();
-    }
+        if (session.getBatchWindow() > 0) {
 
-    private void printNSConfigurations(NSPacket nsPacket) {
-        try {
-            File file = new File("/home/fasih58/Desktop/ns-allinone-3.25/ns-3.25/scratch/Settings.txt");
-            if(file.exists()) {
-                file.delete();
-            }
-            file.createNewFile();
-            BufferedWriter bw = new BufferedWriter(new FileWriter(file.getAbsoluteFile(), true));
+            // the model that opens a batch is responsible for flushing it at the end of the window
+            if (session.enqueue(nsPacket)) {
 
-            bw.write("protocol:" + protocol + ",\n");
-            bw.write("dataRate:" + dataRate + ",\n");
-            bw.write("delay:" + delay + ",\n");
-            bw.write("ipBase:" + baseIP + ",\n");
-            bw.write("subnetMask:" + subnetMask + "\n");
+                createTimer(new TimerCallback() {
+
+                    public void fire(SimTime time) {
+                        flush(time);
+                    }
+                }, session.getBatchWindow(), TimeUnit.MILLISECONDS);
+            }
 
-            bw.close();
-        } catch(IOException e) {
-            e.printStackTrace();
+            return;
         }
 
+        clock.pause();
+
         try {
-            File file = new File("/home/fasih58/Desktop/ns-allinone-3.25/ns-3.25/scratch/Positions.txt");
-            if(file.exists()) {
-                file.delete();
+            for (NSPacket received : session.transmit(nsPacket)) {
+                deliver(received);
             }
-            file.createNewFile();
-            BufferedWriter bw = new BufferedWriter(new FileWriter(file.getAbsoluteFile(), true));
-            int senderNode = 0, recvNode = 0;
-            List<SimpleBee> simpleBees = getSimEngine().findModelsByType(SimpleBee.class);
-            bw.write(simpleBees.size() + "\n");
-            Vector3f beePos = null;
-            int index = 0;
-            for (SimpleBee simpleBee : simpleBees) {
-                beePos = simpleBee.getTruthPosition();
-                beeMaps.add(simpleBee.getModelId());
-                //bw.write(simpleBee.getModelId() + " " + beePos.x + " " + beePos.y + " " + beePos.z + "\n");
-                bw.write(index++ + " " + beePos.x + " " + beePos.y + " " + beePos.z + "\n");
+        }
+        finally {
+            clock.start();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * The packet is handed to ns-3 immediately and the simulation continues while ns-3
+     * computes the receptions. The simulation only waits for ns-3 when it reaches the
+     * earliest time at which a reception could occur, which is one link delay (or the
+     * lookahead, if it is shorter) after the transmission. Batched and conservatively synchronized
+     * transmissions never wait for ns-3 in the first place, so they are sent as usual.
+     */
+    @Override
+    public void transmitAsync(NSPacket nsPacket) {
+
+        if (sync.equals("conservative") || (session.getBatchWindow() > 0)) {
+
+            transmit(nsPacket);
+            return;
+        }
+
+        super.transmit(nsPacket);
+
+        final Future<List<NSPacket>> pending = session.transmitAsync(Collections.singletonList(nsPacket));
+
+        createTimer(new TimerCallback() {
+
+            public void fire(SimTime time) {
+
+                clock.pause();
+
+                try {
+                    for (NSPacket received : session.await(pending, time)) {
+                        deliver(received);
+                    }
+                }
+                finally {
+                    clock.start();
+                }
             }
-            bw.write("1\n");
-
-            for(int i = 0; i < beeMaps.size(); i++)
-            {
-                if(nsPacket.getFromId() == beeMaps.get(i))
-                    senderNode = i;
-                if(nsPacket.getToId() == beeMaps.get(i))
-                    recvNode = i;
-                if(nsPacket.getToId() == -1)
-                    recvNode = -1;
+        }, getAwaitTime(), TimeUnit.NANOSECONDS);
+    }
+
+
+    /**
+     * Gets the time after an asynchronous transmission at which its receptions are
+     * collected. No reception can occur before the link delay has passed, so a longer
+     * lookahead is not used.
+     *
+     * @return The time (in ns).
+     */
+    private long getAwaitTime() {
+
+        long linkDelay = parseTime(delay);
+
+        return (lookahead != null) ? Math.min(parseTime(lookahead), linkDelay) : linkDelay;
+    }
+
+
+    /**
+     * Sends the current batch of packets and schedules all of the resulting receptions.
+     *
+     * @param time The current time (the end of the batch window).
+     */
+    private void flush(SimTime time) {
+
+        clock.pause();
+
+        try {
+            for (NSPacket received : session.flush(time)) {
+                deliver(received);
             }
-            //bw.write(nsPacket.getFromId() + " " + nsPacket.getToId() + " " + nsPacket.getData() + "\n");
-            bw.write(senderNode + " " + recvNode + " " + nsPacket.getData() + "\n");
-            bw.close();
-        } catch(IOException e) {
-            e.printStackTrace();
+        }
+        finally {
+            clock.start();
         }
     }
 
-    private void callWaf() {
+
+    /**
+     * Exchanges queued packets with ns-3 and schedules any receptions that it produced.
+     *
+     * @param time The current time.
+     */
+    private void synchronize(SimTime time) {
+
+        clock.pause();
+
         try {
-            File tempScript = File.createTempFile("script", null);
-            Writer streamWriter = new OutputStreamWriter(new FileOutputStream(tempScript));
-            PrintWriter printWriter = new PrintWriter(streamWriter);
-            printWriter.println("#!/bin/bash");
-            printWriter.println("cd /home/fasih58/Desktop/ns-allinone-3.25/ns-3.25");
-            printWriter.println("ls");
-            printWriter.println("./waf --run scratch/Working-model");
-            printWriter.close();
-            String line;
-            ProcessBuilder pb = new ProcessBuilder("bash", tempScript.toString());
-            //  pb.inheritIO();
-            Process process = pb.start();
-            BufferedReader stdoutReader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            while ((line = stdoutReader.readLine()) != null) {
-//                logger.info(" .. stdout: " + line);
-            }
-            BufferedReader stderrReader = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-            while ((line = stderrReader.readLine()) != null) {
-//                logger.error(" .. stderr: " + line);
+            for (NSPacket received : session.synchronize(time)) {
+                deliver(received);
             }
-            process.waitFor();
         }
-        catch (IOException ex) {} catch (InterruptedException ex1) {}
+        finally {
+            clock.start();
+        }
     }
 
 
-    private void readNSXML(NSPacket nsPacket) throws SAXException, IOException, ParserConfigurationException {
+    /**
+     * Parses a time string in the format used by ns-3 attributes (e.g. "2ms").
+     *
+     * @param value The time string.
+     *
+     * @return The time (in ns).
+     */
+    static long parseTime(String value) {
 
-        File xmlFile = new File("/home/fasih58/Desktop/results.xml");
-        while(!xmlFile.exists()) {
-            xmlFile = new File("/home/fasih58/Desktop/results.xml");
-        }
-        DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-        Document doc = dBuilder.parse(xmlFile);
-        doc.getDocumentElement().normalize();
+        String trimmed = value.trim();
+        int split = trimmed.length();
 
-        // Getting packets for bees
-        NodeList posList = doc.getElementsByTagName("p");
-        for (int i = 0; i < posList.getLength(); i++) {
-            if (posList.item(i).getNodeType() == Node.ELEMENT_NODE) {
-                Element ele = (Element) posList.item(i);
+        while ((split > 0) && Character.isLetter(trimmed.charAt(split - 1))) {
+            split--;
+        }
 
-                double lbRxTime = Double.parseDouble(ele.getAttribute("Time")) * TimeUnit.SECONDS.toMillis(1);
-                SimTime lbRx = new SimTime((long)lbRxTime, TimeUnit.MILLISECONDS);
-                lbRx.add(nsPacket.getTxTime().getTime(), TimeUnit.NANOSECONDS);
+        String unit = trimmed.substring(split);
+        double amount;
 
-                String payload = ele.getAttribute("payload");
-                int modelFromId = Integer.parseInt(ele.getAttribute("Sndr"));
-                // Gets bee mapping, from NS id to Simbeeotic id
-                int modelToId = beeMaps.get(Integer.parseInt(ele.getAttribute("Rcvr")));
-                Model modelTo = getSimEngine().findModelById(modelToId);
+        try {
+            amount = Double.parseDouble(trimmed.substring(0, split));
+        }
+        catch(NumberFormatException nfe) {
+            throw new RuntimeModelingException("Could not parse the time: " + value, nfe);
+        }
 
-                AbstractNS toBeeNs = null;
-                if (modelTo instanceof SimpleBee) {
-                    // Gets NS model attached to the bee
-                    toBeeNs = ((SimpleBee)modelTo).getNs();
-                }
-                NSPacket nsPkt = new NSPacket(payload, modelFromId, modelToId, getCurrTime(), lbRx);
-                getSimEngine().scheduleEvent(toBeeNs.getModelId(), lbRx, new NSEvent(nsPkt));
-            }
+        if (unit.equals("s") || unit.isEmpty()) {
+            return (long)(amount * TimeUnit.SECONDS.toNanos(1));
+        }
+        else if (unit.equals("ms")) {
+            return (long)(amount * TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        else if (unit.equals("us")) {
+            return (long)(amount * TimeUnit.MICROSECONDS.toNanos(1));
+        }
+        else if (unit.equals("ns")) {
+            return (long)amount;
         }
+
+        throw new RuntimeModelingException("Unknown time unit in: " + value);
     }
 
 
@@ -212,4 +310,126 @@ public class NS extends AbstractNS {
     public final void setSubnetMask(@Named("subnet-mask") final String subnetMask) {
         this.subnetMask = subnetMask;
     }
+
+    @Inject(optional = true)
+    public final void setNs3Dir(@Named("ns3-dir") final String ns3Dir) {
+        this.ns3Dir = ns3Dir;
+    }
+
+    @Inject(optional = true)
+    public final void setNs3Program(@Named("ns3-program") final String ns3Program) {
+        this.ns3Program = ns3Program;
+    }
+
+    /**
+     * Sets the amount of ns-3 time that is simulated after each set of transmissions
+     * so that in-flight packets can be delivered.
+     *
+     * @param drainTime The drain time (in ms).
+     */
+    @Inject(optional = true)
+    public final void setDrainTime(@Named("drain-time") final long drainTime) {
+        this.drainTime = drainTime;
+    }
+
+    /**
+     * Sets the window over which transmissions from all bees are collected and sent
+     * to ns-3 as a single batch.
+     *
+     * @param batchWindow The batch window (in ms). A value of zero sends every packet immediately.
+     */
+    @Inject(optional = true)
+    public final void setBatchWindow(@Named("batch-window") final long batchWindow) {
+        this.batchWindow = batchWindow;
+    }
+
+    /**
+     * Sets the way in which packets are exchanged with ns-3. In "lockstep" mode the simulation
+     * waits for ns-3 on every transmission (or batch). In "conservative" mode ns-3 runs
+     * concurrently and the simulation runs up to one lookahead ahead of it.
+     *
+     * @param sync The synchronization mode ("lockstep" or "conservative").
+     */
+    @Inject(optional = true)
+    public final void setSync(@Named("sync") final String sync) {
+        this.sync = sync;
+    }
+
+    /**
+     * Sets the lookahead used by conservative synchronization, which is the minimum time
+     * between a transmission and any of its receptions. It is taken out of the link delay
+     * that ns-3 models, so it cannot be longer than the link delay. It is also the time
+     * after an asynchronous transmission at which its receptions are collected, unless
+     * the link delay is shorter. Defaults to the link delay.
+     *
+     * @param lookahead The lookahead, as an ns-3 time string (e.g. "2ms").
+     */
+    @Inject(optional = true)
+    public final void setLookahead(@Named("lookahead") final String lookahead) {
+        this.lookahead = lookahead;
+    }
+
+    /**
+     * Sets the distance that a bee has to move before its new position is sent to ns-3.
+     *
+     * @param mobilityEpsilon The mobility epsilon (in m).
+     */
+    @Inject(optional = true)
+    public final void setMobilityEpsilon(@Named("mobility-epsilon") final float mobilityEpsilon) {
+        this.mobilityEpsilon = mobilityEpsilon;
+    }
+
+    /**
+     * Sets the number of ns-3 results that are cached. A batch of transmissions that is sent
+     * when all of the bees are at (nearly) the same positions as an earlier batch with the
+     * same transmissions reuses the earlier receptions instead of contacting ns-3. The hits
+     * and misses are reported to the aggregator under "ns-cache".
+     *
+     * @param cacheSize The maximum number of cached results. A value of zero disables the cache.
+     */
+    @Inject(optional = true)
+    public final void setCacheSize(@Named("cache-size") final int cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * Sets a directory in which cached ns-3 results are kept across runs.
+     *
+     * @param cacheDir The cache directory.
+     */
+    @Inject(optional = true)
+    public final void setCacheDir(@Named("cache-dir") final String cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * Sets the resolution at which bee positions are compared when looking up cached results.
+     *
+     * @param cacheQuantum The quantum (in m).
+     */
+    @Inject(optional = true)
+    public final void setCacheQuantum(@Named("cache-quantum") final float cacheQuantum) {
+        this.cacheQuantum = cacheQuantum;
+    }
+
+    /**
+     * Sets the maximum number of ns-3 processes that run at once, across all of the
+     * variations being simulated in this JVM.
+     *
+     * @param maxWorkers The number of workers (defaults to the number of processors).
+     */
+    @Inject(optional = true)
+    public final void setMaxWorkers(@Named("max-workers") final int maxWorkers) {
+        this.maxWorkers = maxWorkers;
+    }
+
+    /**
+     * Sets the directory under which each ns-3 process gets its own working directory.
+     *
+     * @param workDir The base work directory.
+     */
+    @Inject(optional = true)
+    public final void setWorkDir(@Named("work-dir") final String workDir) {
+        this.workDir = workDir;
+    }
 }
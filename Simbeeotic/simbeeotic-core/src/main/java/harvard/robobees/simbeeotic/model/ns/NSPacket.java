@@ -7,6 +7,7 @@ package harvard.robobees.simbeeotic.model.ns;
 
 import harvard.robobees.simbeeotic.SimTime;
 
+import java.nio.charset.Charset;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -20,10 +21,16 @@ public class NSPacket {
     private AtomicInteger id;
     private List<Integer> path;
     private String data;
+    private byte[] payload;
     private int fId;
     private int tId;
     private SimTime fbTx;
     private SimTime lbRx;
+    private NSPacket origin;
+    private long traceId = -1;
+
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
 
 
     public NSPacket(String msg, int fId, int tId, SimTime fbTx, SimTime lbRx) {
@@ -35,15 +42,48 @@ public class NSPacket {
     }
 
 
+    /**
+     * Creates a packet with a binary payload. The payload is not copied, so it should not
+     * be modified after the packet is created.
+     */
+    public NSPacket(byte[] payload, int fId, int tId, SimTime fbTx, SimTime lbRx) {
+        this.payload = payload;
+        this.fId = fId;
+        this.tId = tId;
+        this.fbTx = fbTx;
+        this.lbRx = lbRx;
+    }
+
+
     /**
      * Gets the center frequency of this band.
      *
      * @return The center frequency (in MHz).
      */
     public String getData() {
+
+        if (data == null) {
+            data = new String(payload, UTF8);
+        }
+
         return data;
     }
 
+    /**
+     * Gets the payload of this packet as raw bytes. The returned array is shared
+     * with the packet and should not be modified.
+     *
+     * @return The payload.
+     */
+    public byte[] getPayload() {
+
+        if (payload == null) {
+            payload = data.getBytes(UTF8);
+        }
+
+        return payload;
+    }
+
     /**
      * Gets the center frequency of this band.
      *
@@ -79,4 +119,25 @@ public class NSPacket {
     public SimTime getRxTime() {
         return lbRx;
     }
+
+    /**
+     * Gets the transmitted packet that this packet is a reception of.
+     *
+     * @return The transmitted packet, or {@code null} if this packet was not received.
+     */
+    public NSPacket getOrigin() {
+        return origin;
+    }
+
+    void setOrigin(NSPacket origin) {
+        this.origin = origin;
+    }
+
+    long getTraceId() {
+        return traceId;
+    }
+
+    void setTraceId(long traceId) {
+        this.traceId = traceId;
+    }
 }
@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model.ns;
+
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * A bounded cache of the receptions that ns-3 produced for a batch of transmissions.
+ * Entries are keyed by an opaque byte string (built by {@link NSSession} from the
+ * quantized node positions, the network settings and the batch) and are evicted in
+ * least recently used order.
+ *
+ * <br/>
+ * If a directory is given, every entry is also written to a file in it, named by the
+ * SHA-1 digest of its key, so that the results survive across runs. Entries that are
+ * not in memory are looked up in the directory before a lookup is considered a miss.
+ *
+ * @author unnamed
+ */
+public class NSResultCache {
+
+    private Map<Key, List<Reception>> entries;
+    private File dir;
+
+    private static final int MAGIC = 0x4e535232;  // NSR2, the receptions hold node indices
+
+    private static Logger logger = Logger.getLogger(NSResultCache.class);
+
+
+    /**
+     * Creates a new cache.
+     *
+     * @param capacity The maximum number of entries kept in memory.
+     * @param dir The directory in which entries are persisted, or {@code null} to keep them in memory only.
+     */
+    public NSResultCache(final int capacity, File dir) {
+
+        this.entries = new LinkedHashMap<Key, List<Reception>>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, List<Reception>> eldest) {
+                return size() > capacity;
+            }
+        };
+
+        this.dir = dir;
+
+        if ((dir != null) && !dir.isDirectory() && !dir.mkdirs()) {
+
+            logger.warn("Could not create the cache directory " + dir + ", results will not be persisted.");
+            this.dir = null;
+        }
+    }
+
+
+    /**
+     * Looks up the receptions for a key.
+     *
+     * @param key The key.
+     *
+     * @return The cached receptions, or {@code null} if there are none.
+     */
+    public synchronized List<Reception> get(byte[] key) {
+
+        Key k = new Key(key);
+        List<Reception> receptions = entries.get(k);
+
+        if ((receptions == null) && (dir != null)) {
+
+            receptions = load(key);
+
+            if (receptions != null) {
+                entries.put(k, receptions);
+            }
+        }
+
+        return receptions;
+    }
+
+
+    /**
+     * Adds the receptions for a key to the cache.
+     *
+     * @param key The key.
+     * @param receptions The receptions.
+     */
+    public synchronized void put(byte[] key, List<Reception> receptions) {
+
+        entries.put(new Key(key), receptions);
+
+        if (dir != null) {
+            store(key, receptions);
+        }
+    }
+
+
+    private List<Reception> load(byte[] key) {
+
+        File file = getFile(key);
+
+        if (!file.exists()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+
+        try {
+
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+
+            byte[] stored = new byte[in.readInt()];
+
+            in.readFully(stored);
+
+            // guard against digest collisions
+            if (!Arrays.equals(stored, key)) {
+                return null;
+            }
+
+            int count = in.readInt();
+            List<Reception> receptions = new ArrayList<Reception>(count);
+
+            for (int i = 0; i < count; i++) {
+
+                Reception rx = new Reception();
+
+                rx.batchIndex = in.readInt();
+                rx.delay = in.readLong();
+                rx.fromNode = in.readInt();
+                rx.toNode = in.readInt();
+                rx.payload = new byte[in.readInt()];
+
+                in.readFully(rx.payload);
+
+                receptions.add(rx);
+            }
+
+            return receptions;
+        }
+        catch(IOException ioe) {
+
+            logger.warn("Could not read the cache file " + file + ".", ioe);
+            return null;
+        }
+        finally {
+
+            if (in != null) {
+
+                try {
+                    in.close();
+                }
+                catch(IOException ioe) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+
+    private void store(byte[] key, List<Reception> receptions) {
+
+        File file = getFile(key);
+        File temp = new File(dir, file.getName() + ".tmp");
+
+        try {
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+
+            try {
+
+                out.writeInt(MAGIC);
+                out.writeInt(key.length);
+                out.write(key);
+                out.writeInt(receptions.size());
+
+                for (Reception rx : receptions) {
+
+                    out.writeInt(rx.batchIndex);
+                    out.writeLong(rx.delay);
+                    out.writeInt(rx.fromNode);
+                    out.writeInt(rx.toNode);
+                    out.writeInt(rx.payload.length);
+                    out.write(rx.payload);
+                }
+            }
+            finally {
+                out.close();
+            }
+
+            // other runs may be reading the directory, so only complete files are visible
+            if (!temp.renameTo(file)) {
+
+                temp.delete();
+                logger.warn("Could not write the cache file " + file + ".");
+            }
+        }
+        catch(IOException ioe) {
+            logger.warn("Could not write the cache file " + file + ".", ioe);
+        }
+    }
+
+
+    private File getFile(byte[] key) {
+
+        try {
+
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key);
+            StringBuilder name = new StringBuilder();
+
+            for (byte b : digest) {
+                name.append(String.format("%02x", b));
+            }
+
+            return new File(dir, name.append(".bin").toString());
+        }
+        catch(NoSuchAlgorithmException nsae) {
+            throw new RuntimeException(nsae);
+        }
+    }
+
+
+    /**
+     * A reception that resulted from a batch of transmissions.
+     */
+    public static class Reception {
+
+        public int batchIndex;   // the position of the transmission in the batch
+        public long delay;       // ns, from the transmit time of the packet
+        public int fromNode;     // the ns-3 node indices, which do not depend on the model IDs
+        public int toNode;
+        public byte[] payload;
+    }
+
+
+    /**
+     * Wraps a byte string so that it can be used as a map key.
+     */
+    private static class Key {
+
+        private byte[] bytes;
+        private int hash;
+
+
+        public Key(byte[] bytes) {
+
+            this.bytes = bytes;
+            this.hash = Arrays.hashCode(bytes);
+        }
+
+
+        @Override
+        public boolean equals(Object o) {
+            return (o instanceof Key) && Arrays.equals(bytes, ((Key)o).bytes);
+        }
+
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,1149 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model.ns;
+
+
+import harvard.robobees.simbeeotic.CausalityViolationException;
+import harvard.robobees.simbeeotic.SimEngine;
+import harvard.robobees.simbeeotic.SimTime;
+import harvard.robobees.simbeeotic.model.Aggregator;
+import harvard.robobees.simbeeotic.model.RuntimeModelingException;
+import harvard.robobees.simbeeotic.model.SimpleBee;
+import org.apache.log4j.Logger;
+
+import javax.vecmath.Vector3f;
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * A long-lived co-simulation session with an ns-3 process. A single ns-3
+ * process is started per scenario variation (keyed by the {@link SimEngine}
+ * that executes it) and shared by all of the {@link NS} models in that
+ * variation. The node topology is built once, when the first packet is sent,
+ * and is kept alive for the remainder of the variation so that the routing
+ * protocol does not have to converge again for every transmission. After that,
+ * only the bees that have moved further than the mobility epsilon are sent to
+ * ns-3, where they become waypoints of the node mobility.
+ *
+ * <br/>
+ * The ns-3 process runs in a worker from the {@link NSWorkerPool}, which bounds the
+ * number of concurrent processes and gives each one its own working directory.
+ * The ns-3 side connects back to a loopback socket opened by this class and
+ * exchanges binary frames with it (see {@link NSWire}). Positions and transmissions
+ * are written to ns-3, which advances its own clock and answers with the
+ * resulting receptions.
+ *
+ * <br/>
+ * If a batch window is configured, packets from all of the bees are queued
+ * with {@link #enqueue(NSPacket)} and handed to ns-3 together by {@link #flush(SimTime)}
+ * so that the cost of a round trip is shared by every packet in the window.
+ * Alternatively, queued packets can be exchanged using a conservative
+ * synchronization protocol (see {@link #synchronize(SimTime)}) that lets
+ * ns-3 run concurrently with the rest of the simulation.
+ *
+ * <br/>
+ * Requests are always written by the simulation thread, but the responses are
+ * read by a background thread so that a transmission can be handed to ns-3 with
+ * {@link #transmitAsync(List)} while the simulation carries on.
+ *
+ * @author unnamed
+ */
+public class NSSession {
+
+    private SimEngine simEngine;
+    private String ns3Dir;
+    private String program;
+    private long drainTime;   // ms
+    private long batchWindow;  // ms
+    private float mobilityEpsilon;  // m
+    private String[] settings;
+    private int refCount = 0;
+
+    private Process process;
+    private NSWorkerPool.Worker worker;
+    private ServerSocket server;
+    private Socket sock;
+    private NSWire wire;
+
+    private List<SimpleBee> bees;
+    private Map<Integer, Integer> modelToNode = new HashMap<Integer, Integer>();
+    private int[] nodeToModel;
+    private float[] sentPositions;
+    private int[] moved;
+
+    private List<NSPacket> batch = new ArrayList<NSPacket>();
+    private Map<Integer, NSPacket> inFlight = new ConcurrentHashMap<Integer, NSPacket>();
+    private int nextIndex = 0;
+    private boolean syncClaimed = false;
+    private long lookahead = 0;  // ns, the part of the link delay modeled outside of ns-3
+    private Future<List<NSPacket>> pendingGrant;
+    private NSResultCache cache;
+    private float cacheQuantum;
+    private Aggregator cacheStats;
+    private ExecutorService reader;
+
+    private static final Map<SimEngine, NSSession> sessions = new HashMap<SimEngine, NSSession>();
+
+    private static final long CONNECT_TIMEOUT = 300;  // s, waf may need to rebuild the script
+    private static final long QUIT_TIMEOUT = 10;      // s
+
+    private static Logger logger = Logger.getLogger(NSSession.class);
+
+
+    private NSSession(SimEngine engine, String ns3Dir, String program, long drainTime, long batchWindow,
+                      float mobilityEpsilon, String[] settings) {
+
+        this.simEngine = engine;
+        this.ns3Dir = ns3Dir;
+        this.program = program;
+        this.drainTime = drainTime;
+        this.batchWindow = batchWindow;
+        this.mobilityEpsilon = mobilityEpsilon;
+        this.settings = settings;
+    }
+
+
+    /**
+     * Gets the session for the scenario variation being executed by the given engine,
+     * creating it if necessary. The parameters are only used when the session is created,
+     * so the first model to acquire a session determines its configuration. Every call to
+     * this method must be balanced by a call to {@link #release()}.
+     *
+     * @param engine The engine executing the current scenario variation.
+     * @param ns3Dir The ns-3 installation directory (the one containing waf).
+     * @param program The ns-3 program to run, relative to the ns-3 directory.
+     * @param drainTime The amount of ns-3 time to run after each set of transmissions (in ms).
+     * @param batchWindow The amount of time over which transmissions are collected into a single
+     *                    batch (in ms). A value of zero disables batching.
+     * @param mobilityEpsilon The distance that a bee has to move before its position is sent to ns-3 (in m).
+     * @param protocol The routing protocol used by ns-3.
+     * @param dataRate The data rate of the ns-3 channel.
+     * @param delay The delay of the ns-3 channel.
+     * @param baseIP The base of the address range assigned to nodes.
+     * @param subnetMask The subnet mask of the address range assigned to nodes.
+     *
+     * @return The shared session.
+     */
+    public static synchronized NSSession acquire(SimEngine engine, String ns3Dir, String program,
+                                                 long drainTime, long batchWindow, float mobilityEpsilon, String protocol,
+                                                 String dataRate, String delay, String baseIP, String subnetMask) {
+
+        NSSession session = sessions.get(engine);
+
+        if (session == null) {
+
+            String[] settings = {protocol, dataRate, delay, baseIP, subnetMask};
+
+            session = new NSSession(engine, ns3Dir, program, drainTime, batchWindow, mobilityEpsilon, settings);
+            sessions.put(engine, session);
+        }
+
+        session.refCount++;
+
+        return session;
+    }
+
+
+    /**
+     * Releases a reference to this session. The ns-3 process is shut down when the last
+     * reference is released.
+     */
+    public void release() {
+
+        synchronized(NSSession.class) {
+
+            if (--refCount > 0) {
+                return;
+            }
+
+            sessions.remove(simEngine);
+        }
+
+        close();
+    }
+
+
+    /**
+     * Gets the window over which transmissions are batched.
+     *
+     * @return The batch window (in ms), or zero if batching is disabled.
+     */
+    public long getBatchWindow() {
+        return batchWindow;
+    }
+
+
+    /**
+     * Adds a packet to the batch that will be sent on the next call to {@link #flush(SimTime)}.
+     *
+     * @param packet The packet to transmit.
+     *
+     * @return True if the packet opened a new batch, in which case the caller is
+     *         responsible for flushing the batch at the end of the window.
+     */
+    public synchronized boolean enqueue(NSPacket packet) {
+
+        batch.add(packet);
+
+        return (batch.size() == 1);
+    }
+
+
+    /**
+     * Sends all of the queued packets to ns-3 as a single batch. Receptions that ns-3
+     * reports as occurring before the end of the window are delayed until the given time.
+     *
+     * @param now The current time, which is the end of the batch window.
+     *
+     * @return The packets that were received as a result of the batch.
+     */
+    public synchronized List<NSPacket> flush(SimTime now) {
+
+        List<NSPacket> sent = batch;
+
+        batch = new ArrayList<NSPacket>();
+
+        List<NSPacket> received = await(transmitAsync(sent), null);
+
+        for (int i = 0; i < received.size(); i++) {
+
+            NSPacket rx = received.get(i);
+
+            if (rx.getRxTime().compareTo(now) < 0) {
+
+                NSPacket delayed = new NSPacket(rx.getPayload(), rx.getFromId(), rx.getToId(), rx.getTxTime(), now);
+
+                delayed.setOrigin(rx.getOrigin());
+                received.set(i, delayed);
+            }
+        }
+
+        return received;
+    }
+
+
+    /**
+     * Sends a packet through ns-3 and collects the resulting receptions.
+     *
+     * @param packet The packet to transmit.
+     *
+     * @return The packets that were received as a result of the transmission.
+     *
+     * @see #transmit(List)
+     */
+    public List<NSPacket> transmit(NSPacket packet) {
+        return transmit(Collections.singletonList(packet));
+    }
+
+
+    /**
+     * Sends a set of packets through ns-3 at once and collects the resulting receptions. The
+     * current position of every bee is synchronized with ns-3 prior to the transmission.
+     *
+     * @param packets The packets to transmit.
+     *
+     * @return The packets that were received as a result of the transmissions, with the
+     *         sender and receiver identified by model ID and the reception time set.
+     */
+    public List<NSPacket> transmit(List<NSPacket> packets) {
+        return await(transmitAsync(packets), null);
+    }
+
+
+    /**
+     * Sends a set of packets through ns-3 at once without waiting for the result. The
+     * positions of the bees and the packets are handed to ns-3 before this method
+     * returns, and the receptions are read by a background thread while the simulation
+     * continues.
+     *
+     * @param packets The packets to transmit.
+     *
+     * @return The pending receptions, which can be collected with {@link #await(Future, SimTime)}.
+     */
+    public synchronized Future<List<NSPacket>> transmitAsync(List<NSPacket> packets) {
+
+        if (lookahead > 0) {
+            throw new RuntimeModelingException("The ns-3 session uses conservative synchronization, " +
+                                               "so all of its models must use it.");
+        }
+
+        if (packets.isEmpty()) {
+            return completed(new ArrayList<NSPacket>());
+        }
+
+        if (bees == null) {
+            assignNodes();
+        }
+
+        final byte[] key;
+
+        if (cache != null) {
+
+            key = getCacheKey(packets);
+
+            List<NSResultCache.Reception> cached = cache.get(key);
+
+            cacheStats.addValue("ns-cache", (cached != null) ? "hits" : "misses", 1);
+
+            if (cached != null) {
+                return completed(fromCache(packets, cached));
+            }
+        }
+        else {
+            key = null;
+        }
+
+        if (process == null) {
+            start();
+        }
+
+        final List<NSPacket> sent = new ArrayList<NSPacket>(packets);
+        final int first = nextIndex;
+
+        try {
+
+            writeMoves(-1);
+
+            wire.begin(NSWire.TRANSMIT);
+            wire.putInt(packets.size());
+
+            for (NSPacket packet : packets) {
+
+                int index = nextIndex++;
+
+                inFlight.put(index, packet);
+
+                wire.putInt(index);
+                wire.putInt(getNodeIndex(packet.getFromId()));
+                wire.putInt(getNodeIndex(packet.getToId()));
+                wire.putBytes(packet.getPayload());
+            }
+
+            wire.end();
+            wire.flush();
+        }
+        catch(IOException ioe) {
+            throw new RuntimeModelingException("Could not communicate with the ns-3 process.", ioe);
+        }
+
+        final int last = nextIndex;
+
+        return reader.submit(new Callable<List<NSPacket>>() {
+
+            public List<NSPacket> call() throws IOException {
+
+                List<NSPacket> received = new ArrayList<NSPacket>();
+
+                readReceptions(received, 0);
+
+                // everything has been drained, so nothing else can arrive
+                for (int i = first; i < last; i++) {
+                    inFlight.remove(i);
+                }
+
+                List<NSResultCache.Reception> result = (key != null) ? toCache(sent, received) : null;
+
+                if (result != null) {
+                    cache.put(key, result);
+                }
+
+                return received;
+            }
+        });
+    }
+
+
+    /**
+     * Enables caching of the results of lockstep transmissions. Only the first call has an
+     * effect, so the first model to enable the cache determines its configuration.
+     *
+     * @param capacity The maximum number of results kept in memory.
+     * @param dir The directory in which results are persisted across runs, or {@code null}.
+     * @param quantum The resolution at which node positions are compared (in m).
+     * @param stats The aggregator to which cache hits and misses are reported.
+     */
+    public synchronized void enableCache(int capacity, File dir, float quantum, Aggregator stats) {
+
+        if (cache != null) {
+            return;
+        }
+
+        cache = new NSResultCache(capacity, dir);
+        cacheQuantum = quantum;
+        cacheStats = stats;
+    }
+
+
+    /**
+     * Builds the cache key for a batch of transmissions, which consists of the network
+     * settings, the quantized positions of all nodes and the transmissions themselves.
+     */
+    private byte[] getCacheKey(List<NSPacket> packets) {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        try {
+
+            for (String setting : settings) {
+                out.writeUTF(setting);
+            }
+
+            out.writeInt(bees.size());
+
+            for (SimpleBee bee : bees) {
+
+                Vector3f pos = bee.getTruthPosition();
+
+                out.writeInt(Math.round(pos.x / cacheQuantum));
+                out.writeInt(Math.round(pos.y / cacheQuantum));
+                out.writeInt(Math.round(pos.z / cacheQuantum));
+            }
+
+            out.writeInt(packets.size());
+
+            for (NSPacket packet : packets) {
+
+                out.writeInt(getNodeIndex(packet.getFromId()));
+                out.writeInt(getNodeIndex(packet.getToId()));
+                out.writeInt(packet.getPayload().length);
+                out.write(packet.getPayload());
+            }
+        }
+        catch(IOException ioe) {
+            throw new RuntimeException(ioe);  // cannot happen with an in-memory stream
+        }
+
+        return bytes.toByteArray();
+    }
+
+
+    /**
+     * Converts the receptions of a batch into a form that is independent of the packet
+     * objects and of the model IDs, which may be assigned differently in another run.
+     *
+     * @return The receptions, or {@code null} if a reception does not match a packet in
+     *         the batch, in which case the result should not be cached.
+     */
+    private List<NSResultCache.Reception> toCache(List<NSPacket> sent, List<NSPacket> received) {
+
+        List<NSResultCache.Reception> cached = new ArrayList<NSResultCache.Reception>(received.size());
+
+        for (NSPacket packet : received) {
+
+            NSResultCache.Reception rx = new NSResultCache.Reception();
+
+            rx.batchIndex = -1;
+
+            for (int i = 0; i < sent.size(); i++) {
+
+                if (sent.get(i) == packet.getOrigin()) {
+
+                    rx.batchIndex = i;
+                    break;
+                }
+            }
+
+            if (rx.batchIndex < 0) {
+
+                logger.warn("A reception from ns-3 does not match the batch, so the result is not cached.");
+                return null;
+            }
+
+            rx.delay = packet.getRxTime().getTime() - packet.getTxTime().getTime();
+            rx.fromNode = getNodeIndex(packet.getFromId());
+            rx.toNode = getNodeIndex(packet.getToId());
+            rx.payload = packet.getPayload();
+
+            cached.add(rx);
+        }
+
+        return cached;
+    }
+
+
+    /**
+     * Recreates the receptions of a batch from a cache entry.
+     */
+    private List<NSPacket> fromCache(List<NSPacket> sent, List<NSResultCache.Reception> cached) {
+
+        List<NSPacket> received = new ArrayList<NSPacket>(cached.size());
+
+        for (NSResultCache.Reception rx : cached) {
+
+            NSPacket origin = sent.get(rx.batchIndex);
+            NSPacket packet = new NSPacket(rx.payload, nodeToModel[rx.fromNode], nodeToModel[rx.toNode], origin.getTxTime(),
+                                           new SimTime(origin.getTxTime(), rx.delay, TimeUnit.NANOSECONDS));
+
+            packet.setOrigin(origin);
+            received.add(packet);
+        }
+
+        return received;
+    }
+
+
+    /**
+     * Wraps a result that is already known in a future.
+     */
+    private static Future<List<NSPacket>> completed(final List<NSPacket> result) {
+
+        FutureTask<List<NSPacket>> future = new FutureTask<List<NSPacket>>(new Callable<List<NSPacket>>() {
+
+            public List<NSPacket> call() {
+                return result;
+            }
+        });
+
+        future.run();
+
+        return future;
+    }
+
+
+    /**
+     * Waits for pending receptions to be read from ns-3.
+     *
+     * @param pending The pending receptions.
+     * @param now The current time, or {@code null}. The receptions are delivered from this time on,
+     *            so none of them may occur before it.
+     *
+     * @return The received packets.
+     *
+     * @throws CausalityViolationException If ns-3 reports a reception before the current time.
+     */
+    public List<NSPacket> await(Future<List<NSPacket>> pending, SimTime now) {
+
+        List<NSPacket> received;
+
+        try {
+            received = pending.get();
+        }
+        catch(InterruptedException ie) {
+            throw new RuntimeModelingException("Interrupted while waiting for ns-3.", ie);
+        }
+        catch(ExecutionException ee) {
+            throw new RuntimeModelingException("Could not communicate with the ns-3 process.", ee.getCause());
+        }
+
+        if (now != null) {
+
+            for (NSPacket rx : received) {
+
+                if (rx.getRxTime().compareTo(now) < 0) {
+
+                    throw new CausalityViolationException("ns-3 delivered a packet in the past (" + rx.getRxTime() +
+                                                          " < " + now + "), it was collected too late.");
+                }
+            }
+        }
+
+        return received;
+    }
+
+
+    /**
+     * Switches this session to conservative synchronization and claims the responsibility
+     * for driving it. Every model that uses the session must call this before the session
+     * starts, with the same lookahead, and exactly one of them should then call
+     * {@link #synchronize(SimTime)} periodically.
+     *
+     * <br/>
+     * The lookahead is taken out of the delay of the ns-3 link, which must be at least as
+     * long. ns-3 models the remainder of the delay and the lookahead is added back to every
+     * reception, so the latencies are those of the configured link.
+     *
+     * @param lookahead The lookahead (in ns), which must be greater than zero.
+     *
+     * @return True if the caller is the first to claim synchronization, false otherwise.
+     */
+    public synchronized boolean claimSync(long lookahead) {
+
+        if (this.lookahead != lookahead) {
+
+            if ((this.lookahead > 0) || (process != null)) {
+                throw new RuntimeModelingException("All of the models in an ns-3 session must use the same " +
+                                                   "synchronization and lookahead.");
+            }
+
+            long linkDelay = NS.parseTime(settings[2]);
+
+            if (lookahead > linkDelay) {
+
+                throw new CausalityViolationException("The lookahead (" + lookahead + " ns) is longer than the " +
+                                                      "ns-3 link delay (" + linkDelay + " ns), so receptions " +
+                                                      "could be due before they are known.");
+            }
+
+            settings = settings.clone();
+            settings[2] = (linkDelay - lookahead) + "ns";
+
+            this.lookahead = lookahead;
+        }
+
+        if (syncClaimed) {
+            return false;
+        }
+
+        syncClaimed = true;
+
+        return true;
+    }
+
+
+    /**
+     * Performs one step of the conservative synchronization protocol with ns-3.
+     *
+     * <br/>
+     * Packets enter ns-3 at the time they were transmitted and ns-3 is granted up to the
+     * current time, since every packet sent until now is known. Because ns-3 models the
+     * link delay less the lookahead {@code L}, a reception that ns-3 produces at time
+     * {@code t} occurs at {@code t + L}, so the grant yields every reception up to
+     * {@code now + L} and the simulation may run up to {@code L} ahead of ns-3.
+     *
+     * <br/>
+     * ns-3 runs to the bound concurrently with the rest of the simulation, and a call
+     * to this method only blocks until ns-3 has finished the grant from the previous call.
+     * If it is invoked at least every {@code L / 2} all of the receptions that it returns
+     * are in the future.
+     *
+     * @param now The current time.
+     *
+     * @return The receptions that ns-3 produced while completing the previous grant.
+     */
+    public synchronized List<NSPacket> synchronize(SimTime now) {
+
+        if (lookahead <= 0) {
+            throw new RuntimeModelingException("Conservative synchronization has not been claimed.");
+        }
+
+        List<NSPacket> received = new ArrayList<NSPacket>();
+
+        if (process == null) {
+            start();
+        }
+
+        // wait for ns-3 to catch up to the previously granted bound
+        if (pendingGrant != null) {
+
+            received = await(pendingGrant, null);
+            pendingGrant = null;
+        }
+
+        try {
+
+            for (NSPacket rx : received) {
+
+                if (rx.getRxTime().compareTo(now) < 0) {
+
+                    throw new CausalityViolationException("ns-3 delivered a packet in the past (" + rx.getRxTime() +
+                                                          " < " + now + "), the lookahead is too large.");
+                }
+            }
+
+            // the new positions take effect along with the packets sent until now
+            writeMoves(now.getTime());
+
+            wire.begin(NSWire.SCHEDULE);
+            wire.putInt(batch.size());
+
+            for (NSPacket packet : batch) {
+
+                int index = nextIndex++;
+
+                inFlight.put(index, packet);
+
+                wire.putInt(index);
+                wire.putLong(packet.getTxTime().getTime());
+                wire.putInt(getNodeIndex(packet.getFromId()));
+                wire.putInt(getNodeIndex(packet.getToId()));
+                wire.putBytes(packet.getPayload());
+            }
+
+            wire.end();
+
+            batch.clear();
+
+            wire.begin(NSWire.GRANT);
+            wire.putLong(now.getTime());
+            wire.end();
+            wire.flush();
+        }
+        catch(IOException ioe) {
+            throw new RuntimeModelingException("Could not communicate with the ns-3 process.", ioe);
+        }
+
+        final long offset = lookahead;
+
+        pendingGrant = reader.submit(new Callable<List<NSPacket>>() {
+
+            public List<NSPacket> call() throws IOException {
+
+                List<NSPacket> granted = new ArrayList<NSPacket>();
+
+                readReceptions(granted, offset);
+
+                return granted;
+            }
+        });
+
+        // forget packets that are too old to still be in flight
+        long oldest = now.getTime() - TimeUnit.MILLISECONDS.toNanos(drainTime) - lookahead;
+        Iterator<NSPacket> it = inFlight.values().iterator();
+
+        while (it.hasNext()) {
+
+            if (it.next().getTxTime().getTime() < oldest) {
+                it.remove();
+            }
+        }
+
+        return received;
+    }
+
+
+    /**
+     * Reads the receptions that ns-3 produced in response to the oldest unanswered request.
+     * This is only called by the reader thread.
+     *
+     * @param received The list to which the receptions are added.
+     * @param offset The part of the link delay that is not modeled by ns-3 (in ns).
+     */
+    private void readReceptions(List<NSPacket> received, long offset) throws IOException {
+
+        if (wire.receive() != NSWire.RECEPTIONS) {
+            throw new RuntimeModelingException("Unexpected response from the ns-3 process.");
+        }
+
+        int count = wire.getInt();
+
+        for (int i = 0; i < count; i++) {
+
+            int index = wire.getInt();
+            long delay = wire.getLong();
+            int rcvr = wire.getInt();
+            int sndr = wire.getInt();
+            byte[] payload = wire.getBytes();
+
+            NSPacket packet = findSent(index, sndr);
+
+            if (packet == null) {
+
+                logger.warn("Dropping a reception from ns-3 that does not match a transmission.");
+                continue;
+            }
+
+            int fromId = (sndr < 0) ? packet.getFromId() : nodeToModel[sndr];
+            SimTime rxTime = new SimTime(packet.getTxTime(), offset + delay, TimeUnit.NANOSECONDS);
+
+            NSPacket rx = new NSPacket(payload, fromId, nodeToModel[rcvr], packet.getTxTime(), rxTime);
+
+            rx.setOrigin(packet);
+            received.add(rx);
+        }
+    }
+
+
+    /**
+     * Finds the transmitted packet that a reception corresponds to. The index reported by
+     * ns-3 is used if it is known, otherwise the first packet in flight from the same
+     * sender is used.
+     */
+    private NSPacket findSent(int index, int sndr) {
+
+        NSPacket packet = inFlight.get(index);
+
+        if ((packet == null) && (sndr >= 0)) {
+
+            for (NSPacket p : inFlight.values()) {
+
+                if (p.getFromId() == nodeToModel[sndr]) {
+                    return p;
+                }
+            }
+        }
+
+        return packet;
+    }
+
+
+    /**
+     * Gets the ns-3 node index that corresponds to a model.
+     *
+     * @param modelId The model ID of a bee, or -1 for broadcast.
+     *
+     * @return The ns-3 node index, or -1 for broadcast.
+     */
+    private int getNodeIndex(int modelId) {
+
+        if (modelId < 0) {
+            return -1;
+        }
+
+        Integer index = modelToNode.get(modelId);
+
+        if (index == null) {
+            throw new RuntimeModelingException("Model " + modelId + " is not a node in the ns-3 topology.");
+        }
+
+        return index;
+    }
+
+
+    /**
+     * Sends the initial position of every node to ns-3.
+     */
+    private void writeNodes() {
+
+        wire.begin(NSWire.NODES);
+        wire.putInt(bees.size());
+
+        for (int i = 0; i < bees.size(); i++) {
+
+            Vector3f pos = bees.get(i).getTruthPosition();
+
+            sentPositions[i * 3] = pos.x;
+            sentPositions[i * 3 + 1] = pos.y;
+            sentPositions[i * 3 + 2] = pos.z;
+
+            wire.putFloat(pos.x);
+            wire.putFloat(pos.y);
+            wire.putFloat(pos.z);
+        }
+
+        wire.end();
+    }
+
+
+    /**
+     * Sends the position of every node that has moved further than the mobility epsilon
+     * since its position was last sent. Nothing is sent if no node has moved.
+     *
+     * @param time The time at which the nodes reach their new positions (in ns), or -1
+     *             if they should be moved immediately.
+     */
+    private void writeMoves(long time) {
+
+        float epsSq = mobilityEpsilon * mobilityEpsilon;
+        int count = 0;
+
+        for (int i = 0; i < bees.size(); i++) {
+
+            Vector3f pos = bees.get(i).getTruthPosition();
+
+            float dx = pos.x - sentPositions[i * 3];
+            float dy = pos.y - sentPositions[i * 3 + 1];
+            float dz = pos.z - sentPositions[i * 3 + 2];
+
+            if ((dx * dx) + (dy * dy) + (dz * dz) > epsSq) {
+
+                sentPositions[i * 3] = pos.x;
+                sentPositions[i * 3 + 1] = pos.y;
+                sentPositions[i * 3 + 2] = pos.z;
+
+                moved[count++] = i;
+            }
+        }
+
+        if (count == 0) {
+            return;
+        }
+
+        wire.begin(NSWire.MOVES);
+        wire.putLong(time);
+        wire.putInt(count);
+
+        for (int i = 0; i < count; i++) {
+
+            int node = moved[i];
+
+            wire.putInt(node);
+            wire.putFloat(sentPositions[node * 3]);
+            wire.putFloat(sentPositions[node * 3 + 1]);
+            wire.putFloat(sentPositions[node * 3 + 2]);
+        }
+
+        wire.end();
+    }
+
+
+    /**
+     * Assigns an ns-3 node index to every bee. Node indices are assigned once and remain
+     * fixed for the lifetime of the session.
+     */
+    private void assignNodes() {
+
+        bees = simEngine.findModelsByType(SimpleBee.class);
+        nodeToModel = new int[bees.size()];
+        sentPositions = new float[bees.size() * 3];
+        moved = new int[bees.size()];
+
+        for (int i = 0; i < bees.size(); i++) {
+
+            nodeToModel[i] = bees.get(i).getModelId();
+            modelToNode.put(nodeToModel[i], i);
+        }
+    }
+
+
+    /**
+     * Starts the ns-3 process and builds the node topology.
+     */
+    private void start() {
+
+        if (bees == null) {
+            assignNodes();
+        }
+
+        try {
+
+            server = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+            server.setSoTimeout((int)TimeUnit.SECONDS.toMillis(CONNECT_TIMEOUT));
+
+            double drain = (double)drainTime / TimeUnit.SECONDS.toMillis(1);
+
+            // the script runs in the working directory of its worker, so that
+            // concurrent variations do not share any files
+            worker = NSWorkerPool.acquire();
+
+            ProcessBuilder pb = new ProcessBuilder("./waf", "--run",
+                                                   program + " --port=" + server.getLocalPort() + " --drain=" + drain,
+                                                   "--cwd=" + worker.getDirectory().getAbsolutePath());
+
+            pb.directory(new File(ns3Dir));
+            pb.redirectErrorStream(true);
+
+            process = NSWorkerPool.launch(pb, new NSWorkerPool.Launch() {
+
+                public void waitForStartup(Process started) throws IOException {
+
+                    // the output of waf and the script is only interesting for debugging,
+                    // but it has to be consumed so that the process does not block
+                    final BufferedReader stdout = new BufferedReader(new InputStreamReader(started.getInputStream()));
+
+                    Thread drainer = new Thread(new Runnable() {
+
+                        public void run() {
+
+                            String line;
+
+                            try {
+
+                                while ((line = stdout.readLine()) != null) {
+                                    logger.debug(" .. ns-3: " + line);
+                                }
+                            }
+                            catch(IOException ioe) {
+                                // the process has exited
+                            }
+                        }
+                    });
+
+                    drainer.setDaemon(true);
+                    drainer.start();
+
+                    // once the script connects it has been built, so the next worker can launch
+                    sock = server.accept();
+                }
+            });
+
+            sock.setTcpNoDelay(true);
+
+            // responses are read in the order that requests are sent, so a single thread is used
+            reader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+                public Thread newThread(Runnable r) {
+
+                    Thread thread = new Thread(r, "ns-3 reader");
+
+                    thread.setDaemon(true);
+
+                    return thread;
+                }
+            });
+
+            wire = new NSWire(new BufferedInputStream(sock.getInputStream()), sock.getOutputStream());
+
+            wire.begin(NSWire.SETTINGS);
+
+            for (String setting : settings) {
+                wire.putString(setting);
+            }
+
+            wire.end();
+
+            writeNodes();
+            wire.flush();
+
+            try {
+
+                if (wire.receive() != NSWire.READY) {
+                    throw new RuntimeModelingException("Unexpected response from the ns-3 process.");
+                }
+            }
+            catch(EOFException eofe) {
+                throw new RuntimeModelingException("The ns-3 process exited before the topology was built.", eofe);
+            }
+
+            logger.info("Started ns-3 session with " + bees.size() + " nodes.");
+        }
+        catch(SocketTimeoutException ste) {
+
+            close();
+            throw new RuntimeModelingException("Timed out waiting for ns-3 to connect.", ste);
+        }
+        catch(IOException ioe) {
+
+            close();
+            throw new RuntimeModelingException("Could not start the ns-3 process.", ioe);
+        }
+    }
+
+
+    /**
+     * Shuts down the ns-3 process and releases the connection.
+     */
+    private synchronized void close() {
+
+        try {
+
+            if (wire != null) {
+
+                wire.begin(NSWire.QUIT);
+                wire.end();
+                wire.flush();
+            }
+        }
+        catch(IOException ioe) {
+            // the process may already be gone
+        }
+
+        try {
+
+            if (sock != null) {
+                sock.close();
+            }
+
+            if (server != null) {
+                server.close();
+            }
+        }
+        catch(IOException ioe) {
+            logger.warn("Could not close the ns-3 connection.", ioe);
+        }
+
+        if (process != null) {
+            waitForExit();
+        }
+
+        if (reader != null) {
+            reader.shutdownNow();
+        }
+
+        if (worker != null) {
+            NSWorkerPool.release(worker);
+        }
+
+        process = null;
+        worker = null;
+        reader = null;
+        pendingGrant = null;
+        sock = null;
+        server = null;
+        wire = null;
+    }
+
+
+    /**
+     * Waits for the ns-3 process to exit after it was asked to quit, and kills
+     * it if it does not exit in time.
+     */
+    private void waitForExit() {
+
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(QUIT_TIMEOUT);
+
+        while (true) {
+
+            try {
+
+                process.exitValue();
+                return;
+            }
+            catch(IllegalThreadStateException itse) {
+                // still running
+            }
+
+            if (System.currentTimeMillis() >= deadline) {
+
+                logger.warn("The ns-3 process did not exit within " + QUIT_TIMEOUT + " s, killing it.");
+                break;
+            }
+
+            try {
+                Thread.sleep(50);
+            }
+            catch(InterruptedException ie) {
+
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        process.destroy();
+    }
+}
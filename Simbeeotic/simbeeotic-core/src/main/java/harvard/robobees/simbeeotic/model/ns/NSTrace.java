@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model.ns;
+
+
+import harvard.robobees.simbeeotic.SimEngine;
+import harvard.robobees.simbeeotic.SimTime;
+import harvard.robobees.simbeeotic.model.RuntimeModelingException;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * A binary, append-only log of the packets that were transmitted and received by the
+ * NS models of a scenario variation. The file starts with a magic number and a version,
+ * followed by records of the form:
+ *
+ * <pre>
+ * type      (byte, 1 = transmit, 2 = receive)
+ * id        (long, assigned to each transmission, receptions refer to the transmission)
+ * time      (long, the simulation time when the record was made, in ns)
+ * tx time   (long, the transmit time of the packet, in ns)
+ * rx time   (long, the receive time of the packet, in ns, or -1)
+ * from      (int, model ID)
+ * to        (int, model ID, -1 for broadcast)
+ * payload   (int length, followed by the bytes)
+ * </pre>
+ *
+ * A trace is shared by all of the NS models of a variation, and the file is
+ * overwritten when the trace is opened, so each variation should use its own file.
+ *
+ * @author unnamed
+ */
+public class NSTrace {
+
+    private SimEngine simEngine;
+    private DataOutputStream out;
+    private long nextId = 0;
+    private int refCount = 0;
+
+    public static final int MAGIC = 0x4e535452;  // NSTR
+    public static final int VERSION = 1;
+
+    public static final byte TRANSMIT = 1;
+    public static final byte RECEIVE = 2;
+
+    private static final Map<SimEngine, NSTrace> traces = new HashMap<SimEngine, NSTrace>();
+
+    private static Logger logger = Logger.getLogger(NSTrace.class);
+
+
+    private NSTrace(SimEngine engine, DataOutputStream out) {
+
+        this.simEngine = engine;
+        this.out = out;
+    }
+
+
+    /**
+     * Gets the trace for the scenario variation being executed by the given engine, creating
+     * it if necessary. Every call to this method must be balanced by a call to {@link #release()}.
+     *
+     * @param engine The engine executing the current scenario variation.
+     * @param path The path of the trace file, which is only used when the trace is created.
+     *
+     * @return The shared trace.
+     */
+    public static synchronized NSTrace acquire(SimEngine engine, String path) {
+
+        NSTrace trace = traces.get(engine);
+
+        if (trace == null) {
+
+            try {
+
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+
+                trace = new NSTrace(engine, out);
+            }
+            catch(IOException ioe) {
+                throw new RuntimeModelingException("Could not open the trace file: " + path, ioe);
+            }
+
+            traces.put(engine, trace);
+        }
+
+        trace.refCount++;
+
+        return trace;
+    }
+
+
+    /**
+     * Releases a reference to this trace. The file is closed when the last reference is released.
+     */
+    public void release() {
+
+        synchronized(NSTrace.class) {
+
+            if (--refCount > 0) {
+                return;
+            }
+
+            traces.remove(simEngine);
+        }
+
+        synchronized(this) {
+
+            try {
+                out.close();
+            }
+            catch(IOException ioe) {
+                logger.warn("Could not close the trace file.", ioe);
+            }
+        }
+    }
+
+
+    /**
+     * Records a transmission. The packet is assigned an ID so that its receptions can
+     * be matched to it.
+     *
+     * @param time The current time.
+     * @param packet The transmitted packet.
+     */
+    public synchronized void recordTransmit(SimTime time, NSPacket packet) {
+
+        packet.setTraceId(nextId++);
+
+        write(TRANSMIT, packet.getTraceId(), time, packet);
+    }
+
+
+    /**
+     * Records a reception.
+     *
+     * @param time The current time.
+     * @param packet The received packet.
+     */
+    public synchronized void recordReceive(SimTime time, NSPacket packet) {
+
+        NSPacket origin = packet.getOrigin();
+
+        write(RECEIVE, (origin != null) ? origin.getTraceId() : -1, time, packet);
+    }
+
+
+    private void write(byte type, long id, SimTime time, NSPacket packet) {
+
+        byte[] payload = packet.getPayload();
+
+        try {
+
+            out.writeByte(type);
+            out.writeLong(id);
+            out.writeLong(time.getTime());
+            out.writeLong((packet.getTxTime() != null) ? packet.getTxTime().getTime() : -1);
+            out.writeLong((packet.getRxTime() != null) ? packet.getRxTime().getTime() : -1);
+            out.writeInt(packet.getFromId());
+            out.writeInt(packet.getToId());
+            out.writeInt(payload.length);
+            out.write(payload);
+        }
+        catch(IOException ioe) {
+            throw new RuntimeModelingException("Could not write to the trace file.", ioe);
+        }
+    }
+
+
+    /**
+     * Reads all of the records in a trace file.
+     *
+     * @param path The path of the trace file.
+     *
+     * @return The records, in the order in which they were written.
+     */
+    public static List<Record> load(String path) {
+
+        List<Record> records = new ArrayList<Record>();
+        DataInputStream in = null;
+
+        try {
+
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)));
+
+            if ((in.readInt() != MAGIC) || (in.readInt() != VERSION)) {
+                throw new RuntimeModelingException("Not a supported trace file: " + path);
+            }
+
+            while (true) {
+
+                Record record = new Record();
+
+                try {
+                    record.type = in.readByte();
+                }
+                catch(EOFException eofe) {
+                    break;
+                }
+
+                record.id = in.readLong();
+                record.time = in.readLong();
+                record.txTime = in.readLong();
+                record.rxTime = in.readLong();
+                record.fromId = in.readInt();
+                record.toId = in.readInt();
+                record.payload = new byte[in.readInt()];
+
+                in.readFully(record.payload);
+
+                records.add(record);
+            }
+        }
+        catch(EOFException eofe) {
+            logger.warn("The trace file is truncated: " + path);
+        }
+        catch(IOException ioe) {
+            throw new RuntimeModelingException("Could not read the trace file: " + path, ioe);
+        }
+        finally {
+
+            if (in != null) {
+
+                try {
+                    in.close();
+                }
+                catch(IOException ioe) {
+                    // ignore
+                }
+            }
+        }
+
+        return records;
+    }
+
+
+    /**
+     * A single entry in a trace.
+     */
+    public static class Record {
+
+        public byte type;
+        public long id;
+        public long time;
+        public long txTime;
+        public long rxTime;
+        public int fromId;
+        public int toId;
+        public byte[] payload;
+    }
+}
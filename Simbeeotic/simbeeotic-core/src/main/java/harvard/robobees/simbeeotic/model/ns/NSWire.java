@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model.ns;
+
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+
+/**
+ * The binary framing used to exchange data with the ns-3 process. Every frame
+ * consists of a 32-bit length (which does not include itself), a one byte frame
+ * type and a body. All values are little-endian, floating point positions are
+ * 32-bit and payloads are sent as a 32-bit length followed by the raw bytes.
+ *
+ * <br/>
+ * Frames are encoded into and decoded from buffers that are reused for the
+ * lifetime of the connection, so a steady stream of positions and packets does
+ * not allocate anything other than the received payloads.
+ *
+ * <pre>
+ * SETTINGS   protocol, data rate, delay, base IP, subnet mask (as payloads)
+ * NODES      count, count x (x, y, z)
+ * MOVES      time (ns, 64-bit, -1 for immediately), count, count x (node, x, y, z)
+ * TRANSMIT   count, count x (index, from, to, payload)
+ * SCHEDULE   count, count x (index, entry time (ns, 64-bit), from, to, payload)
+ * GRANT      bound (ns, 64-bit)
+ * QUIT
+ *
+ * READY
+ * RECEPTIONS count, count x (index, delay (ns, 64-bit), receiver, sender, payload)
+ * </pre>
+ *
+ * @author unnamed
+ */
+final class NSWire {
+
+    // frames sent to ns-3
+    public static final byte SETTINGS = 1;
+    public static final byte NODES = 2;
+    public static final byte MOVES = 3;
+    public static final byte TRANSMIT = 4;
+    public static final byte SCHEDULE = 5;
+    public static final byte GRANT = 6;
+    public static final byte QUIT = 7;
+
+    // frames sent by ns-3
+    public static final byte READY = 16;
+    public static final byte RECEPTIONS = 17;
+
+    private DataInputStream in;
+    private OutputStream out;
+
+    private ByteBuffer outBuf = allocate(INITIAL_CAPACITY);
+    private ByteBuffer inBuf = allocate(INITIAL_CAPACITY);
+    private int frameStart = -1;
+
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+    private static final int MAX_FRAME = 256 * 1024 * 1024;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+
+    public NSWire(InputStream in, OutputStream out) {
+
+        this.in = new DataInputStream(in);
+        this.out = out;
+    }
+
+
+    /**
+     * Starts a new frame. Frames are accumulated until {@link #flush()} is called.
+     *
+     * @param type The frame type.
+     */
+    public void begin(byte type) {
+
+        if (frameStart >= 0) {
+            throw new IllegalStateException("The previous frame has not been ended.");
+        }
+
+        ensure(5);
+
+        frameStart = outBuf.position();
+        outBuf.putInt(0);
+        outBuf.put(type);
+    }
+
+
+    /**
+     * Completes the current frame by filling in its length.
+     */
+    public void end() {
+
+        outBuf.putInt(frameStart, outBuf.position() - frameStart - 4);
+        frameStart = -1;
+    }
+
+
+    /**
+     * Writes all of the completed frames to the connection.
+     */
+    public void flush() throws IOException {
+
+        if (frameStart >= 0) {
+            throw new IllegalStateException("The current frame has not been ended.");
+        }
+
+        out.write(outBuf.array(), 0, outBuf.position());
+        out.flush();
+
+        outBuf.clear();
+    }
+
+
+    public void putInt(int value) {
+
+        ensure(4);
+        outBuf.putInt(value);
+    }
+
+
+    public void putLong(long value) {
+
+        ensure(8);
+        outBuf.putLong(value);
+    }
+
+
+    public void putFloat(float value) {
+
+        ensure(4);
+        outBuf.putFloat(value);
+    }
+
+
+    public void putBytes(byte[] value) {
+
+        ensure(4 + value.length);
+        outBuf.putInt(value.length);
+        outBuf.put(value);
+    }
+
+
+    public void putString(String value) {
+        putBytes(value.getBytes(UTF8));
+    }
+
+
+    /**
+     * Reads the next frame from the connection. The body of the frame can then be
+     * decoded with the {@code get} methods until the next call to this method.
+     *
+     * @return The type of the frame.
+     *
+     * @throws EOFException If the connection was closed.
+     */
+    public byte receive() throws IOException {
+
+        int length = Integer.reverseBytes(in.readInt());
+
+        if ((length < 1) || (length > MAX_FRAME)) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+
+        if (inBuf.capacity() < length) {
+            inBuf = allocate(Math.max(length, inBuf.capacity() * 2));
+        }
+
+        in.readFully(inBuf.array(), 0, length);
+
+        inBuf.clear();
+        inBuf.limit(length);
+
+        return inBuf.get();
+    }
+
+
+    public int getInt() {
+        return inBuf.getInt();
+    }
+
+
+    public long getLong() {
+        return inBuf.getLong();
+    }
+
+
+    public byte[] getBytes() {
+
+        byte[] value = new byte[inBuf.getInt()];
+
+        inBuf.get(value);
+
+        return value;
+    }
+
+
+    /**
+     * Makes sure that there is room for the given number of bytes in the output buffer.
+     */
+    private void ensure(int bytes) {
+
+        if (outBuf.remaining() >= bytes) {
+            return;
+        }
+
+        ByteBuffer bigger = allocate(Math.max(outBuf.capacity() * 2, outBuf.position() + bytes));
+
+        outBuf.flip();
+        bigger.put(outBuf);
+
+        outBuf = bigger;
+    }
+
+
+    private static ByteBuffer allocate(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model.ns;
+
+
+import harvard.robobees.simbeeotic.model.RuntimeModelingException;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.concurrent.Semaphore;
+
+
+/**
+ * A pool of slots in which ns-3 processes run, so that several scenario variations
+ * (in this JVM or in others sharing the same base directory) can co-simulate at once.
+ * Each worker gets its own working directory, so ns-3 output such as traces and
+ * animation files from one variation never clobbers another, and the number of
+ * concurrent processes in this JVM is bounded.
+ *
+ * <br/>
+ * Starting ns-3 through waf may rebuild the script, and concurrent builds of the same
+ * ns-3 tree conflict, so launches are serialized with {@link #launch(ProcessBuilder, Launch)}
+ * (including across JVMs, using a lock file in the base directory). Only the start of the
+ * process is serialized, the workers run concurrently once they are up.
+ *
+ * @author unnamed
+ */
+public final class NSWorkerPool {
+
+    private static Semaphore permits;
+    private static File baseDir;
+    private static int nextId = 0;
+
+    private static final Object launchLock = new Object();
+
+    private static Logger logger = Logger.getLogger(NSWorkerPool.class);
+
+
+    private NSWorkerPool() {
+    }
+
+
+    /**
+     * Configures the pool. Only the first call has an effect, so the first model to
+     * configure the pool determines the number of workers and the base directory.
+     *
+     * @param maxWorkers The maximum number of ns-3 processes that run at once in this JVM.
+     * @param dir The directory under which the working directories of the workers are created.
+     */
+    public static synchronized void configure(int maxWorkers, File dir) {
+
+        if (permits != null) {
+            return;
+        }
+
+        if (maxWorkers < 1) {
+            throw new RuntimeModelingException("The number of ns-3 workers must be positive.");
+        }
+
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new RuntimeModelingException("Could not create the ns-3 work directory: " + dir);
+        }
+
+        permits = new Semaphore(maxWorkers, true);
+        baseDir = dir;
+    }
+
+
+    /**
+     * Acquires a worker, waiting for one to become available if all of them are busy.
+     * Every worker must be returned with {@link #release(Worker)}.
+     *
+     * @return The worker.
+     */
+    public static Worker acquire() {
+
+        synchronized(NSWorkerPool.class) {
+
+            if (permits == null) {
+                configure(Runtime.getRuntime().availableProcessors(),
+                          new File(System.getProperty("java.io.tmpdir"), "simbeeotic-ns3"));
+            }
+        }
+
+        permits.acquireUninterruptibly();
+
+        int id;
+
+        synchronized(NSWorkerPool.class) {
+            id = nextId++;
+        }
+
+        try {
+
+            // a unique directory, even if other JVMs use the same base directory
+            File dir = File.createTempFile("worker-" + id + "-", "", baseDir);
+
+            if (!dir.delete() || !dir.mkdir()) {
+                throw new IOException("Could not create " + dir);
+            }
+
+            logger.debug("ns-3 worker " + id + " is using " + dir);
+
+            return new Worker(id, dir);
+        }
+        catch(IOException ioe) {
+
+            permits.release();
+            throw new RuntimeModelingException("Could not create a working directory for ns-3.", ioe);
+        }
+    }
+
+
+    /**
+     * Returns a worker to the pool. The working directory is left in place, since it
+     * may contain output of the ns-3 run.
+     *
+     * @param worker The worker.
+     */
+    public static void release(Worker worker) {
+        permits.release();
+    }
+
+
+    /**
+     * Gets the number of workers that can be acquired without waiting.
+     *
+     * @return The number of idle workers, or zero if the pool is not configured.
+     */
+    static synchronized int getIdleWorkers() {
+        return (permits == null) ? 0 : permits.availablePermits();
+    }
+
+
+    /**
+     * Discards the configuration of the pool, so that the next call to
+     * {@link #configure(int, File)} takes effect. All workers must have been released.
+     */
+    static synchronized void reset() {
+
+        permits = null;
+        baseDir = null;
+    }
+
+
+    /**
+     * Starts a process while no other ns-3 process is being launched from the same
+     * base directory, and waits until it is up.
+     *
+     * @param builder The process to start.
+     * @param launched A callback that waits for the process to finish starting up.
+     *
+     * @return The started process.
+     */
+    public static Process launch(ProcessBuilder builder, Launch launched) throws IOException {
+
+        synchronized(launchLock) {
+
+            RandomAccessFile lockFile = new RandomAccessFile(new File(baseDir, "launch.lock"), "rw");
+
+            try {
+
+                FileLock lock = lockFile.getChannel().lock();
+
+                try {
+
+                    Process process = builder.start();
+
+                    try {
+                        launched.waitForStartup(process);
+                    }
+                    catch(IOException ioe) {
+
+                        process.destroy();
+                        throw ioe;
+                    }
+
+                    return process;
+                }
+                finally {
+                    lock.release();
+                }
+            }
+            finally {
+                lockFile.close();
+            }
+        }
+    }
+
+
+    /**
+     * A callback that waits for a launched process to finish starting up.
+     */
+    public static interface Launch {
+
+        public void waitForStartup(Process process) throws IOException;
+    }
+
+
+    /**
+     * A slot in which a single ns-3 process runs.
+     */
+    public static final class Worker {
+
+        private int id;
+        private File dir;
+
+
+        private Worker(int id, File dir) {
+
+            this.id = id;
+            this.dir = dir;
+        }
+
+
+        public int getId() {
+            return id;
+        }
+
+
+        public File getDirectory() {
+            return dir;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model.ns;
+
+
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import harvard.robobees.simbeeotic.SimTime;
+import harvard.robobees.simbeeotic.model.RuntimeModelingException;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * An NS model that serves receptions from a trace recorded by {@link NSTrace}
+ * instead of simulating the network. The n-th packet transmitted by a bee is
+ * matched to the n-th transmission from that bee in the trace, and the recorded
+ * receptions are delivered with the same delays as in the original run. This
+ * is only meaningful as long as the bees keep the same communication pattern.
+ *
+ * @author unnamed
+ */
+public class ReplayNS extends AbstractNS {
+
+    private Replay replay;
+    private Map<Integer, Integer> sent = new HashMap<Integer, Integer>();
+
+    // parameters
+    private String replayFile;
+
+    private static final Map<String, Replay> replays = new HashMap<String, Replay>();
+
+    private static Logger logger = Logger.getLogger(ReplayNS.class);
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void initialize() {
+        super.initialize();
+
+        if (replayFile == null) {
+            throw new RuntimeModelingException("The ReplayNS model requires a replay file.");
+        }
+
+        replay = getReplay(replayFile);
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void receive(SimTime time, NSPacket nsPacket) {
+        super.receive(time, nsPacket);
+        notifyListeners(time, nsPacket, 0);
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void transmit(NSPacket nsPacket) {
+        super.transmit(nsPacket);
+
+        int fromId = nsPacket.getFromId();
+        int count = sent.containsKey(fromId) ? sent.get(fromId) : 0;
+        List<NSTrace.Record> transmits = replay.transmits.get(fromId);
+
+        sent.put(fromId, count + 1);
+
+        if ((transmits == null) || (count >= transmits.size())) {
+
+            logger.warn("Model " + fromId + " transmitted more packets than were recorded, dropping the packet.");
+            return;
+        }
+
+        NSTrace.Record tx = transmits.get(count);
+        List<NSTrace.Record> receptions = replay.receptions.get(tx.id);
+
+        if (receptions == null) {
+            return;
+        }
+
+        SimTime now = clock.getCurrentTime();
+
+        for (NSTrace.Record rx : receptions) {
+
+            NSPacket received = new NSPacket(nsPacket.getPayload(), rx.fromId, rx.toId, nsPacket.getTxTime(),
+                                             new SimTime(now, rx.time - tx.time, TimeUnit.NANOSECONDS));
+
+            received.setOrigin(nsPacket);
+
+            deliver(received);
+        }
+    }
+
+
+    /**
+     * Gets the contents of a trace file, indexed for replay. The trace is only read once,
+     * no matter how many models (or variations) replay it.
+     */
+    private static synchronized Replay getReplay(String path) {
+
+        Replay replay = replays.get(path);
+
+        if (replay == null) {
+
+            replay = new Replay();
+
+            for (NSTrace.Record record : NSTrace.load(path)) {
+
+                if (record.type == NSTrace.TRANSMIT) {
+
+                    if (!replay.transmits.containsKey(record.fromId)) {
+                        replay.transmits.put(record.fromId, new ArrayList<NSTrace.Record>());
+                    }
+
+                    replay.transmits.get(record.fromId).add(record);
+                }
+                else if ((record.type == NSTrace.RECEIVE) && (record.id >= 0)) {
+
+                    if (!replay.receptions.containsKey(record.id)) {
+                        replay.receptions.put(record.id, new ArrayList<NSTrace.Record>());
+                    }
+
+                    replay.receptions.get(record.id).add(record);
+                }
+            }
+
+            replays.put(path, replay);
+        }
+
+        return replay;
+    }
+
+
+    /**
+     * The records of a trace, indexed by sender and by transmission.
+     */
+    private static class Replay {
+
+        public Map<Integer, List<NSTrace.Record>> transmits = new HashMap<Integer, List<NSTrace.Record>>();
+        public Map<Long, List<NSTrace.Record>> receptions = new HashMap<Long, List<NSTrace.Record>>();
+    }
+
+
+    /**
+     * Sets the trace file to replay. This is separate from the {@code trace-file}
+     * property so that a replayed run can be recorded to a different file.
+     *
+     * @param replayFile The path of a trace written by {@link NSTrace}.
+     */
+    @Inject(optional = true)
+    public final void setReplayFile(@Named("replay-file") final String replayFile) {
+        this.replayFile = replayFile;
+    }
+}
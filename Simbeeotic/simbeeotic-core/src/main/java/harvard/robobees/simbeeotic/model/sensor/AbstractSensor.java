@@ -39,6 +39,9 @@ import harvard.robobees.simbeeotic.model.AbstractModel;
 import harvard.robobees.simbeeotic.model.Model;
 
 import javax.vecmath.Vector3f;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Random;
 
 
@@ -61,6 +64,26 @@ public abstract class AbstractSensor extends AbstractModel {
     }
 
 
+    /**
+     * {@inheritDoc}
+     *
+     * Sensor readings are computed from the host when they are requested, so the only
+     * state of a sensor is its noise generator, which is written by the base class.
+     * Sensors that keep readings between requests must extend this method.
+     */
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+        super.writeState(out);
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void readState(DataInput in) throws IOException {
+        super.readState(in);
+    }
+
+
     /**
      * Adds gaussian noise to a reading according to the given sigma value. This mechanism
      * is provided so that the values will be repeatable. This is possible because of the
@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.util;
+
+
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * A set of half-open intervals of time that can be searched for the intervals
+ * overlapping a query interval in logarithmic time (plus the number of
+ * results). The intervals are kept in a treap ordered by start time, where each
+ * node also records the latest end time in its subtree.
+ *
+ * <br/>
+ * Intervals with the same start are ordered by a caller supplied tiebreaker and
+ * then by insertion order, so the order of query results does not depend on the
+ * shape of the tree.
+ *
+ * @author unnamed
+ */
+public class IntervalTree<T> {
+
+    private Entry<T> root;
+    private int size = 0;
+    private long nextSeq = 0;
+
+    // the priorities only balance the tree, they do not affect any results
+    private final Random priorities = new Random(0x5eed);
+
+
+    /**
+     * An interval in the tree, which can be used to remove it later.
+     */
+    public static final class Entry<T> {
+
+        private final long start;
+        private final long end;
+        private final long tie;
+        private final long seq;
+        private final int priority;
+        private final T value;
+
+        private long maxEnd;
+        private Entry<T> left;
+        private Entry<T> right;
+
+
+        private Entry(long start, long end, long tie, long seq, int priority, T value) {
+
+            this.start = start;
+            this.end = end;
+            this.tie = tie;
+            this.seq = seq;
+            this.priority = priority;
+            this.value = value;
+            this.maxEnd = end;
+        }
+
+
+        public long getStart() {
+            return start;
+        }
+
+
+        public long getEnd() {
+            return end;
+        }
+
+
+        public T getValue() {
+            return value;
+        }
+    }
+
+
+    /**
+     * Adds an interval to the tree.
+     *
+     * @param start The start of the interval (inclusive).
+     * @param end The end of the interval (exclusive).
+     * @param tie A value that orders intervals with the same start.
+     * @param value The value associated with the interval.
+     *
+     * @return The entry of the new interval.
+     */
+    public Entry<T> insert(long start, long end, long tie, T value) {
+
+        if (end < start) {
+            throw new IllegalArgumentException("The interval ends before it starts.");
+        }
+
+        Entry<T> entry = new Entry<T>(start, end, tie, nextSeq++, priorities.nextInt(), value);
+
+        root = insert(root, entry);
+        size++;
+
+        return entry;
+    }
+
+
+    /**
+     * Removes an interval from the tree.
+     *
+     * @param entry The entry returned when the interval was inserted.
+     *
+     * @return True if the interval was in the tree.
+     */
+    public boolean remove(Entry<T> entry) {
+
+        int before = size;
+
+        root = remove(root, entry);
+
+        return size < before;
+    }
+
+
+    /**
+     * Finds the intervals that overlap a query interval.
+     *
+     * @param start The start of the query interval (inclusive).
+     * @param end The end of the query interval (exclusive).
+     * @param out The list to which the overlapping entries are appended, in order of start time.
+     *
+     * @return The number of overlapping intervals.
+     */
+    public int query(long start, long end, List<Entry<T>> out) {
+
+        int before = out.size();
+
+        query(root, start, end, out);
+
+        return out.size() - before;
+    }
+
+
+    /**
+     * Gets the number of intervals in the tree.
+     *
+     * @return The number of intervals.
+     */
+    public int size() {
+        return size;
+    }
+
+
+    private Entry<T> insert(Entry<T> node, Entry<T> entry) {
+
+        if (node == null) {
+            return entry;
+        }
+
+        if (compare(entry, node) < 0) {
+
+            node.left = insert(node.left, entry);
+
+            if (node.left.priority > node.priority) {
+                node = rotateRight(node);
+            }
+        }
+        else {
+
+            node.right = insert(node.right, entry);
+
+            if (node.right.priority > node.priority) {
+                node = rotateLeft(node);
+            }
+        }
+
+        update(node);
+
+        return node;
+    }
+
+
+    private Entry<T> remove(Entry<T> node, Entry<T> entry) {
+
+        if (node == null) {
+            return null;
+        }
+
+        if (node == entry) {
+
+            size--;
+
+            return merge(node.left, node.right);
+        }
+
+        if (compare(entry, node) < 0) {
+            node.left = remove(node.left, entry);
+        }
+        else {
+            node.right = remove(node.right, entry);
+        }
+
+        update(node);
+
+        return node;
+    }
+
+
+    private Entry<T> merge(Entry<T> a, Entry<T> b) {
+
+        if (a == null) {
+            return b;
+        }
+
+        if (b == null) {
+            return a;
+        }
+
+        if (a.priority > b.priority) {
+
+            a.right = merge(a.right, b);
+            update(a);
+
+            return a;
+        }
+
+        b.left = merge(a, b.left);
+        update(b);
+
+        return b;
+    }
+
+
+    private void query(Entry<T> node, long start, long end, List<Entry<T>> out) {
+
+        // nothing in this subtree ends after the query starts
+        if ((node == null) || (node.maxEnd <= start)) {
+            return;
+        }
+
+        query(node.left, start, end, out);
+
+        // everything to the right starts at or after the end of the query
+        if (node.start >= end) {
+            return;
+        }
+
+        if (node.end > start) {
+            out.add(node);
+        }
+
+        query(node.right, start, end, out);
+    }
+
+
+    private Entry<T> rotateRight(Entry<T> node) {
+
+        Entry<T> left = node.left;
+
+        node.left = left.right;
+        left.right = node;
+
+        update(node);
+        update(left);
+
+        return left;
+    }
+
+
+    private Entry<T> rotateLeft(Entry<T> node) {
+
+        Entry<T> right = node.right;
+
+        node.right = right.left;
+        right.left = node;
+
+        update(node);
+        update(right);
+
+        return right;
+    }
+
+
+    private static <T> void update(Entry<T> node) {
+
+        long max = node.end;
+
+        if ((node.left != null) && (node.left.maxEnd > max)) {
+            max = node.left.maxEnd;
+        }
+
+        if ((node.right != null) && (node.right.maxEnd > max)) {
+            max = node.right.maxEnd;
+        }
+
+        node.maxEnd = max;
+    }
+
+
+    private static <T> int compare(Entry<T> a, Entry<T> b) {
+
+        if (a.start != b.start) {
+            return (a.start < b.start) ? -1 : 1;
+        }
+
+        if (a.tie != b.tie) {
+            return (a.tie < b.tie) ? -1 : 1;
+        }
+
+        return (a.seq < b.seq) ? -1 : ((a.seq == b.seq) ? 0 : 1);
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.util;
+
+
+import java.util.Arrays;
+
+
+/**
+ * A set of primitive {@code long} values using open addressing with linear
+ * probing. Unlike a {@code HashSet<Long>}, adding and removing values does
+ * not allocate, which matters for sets that churn at the event rate.
+ *
+ * @author unnamed
+ */
+public class LongHashSet {
+
+    private static final long EMPTY = 0;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private int mask;
+    private int size = 0;
+    private boolean containsEmpty = false;
+
+
+    /**
+     * Creates an empty set with a default initial capacity.
+     */
+    public LongHashSet() {
+        this(16);
+    }
+
+
+    /**
+     * Creates an empty set.
+     *
+     * @param capacity The number of values the set can hold before it is grown.
+     */
+    public LongHashSet(int capacity) {
+        allocate(tableSize(capacity));
+    }
+
+
+    /**
+     * Adds a value to the set.
+     *
+     * @param value The value to add.
+     *
+     * @return True if the value was not already present, false otherwise.
+     */
+    public boolean add(long value) {
+
+        if (value == EMPTY) {
+
+            if (containsEmpty) {
+                return false;
+            }
+
+            containsEmpty = true;
+            size++;
+
+            return true;
+        }
+
+        int slot = find(value);
+
+        if (keys[slot] == value) {
+            return false;
+        }
+
+        keys[slot] = value;
+        size++;
+
+        if (size > keys.length * LOAD_FACTOR) {
+            rehash(keys.length * 2);
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Determines if a value is in the set.
+     *
+     * @param value The value to look for.
+     *
+     * @return True if the value is present, false otherwise.
+     */
+    public boolean contains(long value) {
+
+        if (value == EMPTY) {
+            return containsEmpty;
+        }
+
+        return keys[find(value)] == value;
+    }
+
+
+    /**
+     * Removes a value from the set.
+     *
+     * @param value The value to remove.
+     *
+     * @return True if the value was present, false otherwise.
+     */
+    public boolean remove(long value) {
+
+        if (value == EMPTY) {
+
+            if (!containsEmpty) {
+                return false;
+            }
+
+            containsEmpty = false;
+            size--;
+
+            return true;
+        }
+
+        int slot = find(value);
+
+        if (keys[slot] != value) {
+            return false;
+        }
+
+        // shift back any entries in the probe sequence that follow the removed one
+        int gap = slot;
+        int next = (gap + 1) & mask;
+
+        while (keys[next] != EMPTY) {
+
+            int home = hash(keys[next]);
+
+            // move the entry if its home slot is not cyclically within (gap, next]
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+
+                keys[gap] = keys[next];
+                gap = next;
+            }
+
+            next = (next + 1) & mask;
+        }
+
+        keys[gap] = EMPTY;
+        size--;
+
+        return true;
+    }
+
+
+    /**
+     * Removes all values from the set.
+     */
+    public void clear() {
+
+        Arrays.fill(keys, EMPTY);
+
+        containsEmpty = false;
+        size = 0;
+    }
+
+
+    /**
+     * Gets the number of values in the set.
+     *
+     * @return The set size.
+     */
+    public int size() {
+        return size;
+    }
+
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+
+    /**
+     * Finds the slot holding the value, or the empty slot where it would be inserted.
+     */
+    private int find(long value) {
+
+        int slot = hash(value);
+
+        while ((keys[slot] != EMPTY) && (keys[slot] != value)) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+
+    private int hash(long value) {
+
+        // spread the bits (from MurmurHash3's 64 bit finalizer)
+        long h = value;
+
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+
+        return (int)h & mask;
+    }
+
+
+    private void rehash(int tableSize) {
+
+        long[] old = keys;
+
+        allocate(tableSize);
+
+        for (long key : old) {
+
+            if (key != EMPTY) {
+                keys[find(key)] = key;
+            }
+        }
+    }
+
+
+    private void allocate(int tableSize) {
+
+        keys = new long[tableSize];
+        mask = tableSize - 1;
+    }
+
+
+    private static int tableSize(int capacity) {
+
+        int tableSize = 2;
+
+        while (tableSize * LOAD_FACTOR < capacity) {
+            tableSize <<= 1;
+        }
+
+        return tableSize;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.util;
+
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Random;
+
+
+/**
+ * A random number generator whose state can be saved and restored. It produces
+ * exactly the same sequence as a {@link Random} with the same seed, so it can be
+ * used in place of one without changing the results of a scenario.
+ *
+ * <br/>
+ * Unlike {@link Random}, this class is not thread safe.
+ *
+ * @author unnamed
+ */
+public class RestorableRandom extends Random {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    // these are assigned by setSeed(), which the superclass constructor calls
+    private long state;
+    private double nextNextGaussian;
+    private boolean haveNextNextGaussian;
+
+
+    /**
+     * Creates a generator with the given seed.
+     *
+     * @param seed The initial seed.
+     */
+    public RestorableRandom(long seed) {
+        super(seed);
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void setSeed(long seed) {
+
+        state = (seed ^ MULTIPLIER) & MASK;
+        haveNextNextGaussian = false;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    protected int next(int bits) {
+
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+
+        return (int)(state >>> (48 - bits));
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public double nextGaussian() {
+
+        // the polar method, as in Random (which keeps its spare value privately)
+        if (haveNextNextGaussian) {
+
+            haveNextNextGaussian = false;
+
+            return nextNextGaussian;
+        }
+
+        double v1, v2, s;
+
+        do {
+
+            v1 = 2 * nextDouble() - 1;
+            v2 = 2 * nextDouble() - 1;
+            s = v1 * v1 + v2 * v2;
+        }
+        while ((s >= 1) || (s == 0));
+
+        double multiplier = StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+
+        nextNextGaussian = v2 * multiplier;
+        haveNextNextGaussian = true;
+
+        return v1 * multiplier;
+    }
+
+
+    /**
+     * Writes the state of the generator.
+     *
+     * @param out The output to write to.
+     *
+     * @throws IOException If the state could not be written.
+     */
+    public void writeState(DataOutput out) throws IOException {
+
+        out.writeLong(state);
+        out.writeBoolean(haveNextNextGaussian);
+        out.writeDouble(nextNextGaussian);
+    }
+
+
+    /**
+     * Reads a state written by {@link #writeState}, replacing the current state.
+     *
+     * @param in The input to read from.
+     *
+     * @throws IOException If the state could not be read.
+     */
+    public void readState(DataInput in) throws IOException {
+
+        state = in.readLong();
+        haveNextNextGaussian = in.readBoolean();
+        nextNextGaussian = in.readDouble();
+    }
+}
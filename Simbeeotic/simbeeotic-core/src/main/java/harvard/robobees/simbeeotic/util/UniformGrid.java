@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.util;
+
+
+import java.util.Arrays;
+
+
+/**
+ * A uniform grid over a set of points, used to find the points that may be
+ * within a given radius of a location without visiting every point. The grid
+ * is rebuilt in place, so rebuilding it for points that move does not
+ * allocate once its arrays are large enough.
+ *
+ * <br/>
+ * Points are identified by their index in the coordinate arrays given to
+ * {@link #build}. A query returns every point in the cells that overlap the
+ * query sphere, so the caller must still check the exact distance.
+ *
+ * @author unnamed
+ */
+public class UniformGrid {
+
+    private static final int BITS = 21;
+    private static final long CELL_MASK = (1L << BITS) - 1;
+    private static final long OFFSET = 1L << (BITS - 1);
+    private static final long EMPTY = -1;
+
+    private float cellSize = 1;
+    private int size = 0;
+
+    // the points, grouped by cell
+    private int[] points = new int[0];
+    private long[] pointCells = new long[0];
+
+    // an open addressing table of the occupied cells
+    private long[] cells = new long[0];
+    private int[] starts = new int[0];
+    private int[] counts = new int[0];
+    private int mask = 0;
+
+
+    /**
+     * Places a set of points in the grid, replacing any previous contents.
+     *
+     * @param x The x coordinates of the points.
+     * @param y The y coordinates of the points.
+     * @param z The z coordinates of the points.
+     * @param n The number of points.
+     * @param cellSize The width of the grid cells (normally the query radius).
+     */
+    public void build(float[] x, float[] y, float[] z, int n, float cellSize) {
+
+        if (!(cellSize > 0) || Float.isInfinite(cellSize)) {
+            throw new IllegalArgumentException("The cell size must be positive and finite.");
+        }
+
+        this.cellSize = cellSize;
+        this.size = n;
+
+        if (points.length < n) {
+
+            points = new int[n];
+            pointCells = new long[n];
+        }
+
+        int capacity = Integer.highestOneBit(Math.max(n, 4) * 2 - 1) << 1;
+
+        if (cells.length < capacity) {
+
+            cells = new long[capacity];
+            starts = new int[capacity];
+            counts = new int[capacity];
+        }
+
+        mask = cells.length - 1;
+
+        Arrays.fill(cells, EMPTY);
+
+        // count the points in each cell
+        for (int i = 0; i < n; i++) {
+
+            long cell = getCell(x[i], y[i], z[i]);
+            int slot = find(cell);
+
+            if (cells[slot] == EMPTY) {
+
+                cells[slot] = cell;
+                counts[slot] = 0;
+            }
+
+            pointCells[i] = cell;
+            counts[slot]++;
+        }
+
+        // lay out the cells contiguously, then fill them
+        int offset = 0;
+
+        for (int slot = 0; slot < cells.length; slot++) {
+
+            if (cells[slot] != EMPTY) {
+
+                starts[slot] = offset;
+                offset += counts[slot];
+                counts[slot] = 0;
+            }
+        }
+
+        for (int i = 0; i < n; i++) {
+
+            int slot = find(pointCells[i]);
+
+            points[starts[slot] + counts[slot]++] = i;
+        }
+    }
+
+
+    /**
+     * Finds the points in the cells that overlap a sphere. The points are
+     * returned in ascending order of their index.
+     *
+     * @param x The x coordinate of the center of the sphere.
+     * @param y The y coordinate of the center of the sphere.
+     * @param z The z coordinate of the center of the sphere.
+     * @param radius The radius of the sphere.
+     * @param out The array into which the point indices are written. It must be
+     *            at least as long as the number of points in the grid.
+     *
+     * @return The number of points written to {@code out}.
+     */
+    public int query(float x, float y, float z, float radius, int[] out) {
+
+        if (size == 0) {
+            return 0;
+        }
+
+        long minX = getCoord(x - radius);
+        long maxX = getCoord(x + radius);
+        long minY = getCoord(y - radius);
+        long maxY = getCoord(y + radius);
+        long minZ = getCoord(z - radius);
+        long maxZ = getCoord(z + radius);
+
+        int found = 0;
+
+        for (long i = minX; i <= maxX; i++) {
+            for (long j = minY; j <= maxY; j++) {
+                for (long k = minZ; k <= maxZ; k++) {
+
+                    int slot = find(pack(i, j, k));
+
+                    if (cells[slot] != EMPTY) {
+
+                        System.arraycopy(points, starts[slot], out, found, counts[slot]);
+                        found += counts[slot];
+                    }
+                }
+            }
+        }
+
+        Arrays.sort(out, 0, found);
+
+        return found;
+    }
+
+
+    /**
+     * Gets the number of points in the grid.
+     *
+     * @return The number of points.
+     */
+    public int size() {
+        return size;
+    }
+
+
+    private long getCoord(float value) {
+
+        // coordinates far outside of the grid wrap around, which only adds candidates
+        return (long)Math.floor(value / cellSize);
+    }
+
+
+    private long getCell(float x, float y, float z) {
+        return pack(getCoord(x), getCoord(y), getCoord(z));
+    }
+
+
+    private static long pack(long i, long j, long k) {
+        return (((i + OFFSET) & CELL_MASK) << (2 * BITS)) | (((j + OFFSET) & CELL_MASK) << BITS) | ((k + OFFSET) & CELL_MASK);
+    }
+
+
+    /**
+     * Finds the slot of a cell in the table, or the empty slot where it would be placed.
+     */
+    private int find(long cell) {
+
+        long h = cell * 0x9E3779B97F4A7C15L;
+        int slot = (int)(h ^ (h >>> 32)) & mask;
+
+        while ((cells[slot] != EMPTY) && (cells[slot] != cell)) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+}
@@ -0,0 +1,421 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic;
+
+
+import harvard.robobees.simbeeotic.model.AbstractModel;
+import harvard.robobees.simbeeotic.model.Timer;
+import harvard.robobees.simbeeotic.model.TimerCallback;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * @author unnamed
+ */
+public class BatchSimEngineTest extends TestCase {
+
+    private static final int MODELS = 200;
+
+
+    public static final class Canceler extends AbstractModel {
+
+        private Timer other;
+        private int first = 0;
+        private int second = 0;
+
+
+        @Override
+        public void initialize() {
+
+            super.initialize();
+
+            // both timers are due at the same time, and the first is scheduled first
+            createTimer(new TimerCallback() {
+
+                public void fire(SimTime time) {
+
+                    first++;
+                    other.cancel();
+                }
+            }, 10, TimeUnit.MILLISECONDS, 10, TimeUnit.MILLISECONDS);
+
+            other = createTimer(new TimerCallback() {
+
+                public void fire(SimTime time) {
+                    second++;
+                }
+            }, 10, TimeUnit.MILLISECONDS, 10, TimeUnit.MILLISECONDS);
+        }
+
+
+        @Override
+        public void finish() {
+        }
+    }
+
+
+    private List<String> run(int threads, int minParallel, boolean wheel, boolean calendar, long[] counts) {
+
+        BatchSimEngine engine = new BatchSimEngine(threads, minParallel);
+
+        engine.setCalendarQueue(calendar);
+
+        if (wheel) {
+            engine.setTimerWheel(1, TimeUnit.MILLISECONDS);
+        }
+
+        List<Pinger> models = build(engine);
+
+        try {
+            engine.run(new SimTime(1000));
+        }
+        finally {
+            engine.shutdown();
+        }
+
+        counts[0] = engine.getBatchCount();
+        counts[1] = engine.getEventCount();
+
+        List<String> logs = new ArrayList<String>();
+
+        for (Pinger model : models) {
+            logs.add(model.getModelId() + ": " + model.getLog());
+        }
+
+        return logs;
+    }
+
+
+    private List<Pinger> build(BatchSimEngine engine) {
+
+        List<Pinger> models = new ArrayList<Pinger>();
+
+        for (int i = 0; i < MODELS; i++) {
+
+            Pinger model = new Pinger(MODELS, 0, true);
+
+            model.setModelId(i);
+            model.setRandomSeed(1000 + i);
+            model.setSimEngine(engine);
+
+            engine.addModel(model);
+            models.add(model);
+        }
+
+        for (Pinger model : models) {
+            model.initialize();
+        }
+
+        return models;
+    }
+
+
+    public void testMatchesSequential() {
+
+        long[] sequentialCounts = new long[2];
+        long[] parallelCounts = new long[2];
+
+        List<String> sequential = run(1, Integer.MAX_VALUE, false, false, sequentialCounts);
+        List<String> parallel = run(4, 2, false, false, parallelCounts);
+
+        assertEquals(sequential, parallel);
+        assertEquals(sequentialCounts[0], parallelCounts[0]);
+        assertEquals(sequentialCounts[1], parallelCounts[1]);
+
+        // timer events and same-time pings at each tick, plus the delayed pings
+        assertEquals(2 * 101 + 100, sequentialCounts[0]);
+    }
+
+
+    public void testSameTimeCancel() {
+
+        BatchSimEngine engine = new BatchSimEngine(4, 2);
+        List<Canceler> models = new ArrayList<Canceler>();
+
+        for (int i = 0; i < 8; i++) {
+
+            Canceler model = new Canceler();
+
+            model.setModelId(i);
+            model.setSimEngine(engine);
+
+            engine.addModel(model);
+            models.add(model);
+        }
+
+        for (Canceler model : models) {
+            model.initialize();
+        }
+
+        try {
+            engine.run(new SimTime(100));
+        }
+        finally {
+            engine.shutdown();
+        }
+
+        // the first timer keeps firing, and the second one was canceled in the same batch
+        for (Canceler model : models) {
+
+            assertTrue(model.first > 0);
+            assertEquals(0, model.second);
+        }
+    }
+
+
+    public void testTimerWheel() {
+
+        long[] plainCounts = new long[2];
+        long[] wheelCounts = new long[2];
+
+        List<String> plain = run(1, Integer.MAX_VALUE, false, false, plainCounts);
+        List<String> wheel = run(4, 2, true, false, wheelCounts);
+
+        assertEquals(plain, wheel);
+        assertEquals(plainCounts[1], wheelCounts[1]);
+    }
+
+
+    public void testCalendarQueue() {
+
+        long[] heapCounts = new long[2];
+        long[] calendarCounts = new long[2];
+
+        List<String> heap = run(1, Integer.MAX_VALUE, false, false, heapCounts);
+        List<String> calendar = run(4, 2, true, true, calendarCounts);
+
+        assertEquals(heap, calendar);
+        assertEquals(heapCounts[1], calendarCounts[1]);
+    }
+
+
+    public void testCheckpoint() throws IOException {
+
+        BatchSimEngine whole = new BatchSimEngine(1, Integer.MAX_VALUE);
+        BatchSimEngine first = new BatchSimEngine(1, Integer.MAX_VALUE);
+        BatchSimEngine second = new BatchSimEngine(2, 2);
+
+        second.setTimerWheel(1, TimeUnit.MILLISECONDS);
+
+        List<Pinger> wholeModels = build(whole);
+        List<Pinger> firstModels = build(first);
+        List<Pinger> secondModels = build(second);
+
+        ByteArrayOutputStream checkpoint = new ByteArrayOutputStream();
+
+        try {
+
+            whole.run(new SimTime(1000));
+
+            first.run(new SimTime(503));
+            first.writeCheckpoint(new DataOutputStream(checkpoint));
+
+            second.readCheckpoint(new DataInputStream(new ByteArrayInputStream(checkpoint.toByteArray())));
+            second.run(new SimTime(1000));
+        }
+        finally {
+
+            whole.shutdown();
+            first.shutdown();
+            second.shutdown();
+        }
+
+        // the restored run continues exactly where the first one stopped
+        for (int i = 0; i < MODELS; i++) {
+
+            List<String> resumed = new ArrayList<String>(firstModels.get(i).getLog());
+
+            resumed.addAll(secondModels.get(i).getLog());
+
+            assertEquals(wholeModels.get(i).getLog(), resumed);
+            assertEquals(wholeModels.get(i).getPings(), secondModels.get(i).getPings());
+        }
+
+        assertEquals(whole.getEventCount(), second.getEventCount());
+        assertEquals(whole.getCurrentTime(), second.getCurrentTime());
+    }
+
+
+    public void testCheckpointUncoveredState() throws IOException {
+
+        BatchSimEngine engine = new BatchSimEngine(1, Integer.MAX_VALUE);
+
+        build(engine);
+
+        // a model that relies on the state methods of the base class
+        AbstractModel uncovered = new AbstractModel() {
+
+            @Override
+            public void finish() {
+            }
+        };
+
+        uncovered.setModelId(MODELS);
+        uncovered.setSimEngine(engine);
+        engine.addModel(uncovered);
+
+        try {
+
+            engine.writeCheckpoint(new DataOutputStream(new ByteArrayOutputStream()));
+            fail("Expected the checkpoint to fail.");
+        }
+        catch(RuntimeException re) {
+            assertTrue(re.getMessage().contains("does not save its own state"));
+        }
+        finally {
+            engine.shutdown();
+        }
+    }
+
+
+    public static final class Sleeper extends AbstractModel {
+
+        private final List<String> log = new ArrayList<String>();
+        private Timer alarm;
+
+
+        @Override
+        public void initialize() {
+
+            super.initialize();
+
+            // created during initialization, but idle until the model sets it
+            alarm = createTimer(new TimerCallback() {
+
+                public void fire(SimTime time) {
+                    log.add("alarm " + time.getTime());
+                }
+            }, 0, TimeUnit.MILLISECONDS);
+
+            alarm.cancel();
+        }
+
+
+        @Override
+        public void writeState(DataOutput out) throws IOException {
+            super.writeState(out);
+        }
+
+
+        @Override
+        public void readState(DataInput in) throws IOException {
+            super.readState(in);
+        }
+
+
+        @Override
+        public void finish() {
+        }
+    }
+
+
+    public void testCheckpointIdleTimer() throws IOException {
+
+        BatchSimEngine first = new BatchSimEngine(1, Integer.MAX_VALUE);
+        BatchSimEngine second = new BatchSimEngine(1, Integer.MAX_VALUE);
+
+        Sleeper sleeper = new Sleeper();
+        Sleeper restored = new Sleeper();
+
+        sleeper.setModelId(0);
+        sleeper.setSimEngine(first);
+        first.addModel(sleeper);
+        sleeper.initialize();
+
+        restored.setModelId(0);
+        restored.setSimEngine(second);
+        second.addModel(restored);
+        restored.initialize();
+
+        ByteArrayOutputStream checkpoint = new ByteArrayOutputStream();
+
+        try {
+
+            first.run(new SimTime(10));
+
+            sleeper.alarm.reset(new SimTime(10), 50, TimeUnit.MILLISECONDS, 0, TimeUnit.MILLISECONDS);
+
+            first.writeCheckpoint(new DataOutputStream(checkpoint));
+
+            second.readCheckpoint(new DataInputStream(new ByteArrayInputStream(checkpoint.toByteArray())));
+            second.run(new SimTime(100));
+        }
+        finally {
+
+            first.shutdown();
+            second.shutdown();
+        }
+
+        assertEquals(Arrays.asList("alarm " + TimeUnit.MILLISECONDS.toNanos(60)), restored.log);
+    }
+
+
+    public void testCheckpointRuntimeTimer() throws IOException {
+
+        BatchSimEngine engine = new BatchSimEngine(1, Integer.MAX_VALUE);
+
+        List<Pinger> models = build(engine);
+
+        try {
+
+            engine.run(new SimTime(15));
+
+            // a timer created while the scenario runs cannot be matched on restore
+            models.get(0).createTimer(new TimerCallback() {
+
+                public void fire(SimTime time) {
+                }
+            }, 100, TimeUnit.MILLISECONDS);
+
+            engine.writeCheckpoint(new DataOutputStream(new ByteArrayOutputStream()));
+            fail("Expected the checkpoint to fail.");
+        }
+        catch(RuntimeException re) {
+            assertTrue(re.getMessage().contains("created after the scenario was initialized"));
+        }
+        finally {
+            engine.shutdown();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic;
+
+
+import junit.framework.TestCase;
+
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+
+/**
+ * @author unnamed
+ */
+public class CalendarQueueTest extends TestCase {
+
+    private static final class Entry implements Comparable<Entry> {
+
+        private final long time;
+        private final int model;
+        private final long id;
+
+
+        public Entry(long time, int model, long id) {
+
+            this.time = time;
+            this.model = model;
+            this.id = id;
+        }
+
+
+        @Override
+        public int compareTo(Entry o) {
+
+            if (time != o.time) {
+                return (time < o.time) ? -1 : 1;
+            }
+
+            if (model != o.model) {
+                return (model < o.model) ? -1 : 1;
+            }
+
+            return (id < o.id) ? -1 : ((id == o.id) ? 0 : 1);
+        }
+    }
+
+
+    private static final CalendarQueue.Timestamp<Entry> TIME = new CalendarQueue.Timestamp<Entry>() {
+
+        public long getTime(Entry element) {
+            return element.time;
+        }
+    };
+
+
+    public void testMatchesPriorityQueue() {
+
+        Random rand = new Random(42);
+        CalendarQueue<Entry> calendar = new CalendarQueue<Entry>(TIME);
+        PriorityQueue<Entry> heap = new PriorityQueue<Entry>();
+
+        long now = 0;
+        long nextId = 0;
+
+        for (int i = 0; i < 20000; i++) {
+
+            if (rand.nextInt(3) > 0 || heap.isEmpty()) {
+
+                // many timers fire at identical times
+                long time = now + 100000000L * rand.nextInt(4);
+                Entry e = new Entry(time, rand.nextInt(50), nextId++);
+
+                calendar.add(e);
+                heap.add(e);
+            }
+            else {
+
+                Entry expected = heap.poll();
+
+                assertSame(expected, calendar.poll());
+
+                now = expected.time;
+            }
+
+            assertEquals(heap.size(), calendar.size());
+        }
+
+        while (!heap.isEmpty()) {
+            assertSame(heap.poll(), calendar.poll());
+        }
+
+        assertNull(calendar.poll());
+    }
+
+
+    public void testRemove() {
+
+        CalendarQueue<Entry> calendar = new CalendarQueue<Entry>(TIME);
+
+        for (int i = 0; i < 100; i++) {
+            calendar.add(new Entry(i * 1000L, 0, i));
+        }
+
+        Iterator<Entry> it = calendar.iterator();
+
+        while (it.hasNext()) {
+
+            if (it.next().id % 2 == 0) {
+                it.remove();
+            }
+        }
+
+        assertEquals(50, calendar.size());
+
+        for (int i = 0; i < 50; i++) {
+            assertEquals(2 * i + 1, calendar.poll().id);
+        }
+
+        assertTrue(calendar.isEmpty());
+    }
+
+
+    public void testEarlierInsertAfterPeek() {
+
+        CalendarQueue<Entry> calendar = new CalendarQueue<Entry>(TIME);
+
+        calendar.add(new Entry(5000000000L, 0, 0));
+
+        assertEquals(0, calendar.peek().id);
+
+        calendar.add(new Entry(1000, 0, 1));
+
+        assertEquals(1, calendar.poll().id);
+        assertEquals(0, calendar.poll().id);
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic;
+
+
+import harvard.robobees.simbeeotic.model.AbstractModel;
+import harvard.robobees.simbeeotic.model.Model;
+import junit.framework.TestCase;
+
+import java.util.Iterator;
+import java.util.List;
+
+
+/**
+ * @author unnamed
+ */
+public class ModelIndexTest extends TestCase {
+
+    public static interface Marker {
+    }
+
+
+    public static class Plain extends AbstractModel {
+
+        @Override
+        public void finish() {
+        }
+    }
+
+
+    public static class Marked extends Plain implements Marker {
+    }
+
+
+    private static Model create(Plain model, int id) {
+
+        model.setModelId(id);
+
+        return model;
+    }
+
+
+    public void testHierarchy() {
+
+        ModelIndex index = new ModelIndex();
+
+        index.add(create(new Plain(), 0));
+        index.add(create(new Marked(), 1));
+        index.add(create(new Plain(), 2));
+
+        assertEquals(3, index.findModelsByType(Model.class).size());
+        assertEquals(3, index.findModelsByType(AbstractModel.class).size());
+        assertEquals(3, index.findModelsByType(Plain.class).size());
+        assertEquals(1, index.findModelsByType(Marked.class).size());
+        assertEquals(1, ((Model)index.findModelsByType(Marker.class).get(0)).getModelId());
+        assertTrue(index.findModelsByType(String.class).isEmpty());
+
+        // insertion order is preserved
+        List<Plain> plain = index.findModelsByType(Plain.class);
+
+        for (int i = 0; i < plain.size(); i++) {
+            assertEquals(i, plain.get(i).getModelId());
+        }
+
+        // the same list is shared until a model is added
+        assertSame(plain, index.findModelsByType(Plain.class));
+
+        try {
+
+            plain.set(0, null);
+            fail();
+        }
+        catch(UnsupportedOperationException uoe) {
+            // expected
+        }
+
+        index.add(create(new Plain(), 3));
+
+        assertTrue(plain != index.findModelsByType(Plain.class));
+        assertEquals(3, plain.size());
+        assertEquals(4, index.findModelsByType(Plain.class).size());
+    }
+
+
+    public void testView() {
+
+        ModelIndex index = new ModelIndex();
+        ModelView<Marker> view = index.getView(Marker.class);
+
+        assertEquals(0, view.size());
+        assertFalse(view.iterator().hasNext());
+
+        index.add(create(new Marked(), 0));
+        index.add(create(new Plain(), 1));
+
+        assertEquals(1, view.size());
+
+        List<Marker> snapshot = view.snapshot();
+
+        index.add(create(new Marked(), 2));
+
+        assertEquals(2, view.size());
+        assertEquals(1, snapshot.size());
+        assertEquals(2, ((Model)view.get(1)).getModelId());
+
+        Iterator<Marker> it = view.iterator();
+
+        assertEquals(0, ((Model)it.next()).getModelId());
+        assertEquals(2, ((Model)it.next()).getModelId());
+        assertFalse(it.hasNext());
+    }
+}
@@ -0,0 +1,484 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic;
+
+
+import harvard.robobees.simbeeotic.model.AbstractModel;
+import harvard.robobees.simbeeotic.model.EventHandler;
+import harvard.robobees.simbeeotic.model.Timer;
+import harvard.robobees.simbeeotic.model.TimerCallback;
+import harvard.robobees.simbeeotic.model.comms.AntennaPattern;
+import harvard.robobees.simbeeotic.model.comms.Band;
+import harvard.robobees.simbeeotic.model.comms.FreeSpacePropagationModel;
+import harvard.robobees.simbeeotic.model.comms.IsotropicAntenna;
+import harvard.robobees.simbeeotic.model.comms.PropagationModel;
+import harvard.robobees.simbeeotic.model.comms.Radio;
+import harvard.robobees.simbeeotic.model.comms.ReceptionEvent;
+import junit.framework.TestCase;
+
+import javax.vecmath.Vector3f;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * @author unnamed
+ */
+public class ParallelSimEngineTest extends TestCase {
+
+    private static final int MODELS = 40;
+
+
+    public static final class Beacon extends AbstractModel implements Radio {
+
+        private static final Band BAND = new Band(2405, 5);
+
+        private final List<String> log = new ArrayList<String>();
+        private final Vector3f position;
+        private PropagationModel propModel;
+
+
+        public Beacon(Vector3f position) {
+            this.position = position;
+        }
+
+
+        @Override
+        public void initialize() {
+
+            super.initialize();
+
+            propModel = getSimEngine().findModelByType(PropagationModel.class);
+
+            createTimer(new TimerCallback() {
+
+                public void fire(SimTime time) {
+                    transmit(new byte[] {(byte)getModelId()});
+                }
+            }, getRandom().nextInt(10), TimeUnit.MILLISECONDS, 10, TimeUnit.MILLISECONDS);
+        }
+
+
+        @EventHandler
+        public void handleReceptionEvent(SimTime time, ReceptionEvent event) {
+            receive(time, event.getData(), event.getRxPower(), event.getBand().getCenterFrequency());
+        }
+
+
+        public void receive(SimTime time, byte[] data, double rxPower, double frequency) {
+            log.add(time.getTime() + " " + data[0] + " " + rxPower);
+        }
+
+
+        public void transmit(byte[] data) {
+            propModel.transmit(this, data, 0, BAND);
+        }
+
+
+        public boolean transmitAsync(byte[] data) {
+
+            transmit(data);
+            return true;
+        }
+
+
+        public Vector3f getPosition() {
+            return position;
+        }
+
+
+        public Vector3f getAntennaPointing() {
+            return new Vector3f(0, 0, 1);
+        }
+
+
+        public Vector3f getAntennaNormal() {
+            return new Vector3f(1, 0, 0);
+        }
+
+
+        public AntennaPattern getAntennaPattern() {
+            return new IsotropicAntenna();
+        }
+
+
+        public Band getOperatingBand() {
+            return BAND;
+        }
+
+
+        @Override
+        public void finish() {
+        }
+    }
+
+
+    private List<String> run(int partitions, long delay) {
+
+        ParallelSimEngine engine = new ParallelSimEngine(partitions, 50, TimeUnit.MILLISECONDS,
+                                                         ParallelSimEngine.BY_MODEL_ID, 4);
+        List<Pinger> models = new ArrayList<Pinger>();
+
+        for (int i = 0; i < MODELS; i++) {
+
+            Pinger model = new Pinger(MODELS, delay, false);
+
+            model.setModelId(i);
+            model.setRandomSeed(1000 + i);
+            model.setSimEngine(engine);
+
+            engine.addModel(model);
+            models.add(model);
+        }
+
+        for (Pinger model : models) {
+            model.initialize();
+        }
+
+        try {
+            engine.run(new SimTime(2000));
+        }
+        finally {
+            engine.shutdown();
+        }
+
+        List<String> logs = new ArrayList<String>();
+
+        for (Pinger model : models) {
+            logs.add(model.getModelId() + ": " + model.getLog());
+        }
+
+        return logs;
+    }
+
+
+    private List<String> runRadios(AbstractSimEngine engine, long receptionDelay) {
+
+        List<Beacon> radios = new ArrayList<Beacon>();
+        List<AbstractModel> models = new ArrayList<AbstractModel>();
+
+        for (int i = 0; i < MODELS; i++) {
+
+            // the radios are on a line and only hear their closer neighbors
+            Beacon radio = new Beacon(new Vector3f(i, 0, 1));
+
+            radios.add(radio);
+            models.add(radio);
+        }
+
+        FreeSpacePropagationModel prop = new FreeSpacePropagationModel();
+
+        prop.setReceiveRadiusThreshold(5);
+        prop.setReceptionDelay(receptionDelay);
+        models.add(prop);
+
+        for (AbstractModel model : models) {
+
+            model.setModelId(models.indexOf(model));
+            model.setRandomSeed(1000 + model.getModelId());
+            model.setSimEngine(engine);
+
+            if (engine instanceof ParallelSimEngine) {
+                ((ParallelSimEngine)engine).addModel(model);
+            }
+            else {
+                ((BatchSimEngine)engine).addModel(model);
+            }
+        }
+
+        for (AbstractModel model : models) {
+            model.initialize();
+        }
+
+        List<String> logs = new ArrayList<String>();
+
+        try {
+
+            if (engine instanceof ParallelSimEngine) {
+                ((ParallelSimEngine)engine).run(new SimTime(500));
+            }
+            else {
+                ((BatchSimEngine)engine).run(new SimTime(500));
+            }
+        }
+        finally {
+
+            if (engine instanceof ParallelSimEngine) {
+                ((ParallelSimEngine)engine).shutdown();
+            }
+            else {
+                ((BatchSimEngine)engine).shutdown();
+            }
+        }
+
+        for (Beacon radio : radios) {
+
+            // receptions at the same time may be handled in another order
+            Collections.sort(radio.log);
+
+            logs.add(radio.getModelId() + ": " + radio.log);
+        }
+
+        return logs;
+    }
+
+
+    /**
+     * A model that fires a one-shot timer.
+     */
+    public static final class Sleeper extends AbstractModel {
+
+        private final long wakeTime;
+        private Timer timer;
+        private boolean awake = false;
+
+
+        public Sleeper(long wakeTime) {
+            this.wakeTime = wakeTime;
+        }
+
+
+        @Override
+        public void initialize() {
+
+            super.initialize();
+
+            timer = createTimer(new TimerCallback() {
+
+                public void fire(SimTime time) {
+                    awake = true;
+                }
+            }, wakeTime, TimeUnit.MILLISECONDS);
+        }
+
+
+        @Override
+        public void finish() {
+        }
+    }
+
+
+    /**
+     * A model that runs an action on a one-shot timer.
+     */
+    public static final class Actor extends AbstractModel {
+
+        private final long actTime;
+        private final Runnable action;
+
+
+        public Actor(long actTime, Runnable action) {
+
+            this.actTime = actTime;
+            this.action = action;
+        }
+
+
+        @Override
+        public void initialize() {
+
+            super.initialize();
+
+            createTimer(new TimerCallback() {
+
+                public void fire(SimTime time) {
+                    action.run();
+                }
+            }, actTime, TimeUnit.MILLISECONDS);
+        }
+
+
+        @Override
+        public void finish() {
+        }
+    }
+
+
+    /**
+     * Cancels the timer of a model in the second partition from the first partition.
+     */
+    private static boolean runCancel(long cancelTime, long wakeTime) {
+
+        final ParallelSimEngine engine = new ParallelSimEngine(2, 10, TimeUnit.MILLISECONDS,
+                                                               ParallelSimEngine.BY_MODEL_ID, 2);
+
+        final Sleeper sleeper = new Sleeper(wakeTime);
+
+        Actor canceler = new Actor(cancelTime, new Runnable() {
+
+            public void run() {
+                sleeper.timer.cancel();
+            }
+        });
+
+        canceler.setModelId(0);
+        sleeper.setModelId(1);
+
+        for (AbstractModel model : new AbstractModel[] {canceler, sleeper}) {
+
+            model.setRandomSeed(1000 + model.getModelId());
+            model.setSimEngine(engine);
+
+            engine.addModel(model);
+            model.initialize();
+        }
+
+        try {
+            engine.run(new SimTime(100));
+        }
+        finally {
+            engine.shutdown();
+        }
+
+        return sleeper.awake;
+    }
+
+
+    public void testCrossPartitionCancel() {
+
+        // the timer is after the window in which it is canceled
+        assertFalse(runCancel(2, 50));
+        assertTrue(runCancel(50, 20));
+
+        try {
+
+            // the timer was processed in the window in which it is canceled
+            runCancel(2, 5);
+            fail("Expected a causality violation.");
+        }
+        catch(CausalityViolationException cve) {
+            // expected
+        }
+    }
+
+
+    public void testAddModelDuringWindow() {
+
+        final ParallelSimEngine engine = new ParallelSimEngine(2, 10, TimeUnit.MILLISECONDS,
+                                                               ParallelSimEngine.BY_MODEL_ID, 2);
+
+        Actor adder = new Actor(2, new Runnable() {
+
+            public void run() {
+
+                Sleeper late = new Sleeper(50);
+
+                late.setModelId(1);
+                late.setSimEngine(engine);
+
+                engine.addModel(late);
+            }
+        });
+
+        adder.setModelId(0);
+        adder.setRandomSeed(1000);
+        adder.setSimEngine(engine);
+
+        engine.addModel(adder);
+        adder.initialize();
+
+        try {
+
+            engine.run(new SimTime(100));
+            fail("Expected the model to be rejected.");
+        }
+        catch(RuntimeException re) {
+
+            Throwable cause = re;
+
+            while ((cause != null) && !(cause instanceof IllegalStateException)) {
+                cause = cause.getCause();
+            }
+
+            assertNotNull(cause);
+        }
+        finally {
+            engine.shutdown();
+        }
+
+        assertEquals(-1, engine.getPartition(1));
+    }
+
+
+    public void testRadiosMatchSequential() {
+
+        long delay = TimeUnit.MILLISECONDS.toNanos(2);
+
+        List<String> sequential = runRadios(new BatchSimEngine(1, Integer.MAX_VALUE), delay);
+
+        ParallelSimEngine engine = new ParallelSimEngine(4, 0.01, ParallelSimEngine.BY_MODEL_ID, 4);
+        List<String> parallel = runRadios(engine, delay);
+
+        // the window is bounded by the reception delay rather than the physics step
+        assertEquals(delay, engine.getLookahead());
+        assertEquals(sequential, parallel);
+        assertFalse(sequential.get(0).endsWith("[]"));
+        assertTrue(engine.getWindowCount() > 500 / 10);
+    }
+
+
+    public void testRadiosWithoutDelay() {
+
+        try {
+
+            runRadios(new ParallelSimEngine(4, 0.01, ParallelSimEngine.BY_MODEL_ID, 4), 0);
+            fail("Expected a causality violation.");
+        }
+        catch(CausalityViolationException cve) {
+            // expected
+        }
+    }
+
+
+    public void testRepeatable() {
+
+        List<String> first = run(4, 50);
+
+        assertEquals(first, run(4, 50));
+        assertEquals(first, run(4, 50));
+    }
+
+
+    public void testLookaheadViolation() {
+
+        try {
+
+            run(4, 10);
+            fail("Expected a causality violation.");
+        }
+        catch(CausalityViolationException cve) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic;
+
+
+import harvard.robobees.simbeeotic.model.AbstractModel;
+import harvard.robobees.simbeeotic.model.Event;
+import harvard.robobees.simbeeotic.model.EventHandler;
+import harvard.robobees.simbeeotic.model.TimerCallback;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * A test model that pings a random peer every 10 ms and logs what it sees, so that
+ * the runs of different engines can be compared.
+ *
+ * @author unnamed
+ */
+public final class Pinger extends AbstractModel {
+
+    private final List<String> log = new ArrayList<String>();
+    private final int peers;
+    private final long delay;
+    private final boolean aligned;
+
+
+    public static final class Ping implements Event, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+
+
+        public Ping(int from) {
+            this.from = from;
+        }
+    }
+
+
+    /**
+     * @param peers The number of models, which are expected to have IDs starting at 0.
+     * @param delay The minimum ping delay (in milliseconds). Half of the pings are
+     *              delivered 5 ms later than that.
+     * @param aligned Whether every model fires at exactly the same times, or at
+     *                a random offset.
+     */
+    public Pinger(int peers, long delay, boolean aligned) {
+
+        this.peers = peers;
+        this.delay = delay;
+        this.aligned = aligned;
+    }
+
+
+    @Override
+    public void initialize() {
+
+        super.initialize();
+
+        createTimer(new TimerCallback() {
+
+            public void fire(SimTime time) {
+
+                log.add("timer " + time.getTime());
+
+                int other = getRandom().nextInt(peers);
+                long offset = delay + getRandom().nextInt(2) * 5;
+
+                getSimEngine().scheduleEvent(other, new SimTime(time, offset, TimeUnit.MILLISECONDS), new Ping(getModelId()));
+            }
+        }, aligned ? 0 : getRandom().nextInt(10), TimeUnit.MILLISECONDS, 10, TimeUnit.MILLISECONDS);
+    }
+
+
+    @EventHandler
+    public void handlePing(SimTime time, Ping ping) {
+
+        log.add("ping " + time.getTime() + " " + ping.from + " " + getRandom().nextInt());
+        getAggregator().addValue("pings", 1);
+    }
+
+
+    public List<String> getLog() {
+        return log;
+    }
+
+
+    public double getPings() {
+        return getAggregator().getAggregateValue("pings");
+    }
+
+
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+
+        // the log is compared across runs rather than restored
+        super.writeState(out);
+    }
+
+
+    @Override
+    public void readState(DataInput in) throws IOException {
+        super.readState(in);
+    }
+
+
+    @Override
+    public void finish() {
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic;
+
+
+import harvard.robobees.simbeeotic.model.AbstractModel;
+import harvard.robobees.simbeeotic.model.Event;
+import harvard.robobees.simbeeotic.model.Model;
+import harvard.robobees.simbeeotic.model.TimerCallback;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures the bytes allocated per timer firing when timers schedule through
+ * the primitive time path of a {@link NanoSimEngine}, compared to the
+ * {@link SimTime} path of a plain {@link SimEngine}. Requires a JVM that
+ * supports thread allocation accounting (HotSpot).
+ *
+ * <pre>
+ *   java -cp ... harvard.robobees.simbeeotic.SchedulingAllocationBenchmark [models] [seconds]
+ * </pre>
+ *
+ * @author unnamed
+ */
+public class SchedulingAllocationBenchmark {
+
+    public static final class Ticker extends AbstractModel {
+
+        @Override
+        public void initialize() {
+
+            super.initialize();
+
+            createTimer(new TimerCallback() {
+
+                public void fire(SimTime time) {
+                }
+            }, getModelId() % 100, TimeUnit.MILLISECONDS, 100, TimeUnit.MILLISECONDS);
+        }
+
+
+        @Override
+        public void finish() {
+        }
+    }
+
+
+    /**
+     * Hides the primitive scheduling path of an engine.
+     */
+    private static final class ObjectTimeEngine implements SimEngine {
+
+        private final SimEngine engine;
+
+
+        public ObjectTimeEngine(SimEngine engine) {
+            this.engine = engine;
+        }
+
+
+        public long scheduleEvent(int modelId, SimTime time, Event event) {
+            return engine.scheduleEvent(modelId, time, event);
+        }
+
+
+        public void cancelEvent(long eventId) {
+            engine.cancelEvent(eventId);
+        }
+
+
+        public void requestScenarioTermination() {
+            engine.requestScenarioTermination();
+        }
+
+
+        public Model findModelById(int ID) {
+            return engine.findModelById(ID);
+        }
+
+
+        public Model findModelByName(String name) {
+            return engine.findModelByName(name);
+        }
+
+
+        public <T> T findModelByType(Class<T> type) {
+            return engine.findModelByType(type);
+        }
+
+
+        public List<Model> findModelsByName(String name) {
+            return engine.findModelsByName(name);
+        }
+
+
+        public <T> List<T> findModelsByType(Class<T> type) {
+            return engine.findModelsByType(type);
+        }
+    }
+
+
+    private static double run(boolean primitive, int models, long seconds) {
+
+        BatchSimEngine engine = new BatchSimEngine(1, Integer.MAX_VALUE);
+        SimEngine view = primitive ? engine : new ObjectTimeEngine(engine);
+
+        for (int i = 0; i < models; i++) {
+
+            Ticker model = new Ticker();
+
+            model.setModelId(i);
+            model.setRandomSeed(i);
+            model.setSimEngine(view);
+
+            engine.addModel(model);
+            model.initialize();
+        }
+
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        long before = bean.getThreadAllocatedBytes(thread);
+
+        engine.run(new SimTime(seconds * 1000));
+
+        long bytes = bean.getThreadAllocatedBytes(thread) - before;
+
+        engine.shutdown();
+
+        return (double)bytes / engine.getEventCount();
+    }
+
+
+    public static void main(String[] args) {
+
+        int models = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+        long seconds = (args.length > 1) ? Long.parseLong(args[1]) : 60;
+
+        // warm up both paths before measuring
+        run(false, models, 10);
+        run(true, models, 10);
+
+        double object = run(false, models, seconds);
+        double primitive = run(true, models, seconds);
+
+        System.out.println(String.format("SimTime path:   %.1f bytes/event", object));
+        System.out.println(String.format("primitive path: %.1f bytes/event", primitive));
+        System.out.println(String.format("reduction:      %.1f%%", 100 * (object - primitive) / object));
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic;
+
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+
+/**
+ * @author unnamed
+ */
+public class TimerWheelTest extends TestCase {
+
+    private static final class Entry implements Comparable<Entry> {
+
+        private final long time;
+        private final long id;
+
+
+        public Entry(long time, long id) {
+
+            this.time = time;
+            this.id = id;
+        }
+
+
+        @Override
+        public int compareTo(Entry o) {
+
+            if (time != o.time) {
+                return (time < o.time) ? -1 : 1;
+            }
+
+            return (id < o.id) ? -1 : ((id == o.id) ? 0 : 1);
+        }
+    }
+
+
+    private static final CalendarQueue.Timestamp<Entry> TIME = new CalendarQueue.Timestamp<Entry>() {
+
+        public long getTime(Entry element) {
+            return element.time;
+        }
+    };
+
+
+    private static final TombstoneQueue.Id<Entry> ID = new TombstoneQueue.Id<Entry>() {
+
+        public long getId(Entry element) {
+            return element.id;
+        }
+    };
+
+
+    public void testMatchesPriorityQueue() {
+
+        Random rand = new Random(11);
+
+        // a 1 ms resolution, with delays spanning every level and beyond
+        TimerWheel<Entry> wheel = new TimerWheel<Entry>(1000000, TIME, ID);
+        PriorityQueue<Entry> queue = new PriorityQueue<Entry>();
+        TombstoneQueue<Entry> expected = new TombstoneQueue<Entry>(new PriorityQueue<Entry>(), ID);
+
+        List<Entry> pending = new ArrayList<Entry>();
+        long now = 0;
+        long nextId = 1;
+
+        for (int i = 0; i < 100000; i++) {
+
+            int op = rand.nextInt(10);
+
+            if (op < 5) {
+
+                long delay;
+
+                switch (rand.nextInt(4)) {
+                    case 0:  delay = rand.nextInt(1000000); break;
+                    case 1:  delay = 100000000L * rand.nextInt(10); break;
+                    case 2:  delay = (long)(rand.nextDouble() * 300000000000L); break;
+                    default: delay = (long)(rand.nextDouble() * 100000000000000L); break;
+                }
+
+                Entry e = new Entry(now + delay, nextId++);
+
+                wheel.add(e, queue);
+                expected.add(e);
+                pending.add(e);
+            }
+            else if ((op < 7) && !pending.isEmpty()) {
+
+                Entry e = pending.remove(rand.nextInt(pending.size()));
+
+                if (!wheel.cancel(e.id)) {
+                    queue.remove(e);
+                }
+
+                expected.cancel(e.id);
+            }
+            else {
+
+                wheel.feed(queue);
+
+                Entry e = queue.poll();
+
+                assertSame(expected.poll(), e);
+
+                if (e != null) {
+
+                    now = e.time;
+                    pending.remove(e);
+                }
+            }
+        }
+
+        while (!expected.isEmpty()) {
+
+            wheel.feed(queue);
+
+            assertSame(expected.poll(), queue.poll());
+        }
+
+        wheel.feed(queue);
+
+        assertNull(queue.poll());
+        assertTrue(wheel.isEmpty());
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic;
+
+
+import harvard.robobees.simbeeotic.util.LongHashSet;
+import junit.framework.TestCase;
+
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+
+
+/**
+ * @author unnamed
+ */
+public class TombstoneQueueTest extends TestCase {
+
+    private static final TombstoneQueue.Id<Long> ID = new TombstoneQueue.Id<Long>() {
+
+        public long getId(Long element) {
+            return element;
+        }
+    };
+
+
+    public void testCancel() {
+
+        TombstoneQueue<Long> queue = new TombstoneQueue<Long>(new PriorityQueue<Long>(), ID);
+
+        for (long i = 1; i <= 10; i++) {
+            queue.add(i);
+        }
+
+        queue.cancel(1);
+        queue.cancel(4);
+        queue.cancel(5);
+
+        assertEquals(7, queue.getLiveCount());
+        assertEquals(3, queue.getDeadCount());
+
+        assertEquals(2, queue.poll().longValue());
+        assertEquals(2, queue.getDeadCount());
+
+        queue.cancel(9);
+        queue.compact();
+
+        assertEquals(0, queue.getDeadCount());
+        assertEquals(5, queue.size());
+        assertEquals(3, queue.poll().longValue());
+        assertEquals(6, queue.poll().longValue());
+    }
+
+
+    public void testCompaction() {
+
+        TombstoneQueue<Long> queue = new TombstoneQueue<Long>(new PriorityQueue<Long>(), ID);
+
+        for (long i = 1; i <= 1000; i++) {
+            queue.add(i);
+        }
+
+        for (long i = 2; i <= 1000; i++) {
+            queue.cancel(i);
+        }
+
+        assertTrue(queue.getCompactionCount() > 0);
+        assertEquals(1, queue.size());
+        assertEquals(1, queue.poll().longValue());
+        assertNull(queue.poll());
+    }
+
+
+    public void testLongHashSet() {
+
+        Random rand = new Random(7);
+        LongHashSet set = new LongHashSet();
+        Set<Long> expected = new HashSet<Long>();
+
+        for (int i = 0; i < 50000; i++) {
+
+            long value = rand.nextInt(2000) - 100;
+
+            if (rand.nextBoolean()) {
+                assertEquals(expected.add(value), set.add(value));
+            }
+            else {
+                assertEquals(expected.remove(value), set.remove(value));
+            }
+
+            assertEquals(expected.size(), set.size());
+        }
+
+        for (long i = -100; i < 1900; i++) {
+            assertEquals(expected.contains(i), set.contains(i));
+        }
+    }
+}
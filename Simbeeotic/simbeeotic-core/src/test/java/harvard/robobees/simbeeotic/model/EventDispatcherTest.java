@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model;
+
+
+import harvard.robobees.simbeeotic.BatchSimEngine;
+import harvard.robobees.simbeeotic.SimTime;
+import junit.framework.TestCase;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * @author unnamed
+ */
+public class EventDispatcherTest extends TestCase {
+
+    public static interface Tagged extends Event {
+    }
+
+
+    public static class Base implements Event {
+    }
+
+
+    public static class Derived extends Base implements Tagged {
+    }
+
+
+    public static class Unhandled implements Event {
+    }
+
+
+    public static class Handler extends AbstractModel {
+
+        protected final List<String> log = new ArrayList<String>();
+
+
+        @EventHandler
+        public void handleBase(SimTime time, Base event) {
+            log.add("base");
+        }
+
+
+        @EventHandler
+        public void handleTagged(SimTime time, Tagged event) {
+            log.add("tagged");
+        }
+
+
+        @Override
+        public void finish() {
+        }
+    }
+
+
+    public static class SubHandler extends Handler {
+
+        @EventHandler
+        public void handleBaseAgain(SimTime time, Base event) {
+            log.add("sub");
+        }
+    }
+
+
+    public static class TimerHandler extends AbstractModel {
+
+        @EventHandler
+        public void handleTimer(SimTime time, TimerEvent event) {
+        }
+
+
+        @Override
+        public void finish() {
+        }
+    }
+
+
+    public void testResolution() throws Exception {
+
+        Handler model = new Handler();
+        EventDispatcher dispatcher = EventDispatcher.forClass(Handler.class);
+
+        assertSame(dispatcher, EventDispatcher.forClass(Handler.class));
+
+        // the super class of the event is searched before its interfaces
+        dispatcher.find(Derived.class).invoke(model, new SimTime(0), new Derived());
+        dispatcher.find(Base.class).invoke(model, new SimTime(0), new Base());
+
+        assertEquals("[base, base]", model.log.toString());
+
+        // a handler in the model class takes precedence over one in its super class
+        SubHandler sub = new SubHandler();
+
+        EventDispatcher.forClass(SubHandler.class).find(Derived.class).invoke(sub, new SimTime(0), new Derived());
+
+        assertEquals("[sub]", sub.log.toString());
+    }
+
+
+    public void testCachedMiss() throws Exception {
+
+        EventDispatcher dispatcher = EventDispatcher.forClass(Handler.class);
+
+        assertNull(dispatcher.find(Unhandled.class));
+
+        Field field = EventDispatcher.class.getDeclaredField("resolved");
+
+        field.setAccessible(true);
+
+        // the miss is remembered, so the type hierarchy is not searched again
+        assertTrue(((Map<?, ?>)field.get(dispatcher)).containsKey(Unhandled.class));
+        assertNull(dispatcher.find(Unhandled.class));
+    }
+
+
+    public void testTimerFallback() throws Exception {
+
+        BatchSimEngine engine = new BatchSimEngine(1, Integer.MAX_VALUE);
+
+        try {
+
+            Handler model = new Handler();
+            final List<SimTime> fired = new ArrayList<SimTime>();
+
+            model.setModelId(0);
+            model.setSimEngine(engine);
+            engine.addModel(model);
+
+            Timer timer = model.createTimer(new TimerCallback() {
+
+                public void fire(SimTime time) {
+                    fired.add(time);
+                }
+            }, 5, TimeUnit.MILLISECONDS);
+
+            // a model without a timer handler of its own fires the timer directly
+            EventDispatcher.Invoker invoker = EventDispatcher.forClass(Handler.class).find(TimerEvent.class);
+
+            assertTrue(invoker.consumesEvent());
+
+            invoker.invoke(model, new SimTime(5), TimerEvent.obtain(timer));
+
+            assertEquals(1, fired.size());
+
+            // a model that shadows the timer handler gets its own
+            assertFalse(EventDispatcher.forClass(TimerHandler.class).find(TimerEvent.class).consumesEvent());
+        }
+        finally {
+            engine.shutdown();
+        }
+    }
+}
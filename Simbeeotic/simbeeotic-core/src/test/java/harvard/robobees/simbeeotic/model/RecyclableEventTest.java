@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model;
+
+
+import harvard.robobees.simbeeotic.SimTime;
+import harvard.robobees.simbeeotic.model.comms.Band;
+import harvard.robobees.simbeeotic.model.comms.AbstractRadio;
+import harvard.robobees.simbeeotic.model.comms.ReceptionEvent;
+import junit.framework.TestCase;
+
+
+/**
+ * @author unnamed
+ */
+public class RecyclableEventTest extends TestCase {
+
+    public static final class Receiver extends AbstractModel {
+
+        private ReceptionEvent last;
+        private boolean retain = false;
+
+
+        @EventHandler
+        public void handleReception(SimTime time, ReceptionEvent event) {
+
+            last = event;
+
+            if (retain) {
+                event.retain();
+            }
+        }
+
+
+        @Override
+        public void finish() {
+        }
+    }
+
+
+    public void testLifecycle() {
+
+        Receiver model = new Receiver();
+        Band band = new Band(2400, 10);
+
+        ReceptionEvent first = ReceptionEvent.obtain(new byte[1], -50, band);
+
+        model.processEvent(new SimTime(0), first);
+
+        // the handled event is cleared and handed out again
+        assertNull(first.getData());
+        assertSame(first, ReceptionEvent.obtain(new byte[2], -60, band));
+        assertEquals(2, first.getData().length);
+
+        // a retained event is left alone
+        model.retain = true;
+        model.processEvent(new SimTime(0), first);
+
+        assertNotNull(first.getData());
+        assertTrue(first != ReceptionEvent.obtain(new byte[3], -70, band));
+
+        // as are events handled by a model that has opted out
+        ReceptionEvent kept = ReceptionEvent.obtain(new byte[4], -80, band);
+
+        model.retain = false;
+        model.setRecycleEvents(false);
+        model.processEvent(new SimTime(0), kept);
+
+        assertNotNull(kept.getData());
+
+        // events that were not obtained from a pool are never recycled
+        ReceptionEvent created = new ReceptionEvent(new byte[5], -90, band);
+
+        model.setRecycleEvents(true);
+        model.processEvent(new SimTime(0), created);
+
+        assertNotNull(created.getData());
+    }
+
+
+    public void testConsumedByRadio() {
+
+        AbstractRadio radio = new AbstractRadio() {
+
+            protected double getRxEnergy() {
+                return 0;
+            }
+
+
+            protected double getTxEnergy() {
+                return 0;
+            }
+
+
+            protected double getIdleEnergy() {
+                return 0;
+            }
+
+
+            protected double getBandwidth() {
+                return 250;
+            }
+
+
+            public Band getOperatingBand() {
+                return new Band(2400, 10);
+            }
+        };
+        Band band = new Band(2400, 10);
+
+        // the final reception handler of the radio never keeps the event
+        radio.setRecycleEvents(false);
+
+        ReceptionEvent event = ReceptionEvent.obtain(new byte[1], -50, band);
+
+        radio.processEvent(new SimTime(0), event);
+
+        assertNull(event.getData());
+        assertSame(event, ReceptionEvent.obtain(new byte[2], -60, band));
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model;
+
+
+import com.bulletphysics.collision.broadphase.DbvtBroadphase;
+import com.bulletphysics.collision.dispatch.CollisionDispatcher;
+import com.bulletphysics.collision.dispatch.DefaultCollisionConfiguration;
+import com.bulletphysics.dynamics.DiscreteDynamicsWorld;
+import com.bulletphysics.dynamics.constraintsolver.SequentialImpulseConstraintSolver;
+import harvard.robobees.simbeeotic.BatchSimEngine;
+import harvard.robobees.simbeeotic.SimTime;
+import harvard.robobees.simbeeotic.model.sensor.DefaultCompass;
+import junit.framework.TestCase;
+
+import javax.vecmath.Vector3f;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+
+/**
+ * @author unnamed
+ */
+public class SimpleBeeTest extends TestCase {
+
+    public static final class Flyer extends SimpleBee {
+
+        public void fly(Vector3f vel) {
+
+            setDesiredLinearVelocity(vel);
+            setHovering(true);
+        }
+    }
+
+
+    private BatchSimEngine engine;
+    private DiscreteDynamicsWorld world;
+    private Flyer bee;
+    private DefaultCompass compass;
+
+
+    private static DiscreteDynamicsWorld buildWorld() {
+
+        DefaultCollisionConfiguration config = new DefaultCollisionConfiguration();
+
+        return new DiscreteDynamicsWorld(new CollisionDispatcher(config), new DbvtBroadphase(),
+                                         new SequentialImpulseConstraintSolver(), config);
+    }
+
+
+    private static SimpleBeeTest build() {
+
+        SimpleBeeTest scenario = new SimpleBeeTest();
+
+        scenario.engine = new BatchSimEngine(1, Integer.MAX_VALUE);
+        scenario.world = buildWorld();
+
+        Flyer bee = new Flyer();
+
+        bee.setModelId(0);
+        bee.setObjectId(0);
+        bee.setRandomSeed(1);
+        bee.setSimEngine(scenario.engine);
+        bee.setDynamicsWorld(scenario.world);
+        bee.setMotionRecorder(new MotionRecorder());
+        bee.setStartPosition(new Vector3f(0, 0, 1));
+
+        DefaultCompass compass = new DefaultCompass();
+
+        compass.setModelId(1);
+        compass.setRandomSeed(2);
+        compass.setSimEngine(scenario.engine);
+        compass.setHost(bee);
+        compass.setOffset(new Vector3f());
+        compass.setPointing(new Vector3f(0, 0, 1));
+
+        scenario.engine.addModel(bee);
+        scenario.engine.addModel(compass);
+
+        bee.initialize();
+        compass.initialize();
+
+        scenario.bee = bee;
+        scenario.compass = compass;
+
+        return scenario;
+    }
+
+
+    private static byte[] saveState(Checkpointable model) throws IOException {
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+
+        model.writeState(out);
+        out.flush();
+
+        return buffer.toByteArray();
+    }
+
+
+    private static void restoreState(Checkpointable model, byte[] state) throws IOException {
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(state));
+
+        model.readState(in);
+
+        assertEquals(0, in.available());
+    }
+
+
+    public void testState() throws IOException {
+
+        SimpleBeeTest first = build();
+        SimpleBeeTest second = build();
+
+        try {
+
+            first.bee.fly(new Vector3f(0.5f, 0, 0));
+            first.engine.run(new SimTime(250));
+            first.world.stepSimulation(0.25f, 60, 1 / 60f);
+
+            byte[] state = saveState(first.bee);
+
+            restoreState(second.bee, state);
+
+            assertTrue(Arrays.equals(state, saveState(second.bee)));
+            assertEquals(new Vector3f(0.5f, 0, 0), second.bee.getDesiredLinearVelocity());
+            assertTrue(second.bee.isHovering());
+            assertEquals(first.bee.getTruthPosition(), second.bee.getTruthPosition());
+        }
+        finally {
+
+            first.engine.shutdown();
+            second.engine.shutdown();
+        }
+    }
+
+
+    public void testSensorState() throws IOException {
+
+        SimpleBeeTest first = build();
+        SimpleBeeTest second = build();
+
+        try {
+
+            // advance the noise generator of the first compass
+            for (int i = 0; i < 5; i++) {
+                first.compass.getHeading();
+            }
+
+            restoreState(second.compass, saveState(first.compass));
+
+            for (int i = 0; i < 5; i++) {
+                assertEquals(first.compass.getHeading(), second.compass.getHeading());
+            }
+        }
+        finally {
+
+            first.engine.shutdown();
+            second.engine.shutdown();
+        }
+    }
+}
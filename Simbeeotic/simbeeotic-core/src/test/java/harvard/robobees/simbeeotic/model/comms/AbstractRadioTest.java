@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model.comms;
+
+
+import com.bulletphysics.collision.broadphase.DbvtBroadphase;
+import com.bulletphysics.collision.dispatch.CollisionDispatcher;
+import com.bulletphysics.collision.dispatch.DefaultCollisionConfiguration;
+import com.bulletphysics.collision.shapes.SphereShape;
+import com.bulletphysics.dynamics.DiscreteDynamicsWorld;
+import com.bulletphysics.dynamics.RigidBody;
+import com.bulletphysics.dynamics.RigidBodyConstructionInfo;
+import com.bulletphysics.dynamics.constraintsolver.SequentialImpulseConstraintSolver;
+import com.bulletphysics.linearmath.DefaultMotionState;
+import com.bulletphysics.linearmath.Transform;
+import harvard.robobees.simbeeotic.BatchSimEngine;
+import harvard.robobees.simbeeotic.SimTime;
+import harvard.robobees.simbeeotic.model.AbstractPhysicalEntity;
+import harvard.robobees.simbeeotic.model.Checkpointable;
+import harvard.robobees.simbeeotic.model.EntityInfo;
+import junit.framework.TestCase;
+
+import javax.vecmath.Vector3f;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+
+/**
+ * @author unnamed
+ */
+public class AbstractRadioTest extends TestCase {
+
+    public static class Ball extends AbstractPhysicalEntity {
+
+        @Override
+        protected RigidBody initializeBody(DiscreteDynamicsWorld world) {
+
+            Transform start = new Transform();
+
+            start.setIdentity();
+            start.origin.set(1, 2, 3);
+
+            SphereShape shape = new SphereShape(0.1f);
+            Vector3f inertia = new Vector3f();
+
+            shape.calculateLocalInertia(1, inertia);
+
+            RigidBody body = new RigidBody(new RigidBodyConstructionInfo(1, new DefaultMotionState(start), shape, inertia));
+
+            body.setUserPointer(new EntityInfo(getObjectId()));
+            world.addRigidBody(body);
+
+            return body;
+        }
+
+
+        @Override
+        public void finish() {
+        }
+    }
+
+
+    private static void assertVector(Vector3f expected, Vector3f actual) {
+
+        assertEquals(expected.x, actual.x, 1e-6);
+        assertEquals(expected.y, actual.y, 1e-6);
+        assertEquals(expected.z, actual.z, 1e-6);
+    }
+
+
+    public void testPoseFollowsHost() {
+
+        DefaultCollisionConfiguration config = new DefaultCollisionConfiguration();
+        DiscreteDynamicsWorld world = new DiscreteDynamicsWorld(new CollisionDispatcher(config), new DbvtBroadphase(),
+                                                                new SequentialImpulseConstraintSolver(), config);
+
+        world.setGravity(new Vector3f());
+
+        BatchSimEngine engine = new BatchSimEngine(1, Integer.MAX_VALUE);
+
+        try {
+
+            Ball ball = new Ball();
+
+            ball.setModelId(0);
+            ball.setRandomSeed(1);
+            ball.setSimEngine(engine);
+            ball.setDynamicsWorld(world);
+
+            DefaultRadio radio = new DefaultRadio();
+
+            radio.setModelId(1);
+            radio.setRandomSeed(2);
+            radio.setSimEngine(engine);
+            radio.setHost(ball);
+            radio.setOffset(new Vector3f(0.5f, 0, 0));
+
+            engine.addModel(ball);
+            engine.addModel(radio);
+
+            ball.initialize();
+            radio.initialize();
+
+            assertVector(new Vector3f(1.5f, 2, 3), radio.getPosition());
+            assertVector(new Vector3f(0, 0, 1), radio.getAntennaPointing());
+
+            // spin a quarter turn about z and drift along y
+            ball.clearMotion();
+            ball.applyImpulse(new Vector3f(0, 1, 0));
+            ball.applyTorqueImpulse(new Vector3f(0, 0, (float)(Math.PI / 2) * 0.004f));
+
+            long version = ball.getPoseVersion();
+
+            world.stepSimulation(1, 60, 1 / 60f);
+
+            assertTrue(ball.getPoseVersion() != version);
+
+            // the cached pose matches a pose computed from the host
+            Transform rot = new Transform();
+
+            rot.setIdentity();
+            rot.setRotation(ball.getTruthOrientation());
+
+            Vector3f offset = new Vector3f(0.5f, 0, 0);
+            Vector3f pointing = new Vector3f(0, 0, 1);
+            Vector3f normal = new Vector3f(1, 0, 0);
+
+            rot.transform(offset);
+            rot.transform(pointing);
+            rot.transform(normal);
+
+            offset.add(ball.getTruthPosition());
+
+            Vector3f out = new Vector3f();
+
+            radio.getPosition(out);
+            assertVector(offset, out);
+            assertVector(pointing, radio.getAntennaPointing());
+            assertVector(normal, radio.getAntennaNormal());
+
+            // the body has moved off its starting point
+            assertTrue(out.y > 2.5f);
+        }
+        finally {
+            engine.shutdown();
+        }
+    }
+
+
+    private static DefaultRadio buildRadio(BatchSimEngine engine) {
+
+        FreeSpacePropagationModel prop = new FreeSpacePropagationModel();
+
+        prop.setModelId(1);
+        prop.setRandomSeed(1);
+        prop.setSimEngine(engine);
+
+        DefaultRadio radio = new DefaultRadio();
+
+        radio.setModelId(0);
+        radio.setRandomSeed(2);
+        radio.setSimEngine(engine);
+
+        engine.addModel(radio);
+        engine.addModel(prop);
+
+        radio.initialize();
+        prop.initialize();
+
+        return radio;
+    }
+
+
+    static byte[] saveState(Checkpointable model) throws IOException {
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+
+        model.writeState(out);
+        out.flush();
+
+        return buffer.toByteArray();
+    }
+
+
+    static void restoreState(Checkpointable model, byte[] state) throws IOException {
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(state));
+
+        model.readState(in);
+
+        assertEquals(0, in.available());
+    }
+
+
+    public void testState() throws IOException {
+
+        BatchSimEngine first = new BatchSimEngine(1, Integer.MAX_VALUE);
+        BatchSimEngine second = new BatchSimEngine(1, Integer.MAX_VALUE);
+
+        try {
+
+            DefaultRadio radio = buildRadio(first);
+            DefaultRadio restored = buildRadio(second);
+
+            // packets waiting to be sent and the airtime of a reception
+            radio.transmitAsync(new byte[] {1, 2, 3});
+            radio.transmitAsync(new byte[] {4, 5});
+            radio.receive(new SimTime(0), new byte[20], -50, 2405);
+
+            byte[] state = saveState(radio);
+
+            assertFalse(Arrays.equals(state, saveState(restored)));
+
+            restoreState(restored, state);
+
+            assertTrue(Arrays.equals(state, saveState(restored)));
+        }
+        finally {
+
+            first.shutdown();
+            second.shutdown();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model.comms;
+
+
+import junit.framework.TestCase;
+
+
+/**
+ * @author unnamed
+ */
+public class GainTableTest extends TestCase {
+
+    private static final AntennaPattern SMOOTH = new AntennaPattern() {
+
+        @Override
+        public double getGain(double azimuth, double elevation) {
+            return 3 * Math.cos(azimuth) + 2 * Math.sin(elevation);
+        }
+    };
+
+
+    public void testSamplesAreExact() {
+
+        GainTable table = new GainTable(SMOOTH, Math.toRadians(5));
+        double step = 2 * Math.PI / 72;
+
+        for (int e = 0; e < 72; e++) {
+            for (int a = 0; a < 72; a++) {
+
+                double az = -Math.PI + (a * step);
+                double el = -Math.PI + (e * step);
+
+                assertEquals(SMOOTH.getGain(az, el), table.getGain(az, el), 1e-9);
+            }
+        }
+    }
+
+
+    public void testInterpolationError() {
+
+        GainTable table = new GainTable(SMOOTH, Math.toRadians(1));
+
+        for (double az = -4; az < 4; az += 0.0137) {
+            for (double el = -4; el < 4; el += 0.0191) {
+                assertEquals(SMOOTH.getGain(az, el), table.getGain(az, el), 1e-3);
+            }
+        }
+    }
+
+
+    public void testSharedTables() {
+
+        GainTable first = new GainTable(new IsotropicAntenna(), Math.toRadians(10));
+        GainTable second = new GainTable(new IsotropicAntenna(), Math.toRadians(10));
+        GainTable smooth = new GainTable(SMOOTH, Math.toRadians(10));
+
+        assertTrue(first.hasSameGains(second));
+        assertFalse(first.hasSameGains(smooth));
+        assertEquals(0.0, first.getGain(0.3, -1.2), 0);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model.comms;
+
+
+import junit.framework.TestCase;
+
+import javax.vecmath.Vector3f;
+import java.util.Random;
+
+
+/**
+ * @author unnamed
+ */
+public class PathLossBatchTest extends TestCase {
+
+    public void testFreeSpace() {
+        checkBatch(new FreeSpacePropagationModel());
+    }
+
+
+    public void testTwoRay() {
+        checkBatch(new TwoRayPropagationModel());
+    }
+
+
+    private void checkBatch(AbstractPropagationModel model) {
+
+        Random rand = new Random(5);
+        Band band = new Band(2405, 5);
+        int n = 500;
+
+        TestRadio tx = new TestRadio(new Vector3f(0, 0, 1.5f), model);
+        Radio[] rx = new Radio[n];
+        float[] height = new float[n];
+        double[] distance = new double[n];
+        double[] power = new double[n];
+
+        for (int i = 0; i < n; i++) {
+
+            // include very short links and links on both sides of the two ray crossover
+            Vector3f pos = (i == 0) ? new Vector3f(0, 0, 1.5f)
+                                    : new Vector3f(rand.nextFloat() * 400, rand.nextFloat() * 10, rand.nextFloat() * 3);
+
+            Vector3f diff = new Vector3f(pos);
+
+            diff.sub(tx.getPosition());
+
+            rx[i] = new TestRadio(pos, model);
+            height[i] = pos.z;
+            distance[i] = diff.length();
+        }
+
+        model.calculatePathLoss(tx, rx, height, distance, -25, band, power, n);
+
+        for (int i = 0; i < n; i++) {
+
+            double expected = model.calculatePathLoss(tx, rx[i], -25, band, distance[i]);
+
+            assertEquals(expected, power[i], 1e-9 * Math.max(1, Math.abs(expected)));
+        }
+    }
+}
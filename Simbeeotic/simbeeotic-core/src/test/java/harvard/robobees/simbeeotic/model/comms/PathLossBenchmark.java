@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model.comms;
+
+
+import javax.vecmath.Vector3f;
+import java.util.Random;
+
+
+/**
+ * Compares the time to evaluate the path loss from one transmitter to many
+ * receivers, one link at a time and as a batch, for the free space and two
+ * ray models.
+ *
+ * <pre>
+ *   java -cp ... harvard.robobees.simbeeotic.model.comms.PathLossBenchmark [receivers] [rounds]
+ * </pre>
+ *
+ * @author unnamed
+ */
+public class PathLossBenchmark {
+
+    private static double sink;
+
+
+    private static double run(AbstractPropagationModel model, boolean batched, int receivers, int rounds) {
+
+        Random rand = new Random(1);
+        Band band = new Band(2405, 5);
+
+        TestRadio tx = new TestRadio(new Vector3f(0, 0, 1), model);
+        Radio[] rx = new Radio[receivers];
+        float[] height = new float[receivers];
+        double[] distance = new double[receivers];
+        double[] power = new double[receivers];
+
+        for (int i = 0; i < receivers; i++) {
+
+            Vector3f pos = new Vector3f(rand.nextFloat() * 100, rand.nextFloat() * 100, rand.nextFloat() * 2);
+            Vector3f diff = new Vector3f(pos);
+
+            diff.sub(tx.getPosition());
+
+            rx[i] = new TestRadio(pos, model);
+            height[i] = pos.z;
+            distance[i] = diff.length();
+        }
+
+        long start = System.nanoTime();
+
+        for (int r = 0; r < rounds; r++) {
+
+            if (batched) {
+                model.calculatePathLoss(tx, rx, height, distance, -25, band, power, receivers);
+            }
+            else {
+
+                for (int i = 0; i < receivers; i++) {
+                    power[i] = model.calculatePathLoss(tx, rx[i], -25, band, distance[i]);
+                }
+            }
+
+            sink += power[r % receivers];
+        }
+
+        return (double)(System.nanoTime() - start) / ((long)rounds * receivers);
+    }
+
+
+    private static void compare(String name, AbstractPropagationModel model, int receivers, int rounds) {
+
+        // warm up both paths before measuring
+        run(model, false, receivers, rounds / 10);
+        run(model, true, receivers, rounds / 10);
+
+        double single = run(model, false, receivers, rounds);
+        double batch = run(model, true, receivers, rounds);
+
+        System.out.println(String.format("%-10s per link: %6.1f ns/link   batch: %6.1f ns/link   speedup: %.2fx",
+                                         name, single, batch, single / batch));
+    }
+
+
+    public static void main(String[] args) {
+
+        int receivers = (args.length > 0) ? Integer.parseInt(args[0]) : 1000;
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 20000;
+
+        compare("free space", new FreeSpacePropagationModel(), receivers, rounds);
+        compare("two ray", new TwoRayPropagationModel(), receivers, rounds);
+
+        System.out.println("(checksum " + sink + ")");
+    }
+}
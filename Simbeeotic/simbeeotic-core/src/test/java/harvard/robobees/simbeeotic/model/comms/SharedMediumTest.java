@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model.comms;
+
+
+import harvard.robobees.simbeeotic.util.MathUtil;
+import junit.framework.TestCase;
+
+
+/**
+ * @author unnamed
+ */
+public class SharedMediumTest extends TestCase {
+
+    private static final Band CHANNEL = new Band(2405, 5);
+    private static final byte[] DATA = new byte[10];
+
+
+    public void testInterference() {
+
+        SharedMedium medium = new SharedMedium();
+
+        // radio 0 and radio 1 transmit at overlapping times, radio 2 hears both
+        SharedMedium.Transmission first = medium.begin(0, DATA, CHANNEL, 0, 100, new int[] {1, 2}, new double[] {-50, -60});
+        SharedMedium.Transmission second = medium.begin(1, DATA, CHANNEL, 50, 150, new int[] {0, 2}, new double[] {-55, -70});
+
+        // a transmission in another band does not interfere
+        SharedMedium.Transmission other = medium.begin(3, DATA, new Band(2410, 5), 0, 150, new int[] {2}, new double[] {-40});
+
+        double[] interference = new double[2];
+
+        assertEquals(1, medium.end(first, interference));
+
+        // radio 1 was transmitting itself
+        assertEquals(Double.POSITIVE_INFINITY, interference[0]);
+        assertEquals(MathUtil.dbmToMw(-70), interference[1], 1e-15);
+
+        assertEquals(1, medium.end(second, interference));
+
+        assertEquals(Double.POSITIVE_INFINITY, interference[0]);
+        assertEquals(MathUtil.dbmToMw(-60), interference[1], 1e-15);
+
+        assertEquals(0, medium.end(other, interference));
+        assertEquals(0.0, interference[0]);
+
+        // nothing is pending, so everything was released
+        assertEquals(0, medium.size());
+    }
+
+
+    public void testSimultaneousEnds() {
+
+        SharedMedium medium = new SharedMedium();
+
+        SharedMedium.Transmission a = medium.begin(0, DATA, CHANNEL, 0, 100, new int[] {2}, new double[] {-50});
+        SharedMedium.Transmission b = medium.begin(1, DATA, CHANNEL, 0, 100, new int[] {2}, new double[] {-60});
+
+        double[] interference = new double[1];
+
+        medium.end(a, interference);
+        assertEquals(MathUtil.dbmToMw(-60), interference[0], 1e-15);
+
+        // the first transmission is still needed by the second
+        medium.end(b, interference);
+        assertEquals(MathUtil.dbmToMw(-50), interference[0], 1e-15);
+
+        assertEquals(0, medium.size());
+    }
+
+
+    public void testBusy() {
+
+        SharedMedium medium = new SharedMedium();
+
+        medium.begin(0, DATA, CHANNEL, 100, 200, new int[] {1, 2}, new double[] {-70, -90});
+
+        assertFalse(medium.isBusy(1, CHANNEL, 50, -77));
+        assertTrue(medium.isBusy(1, CHANNEL, 150, -77));
+        assertFalse(medium.isBusy(2, CHANNEL, 150, -77));
+        assertTrue(medium.isBusy(0, CHANNEL, 150, -77));
+        assertFalse(medium.isBusy(1, CHANNEL, 200, -77));
+        assertFalse(medium.isBusy(1, new Band(2410, 5), 150, -77));
+    }
+}
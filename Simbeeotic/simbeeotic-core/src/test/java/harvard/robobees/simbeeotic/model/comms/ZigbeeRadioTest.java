@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model.comms;
+
+
+import com.bulletphysics.collision.broadphase.DbvtBroadphase;
+import com.bulletphysics.collision.dispatch.CollisionDispatcher;
+import com.bulletphysics.collision.dispatch.DefaultCollisionConfiguration;
+import com.bulletphysics.dynamics.DiscreteDynamicsWorld;
+import com.bulletphysics.dynamics.constraintsolver.SequentialImpulseConstraintSolver;
+import harvard.robobees.simbeeotic.BatchSimEngine;
+import harvard.robobees.simbeeotic.SimTime;
+import harvard.robobees.simbeeotic.model.Aggregator;
+import junit.framework.TestCase;
+
+import javax.vecmath.Vector3f;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * @author unnamed
+ */
+public class ZigbeeRadioTest extends TestCase {
+
+    /**
+     * A radio that exposes its statistics.
+     */
+    public static final class Probe extends CC2420 {
+
+        public Aggregator getStatistics() {
+            return getAggregator();
+        }
+    }
+
+
+    /**
+     * Records the packets heard by a radio.
+     */
+    private static final class Receiver implements MessageListener {
+
+        public List<byte[]> packets = new ArrayList<byte[]>();
+
+
+        public void messageReceived(SimTime time, byte[] data, double rxPower) {
+            packets.add(data);
+        }
+    }
+
+
+    private Probe sender;
+    private CC2420 jammer;
+    private Receiver heard = new Receiver();
+
+
+    private static CC2420 buildRadio(BatchSimEngine engine) {
+
+        FreeSpacePropagationModel prop = new FreeSpacePropagationModel();
+
+        prop.setModelId(1);
+        prop.setRandomSeed(1);
+        prop.setSimEngine(engine);
+        prop.setUseSharedMedium(true);
+
+        CC2420 radio = new CC2420();
+
+        radio.setModelId(0);
+        radio.setRandomSeed(2);
+        radio.setSimEngine(engine);
+
+        engine.addModel(radio);
+        engine.addModel(prop);
+
+        radio.initialize();
+        prop.initialize();
+
+        return radio;
+    }
+
+
+    /**
+     * Builds a radio that uses CSMA/CA and one that does not, 1 m apart on a shared medium.
+     */
+    private void buildPair(BatchSimEngine engine, int maxBackoffs) {
+
+        DefaultCollisionConfiguration config = new DefaultCollisionConfiguration();
+        DiscreteDynamicsWorld world = new DiscreteDynamicsWorld(new CollisionDispatcher(config), new DbvtBroadphase(),
+                                                                new SequentialImpulseConstraintSolver(), config);
+
+        AbstractRadioTest.Ball ball = new AbstractRadioTest.Ball();
+
+        ball.setModelId(0);
+        ball.setRandomSeed(1);
+        ball.setSimEngine(engine);
+        ball.setDynamicsWorld(world);
+
+        sender = new Probe();
+
+        sender.setModelId(1);
+        sender.setRandomSeed(2);
+        sender.setSimEngine(engine);
+        sender.setHost(ball);
+        sender.setAntennaPattern(new IsotropicAntenna());
+        sender.setMaxBackoffs(maxBackoffs);
+
+        jammer = new CC2420();
+
+        jammer.setModelId(2);
+        jammer.setRandomSeed(3);
+        jammer.setSimEngine(engine);
+        jammer.setHost(ball);
+        jammer.setOffset(new Vector3f(1, 0, 0));
+        jammer.setAntennaPattern(new IsotropicAntenna());
+        jammer.setUseCsma(false);
+        jammer.addMessageListener(heard);
+
+        FreeSpacePropagationModel prop = new FreeSpacePropagationModel();
+
+        prop.setModelId(3);
+        prop.setRandomSeed(4);
+        prop.setSimEngine(engine);
+        prop.setUseSharedMedium(true);
+
+        engine.addModel(ball);
+        engine.addModel(sender);
+        engine.addModel(jammer);
+        engine.addModel(prop);
+
+        ball.initialize();
+        sender.initialize();
+        jammer.initialize();
+        prop.initialize();
+    }
+
+
+    public void testBackoffOnBusyChannel() {
+
+        BatchSimEngine engine = new BatchSimEngine(1, Integer.MAX_VALUE);
+
+        try {
+
+            buildPair(engine, 4);
+
+            // the jammer occupies the channel for about 6 ms
+            jammer.transmit(new byte[200]);
+            sender.transmit(new byte[] {1, 2, 3});
+
+            engine.run(new SimTime(100));
+
+            Aggregator stats = sender.getStatistics();
+
+            // the sender backed off until the channel was clear, then sent the packet
+            assertTrue(stats.getItemizedValue("csma", "busy-channel") >= 1);
+            assertEquals(0.0, stats.getItemizedValue("csma", "access-failure"));
+            assertEquals(1, heard.packets.size());
+            assertTrue(Arrays.equals(new byte[] {1, 2, 3}, heard.packets.get(0)));
+        }
+        finally {
+            engine.shutdown();
+        }
+    }
+
+
+    public void testAccessFailure() {
+
+        BatchSimEngine engine = new BatchSimEngine(1, Integer.MAX_VALUE);
+
+        try {
+
+            buildPair(engine, 2);
+
+            // the jammer occupies the channel for about 128 ms, longer than all of the backoffs
+            jammer.transmit(new byte[4000]);
+            sender.transmit(new byte[] {1, 2, 3});
+
+            engine.run(new SimTime(500));
+
+            Aggregator stats = sender.getStatistics();
+
+            // the first assessment and every retry found the channel busy, then the packet was dropped
+            assertEquals(3.0, stats.getItemizedValue("csma", "busy-channel"));
+            assertEquals(1.0, stats.getItemizedValue("csma", "access-failure"));
+            assertTrue(heard.packets.isEmpty());
+        }
+        finally {
+            engine.shutdown();
+        }
+    }
+
+
+    public void testState() throws IOException {
+
+        BatchSimEngine first = new BatchSimEngine(1, Integer.MAX_VALUE);
+        BatchSimEngine second = new BatchSimEngine(1, Integer.MAX_VALUE);
+
+        try {
+
+            CC2420 radio = buildRadio(first);
+            CC2420 restored = buildRadio(second);
+
+            // both packets wait for channel access, and the first backoff is pending
+            radio.transmit(new byte[] {1, 2, 3});
+            radio.transmit(new byte[] {4, 5});
+
+            byte[] state = AbstractRadioTest.saveState(radio);
+
+            assertFalse(Arrays.equals(state, AbstractRadioTest.saveState(restored)));
+
+            AbstractRadioTest.restoreState(restored, state);
+
+            assertTrue(Arrays.equals(state, AbstractRadioTest.saveState(restored)));
+        }
+        finally {
+
+            first.shutdown();
+            second.shutdown();
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model.ns;
+
+
+import com.bulletphysics.collision.broadphase.DbvtBroadphase;
+import com.bulletphysics.collision.dispatch.CollisionDispatcher;
+import com.bulletphysics.collision.dispatch.DefaultCollisionConfiguration;
+import com.bulletphysics.dynamics.DiscreteDynamicsWorld;
+import com.bulletphysics.dynamics.constraintsolver.SequentialImpulseConstraintSolver;
+import harvard.robobees.simbeeotic.BatchSimEngine;
+import harvard.robobees.simbeeotic.ClockControl;
+import harvard.robobees.simbeeotic.SimTime;
+import harvard.robobees.simbeeotic.model.MotionRecorder;
+import harvard.robobees.simbeeotic.model.SimpleBee;
+import harvard.robobees.simbeeotic.model.comms.MessageListener;
+import junit.framework.TestCase;
+
+import javax.vecmath.Vector3f;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * @author unnamed
+ */
+public class InternalNSTest extends TestCase {
+
+    // 1 bit per ns, so that the serialization times are exact
+    private static final String DATA_RATE = "1Gbps";
+    private static final long DELAY = TimeUnit.MILLISECONDS.toNanos(2);
+
+    private static final String PAYLOAD = "hello";
+    private static final long HOP_TIME = ((PAYLOAD.length() + 28) * 8) + DELAY;
+    private static final long DISCOVERY_TIME = ((24 + 28) * 8) + DELAY + ((20 + 28) * 8) + DELAY;
+
+    private BatchSimEngine engine;
+    private ClockControl clock;
+    private DiscreteDynamicsWorld world;
+    private List<SimpleBee> bees = new ArrayList<SimpleBee>();
+    private List<InternalNS> networks = new ArrayList<InternalNS>();
+
+
+    /**
+     * Records the time at which each packet is received.
+     */
+    private static final class Receiver implements MessageListener {
+
+        public List<Long> times = new ArrayList<Long>();
+
+
+        public void messageReceived(SimTime time, byte[] data, double rxPower) {
+
+            assertEquals(PAYLOAD, new String(data));
+
+            times.add(time.getTime());
+        }
+    }
+
+
+    /**
+     * A bee that hovers in place.
+     */
+    private static final class Hoverer extends SimpleBee {
+    }
+
+
+    public InternalNSTest() {
+
+        engine = new BatchSimEngine(1, Integer.MAX_VALUE);
+        clock = new ClockControl(new SimTime(1000), 0);
+
+        DefaultCollisionConfiguration config = new DefaultCollisionConfiguration();
+
+        world = new DiscreteDynamicsWorld(new CollisionDispatcher(config), new DbvtBroadphase(),
+                                          new SequentialImpulseConstraintSolver(), config);
+
+        clock.notifyListeners(new SimTime(0));
+    }
+
+
+    /**
+     * Adds a bee, with an attached network model, at a position along the x axis.
+     */
+    private Receiver addBee(float x, String protocol) {
+
+        int id = bees.size() * 2;
+
+        SimpleBee bee = new Hoverer();
+
+        bee.setModelId(id);
+        bee.setObjectId(bees.size());
+        bee.setRandomSeed(id);
+        bee.setSimEngine(engine);
+        bee.setDynamicsWorld(world);
+        bee.setMotionRecorder(new MotionRecorder());
+        bee.setStartPosition(new Vector3f(x, 0, 1));
+
+        InternalNS ns = new InternalNS();
+
+        ns.setModelId(id + 1);
+        ns.setRandomSeed(id + 1);
+        ns.setSimEngine(engine);
+        ns.setClockControl(clock);
+        ns.setParentModel(bee);
+        ns.setProtocol(protocol);
+        ns.setDataRate(DATA_RATE);
+        ns.setDelay("2ms");
+        ns.setRange(10);
+
+        bee.addChildModel(ns);
+
+        engine.addModel(bee);
+        engine.addModel(ns);
+
+        bees.add(bee);
+        networks.add(ns);
+
+        Receiver receiver = new Receiver();
+
+        ns.addMessageListener(receiver);
+
+        return receiver;
+    }
+
+
+    private void initialize() {
+
+        for (SimpleBee bee : bees) {
+            bee.initialize();
+        }
+
+        for (InternalNS ns : networks) {
+            ns.initialize();
+        }
+    }
+
+
+    /**
+     * Sends a packet from one bee to another at the current time.
+     */
+    private void send(int from, int to) {
+
+        int toId = (to < 0) ? -1 : bees.get(to).getModelId();
+
+        networks.get(from).transmit(new NSPacket(PAYLOAD, bees.get(from).getModelId(), toId,
+                                                 clock.getCurrentTime(), clock.getCurrentTime()));
+    }
+
+
+    public void testDeliveryInRange() {
+
+        try {
+
+            addBee(0, "DSDV");
+
+            Receiver near = addBee(8, "DSDV");
+            Receiver far = addBee(16, "DSDV");
+
+            initialize();
+
+            send(0, 1);
+            send(0, 2);
+
+            engine.run(new SimTime(1000));
+
+            // one hop to the nearest bee, two hops (relayed by the nearest bee) to the farthest
+            assertEquals(1, near.times.size());
+            assertEquals(HOP_TIME, (long)near.times.get(0));
+
+            // the second packet waits for the first to leave the radio
+            long start = (PAYLOAD.length() + 28) * 8;
+
+            assertEquals(1, far.times.size());
+            assertEquals(start + (2 * HOP_TIME), (long)far.times.get(0));
+        }
+        finally {
+            engine.shutdown();
+        }
+    }
+
+
+    public void testDropOutOfRange() {
+
+        try {
+
+            addBee(0, "DSDV");
+
+            Receiver near = addBee(8, "DSDV");
+            Receiver far = addBee(30, "DSDV");
+
+            initialize();
+
+            send(0, 2);
+            send(0, -1);
+
+            engine.run(new SimTime(1000));
+
+            // the unicast has no route and the broadcast only reaches one hop neighbors
+            assertTrue(far.times.isEmpty());
+            assertEquals(1, near.times.size());
+        }
+        finally {
+            engine.shutdown();
+        }
+    }
+
+
+    public void testRouteDiscoveryLatency() {
+
+        try {
+
+            addBee(0, "AODV");
+
+            Receiver near = addBee(8, "AODV");
+
+            initialize();
+
+            send(0, 1);
+
+            engine.run(new SimTime(1000));
+
+            clock.notifyListeners(new SimTime(1000));
+
+            send(0, 1);
+
+            engine.run(new SimTime(2000));
+
+            // only the first packet pays for the route request and reply
+            long second = TimeUnit.MILLISECONDS.toNanos(1000);
+
+            assertEquals(2, near.times.size());
+            assertEquals(DISCOVERY_TIME + HOP_TIME, (long)near.times.get(0));
+            assertEquals(second + HOP_TIME, (long)near.times.get(1));
+        }
+        finally {
+            engine.shutdown();
+        }
+    }
+}
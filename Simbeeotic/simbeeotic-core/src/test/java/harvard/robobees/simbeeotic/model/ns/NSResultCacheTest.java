@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model.ns;
+
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * @author unnamed
+ */
+public class NSResultCacheTest extends TestCase {
+
+    private static byte[] key(int i) {
+        return new byte[] {1, 2, (byte)i};
+    }
+
+
+    private static List<NSResultCache.Reception> receptions(int from, int to, long delay) {
+
+        NSResultCache.Reception rx = new NSResultCache.Reception();
+
+        rx.batchIndex = 0;
+        rx.delay = delay;
+        rx.fromNode = from;
+        rx.toNode = to;
+        rx.payload = new byte[] {7, 8, 9};
+
+        List<NSResultCache.Reception> list = new ArrayList<NSResultCache.Reception>();
+
+        list.add(rx);
+
+        return list;
+    }
+
+
+    public void testEviction() {
+
+        NSResultCache cache = new NSResultCache(2, null);
+
+        cache.put(key(1), receptions(0, 1, 10));
+        cache.put(key(2), receptions(0, 2, 20));
+
+        // touching the first entry makes the second the least recently used
+        assertNotNull(cache.get(key(1)));
+
+        cache.put(key(3), receptions(0, 3, 30));
+
+        assertNull(cache.get(key(2)));
+        assertNotNull(cache.get(key(1)));
+        assertNotNull(cache.get(key(3)));
+    }
+
+
+    public void testPersisted() throws Exception {
+
+        File dir = File.createTempFile("nscache", "");
+
+        dir.delete();
+
+        try {
+
+            new NSResultCache(1, dir).put(key(1), receptions(3, 4, 12345));
+
+            // a new cache on the same directory, as in another run
+            NSResultCache cache = new NSResultCache(1, dir);
+
+            assertNull(cache.get(key(2)));
+
+            List<NSResultCache.Reception> loaded = cache.get(key(1));
+
+            assertNotNull(loaded);
+            assertEquals(1, loaded.size());
+            assertEquals(0, loaded.get(0).batchIndex);
+            assertEquals(12345, loaded.get(0).delay);
+            assertEquals(3, loaded.get(0).fromNode);
+            assertEquals(4, loaded.get(0).toNode);
+            assertEquals(3, loaded.get(0).payload.length);
+            assertEquals(9, loaded.get(0).payload[2]);
+        }
+        finally {
+
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+
+            dir.delete();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model.ns;
+
+
+import harvard.robobees.simbeeotic.SimTime;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * @author unnamed
+ */
+public class NSTraceTest extends TestCase {
+
+    public void testRoundTrip() throws Exception {
+
+        File file = File.createTempFile("nstrace", ".bin");
+
+        file.deleteOnExit();
+
+        SimTime txTime = new SimTime(100, TimeUnit.NANOSECONDS);
+
+        NSPacket tx = new NSPacket("hello", 1, 2, txTime, new SimTime(0, TimeUnit.NANOSECONDS));
+        NSPacket rx = new NSPacket("hello".getBytes("UTF-8"), 1, 2, txTime, new SimTime(5000, TimeUnit.NANOSECONDS));
+
+        rx.setOrigin(tx);
+
+        NSTrace trace = NSTrace.acquire(null, file.getPath());
+
+        trace.recordTransmit(new SimTime(1000, TimeUnit.NANOSECONDS), tx);
+        trace.recordReceive(new SimTime(5000, TimeUnit.NANOSECONDS), rx);
+        trace.release();
+
+        List<NSTrace.Record> records = NSTrace.load(file.getPath());
+
+        assertEquals(2, records.size());
+
+        NSTrace.Record first = records.get(0);
+        NSTrace.Record second = records.get(1);
+
+        assertEquals(NSTrace.TRANSMIT, first.type);
+        assertEquals(NSTrace.RECEIVE, second.type);
+        assertEquals(first.id, second.id);
+        assertEquals(1000, first.time);
+        assertEquals(5000, second.time);
+        assertEquals(100, second.txTime);
+        assertEquals(5000, second.rxTime);
+        assertEquals(1, second.fromId);
+        assertEquals(2, second.toId);
+        assertEquals("hello", new String(second.payload, "UTF-8"));
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model.ns;
+
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+
+/**
+ * @author unnamed
+ */
+public class NSWireTest extends TestCase {
+
+    private static final byte[] PAYLOAD = {1, 2, 3, 4, 5};
+
+
+    /**
+     * Decodes the frames written by an encoder.
+     */
+    private static NSWire decoder(ByteArrayOutputStream written) {
+        return new NSWire(new ByteArrayInputStream(written.toByteArray()), new ByteArrayOutputStream());
+    }
+
+
+    private static float getFloat(NSWire wire) {
+        return Float.intBitsToFloat(wire.getInt());
+    }
+
+
+    public void testFramesToNs3() throws IOException {
+
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        NSWire wire = new NSWire(new ByteArrayInputStream(new byte[0]), written);
+
+        wire.begin(NSWire.SETTINGS);
+        wire.putString("udp");
+        wire.putString("5Mbps");
+        wire.putString("2ms");
+        wire.putString("10.1.0.0");
+        wire.putString("255.255.0.0");
+        wire.end();
+
+        wire.begin(NSWire.NODES);
+        wire.putInt(1);
+        wire.putFloat(1.5f);
+        wire.putFloat(-2);
+        wire.putFloat(0.25f);
+        wire.end();
+
+        wire.begin(NSWire.MOVES);
+        wire.putLong(-1);
+        wire.putInt(1);
+        wire.putInt(0);
+        wire.putFloat(3);
+        wire.putFloat(4);
+        wire.putFloat(5);
+        wire.end();
+
+        wire.begin(NSWire.TRANSMIT);
+        wire.putInt(1);
+        wire.putInt(7);
+        wire.putInt(0);
+        wire.putInt(-1);
+        wire.putBytes(PAYLOAD);
+        wire.end();
+
+        wire.begin(NSWire.SCHEDULE);
+        wire.putInt(1);
+        wire.putInt(8);
+        wire.putLong(123456789012L);
+        wire.putInt(1);
+        wire.putInt(0);
+        wire.putBytes(PAYLOAD);
+        wire.end();
+
+        wire.begin(NSWire.GRANT);
+        wire.putLong(Long.MAX_VALUE);
+        wire.end();
+
+        wire.begin(NSWire.QUIT);
+        wire.end();
+
+        wire.flush();
+
+        NSWire read = decoder(written);
+
+        assertEquals(NSWire.SETTINGS, read.receive());
+        assertEquals("udp", new String(read.getBytes(), "UTF-8"));
+        assertEquals("5Mbps", new String(read.getBytes(), "UTF-8"));
+        assertEquals("2ms", new String(read.getBytes(), "UTF-8"));
+        assertEquals("10.1.0.0", new String(read.getBytes(), "UTF-8"));
+        assertEquals("255.255.0.0", new String(read.getBytes(), "UTF-8"));
+
+        assertEquals(NSWire.NODES, read.receive());
+        assertEquals(1, read.getInt());
+        assertEquals(1.5f, getFloat(read));
+        assertEquals(-2f, getFloat(read));
+        assertEquals(0.25f, getFloat(read));
+
+        assertEquals(NSWire.MOVES, read.receive());
+        assertEquals(-1, read.getLong());
+        assertEquals(1, read.getInt());
+        assertEquals(0, read.getInt());
+        assertEquals(3f, getFloat(read));
+        assertEquals(4f, getFloat(read));
+        assertEquals(5f, getFloat(read));
+
+        assertEquals(NSWire.TRANSMIT, read.receive());
+        assertEquals(1, read.getInt());
+        assertEquals(7, read.getInt());
+        assertEquals(0, read.getInt());
+        assertEquals(-1, read.getInt());
+        assertTrue(Arrays.equals(PAYLOAD, read.getBytes()));
+
+        assertEquals(NSWire.SCHEDULE, read.receive());
+        assertEquals(1, read.getInt());
+        assertEquals(8, read.getInt());
+        assertEquals(123456789012L, read.getLong());
+        assertEquals(1, read.getInt());
+        assertEquals(0, read.getInt());
+        assertTrue(Arrays.equals(PAYLOAD, read.getBytes()));
+
+        assertEquals(NSWire.GRANT, read.receive());
+        assertEquals(Long.MAX_VALUE, read.getLong());
+
+        assertEquals(NSWire.QUIT, read.receive());
+
+        try {
+
+            read.receive();
+            fail("Expected the end of the stream.");
+        }
+        catch(EOFException eofe) {
+            // expected
+        }
+    }
+
+
+    public void testFramesFromNs3() throws IOException {
+
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        NSWire wire = new NSWire(new ByteArrayInputStream(new byte[0]), written);
+
+        wire.begin(NSWire.READY);
+        wire.end();
+
+        // large enough to grow the buffers of both ends
+        byte[] large = new byte[100 * 1024];
+
+        large[large.length - 1] = 42;
+
+        wire.begin(NSWire.RECEPTIONS);
+        wire.putInt(2);
+        wire.putInt(3);
+        wire.putLong(2000000);
+        wire.putInt(1);
+        wire.putInt(0);
+        wire.putBytes(PAYLOAD);
+        wire.putInt(4);
+        wire.putLong(2500000);
+        wire.putInt(2);
+        wire.putInt(0);
+        wire.putBytes(large);
+        wire.end();
+
+        wire.flush();
+
+        NSWire read = decoder(written);
+
+        assertEquals(NSWire.READY, read.receive());
+
+        assertEquals(NSWire.RECEPTIONS, read.receive());
+        assertEquals(2, read.getInt());
+        assertEquals(3, read.getInt());
+        assertEquals(2000000, read.getLong());
+        assertEquals(1, read.getInt());
+        assertEquals(0, read.getInt());
+        assertTrue(Arrays.equals(PAYLOAD, read.getBytes()));
+        assertEquals(4, read.getInt());
+        assertEquals(2500000, read.getLong());
+        assertEquals(2, read.getInt());
+        assertEquals(0, read.getInt());
+        assertTrue(Arrays.equals(large, read.getBytes()));
+    }
+
+
+    public void testTruncatedFrame() throws IOException {
+
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        NSWire wire = new NSWire(new ByteArrayInputStream(new byte[0]), written);
+
+        wire.begin(NSWire.TRANSMIT);
+        wire.putInt(1);
+        wire.putInt(7);
+        wire.putInt(0);
+        wire.putInt(1);
+        wire.putBytes(PAYLOAD);
+        wire.end();
+        wire.flush();
+
+        byte[] frame = written.toByteArray();
+        NSWire read = new NSWire(new ByteArrayInputStream(Arrays.copyOf(frame, frame.length - 3)), new ByteArrayOutputStream());
+
+        try {
+
+            read.receive();
+            fail("Expected the truncated frame to be rejected.");
+        }
+        catch(EOFException eofe) {
+            // expected
+        }
+
+        // a length that cannot be a frame
+        read = new NSWire(new ByteArrayInputStream(new byte[] {0, 0, 0, 0, NSWire.READY}), new ByteArrayOutputStream());
+
+        try {
+
+            read.receive();
+            fail("Expected the empty frame to be rejected.");
+        }
+        catch(IOException ioe) {
+            assertTrue(ioe.getMessage().contains("Invalid frame length"));
+        }
+    }
+}
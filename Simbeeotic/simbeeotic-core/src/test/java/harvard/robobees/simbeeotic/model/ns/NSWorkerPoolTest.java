@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.model.ns;
+
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+
+
+/**
+ * @author unnamed
+ */
+public class NSWorkerPoolTest extends TestCase {
+
+    private static File createBaseDir() throws IOException {
+
+        File dir = File.createTempFile("nsworkers", "");
+
+        assertTrue(dir.delete());
+
+        return dir;
+    }
+
+
+    private static void delete(File file) {
+
+        File[] children = file.listFiles();
+
+        if (children != null) {
+
+            for (File child : children) {
+                delete(child);
+            }
+        }
+
+        file.delete();
+    }
+
+
+    public void testMaxWorkers() throws Exception {
+
+        File base = createBaseDir();
+
+        NSWorkerPool.reset();
+        NSWorkerPool.configure(2, base);
+
+        try {
+
+            // only the first configuration has an effect
+            NSWorkerPool.configure(5, base);
+
+            assertEquals(2, NSWorkerPool.getIdleWorkers());
+
+            NSWorkerPool.Worker first = NSWorkerPool.acquire();
+            NSWorkerPool.Worker second = NSWorkerPool.acquire();
+
+            assertEquals(0, NSWorkerPool.getIdleWorkers());
+
+            final NSWorkerPool.Worker[] third = new NSWorkerPool.Worker[1];
+
+            Thread waiter = new Thread() {
+
+                public void run() {
+                    third[0] = NSWorkerPool.acquire();
+                }
+            };
+
+            waiter.start();
+            waiter.join(200);
+
+            // all of the workers are busy
+            assertTrue(waiter.isAlive());
+
+            NSWorkerPool.release(first);
+
+            waiter.join(5000);
+
+            assertFalse(waiter.isAlive());
+            assertNotNull(third[0]);
+            assertEquals(0, NSWorkerPool.getIdleWorkers());
+
+            NSWorkerPool.release(second);
+            NSWorkerPool.release(third[0]);
+
+            assertEquals(2, NSWorkerPool.getIdleWorkers());
+        }
+        finally {
+
+            NSWorkerPool.reset();
+            delete(base);
+        }
+    }
+
+
+    public void testWorkingDirectories() throws Exception {
+
+        File base = createBaseDir();
+
+        NSWorkerPool.reset();
+        NSWorkerPool.configure(2, base);
+
+        try {
+
+            assertTrue(base.isDirectory());
+
+            NSWorkerPool.Worker first = NSWorkerPool.acquire();
+            NSWorkerPool.Worker second = NSWorkerPool.acquire();
+
+            assertFalse(first.getId() == second.getId());
+            assertFalse(first.getDirectory().equals(second.getDirectory()));
+
+            for (NSWorkerPool.Worker worker : new NSWorkerPool.Worker[] {first, second}) {
+
+                assertTrue(worker.getDirectory().isDirectory());
+                assertEquals(base.getCanonicalFile(), worker.getDirectory().getParentFile().getCanonicalFile());
+            }
+
+            NSWorkerPool.release(first);
+
+            // the output of the released worker is kept, and its slot gets a new directory
+            NSWorkerPool.Worker reused = NSWorkerPool.acquire();
+
+            assertTrue(first.getDirectory().isDirectory());
+            assertFalse(reused.getDirectory().equals(first.getDirectory()));
+            assertFalse(reused.getDirectory().equals(second.getDirectory()));
+
+            NSWorkerPool.release(second);
+            NSWorkerPool.release(reused);
+
+            assertEquals(2, NSWorkerPool.getIdleWorkers());
+        }
+        finally {
+
+            NSWorkerPool.reset();
+            delete(base);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.util;
+
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * @author unnamed
+ */
+public class IntervalTreeTest extends TestCase {
+
+    public void testQueryMatchesScan() {
+
+        Random rand = new Random(3);
+        IntervalTree<Integer> tree = new IntervalTree<Integer>();
+        List<IntervalTree.Entry<Integer>> all = new ArrayList<IntervalTree.Entry<Integer>>();
+        List<IntervalTree.Entry<Integer>> found = new ArrayList<IntervalTree.Entry<Integer>>();
+
+        for (int round = 0; round < 5000; round++) {
+
+            // mostly insert, sometimes remove a random interval
+            if (all.isEmpty() || (rand.nextInt(3) > 0)) {
+
+                long start = rand.nextInt(10000);
+                long end = start + 1 + rand.nextInt(500);
+
+                all.add(tree.insert(start, end, rand.nextInt(4), round));
+            }
+            else {
+                assertTrue(tree.remove(all.remove(rand.nextInt(all.size()))));
+            }
+
+            assertEquals(all.size(), tree.size());
+
+            long start = rand.nextInt(10500);
+            long end = start + rand.nextInt(300);
+
+            found.clear();
+            tree.query(start, end, found);
+
+            int expected = 0;
+
+            for (IntervalTree.Entry<Integer> entry : all) {
+
+                if ((entry.getStart() < end) && (entry.getEnd() > start)) {
+
+                    expected++;
+                    assertTrue(found.contains(entry));
+                }
+            }
+
+            assertEquals(expected, found.size());
+
+            // results come in order of start time
+            for (int i = 1; i < found.size(); i++) {
+                assertTrue(found.get(i - 1).getStart() <= found.get(i).getStart());
+            }
+        }
+    }
+
+
+    public void testRemoveMissing() {
+
+        IntervalTree<String> tree = new IntervalTree<String>();
+        IntervalTree.Entry<String> entry = tree.insert(0, 10, 0, "a");
+
+        assertTrue(tree.remove(entry));
+        assertFalse(tree.remove(entry));
+        assertEquals(0, tree.size());
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.util;
+
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+
+/**
+ * @author unnamed
+ */
+public class RestorableRandomTest extends TestCase {
+
+    public void testSameSequence() {
+
+        Random expected = new Random(42);
+        Random actual = new RestorableRandom(42);
+
+        for (int i = 0; i < 1000; i++) {
+
+            assertEquals(expected.nextInt(), actual.nextInt());
+            assertEquals(expected.nextInt(17), actual.nextInt(17));
+            assertEquals(expected.nextLong(), actual.nextLong());
+            assertEquals(expected.nextDouble(), actual.nextDouble());
+            assertEquals(expected.nextGaussian(), actual.nextGaussian());
+            assertEquals(expected.nextBoolean(), actual.nextBoolean());
+        }
+
+        expected.setSeed(7);
+        actual.setSeed(7);
+
+        assertEquals(expected.nextGaussian(), actual.nextGaussian());
+    }
+
+
+    public void testRestore() throws IOException {
+
+        RestorableRandom original = new RestorableRandom(1234);
+
+        original.nextGaussian();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        original.writeState(new DataOutputStream(bytes));
+
+        RestorableRandom restored = new RestorableRandom(0);
+
+        restored.readState(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(original.nextGaussian(), restored.nextGaussian());
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2012, The President and Fellows of Harvard College.
+ * All Rights Reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. Neither the name of the University nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE UNIVERSITY AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE UNIVERSITY OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+package harvard.robobees.simbeeotic.util;
+
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+
+/**
+ * @author unnamed
+ */
+public class UniformGridTest extends TestCase {
+
+    public void testQueryFindsNeighbors() {
+
+        Random rand = new Random(11);
+        UniformGrid grid = new UniformGrid();
+
+        int n = 2000;
+        float radius = 10;
+
+        float[] x = new float[n];
+        float[] y = new float[n];
+        float[] z = new float[n];
+        int[] out = new int[n];
+
+        // rebuild a few times to exercise the reuse of the arrays
+        for (int round = 0; round < 3; round++) {
+
+            for (int i = 0; i < n; i++) {
+
+                x[i] = (rand.nextFloat() - 0.5f) * 200;
+                y[i] = (rand.nextFloat() - 0.5f) * 200;
+                z[i] = rand.nextFloat() * 20;
+            }
+
+            grid.build(x, y, z, n, radius);
+
+            assertEquals(n, grid.size());
+
+            for (int q = 0; q < 200; q++) {
+
+                int center = rand.nextInt(n);
+                int found = grid.query(x[center], y[center], z[center], radius, out);
+                boolean[] seen = new boolean[n];
+
+                for (int i = 0; i < found; i++) {
+
+                    assertFalse(seen[out[i]]);
+                    seen[out[i]] = true;
+
+                    if (i > 0) {
+                        assertTrue(out[i - 1] < out[i]);
+                    }
+                }
+
+                assertTrue(seen[center]);
+
+                for (int i = 0; i < n; i++) {
+
+                    float dx = x[i] - x[center];
+                    float dy = y[i] - y[center];
+                    float dz = z[i] - z[center];
+
+                    if (Math.sqrt(dx * dx + dy * dy + dz * dz) <= radius) {
+                        assertTrue(seen[i]);
+                    }
+                }
+
+                // the grid should visit far fewer than all of the points
+                assertTrue(found < n / 10);
+            }
+        }
+    }
+
+
+    public void testEmpty() {
+
+        UniformGrid grid = new UniformGrid();
+
+        grid.build(new float[0], new float[0], new float[0], 0, 1);
+
+        assertEquals(0, grid.query(0, 0, 0, 1, new int[0]));
+    }
+}
@@ -37,7 +37,15 @@
 #include <fstream> 
 #include <string>
 #include <cassert>
+#include <cstring>
 #include <map>
+#include <sstream>
+#include <vector>
+
+#include <sys/socket.h>
+#include <netinet/in.h>
+#include <arpa/inet.h>
+#include <unistd.h>
 
 
 #include "ns3/netanim-module.h"
@@ -58,6 +66,50 @@ int bytesTotal;
 int packetsReceived;
 std::map<int, Ptr<Socket> > m_socketAddresses;
 std::map<Ipv4Address,int> m_nodeAddress;
+Ipv4InterfaceContainer interfaces;
+
+//state of the co-simulation session when running as a daemon
+int daemonPort = 0;
+double drainTime = 2.0;
+std::map<uint64_t, std::pair<Time, int> > m_sendTimes;  //packet uid -> (send time, simbeeotic index)
+
+//a reception waiting to be reported to simbeeotic
+struct Reception
+{
+  int index;
+  int64_t delay;
+  int rcvr;
+  int sndr;
+  std::string payload;
+};
+
+std::vector<Reception> m_receptions;
+std::vector<Time> m_lastWaypoint;  //time of the last waypoint given to each node
+
+//frame types of the binary protocol spoken with simbeeotic (see NSWire.java)
+enum FrameType
+{
+  FRAME_SETTINGS = 1,
+  FRAME_NODES = 2,
+  FRAME_MOVES = 3,
+  FRAME_TRANSMIT = 4,
+  FRAME_SCHEDULE = 5,
+  FRAME_GRANT = 6,
+  FRAME_QUIT = 7,
+  FRAME_READY = 16,
+  FRAME_RECEPTIONS = 17
+};
+
+//a frame received from simbeeotic and the read offset into its body
+struct Frame
+{
+  std::vector<uint8_t> data;
+  size_t offset;
+};
+
+//frames waiting to be written to simbeeotic. the buffers are reused for the whole session
+Frame m_in;
+std::vector<uint8_t> m_out;
 
 std::ofstream results;
 std::ifstream positions;
@@ -70,6 +122,56 @@ std::ifstream positions;
 
 
 
+void
+PLACE_NODE(int NodeNumber, double X, double Y, double Z){
+
+  Ptr<MobilityModel> mob = nodes.Get(NodeNumber)->GetObject<MobilityModel>();
+
+  Vector new_pos(X,Y,Z);
+  mob->SetPosition(new_pos);
+}
+
+void
+PLACE_NODES(std::istream &in, int count){
+
+  int NodeNumber;
+  double X, Y, Z;
+
+  for(int i=0;i<count;i++) {
+
+    in >> NodeNumber >> X >> Y >> Z;
+    PLACE_NODE(NodeNumber, X, Y, Z);
+
+    Vector Pos = nodes.Get(NodeNumber)->GetObject<MobilityModel>()->GetPosition();
+
+    NS_LOG_UNCOND ("NodeNumber: "<<NodeNumber<<"\t\tX = "<<Pos.x<<"\t Y = "<<Pos.y<<"\t Z = "<<Pos.z);
+  }
+}
+
+//the daemon moves nodes through waypoints, the file mode only places them once
+void
+CREATE_NODES(int count, string mobilityModel = "ns3::ConstantPositionMobilityModel"){
+
+  NumOfNodes = count;
+  nodes.Create (NumOfNodes);
+  MobilityHelper mobility;
+  mobility.SetPositionAllocator ("ns3::GridPositionAllocator",
+                           "MinX", DoubleValue (0.0),
+                           "MinY", DoubleValue (0.0),
+                           "DeltaX", DoubleValue (500),
+                           "DeltaY", DoubleValue (500),
+                           "GridWidth", UintegerValue (5),
+                           "LayoutType", StringValue ("RowFirst"));
+
+  //the placement becomes the first waypoint, so nodes move smoothly towards the next one
+  if (mobilityModel == "ns3::WaypointMobilityModel")
+    mobility.SetMobilityModel (mobilityModel, "InitialPositionIsWaypoint", BooleanValue (true));
+  else
+    mobility.SetMobilityModel (mobilityModel);
+
+  mobility.Install (nodes);
+}
+
 void
 READ_SIMBEEOTIC_STATE(){
   NS_LOG_UNCOND ("Start Reading State...");
@@ -78,35 +180,10 @@ READ_SIMBEEOTIC_STATE(){
 
   positions.open(PositionFile);
   if(positions.is_open()){
-    positions >> NumOfNodes;
-    nodes.Create (NumOfNodes);
-    MobilityHelper mobility;
-    mobility.SetPositionAllocator ("ns3::GridPositionAllocator",
-                             "MinX", DoubleValue (0.0),
-                             "MinY", DoubleValue (0.0),
-                             "DeltaX", DoubleValue (500),
-                             "DeltaY", DoubleValue (500),
-                             "GridWidth", UintegerValue (5),
-                             "LayoutType", StringValue ("RowFirst"));
-
-    mobility.SetMobilityModel ("ns3::ConstantPositionMobilityModel");
-    mobility.Install (nodes);
-
-    int NodeNumber;
-    double X, Y, Z;
-
-    for(int i=0;i<NumOfNodes;i++) {
-      
-      Ptr<MobilityModel> mob = nodes.Get(i)->GetObject<MobilityModel>();
-      positions >> NodeNumber >> X >> Y >> Z;
-
-      Vector new_pos(X,Y,Z);
-      mob->SetPosition(new_pos);
-
-      Vector Pos = mob->GetPosition();
-     
-      NS_LOG_UNCOND ("NodeNumber: "<<NodeNumber<<"\t\tX = "<<Pos.x<<"\t Y = "<<Pos.y<<"\t Z = "<<Pos.z);
-    }
+    int count;
+    positions >> count;
+    CREATE_NODES(count);
+    PLACE_NODES(positions, count);
 
     NS_LOG_UNCOND ("State Finished Mapping to Simbeeotic!");
   }
@@ -177,7 +254,8 @@ PrintReceivedPacket (Ptr<Socket> socket, Ptr<Packet> packet)
   std::ostringstream oss;
   uint8_t *buffer = new uint8_t[packet->GetSize ()];
   packet->CopyData(buffer, packet->GetSize ());
-  std::string data = std::string((char*)buffer);
+  std::string data = std::string((char*)buffer, packet->GetSize ());
+  delete[] buffer;
 
   oss << "<p Time=\""<<Simulator::Now ().GetSeconds () << "\" Rcvr=\"" << socket->GetNode ()->GetId ();
 
@@ -196,6 +274,42 @@ PrintReceivedPacket (Ptr<Socket> socket, Ptr<Packet> packet)
   return oss.str ();
 }
 
+//queue a reception so that it can be reported back to simbeeotic once the
+//current set of transmissions has been drained
+void
+ RECORD_RECEPTION (Ptr<Socket> socket, Ptr<Packet> packet)
+{
+  SocketAddressTag tag;
+  int sndr = -1;
+
+  if (packet->PeekPacketTag (tag))
+    {
+      InetSocketAddress addr = InetSocketAddress::ConvertFrom (tag.GetAddress ());
+      sndr = m_nodeAddress.at(addr.GetIpv4 ());
+    }
+
+  Reception rx;
+  rx.payload.resize (packet->GetSize ());
+  packet->CopyData ((uint8_t*) &rx.payload[0], packet->GetSize ());
+
+  //the delay is measured from the time that the packet was handed to the sending socket
+  Time sent = Simulator::Now ();
+  int index = -1;
+  std::map<uint64_t, std::pair<Time, int> >::iterator it = m_sendTimes.find (packet->GetUid ());
+  if (it != m_sendTimes.end ())
+    {
+      sent = it->second.first;
+      index = it->second.second;
+    }
+
+  rx.index = index;
+  rx.delay = (Simulator::Now () - sent).GetNanoSeconds ();
+  rx.rcvr = socket->GetNode ()->GetId ();
+  rx.sndr = sndr;
+
+  m_receptions.push_back (rx);
+}
+
 void
  ReceivePacket (Ptr<Socket> socket)
 {
@@ -204,7 +318,10 @@ void
     {
       bytesTotal += packet->GetSize ();
       packetsReceived += 1;
-      NS_LOG_UNCOND (PrintReceivedPacket (socket, packet));
+      if (daemonPort != 0)
+        RECORD_RECEPTION (socket, packet);
+      else
+        NS_LOG_UNCOND (PrintReceivedPacket (socket, packet));
       //NS_LOG_UNCOND("DIDNT HAPPEN");
     }
 }
@@ -237,25 +354,10 @@ Ptr<Socket>
   return sink;
 }
 
-int
-main (int argc, char *argv[])
-{  
-  Time::SetResolution (Time::NS);
- 
-  results.open(ResultsFile);
-  //add root tag to cater for xml file requirements
-  string rootTag = "<simbeenet ver=\"1.0\" fileType=\"results\" >\n";
-  results << rootTag;
-  
-  //initialize variables 
-  bytesTotal = 0;
-  packetsReceived=0;
-
-  READ_SIMBEEOTIC_STATE();
-
-  
-  if(GET_SETTINGS() == 1) {
-
+//build the wireless topology, routing and sinks for the nodes that have been created
+void
+BUILD_TOPOLOGY ()
+{
     AodvHelper aodv;
     OlsrHelper olsr;
     DsdvHelper dsdv;
@@ -366,7 +468,7 @@ main (int argc, char *argv[])
     Ipv4AddressHelper address;
     address.SetBase ("10.1.1.0", "255.255.255.0");
 
-    Ipv4InterfaceContainer interfaces = address.Assign (devices);
+    interfaces = address.Assign (devices);
 
 
     
@@ -379,8 +481,415 @@ main (int argc, char *argv[])
                 Ptr<Socket> sink = SetupPacketReceive (interfaces.GetAddress (i), nodes.Get (i),i);
               }
           NS_LOG_UNCOND("\n\nFINISHED TWEAKING NODES\n\n");
+}
+
+//hand a packet to the socket of the sending node. -1 signifies broadcast.
+//the index is the identifier that simbeeotic assigned to the communication
+void
+SEND_PACKET (int index, int from, int to, string data)
+{
+  //create custom packet
+  NS_LOG_UNCOND("CREATING PACKET"); 
+  Ptr<Packet> packet = Create<Packet> ((const uint8_t*) data.data(), data.size());
+
+  m_sendTimes[packet->GetUid ()] = std::make_pair (Simulator::Now (), index);
+
+  //send over topology
+  NS_LOG_UNCOND("GETTING SOCKET OF "<<from);
+  Ptr<Socket> src = m_socketAddresses.at(from);
+  //if broadcast or not   -1 signifies broadcast
+  NS_LOG_UNCOND("SENDING...");
+  if(to!=-1)
+    {
+      InetSocketAddress remoteAddress (InetSocketAddress (interfaces.GetAddress (to), 9));
+      src->Connect(remoteAddress);
+      src->Send(packet);
+    }
+   else
+   {
+      InetSocketAddress remoteAddress (InetSocketAddress ("255.255.255.255", 9));
+      src->Connect(remoteAddress);
+      src->Send(packet);
+   }
+   NS_LOG_UNCOND("SENT. \n\n");
+}
+
+//read exactly the given number of bytes from the simbeeotic connection
+bool
+READ_FULLY (int fd, uint8_t *buffer, size_t length)
+{
+  while (length > 0)
+    {
+      ssize_t count = read (fd, buffer, length);
+
+      if (count <= 0)
+        return false;
+
+      buffer += count;
+      length -= count;
+    }
+
+  return true;
+}
+
+//decoding of frame bodies. all values are little-endian
+uint32_t
+GET_U32 (Frame &f)
+{
+  const uint8_t *p = &f.data[f.offset];
+  f.offset += 4;
+  return (uint32_t) p[0] | ((uint32_t) p[1] << 8) | ((uint32_t) p[2] << 16) | ((uint32_t) p[3] << 24);
+}
+
+int32_t
+GET_I32 (Frame &f)
+{
+  return (int32_t) GET_U32 (f);
+}
+
+int64_t
+GET_I64 (Frame &f)
+{
+  uint64_t low = GET_U32 (f);
+  uint64_t high = GET_U32 (f);
+  return (int64_t) (low | (high << 32));
+}
+
+float
+GET_F32 (Frame &f)
+{
+  uint32_t bits = GET_U32 (f);
+  float value;
+  memcpy (&value, &bits, sizeof (value));
+  return value;
+}
+
+std::string
+GET_BYTES (Frame &f)
+{
+  uint32_t length = GET_U32 (f);
+  std::string value ((const char*) &f.data[f.offset], length);
+  f.offset += length;
+  return value;
+}
+
+//read the next frame, returning its type or -1 if the connection was closed
+int
+READ_FRAME (int fd, Frame &f)
+{
+  uint8_t header[4];
+
+  if (!READ_FULLY (fd, header, 4))
+    return -1;
+
+  f.data.assign (header, header + 4);
+  f.offset = 0;
+  uint32_t length = GET_U32 (f);
 
+  if (length < 1)
+    return -1;
+
+  f.data.resize (length);
+  f.offset = 1;
+
+  if (!READ_FULLY (fd, &f.data[0], length))
+    return -1;
+
+  return f.data[0];
+}
+
+//encoding of frame bodies into the output buffer
+void
+PUT_U32 (uint32_t value)
+{
+  m_out.push_back (value & 0xff);
+  m_out.push_back ((value >> 8) & 0xff);
+  m_out.push_back ((value >> 16) & 0xff);
+  m_out.push_back ((value >> 24) & 0xff);
+}
+
+void
+PUT_I64 (int64_t value)
+{
+  PUT_U32 ((uint32_t) ((uint64_t) value & 0xffffffff));
+  PUT_U32 ((uint32_t) ((uint64_t) value >> 32));
+}
+
+void
+PUT_BYTES (const std::string &value)
+{
+  PUT_U32 (value.size ());
+  m_out.insert (m_out.end (), value.begin (), value.end ());
+}
+
+//start a frame, returning the offset that has to be passed to END_FRAME
+size_t
+BEGIN_FRAME (uint8_t type)
+{
+  size_t start = m_out.size ();
+  PUT_U32 (0);
+  m_out.push_back (type);
+  return start;
+}
+
+void
+END_FRAME (size_t start)
+{
+  uint32_t length = m_out.size () - start - 4;
+
+  for (int i = 0; i < 4; i++)
+    m_out[start + i] = (length >> (8 * i)) & 0xff;
+}
+
+//write all of the completed frames to simbeeotic
+void
+FLUSH_FRAMES (int fd)
+{
+  size_t offset = 0;
+
+  while (offset < m_out.size ())
+    {
+      ssize_t written = write (fd, &m_out[offset], m_out.size () - offset);
+
+      if (written <= 0)
+        NS_FATAL_ERROR ("Lost connection to simbeeotic");
+
+      offset += written;
+    }
+
+  m_out.clear ();
+}
+
+//report the receptions collected since the last report
+void
+WRITE_RECEPTIONS (int fd)
+{
+  size_t start = BEGIN_FRAME (FRAME_RECEPTIONS);
+  PUT_U32 (m_receptions.size ());
+
+  for (size_t i = 0; i < m_receptions.size (); i++)
+    {
+      PUT_U32 (m_receptions[i].index);
+      PUT_I64 (m_receptions[i].delay);
+      PUT_U32 (m_receptions[i].rcvr);
+      PUT_U32 (m_receptions[i].sndr);
+      PUT_BYTES (m_receptions[i].payload);
+    }
+
+  END_FRAME (start);
+  FLUSH_FRAMES (fd);
+
+  m_receptions.clear ();
+}
+
+//place the nodes at the positions in a NODES frame
+void
+READ_POSITIONS (Frame &f, int count)
+{
+  m_lastWaypoint.assign (count, Simulator::Now ());
+
+  for (int i = 0; i < count; i++)
+    {
+      double x = GET_F32 (f);
+      double y = GET_F32 (f);
+      double z = GET_F32 (f);
+
+      PLACE_NODE (i, x, y, z);
+    }
+}
+
+//add waypoints for the nodes that moved since the last update. a negative
+//time moves the nodes immediately
+void
+READ_MOVES (Frame &f)
+{
+  int64_t at = GET_I64 (f);
+  int count = GET_U32 (f);
+
+  for (int i = 0; i < count; i++)
+    {
+      int node = GET_U32 (f);
+      double x = GET_F32 (f);
+      double y = GET_F32 (f);
+      double z = GET_F32 (f);
+
+      //waypoints cannot be in the past and have to be added in order
+      Time when = (at < 0) ? Simulator::Now () : NanoSeconds (at);
+
+      if (when < Simulator::Now ())
+        when = Simulator::Now ();
+
+      if (when < m_lastWaypoint[node])
+        when = m_lastWaypoint[node];
+
+      m_lastWaypoint[node] = when;
+
+      Ptr<WaypointMobilityModel> mob = nodes.Get (node)->GetObject<WaypointMobilityModel> ();
+      mob->AddWaypoint (Waypoint (when, Vector (x, y, z)));
+    }
+}
+
+//keep the topology alive and serve requests from simbeeotic until it disconnects
+int
+RUN_DAEMON (int port)
+{
+  NS_LOG_UNCOND ("Connecting to simbeeotic on port " << port);
+
+  int fd = socket (AF_INET, SOCK_STREAM, 0);
+  struct sockaddr_in addr;
+
+  memset (&addr, 0, sizeof (addr));
+  addr.sin_family = AF_INET;
+  addr.sin_port = htons (port);
+  addr.sin_addr.s_addr = inet_addr ("127.0.0.1");
+
+  if (::connect (fd, (struct sockaddr *) &addr, sizeof (addr)) < 0)
+    NS_FATAL_ERROR ("Could not connect to simbeeotic on port " << port);
+
+  int type;
+
+  while ((type = READ_FRAME (fd, m_in)) >= 0)
+    {
+      if (type == FRAME_SETTINGS)
+        {
+          protocol = GET_BYTES (m_in);
+          dataRate = GET_BYTES (m_in);
+          delay = GET_BYTES (m_in);
+          IP = GET_BYTES (m_in);
+          subnetMask = GET_BYTES (m_in);
+          NS_LOG_UNCOND ("Using protocol " << protocol << " with rate " << dataRate << " and delay " << delay);
+        }
+      else if (type == FRAME_NODES)
+        {
+          //the topology is created once and kept for the whole session
+          int count = GET_U32 (m_in);
+
+          CREATE_NODES (count, "ns3::WaypointMobilityModel");
+          READ_POSITIONS (m_in, count);
+          BUILD_TOPOLOGY ();
+
+          END_FRAME (BEGIN_FRAME (FRAME_READY));
+          FLUSH_FRAMES (fd);
+        }
+      else if (type == FRAME_MOVES)
+        {
+          READ_MOVES (m_in);
+        }
+      else if (type == FRAME_TRANSMIT)
+        {
+          //all of the communications in a batch are sent at the same instant
+          int count = GET_U32 (m_in);
+
+          for (int i = 0; i < count; i++)
+            {
+              int index = GET_I32 (m_in);
+              int from = GET_I32 (m_in);
+              int to = GET_I32 (m_in);
+              string data = GET_BYTES (m_in);
+
+              NS_LOG_UNCOND("COMMUNICATION FROM NODE "<<from<<"TO NODE "<<to);
+              SEND_PACKET (index, from, to, data);
+            }
+
+          //advance ns-3 far enough for the transmissions to be delivered
+          Simulator::Stop (Seconds (drainTime));
+          Simulator::Run ();
+
+          WRITE_RECEPTIONS (fd);
+          m_sendTimes.clear ();
+        }
+      else if (type == FRAME_SCHEDULE)
+        {
+          //communications that enter ns-3 at a given (absolute) time, used with GRANT
+          int count = GET_U32 (m_in);
+
+          for (int i = 0; i < count; i++)
+            {
+              int index = GET_I32 (m_in);
+              int64_t at = GET_I64 (m_in);
+              int from = GET_I32 (m_in);
+              int to = GET_I32 (m_in);
+              string data = GET_BYTES (m_in);
+
+              Time delay = NanoSeconds (at) - Simulator::Now ();
+
+              if (delay.IsNegative ())
+                {
+                  NS_LOG_UNCOND ("Communication " << index << " arrived " << -delay << " late");
+                  delay = Seconds (0);
+                }
+
+              Simulator::Schedule (delay, &SEND_PACKET, index, from, to, data);
+            }
+        }
+      else if (type == FRAME_GRANT)
+        {
+          //simbeeotic has sent every communication that enters before the bound,
+          //so it is safe to advance up to it
+          int64_t bound = GET_I64 (m_in);
+
+          Time until = NanoSeconds (bound) - Simulator::Now ();
+
+          if (until.IsStrictlyPositive ())
+            {
+              Simulator::Stop (until);
+              Simulator::Run ();
+            }
+
+          WRITE_RECEPTIONS (fd);
+
+          //forget packets that can no longer be in flight
+          std::map<uint64_t, std::pair<Time, int> >::iterator it = m_sendTimes.begin ();
+          while (it != m_sendTimes.end ())
+            {
+              if (Simulator::Now () - it->second.first > Seconds (drainTime))
+                m_sendTimes.erase (it++);
+              else
+                ++it;
+            }
+        }
+      else if (type == FRAME_QUIT)
+        {
+          break;
+        }
+    }
+
+  ::close (fd);
+
+  NS_LOG_UNCOND ("SESSION FINISHED\n");
+
+  Simulator::Destroy ();
+  return 0;
+}
+
+int
+main (int argc, char *argv[])
+{  
+  Time::SetResolution (Time::NS);
+
+  CommandLine cmd;
+  cmd.AddValue ("port", "Port of a simbeeotic session to serve (0 reads the files in scratch)", daemonPort);
+  cmd.AddValue ("drain", "Seconds of simulation to run after each set of transmissions", drainTime);
+  cmd.Parse (argc, argv);
+
+  //initialize variables 
+  bytesTotal = 0;
+  packetsReceived=0;
+
+  if (daemonPort != 0)
+    return RUN_DAEMON (daemonPort);
+ 
+  results.open(ResultsFile);
+  //add root tag to cater for xml file requirements
+  string rootTag = "<simbeenet ver=\"1.0\" fileType=\"results\" >\n";
+  results << rootTag;
+
+  READ_SIMBEEOTIC_STATE();
+
+  
+  if(GET_SETTINGS() == 1) {
 
+    BUILD_TOPOLOGY ();
 
               //do all communications for your parent application
               int numOfCommunications;
@@ -400,30 +909,7 @@ main (int argc, char *argv[])
 
                 //NS_LOG_UNCOND("from"<<from<<"to"<<to << "data:" <<data);
 
-                //create custom packet
-                NS_LOG_UNCOND("CREATING PACKET"); 
-                std::ostringstream msg; 
-                msg << data << '\0';
-                Ptr<Packet> packet = Create<Packet> ((uint8_t*) msg.str().c_str(), msg.str().length());
-
-                //send over topology
-                NS_LOG_UNCOND("GETTING SOCKET OF "<<from);
-                Ptr<Socket> src = m_socketAddresses.at(from);
-                //if broadcast or not   -1 signifies broadcast
-                NS_LOG_UNCOND("SENDING...");
-                if(to!=-1)
-                  {
-                    InetSocketAddress remoteAddress (InetSocketAddress (interfaces.GetAddress (to), 9));
-                    src->Connect(remoteAddress);
-                    src->Send(packet);
-                  }
-                 else
-                 {
-                    InetSocketAddress remoteAddress (InetSocketAddress ("255.255.255.255", 9));
-                    src->Connect(remoteAddress);
-                    src->Send(packet);
-                 }
-                 NS_LOG_UNCOND("SENT. \n\n");
+                SEND_PACKET (i, from, to, data);
                 
                 //TotalTime+=0;
 